@@ -0,0 +1,362 @@
+package hr.fer.zemris.java.hw11.jnotepadpp;
+
+import java.io.IOException;
+import java.nio.charset.UnmappableCharacterException;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.Document;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableContent;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableDocument;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.DocumentSaver;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.FileStamp;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.IoBudget;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.TextEncoding;
+
+/**
+ * Saves the modified documents in the background. Every edit of a tracked
+ * document pushes its save back by the delay, so a document is saved only
+ * once the typing stops. The text is snapshotted on the event dispatch thread,
+ * which only copies the piece list, and is encoded and written by a small pool
+ * of threads. At most {@link #MAX_CONCURRENT_SAVES} documents are written at
+ * once, the others wait for the next check, and all the writes share one
+ * {@link IoBudget}, so many modified documents never flood the disk. A
+ * document edited while it is being saved is saved again after the delay.
+ * A document holding a character its encoding can not write is not saved at
+ * all until it is edited again, and is reported instead.
+ * <p>
+ * Only awake documents with a path are saved: new documents have nowhere to
+ * go, and hibernated ones are already kept by the session.
+ *
+ * @author Marin
+ *
+ */
+class Autosaver {
+
+	/**
+	 * The interval in milliseconds between two checks for documents to save.
+	 */
+	private static final int CHECK_INTERVAL = 1000;
+	/**
+	 * The number of documents written at the same time.
+	 */
+	private static final int MAX_CONCURRENT_SAVES = 2;
+	/**
+	 * The number of bytes all the saves together can write per second.
+	 */
+	private static final long BYTES_PER_SECOND = 8L * 1024 * 1024;
+
+	/**
+	 * The state of a tracked document.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class State {
+
+		/**
+		 * The number of edits since the document started being tracked.
+		 */
+		private long edits;
+		/**
+		 * The time in milliseconds after which the document is saved, zero if
+		 * it needs no saving.
+		 */
+		private long deadline;
+		/**
+		 * The save in progress, null if there is none.
+		 */
+		private Save saving;
+	}
+
+	/**
+	 * A save in progress.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Save {
+
+		/**
+		 * The flag telling the writer thread to stop.
+		 */
+		private volatile boolean cancelled;
+		/**
+		 * The future of the write.
+		 */
+		private Future<?> future;
+	}
+
+	/**
+	 * The states of the tracked documents.
+	 */
+	private Map<DefaultSingleDocumentModel, State> states = new IdentityHashMap<>();
+	/**
+	 * The threads writing the documents.
+	 */
+	private ExecutorService writers;
+	/**
+	 * The saver shared by the writer threads.
+	 */
+	private DocumentSaver saver = new DocumentSaver(new IoBudget(BYTES_PER_SECOND));
+	/**
+	 * Called on a writer thread with every written path.
+	 */
+	private Consumer<Path> written;
+	/**
+	 * Called on the event dispatch thread with every model that could not be
+	 * saved in its encoding.
+	 */
+	private Consumer<DefaultSingleDocumentModel> unencodable;
+	/**
+	 * The time in milliseconds a document has to stay unedited to be saved.
+	 */
+	private long delay;
+	/**
+	 * The number of saves in progress.
+	 */
+	private int running;
+
+	/**
+	 * The {@link Autosaver} constructor. Starts checking for documents to
+	 * save.
+	 *
+	 * @param delay
+	 *            is the time in milliseconds a document has to stay unedited
+	 *            to be saved, zero or less turns the saving off.
+	 * @param written
+	 *            is called on a writer thread with every written path.
+	 * @param unencodable
+	 *            is called on the event dispatch thread with every model that
+	 *            could not be saved in its encoding.
+	 */
+	public Autosaver(long delay, Consumer<Path> written, Consumer<DefaultSingleDocumentModel> unencodable) {
+		this.delay = delay;
+		this.written = written;
+		this.unencodable = unencodable;
+		writers = Executors.newFixedThreadPool(MAX_CONCURRENT_SAVES, r -> {
+			Thread thread = new Thread(r, "autosave");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		Timer timer = new Timer(CHECK_INTERVAL, e -> saveDue());
+		timer.start();
+	}
+
+	/**
+	 * A getter for the delay.
+	 *
+	 * @return the time in milliseconds a document has to stay unedited to be
+	 *         saved.
+	 */
+	public long getDelay() {
+		return delay;
+	}
+
+	/**
+	 * A setter for the delay. When the saving is turned on, the documents
+	 * modified while it was off are saved only after the new delay.
+	 *
+	 * @param delay
+	 *            is the time in milliseconds a document has to stay unedited
+	 *            to be saved, zero or less turns the saving off.
+	 */
+	public void setDelay(long delay) {
+		if (this.delay <= 0 && delay > 0) {
+			long deadline = System.currentTimeMillis() + delay;
+			for (State state : states.values()) {
+				if (state.deadline != 0) {
+					state.deadline = deadline;
+				}
+			}
+		}
+		this.delay = delay;
+	}
+
+	/**
+	 * Starts tracking the edits of the given model.
+	 *
+	 * @param model
+	 *            is the given model.
+	 */
+	public void track(DefaultSingleDocumentModel model) {
+		State state = new State();
+		states.put(model, state);
+		if (model.isModified()) {
+			state.deadline = System.currentTimeMillis() + delay;
+		}
+
+		model.addSingleDocumentListener(new SingleDocumentListener() {
+
+			@Override
+			public void documentModifyStatusUpdated(SingleDocumentModel model) {
+				if (model.isModified()) {
+					state.edits++;
+					state.deadline = System.currentTimeMillis() + delay;
+				} else if (state.saving == null) {
+					state.deadline = 0;
+				}
+			}
+
+			@Override
+			public void documentFilePathUpdated(SingleDocumentModel model) {
+			}
+		});
+	}
+
+	/**
+	 * Stops tracking the given model, cancelling its save in progress.
+	 *
+	 * @param model
+	 *            is the given model.
+	 */
+	public void untrack(DefaultSingleDocumentModel model) {
+		State state = states.remove(model);
+		if (state != null && state.saving != null) {
+			state.saving.cancelled = true;
+		}
+	}
+
+	/**
+	 * Cancels the save in progress of the given model and waits until its
+	 * writer thread lets go of the file. Called before the model is saved by
+	 * hand, so an older snapshot can never overwrite the newer save.
+	 *
+	 * @param model
+	 *            is the given model.
+	 */
+	public void cancel(DefaultSingleDocumentModel model) {
+		State state = states.get(model);
+		if (state == null || state.saving == null) {
+			return;
+		}
+
+		state.saving.cancelled = true;
+		try {
+			state.saving.future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | CancellationException ignorable) {
+		}
+	}
+
+	/**
+	 * Starts saving the documents whose delay has passed, as long as there
+	 * are free writers.
+	 */
+	private void saveDue() {
+		if (delay <= 0) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		for (Map.Entry<DefaultSingleDocumentModel, State> entry : states.entrySet()) {
+			if (running >= MAX_CONCURRENT_SAVES) {
+				return;
+			}
+			State state = entry.getValue();
+			if (state.deadline != 0 && state.deadline <= now && state.saving == null) {
+				start(entry.getKey(), state);
+			}
+		}
+	}
+
+	/**
+	 * Snapshots the given model and hands the snapshot to a writer thread.
+	 * Once written, the model is marked unmodified, unless it was edited in
+	 * the meantime.
+	 *
+	 * @param model
+	 *            is the model to save.
+	 * @param state
+	 *            is the state of the model.
+	 */
+	private void start(DefaultSingleDocumentModel model, State state) {
+		state.deadline = 0;
+		Path path = model.getFilePath();
+		if (path == null || !model.isModified() || model.isHibernated() || model.isPlaceholder()) {
+			return;
+		}
+		Document document = model.getTextComponent().getDocument();
+		if (!(document instanceof PieceTableDocument)) {
+			return;
+		}
+
+		PieceTableContent.Snapshot snapshot = ((PieceTableDocument) document).snapshot();
+		TextEncoding encoding = model.getEncoding();
+		long edits = state.edits;
+		Save save = new Save();
+		state.saving = save;
+		running++;
+
+		save.future = writers.submit(() -> {
+			Exception failure = null;
+			FileStamp stamp = null;
+			try {
+				saver.save(snapshot, path, encoding, () -> save.cancelled);
+				stamp = FileStamp.of(path);
+				written.accept(path);
+			} catch (IOException | RuntimeException e) {
+				failure = e;
+			}
+
+			Exception result = failure;
+			FileStamp saved = stamp;
+			SwingUtilities.invokeLater(() -> finish(model, state, save, path, saved, edits, result));
+		});
+	}
+
+	/**
+	 * Finishes a save on the event dispatch thread.
+	 *
+	 * @param model
+	 *            is the saved model.
+	 * @param state
+	 *            is the state of the model.
+	 * @param save
+	 *            is the finished save.
+	 * @param path
+	 *            is the path the model was saved to.
+	 * @param stamp
+	 *            is the stamp of the file taken right after the save, null if
+	 *            it is not known.
+	 * @param edits
+	 *            is the number of edits at the time of the snapshot.
+	 * @param failure
+	 *            is the failure, null if the save succeeded.
+	 */
+	private void finish(DefaultSingleDocumentModel model, State state, Save save, Path path, FileStamp stamp,
+			long edits, Exception failure) {
+		running--;
+		if (state.saving == save) {
+			state.saving = null;
+		}
+		if (save.cancelled || states.get(model) != state) {
+			return;
+		}
+
+		if (failure instanceof UnmappableCharacterException) {
+			unencodable.accept(model);
+			return;
+		}
+		if (failure != null) {
+			failure.printStackTrace();
+			state.deadline = System.currentTimeMillis() + delay;
+			return;
+		}
+		if (state.edits == edits && path.equals(model.getFilePath())) {
+			model.markWritten(stamp);
+		}
+	}
+}
@@ -1,27 +1,85 @@
 package hr.fer.zemris.java.hw11.jnotepadpp;
 
+import java.awt.Component;
 import java.awt.Image;
+import java.awt.Point;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
+import javax.management.NotificationEmitter;
 import javax.swing.ImageIcon;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.components.LoadingPanel;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.DocumentPatch;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.DocumentStatistics;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.HibernatedText;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineIndex;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableContent;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableDocument;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.UndoBudget;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.DocumentLoader;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.DocumentSaver;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.EditJournal;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.FileStamp;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.FileWatcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.IndexCache;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.SessionFile;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.TextEncoding;
+import hr.fer.zemris.java.hw11.jnotepadpp.local.ILocalizationProvider;
+import hr.fer.zemris.java.hw11.jnotepadpp.viewer.ViewerDocumentModel;
 
 /**
  * Class representing a model for working with multiple documents at once.
  * Extends {@link JTabbedPane} so those documents can be visualized as a tabbed
  * pane. Offers methods for opening, creating, saving... documents. Also offers
  * methods to attach listener that can listen to the change of the model state.
+ * Documents that have not been selected for a while, or all inactive documents
+ * when the heap is almost full, are hibernated and woken up again when their
+ * tab is selected, both in the background. The edits of every document are
+ * recorded in an {@link EditJournal} when a journal directory is set, and the
+ * journals left by a crash are recovered on startup. When the user turns it
+ * on, modified documents are saved in the background by an {@link Autosaver}
+ * once they stop being edited. Files changed by other programs are noticed by
+ * a {@link FileWatcher}: unmodified documents are reloaded in place, modified
+ * ones ask the user first. A document can follow its growing file, like a
+ * log, with a {@link TailFollower}.
+ * The undo histories of all the documents share one {@link UndoBudget}.
+ * Large documents and viewed files are given a trigram index by a
+ * {@link DocumentIndexer} when an index directory is set, so searching them
+ * skips the blocks that can not hold a match.
  * 
  * @author Marin
  *
@@ -36,6 +94,46 @@ public class DefaultMultipleDocumentModel extends JTabbedPane implements Multipl
 	 * A sign used to represent a new document, without name.
 	 */
 	public static final String ASTERISK = "*";
+	/**
+	 * The file size in bytes from which files are opened in the read-only
+	 * viewer instead of being loaded to the heap.
+	 */
+	public static final long VIEWER_THRESHOLD = 256L * 1024 * 1024;
+	/**
+	 * The default time in milliseconds a document has to be inactive to be
+	 * hibernated.
+	 */
+	public static final long DEFAULT_HIBERNATION_TIMEOUT = 10 * 60 * 1000;
+	/**
+	 * The default time in milliseconds a document has to stay unedited to be
+	 * saved in the background. Saving in the background overwrites the files
+	 * of the documents, so it is off until the user turns it on.
+	 */
+	public static final long DEFAULT_AUTOSAVE_DELAY = 0;
+	/**
+	 * The time in milliseconds a document has to stay unedited to be saved in
+	 * the background, once the saving is turned on.
+	 */
+	public static final long AUTOSAVE_DELAY = 30 * 1000;
+	/**
+	 * The number of bytes the undo history of one document can keep in
+	 * memory.
+	 */
+	public static final long UNDO_MEMORY_PER_DOCUMENT = 16L * 1024 * 1024;
+	/**
+	 * The number of bytes the undo histories of all the documents together can
+	 * keep in memory.
+	 */
+	public static final long UNDO_MEMORY = 64L * 1024 * 1024;
+	/**
+	 * The interval in milliseconds between two checks for inactive documents.
+	 */
+	private static final int HIBERNATION_CHECK_INTERVAL = 30 * 1000;
+	/**
+	 * The part of the heap pool that may be used after a garbage collection
+	 * before the inactive documents are hibernated.
+	 */
+	private static final double MEMORY_THRESHOLD = 0.75;
 	
 	/**
 	 * A red diskette, used to represent a file that is not modified.
@@ -47,9 +145,9 @@ public class DefaultMultipleDocumentModel extends JTabbedPane implements Multipl
 	private final ImageIcon GREEN_DISKETTE;
 	
 	/**
-	 * A list of currently opened models.
+	 * The registry of the currently opened models.
 	 */
-	private List<SingleDocumentModel> models;
+	private DocumentRegistry models;
 	/**
 	 * The model in focus.
 	 */
@@ -62,16 +160,102 @@ public class DefaultMultipleDocumentModel extends JTabbedPane implements Multipl
 	 * An iterator over listeners. Used to avoid concurrency.
 	 */
 	private Iterator<MultipleDocumentListener> listenersIterator;
+	/**
+	 * The loader used to read the documents.
+	 */
+	private DocumentLoader loader;
+	/**
+	 * The saver used to write the documents.
+	 */
+	private DocumentSaver saver;
+	/**
+	 * The models whose documents are still being loaded, with their loadings.
+	 */
+	private Map<SingleDocumentModel, CompletableFuture<SingleDocumentModel>> pendingLoads;
+	/**
+	 * The models whose text is being compressed to hibernate them.
+	 */
+	private Set<SingleDocumentModel> compressing;
+	/**
+	 * The localization provider, used by the loading panels.
+	 */
+	private ILocalizationProvider lp;
+	/**
+	 * The times in milliseconds at which the models were last deselected.
+	 */
+	private Map<SingleDocumentModel, Long> lastSelected;
+	/**
+	 * The time in milliseconds a document has to be inactive to be hibernated.
+	 */
+	private long hibernationTimeout = DEFAULT_HIBERNATION_TIMEOUT;
+	/**
+	 * The scroll positions of the models without a text component, applied
+	 * when their components are shown.
+	 */
+	private Map<SingleDocumentModel, Integer> savedScrolls;
+	/**
+	 * The directory of the journal files, null if the edits are not recorded.
+	 */
+	private Path journalDirectory;
+	/**
+	 * The saver of the modified documents in the background.
+	 */
+	private Autosaver autosaver;
+	/**
+	 * The watcher of the opened files, null if the files can not be watched.
+	 */
+	private FileWatcher watcher;
+	/**
+	 * The paths under which the models are watched.
+	 */
+	private Map<SingleDocumentModel, Path> watchedPaths;
+	/**
+	 * The follower of the growing files.
+	 */
+	private TailFollower follower;
+	/**
+	 * The models whose users are being asked about a change of their file.
+	 */
+	private Set<SingleDocumentModel> conflicts;
+	/**
+	 * The budget shared by the undo histories of the documents.
+	 */
+	private UndoBudget undoBudget;
+	/**
+	 * The indexer of the large documents.
+	 */
+	private DocumentIndexer indexer;
 	
 	/**
 	 * A multiple document model constructor.
+	 * 
+	 * @param lp
+	 *            is the given {@link ILocalizationProvider}.
 	 */
-	public DefaultMultipleDocumentModel() {
+	public DefaultMultipleDocumentModel(ILocalizationProvider lp) {
 		RED_DISKETTE = loadIcon("icons/redDiskette.png");
 		GREEN_DISKETTE = loadIcon("icons/greenDiskette.png");
 		
-		models = new ArrayList<>();
+		this.lp = lp;
+		models = new DocumentRegistry();
 		listeners = new ArrayList<>();
+		loader = new DocumentLoader();
+		saver = new DocumentSaver();
+		pendingLoads = new HashMap<>();
+		compressing = new HashSet<>();
+		lastSelected = new HashMap<>();
+		savedScrolls = new HashMap<>();
+		autosaver = new Autosaver(DEFAULT_AUTOSAVE_DELAY, this::acknowledgeWrite, this::reportUnencodable);
+		watchedPaths = new IdentityHashMap<>();
+		conflicts = new HashSet<>();
+		undoBudget = new UndoBudget(UNDO_MEMORY_PER_DOCUMENT, UNDO_MEMORY);
+		follower = new TailFollower();
+		indexer = new DocumentIndexer();
+		try {
+			watcher = new FileWatcher(file -> SwingUtilities.invokeLater(() -> fileChanged(file)));
+		} catch (IOException | UnsupportedOperationException e) {
+			e.printStackTrace();
+		}
 		
 		this.addChangeListener(new ChangeListener() {
 			
@@ -83,10 +267,542 @@ public class DefaultMultipleDocumentModel extends JTabbedPane implements Multipl
 					currentModel = null;
 				} else {
 					currentModel = models.get(index);
+					wakeTab(index);
+				}
+				if (previous != null && previous != currentModel) {
+					lastSelected.put(previous, System.currentTimeMillis());
 				}
 				notifyListenersDocumentChanged(previous, currentModel);
 			}
 		});
+		
+		Timer hibernationTimer = new Timer(HIBERNATION_CHECK_INTERVAL, e -> {
+			if (hibernationTimeout > 0) {
+				hibernateInactiveDocuments(hibernationTimeout);
+			}
+		});
+		hibernationTimer.start();
+		watchMemory();
+	}
+
+	/**
+	 * A getter for the time a document has to be inactive to be hibernated.
+	 * 
+	 * @return the time in milliseconds.
+	 */
+	public long getHibernationTimeout() {
+		return hibernationTimeout;
+	}
+
+	/**
+	 * A setter for the time a document has to be inactive to be hibernated.
+	 * 
+	 * @param hibernationTimeout
+	 *            is the time in milliseconds, zero or less turns the timed
+	 *            hibernation off.
+	 */
+	public void setHibernationTimeout(long hibernationTimeout) {
+		this.hibernationTimeout = hibernationTimeout;
+	}
+
+	/**
+	 * A getter for the time a document has to stay unedited to be saved in the
+	 * background.
+	 * 
+	 * @return the time in milliseconds.
+	 */
+	public long getAutosaveDelay() {
+		return autosaver.getDelay();
+	}
+
+	/**
+	 * A setter for the time a document has to stay unedited to be saved in the
+	 * background.
+	 * 
+	 * @param delay
+	 *            is the time in milliseconds, zero or less turns the saving
+	 *            in the background off.
+	 */
+	public void setAutosaveDelay(long delay) {
+		autosaver.setDelay(delay);
+	}
+
+	/**
+	 * Starts or stops following the growing file of the given model: the
+	 * appended text is added to the document as the file grows.
+	 * 
+	 * @param model
+	 *            is the given model.
+	 * @param following
+	 *            true to start following, false to stop.
+	 * @return true if the model is followed afterwards, false otherwise. A
+	 *         model can only be followed if it has an unmodified file.
+	 */
+	public boolean setFollowing(SingleDocumentModel model, boolean following) {
+		if (!(model instanceof DefaultSingleDocumentModel) || pendingLoads.containsKey(model)) {
+			return false;
+		}
+		if (!following) {
+			follower.unfollow((DefaultSingleDocumentModel) model);
+			return false;
+		}
+		return follower.follow((DefaultSingleDocumentModel) model);
+	}
+
+	/**
+	 * Undoes the last step of the edits of the given model.
+	 * 
+	 * @param model
+	 *            is the given model.
+	 * @return true if a step was undone, false otherwise.
+	 */
+	public boolean undo(SingleDocumentModel model) {
+		if (!(model instanceof DefaultSingleDocumentModel) || pendingLoads.containsKey(model)) {
+			return false;
+		}
+		return ((DefaultSingleDocumentModel) model).undo();
+	}
+
+	/**
+	 * Redoes the last undone step of the edits of the given model.
+	 * 
+	 * @param model
+	 *            is the given model.
+	 * @return true if a step was redone, false otherwise.
+	 */
+	public boolean redo(SingleDocumentModel model) {
+		if (!(model instanceof DefaultSingleDocumentModel) || pendingLoads.containsKey(model)) {
+			return false;
+		}
+		return ((DefaultSingleDocumentModel) model).redo();
+	}
+
+	/**
+	 * Selects the tab of the given model.
+	 * 
+	 * @param model
+	 *            is the given model.
+	 * @return true if the model is open, false otherwise.
+	 */
+	public boolean selectDocument(SingleDocumentModel model) {
+		int index = models.indexOf(model);
+		if (index == -1) {
+			return false;
+		}
+		setSelectedIndex(index);
+		return true;
+	}
+
+	/**
+	 * Checks if the file of the given model is still being read.
+	 * 
+	 * @param model
+	 *            is the given model.
+	 * @return true if it is, false otherwise.
+	 */
+	public boolean isLoading(SingleDocumentModel model) {
+		return pendingLoads.containsKey(model);
+	}
+
+	/**
+	 * Replaces the matches of the given searcher in the document of the given
+	 * file, after the file was rewritten with them replaced. The document is
+	 * edited in place instead of being reloaded, so the caret, the scroll
+	 * position and the undo history are kept, and the replacement can be
+	 * undone. An unmodified document equals its file again and stays
+	 * unmodified, a modified one keeps its own changes. Placeholders,
+	 * hibernated documents and documents still being loaded read the file
+	 * anyway.
+	 * 
+	 * @param file
+	 *            is the rewritten file.
+	 * @param searcher
+	 *            is the searcher the file was rewritten with.
+	 * @return the number of replaced matches, -1 if the file is not open in
+	 *         an editable document.
+	 */
+	public int replaceInDocument(Path file, TextSearcher searcher) {
+		SingleDocumentModel found = findDocument(file);
+		if (!(found instanceof DefaultSingleDocumentModel) || pendingLoads.containsKey(found)
+				|| ((DefaultSingleDocumentModel) found).isPlaceholder()
+				|| ((DefaultSingleDocumentModel) found).isHibernated()) {
+			return -1;
+		}
+		
+		DefaultSingleDocumentModel model = (DefaultSingleDocumentModel) found;
+		boolean modified = model.isModified();
+		JTextArea textArea = model.getTextComponent();
+		Document document = textArea.getDocument();
+		List<TextSearcher.Match> matches = new ArrayList<>();
+		searcher.findAll(document, matches::addAll, () -> false);
+		int caret = textArea.getCaretPosition();
+		try {
+			searcher.replace((AbstractDocument) document, matches);
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+			return -1;
+		}
+		textArea.setCaretPosition(shift(caret, matches));
+		
+		if (!modified) {
+			autosaver.cancel(model);
+			model.markWritten(FileStamp.of(model.getFilePath()));
+			indexer.saved(model);
+		}
+		if (model == currentModel) {
+			notifyListenersDocumentChanged(model, model);
+		}
+		return matches.size();
+	}
+
+	/**
+	 * Checks if the growing file of the given model is followed.
+	 * 
+	 * @param model
+	 *            is the given model.
+	 * @return true if it is, false otherwise.
+	 */
+	public boolean isFollowing(SingleDocumentModel model) {
+		return follower.isFollowing(model);
+	}
+
+	/**
+	 * A getter for the largest number of lines of a followed document.
+	 * 
+	 * @return the number of lines, zero or less if there is no limit.
+	 */
+	public int getFollowLineLimit() {
+		return follower.getLineLimit();
+	}
+
+	/**
+	 * A setter for the largest number of lines of a followed document. The
+	 * oldest lines above the limit are dropped.
+	 * 
+	 * @param lineLimit
+	 *            is the number of lines, zero or less if there is no limit.
+	 */
+	public void setFollowLineLimit(int lineLimit) {
+		follower.setLineLimit(lineLimit);
+	}
+
+	/**
+	 * A getter for the directory of the journal files.
+	 * 
+	 * @return the directory, null if the edits are not recorded.
+	 */
+	public Path getJournalDirectory() {
+		return journalDirectory;
+	}
+
+	/**
+	 * A setter for the directory of the journal files. Only the documents
+	 * opened afterwards are recorded.
+	 * 
+	 * @param journalDirectory
+	 *            is the directory, null to stop recording.
+	 */
+	public void setJournalDirectory(Path journalDirectory) {
+		this.journalDirectory = journalDirectory;
+	}
+
+	/**
+	 * A getter for the directory of the trigram indexes of the large files.
+	 * 
+	 * @return the directory, null if the documents are not indexed.
+	 */
+	public Path getIndexDirectory() {
+		IndexCache cache = indexer.getCache();
+		return cache == null ? null : cache.getDirectory();
+	}
+
+	/**
+	 * A setter for the directory of the trigram indexes of the large files.
+	 * Only the documents opened afterwards are indexed.
+	 * 
+	 * @param indexDirectory
+	 *            is the directory, null to stop indexing.
+	 */
+	public void setIndexDirectory(Path indexDirectory) {
+		indexer.setCache(indexDirectory == null ? null : new IndexCache(indexDirectory));
+	}
+
+	/**
+	 * Hibernates the documents that have not been selected for at least the
+	 * given time. The current document and the documents still being loaded
+	 * are never hibernated. The text of every document is compressed in the
+	 * background from a snapshot, and swapped in only if the document is
+	 * still inactive and was not edited in the meantime.
+	 * 
+	 * @param inactivity
+	 *            is the time in milliseconds.
+	 */
+	public void hibernateInactiveDocuments(long inactivity) {
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < models.size(); ++i) {
+			SingleDocumentModel model = models.get(i);
+			if (!(model instanceof DefaultSingleDocumentModel) || model == currentModel
+					|| pendingLoads.containsKey(model) || compressing.contains(model)) {
+				continue;
+			}
+			
+			DefaultSingleDocumentModel hibernating = (DefaultSingleDocumentModel) model;
+			Long deselected = lastSelected.get(model);
+			if (hibernating.isHibernated() || hibernating.isPlaceholder() || follower.isFollowing(model)
+					|| deselected == null || now - deselected < inactivity) {
+				continue;
+			}
+			
+			PieceTableContent.Snapshot snapshot = hibernating.snapshotPieces();
+			if (snapshot != null) {
+				hibernate(hibernating, snapshot);
+			}
+		}
+	}
+	
+	/**
+	 * Compresses the given snapshot of the text of the given model in the
+	 * background, and hibernates the model with it on the event dispatch
+	 * thread, unless the model was selected, edited or closed in the meantime.
+	 * 
+	 * @param model
+	 *            is the model to hibernate.
+	 * @param snapshot
+	 *            is the snapshot of its text, taken at its current edit count.
+	 */
+	private void hibernate(DefaultSingleDocumentModel model, PieceTableContent.Snapshot snapshot) {
+		long edits = model.getEditCount();
+		compressing.add(model);
+		DocumentLoader.getExecutor().execute(() -> {
+			HibernatedText text = null;
+			try {
+				text = HibernatedText.store(snapshot);
+			} catch (IOException | RuntimeException e) {
+				e.printStackTrace();
+			}
+			
+			HibernatedText compressed = text;
+			SwingUtilities.invokeLater(() -> {
+				compressing.remove(model);
+				if (compressed == null) {
+					return;
+				}
+				int index = models.indexOf(model);
+				if (index == -1 || model == currentModel || pendingLoads.containsKey(model)
+						|| follower.isFollowing(model) || model.isHibernated() || model.isPlaceholder()
+						|| model.getEditCount() != edits) {
+					compressed.dispose();
+					return;
+				}
+				
+				int scroll = getScrollPosition(index);
+				model.hibernate(compressed);
+				savedScrolls.put(model, scroll);
+				setComponentAt(index, new JPanel());
+			});
+		});
+	}
+
+	/**
+	 * Creates a snapshot of the opened documents for the session file. Only
+	 * the pieces of the unsaved documents are copied, their text is compressed
+	 * when the session is written; the hibernated ones are copied without
+	 * being woken up. New documents without changes are left out.
+	 * 
+	 * @return the session.
+	 */
+	public SessionFile createSession() {
+		List<SessionFile.Entry> entries = new ArrayList<>();
+		int selected = -1;
+		for (int i = 0; i < models.size(); ++i) {
+			SingleDocumentModel model = models.get(i);
+			int caret = 0;
+			HibernatedText unsaved = null;
+			PieceTableContent.Snapshot pieces = null;
+			String journal = null;
+			if (model instanceof DefaultSingleDocumentModel
+					&& (!pendingLoads.containsKey(model) || ((DefaultSingleDocumentModel) model).isHibernated())) {
+				DefaultSingleDocumentModel document = (DefaultSingleDocumentModel) model;
+				caret = document.getCaretPosition();
+				if (document.getJournal() != null) {
+					journal = document.getJournal().getId();
+				}
+				if (model.isModified()) {
+					pieces = document.snapshotPieces();
+				}
+				if (model.isModified() && pieces == null) {
+					try {
+						unsaved = document.snapshotText();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+			if (model.getFilePath() == null && unsaved == null && pieces == null) {
+				continue;
+			}
+			
+			if (i == getSelectedIndex()) {
+				selected = entries.size();
+			}
+			if (pieces == null) {
+				entries.add(new SessionFile.Entry(model.getFilePath(), caret, getScrollPosition(i),
+						model.getEncoding(), unsaved, journal));
+			} else {
+				entries.add(new SessionFile.Entry(model.getFilePath(), caret, getScrollPosition(i),
+						model.getEncoding(), pieces, journal));
+			}
+		}
+		return new SessionFile(entries, selected);
+	}
+
+	/**
+	 * Opens the documents of the given session. No file is read: the saved
+	 * documents are opened as placeholders, and the unsaved ones are kept
+	 * compressed until their tabs are selected. A document whose journal
+	 * outlived the session is recovered from the journal instead, and the
+	 * journal is deleted once the recovered text is in a tab. A journal that
+	 * was written for another file is opened in a tab of its own. Files that
+	 * no longer exist and files that are already opened are skipped.
+	 * 
+	 * @param session
+	 *            is the session to restore, its unsaved texts are taken over
+	 *            by the restored documents.
+	 */
+	public void restoreSession(SessionFile session) {
+		int selected = -1;
+		List<SessionFile.Entry> entries = session.getEntries();
+		for (int i = 0; i < entries.size(); ++i) {
+			SessionFile.Entry entry = entries.get(i);
+			Path path = entry.getPath();
+			if (path != null && getPathIndexIfExists(path) != -1) {
+				entry.dispose();
+				continue;
+			}
+			
+			SingleDocumentModel model;
+			EditJournal.Recovery recovery = recoverJournal(entry.getJournal());
+			if (recovery != null && !Objects.equals(recovery.getPath(), path)) {
+				openRecovery(recovery, entry.getJournal());
+				recovery = null;
+			}
+			if (recovery != null) {
+				entry.dispose();
+				recovery.getDocument().putProperty(TextEncoding.PROPERTY, entry.getEncoding());
+				DefaultSingleDocumentModel recovered = new DefaultSingleDocumentModel(path, recovery.getDocument());
+				recovered.setCaretPosition(entry.getCaret());
+				savedScrolls.put(recovered, entry.getScroll());
+				addModelToPane(recovered, new JPanel(), false);
+				recovered.markRecovered();
+				supersedeJournal(recovered, entry.getJournal());
+				model = recovered;
+			} else if (entry.getUnsaved() != null) {
+				model = new DefaultSingleDocumentModel(path, entry.getUnsaved(), entry.getEncoding(), entry.getCaret());
+			} else if (path != null && Files.isRegularFile(path)) {
+				try {
+					if (Files.size(path) >= VIEWER_THRESHOLD) {
+						model = openDocumentLazily(path);
+					} else {
+						DefaultSingleDocumentModel placeholder = new DefaultSingleDocumentModel(path);
+						placeholder.setCaretPosition(entry.getCaret());
+						model = placeholder;
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+					continue;
+				}
+			} else {
+				continue;
+			}
+			
+			if (model instanceof DefaultSingleDocumentModel && !models.contains(model)) {
+				savedScrolls.put(model, entry.getScroll());
+				addModelToPane(model, new JPanel(), false);
+			}
+			if (i == session.getSelected() && model != null) {
+				selected = models.indexOf(model);
+			}
+		}
+		
+		if (selected != -1) {
+			setSelectedIndex(selected);
+		}
+	}
+
+	/**
+	 * Opens the documents left in the journal directory by a crash, that were
+	 * not restored with the session. A recovered document of an already
+	 * opened file replaces the text of its model, unless the file is still
+	 * being loaded. The recovered documents are modified, and their journals
+	 * are deleted once the recovered text is in a tab.
+	 */
+	public void recoverJournals() {
+		if (journalDirectory == null || !Files.isDirectory(journalDirectory)) {
+			return;
+		}
+		
+		Set<String> own = new HashSet<>();
+		for (SingleDocumentModel model : models) {
+			if (model instanceof DefaultSingleDocumentModel && ((DefaultSingleDocumentModel) model).getJournal() != null) {
+				own.add(((DefaultSingleDocumentModel) model).getJournal().getId());
+			}
+		}
+		
+		List<String> leftovers = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(journalDirectory, "*" + EditJournal.EXTENSION)) {
+			for (Path file : stream) {
+				String name = file.getFileName().toString();
+				String id = name.substring(0, name.length() - EditJournal.EXTENSION.length());
+				if (!own.contains(id)) {
+					leftovers.add(id);
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		
+		for (String id : leftovers) {
+			EditJournal.Recovery recovery = recoverJournal(id);
+			if (recovery != null) {
+				openRecovery(recovery, id);
+			}
+		}
+	}
+
+	/**
+	 * Opens the given recovered document in a tab of its own, or replaces the
+	 * text of the already opened document of its file with it. A document
+	 * whose file is still being loaded or shown by a viewer is left alone,
+	 * and the journal is kept for the next start. Otherwise the journal is
+	 * deleted once the recovered text is in a tab.
+	 * 
+	 * @param recovery
+	 *            is the recovered document.
+	 * @param id
+	 *            is the identifier of its journal.
+	 */
+	private void openRecovery(EditJournal.Recovery recovery, String id) {
+		Path path = recovery.getPath();
+		int index = path == null ? -1 : getPathIndexIfExists(path);
+		if (index == -1) {
+			DefaultSingleDocumentModel recovered = new DefaultSingleDocumentModel(path, recovery.getDocument());
+			addModelToPane(recovered, new JPanel(), false);
+			recovered.markRecovered();
+			supersedeJournal(recovered, id);
+			return;
+		}
+		
+		SingleDocumentModel model = models.get(index);
+		if (!(model instanceof DefaultSingleDocumentModel) || pendingLoads.containsKey(model)) {
+			return;
+		}
+		DefaultSingleDocumentModel existing = (DefaultSingleDocumentModel) model;
+		int caret = existing.getCaretPosition();
+		existing.setDocument(recovery.getDocument());
+		existing.setCaretPosition(caret);
+		existing.markRecovered();
+		supersedeJournal(existing, id);
 	}
 
 	@Override
@@ -96,7 +812,7 @@ public class DefaultMultipleDocumentModel extends JTabbedPane implements Multipl
 
 	@Override
 	public SingleDocumentModel createNewDocument() {
-		return addModelToPane(null, "");
+		return addModelToPane(null, new PieceTableDocument());
 	}
 	
 	@Override
@@ -115,20 +831,101 @@ public class DefaultMultipleDocumentModel extends JTabbedPane implements Multipl
 			notifyListenersDocumentChanged(old, currentModel);
 			return currentModel;
 		} else {
-			byte[] bytes = null;
 			try {
-				bytes = Files.readAllBytes(path);
+				if (Files.size(path) >= VIEWER_THRESHOLD) {
+					return viewDocument(path);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			
+			Document document = null;
+			try {
+				document = loader.load(path, null, null);
 			} catch (Exception e) {
 				e.printStackTrace();
+				return null;
 			}
-			String text = new String(bytes, StandardCharsets.UTF_8);
 			
-			return addModelToPane(path, text);
+			return addModelToPane(path, document);
+		}
+	}
+
+	@Override
+	public CompletableFuture<SingleDocumentModel> loadDocumentAsync(Path path) {
+		Objects.requireNonNull(path);
+		
+		try {
+			if (getPathIndexIfExists(path) != -1 || Files.size(path) >= VIEWER_THRESHOLD) {
+				SingleDocumentModel model = loadDocument(path);
+				CompletableFuture<SingleDocumentModel> pending = pendingLoads.get(model);
+				return pending != null ? pending : CompletableFuture.completedFuture(model);
+			}
+		} catch (IOException e) {
+			CompletableFuture<SingleDocumentModel> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+		
+		DefaultSingleDocumentModel model = new DefaultSingleDocumentModel(path);
+		addModelToPane(model, new JPanel(), true);
+		return materialize(model);
+	}
+
+	@Override
+	public SingleDocumentModel openDocumentLazily(Path path) {
+		Objects.requireNonNull(path);
+		
+		int index = getPathIndexIfExists(path);
+		if (index != -1) {
+			return models.get(index);
+		}
+		
+		try {
+			if (Files.size(path) >= VIEWER_THRESHOLD) {
+				ViewerDocumentModel model = new ViewerDocumentModel(path);
+				return addModelToPane(model, model.getComponent(), false);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		
+		return addModelToPane(new DefaultSingleDocumentModel(path), new JPanel(), false);
+	}
+
+	@Override
+	public SingleDocumentModel viewDocument(Path path) {
+		Objects.requireNonNull(path);
+		
+		int index = getPathIndexIfExists(path);
+		if (index != -1) {
+			SingleDocumentModel old = getCurrentDocument();
+			setSelectedIndex(index);
+			notifyListenersDocumentChanged(old, currentModel);
+			return currentModel;
+		}
+		
+		ViewerDocumentModel model = null;
+		try {
+			model = new ViewerDocumentModel(path);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
 		}
+		return addModelToPane(model, model.getComponent(), true);
 	}
 
 	@Override
-	public void saveDocument(SingleDocumentModel model, Path newPath) {
+	public void saveDocument(SingleDocumentModel model, Path newPath) throws IOException {
+		if (pendingLoads.containsKey(model)) {
+			return;
+		}
+		
+		if (model instanceof DefaultSingleDocumentModel) {
+			autosaver.cancel((DefaultSingleDocumentModel) model);
+		}
+		
 		Path toSave;
 		if (newPath != null) {
 			toSave = newPath;
@@ -136,23 +933,53 @@ public class DefaultMultipleDocumentModel extends JTabbedPane implements Multipl
 			toSave = model.getFilePath();
 		}
 
-		byte[] bytes = model.getTextComponent().getText().getBytes(StandardCharsets.UTF_8);
-		try {
-			Files.write(toSave, bytes);
-		} catch (IOException e) {
-			e.printStackTrace();
+		if (model instanceof ViewerDocumentModel
+				|| model instanceof DefaultSingleDocumentModel && ((DefaultSingleDocumentModel) model).isPlaceholder()) {
+			if (!toSave.equals(model.getFilePath())) {
+				Files.copy(model.getFilePath(), toSave, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} else if (model instanceof DefaultSingleDocumentModel && ((DefaultSingleDocumentModel) model).isHibernated()) {
+			saver.save(((DefaultSingleDocumentModel) model).snapshotText().restore(), toSave, model.getEncoding());
+		} else {
+			saver.save(model.getTextComponent().getDocument(), toSave, model.getEncoding());
 		}
 		
+		FileStamp stamp = FileStamp.of(toSave);
 		model.setModified(false);
 		model.setFilePath(toSave);
+		acknowledgeWrite(toSave);
+		if (model instanceof DefaultSingleDocumentModel) {
+			((DefaultSingleDocumentModel) model).markWritten(stamp);
+		}
+		indexer.saved(model);
 		notifyListenersDocumentChanged(model, model);
 	}
 
 	@Override
 	public void closeDocument(SingleDocumentModel model) {
-		int index = models.indexOf(model);
-		models.remove(index);
+		CompletableFuture<SingleDocumentModel> pending = pendingLoads.remove(model);
+		if (pending != null) {
+			pending.cancel(false);
+		}
+		
+		int index = models.remove(model);
+		indexer.cancel(model);
+		if (model instanceof DefaultSingleDocumentModel) {
+			autosaver.untrack((DefaultSingleDocumentModel) model);
+			follower.unfollow((DefaultSingleDocumentModel) model);
+			unwatch(model);
+			conflicts.remove(model);
+		}
+		lastSelected.remove(model);
+		savedScrolls.remove(model);
 		remove(index);
+		if (model instanceof Closeable) {
+			try {
+				((Closeable) model).close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 		notifyListenersDocumentRemoved(model);
 
 		notifyListenersDocumentChanged(model, currentModel);
@@ -172,6 +999,12 @@ public class DefaultMultipleDocumentModel extends JTabbedPane implements Multipl
 		}
 	}
 
+	@Override
+	public SingleDocumentModel findDocument(Path path) {
+		int index = getPathIndexIfExists(Objects.requireNonNull(path));
+		return index == -1 ? null : models.get(index);
+	}
+
 	@Override
 	public int getNumberOfDocuments() {
 		return models.size();
@@ -231,6 +1064,462 @@ public class DefaultMultipleDocumentModel extends JTabbedPane implements Multipl
 		listenersIterator = null;
 	}
 	
+	/**
+	 * Shows the text component of the model at the given index again, or
+	 * starts restoring its text in the background if the model is hibernated,
+	 * or loading its file if the model is a placeholder.
+	 * 
+	 * @param index
+	 *            is the index of the tab.
+	 */
+	private void wakeTab(int index) {
+		SingleDocumentModel model = models.get(index);
+		if (!(model instanceof DefaultSingleDocumentModel) || pendingLoads.containsKey(model)
+				|| getComponentAt(index) instanceof JScrollPane) {
+			return;
+		}
+		
+		DefaultSingleDocumentModel sleeping = (DefaultSingleDocumentModel) model;
+		if (sleeping.isPlaceholder() || sleeping.isHibernated()) {
+			materialize(sleeping);
+		} else {
+			showTextComponent(index);
+		}
+	}
+	
+	/**
+	 * Shows the text component of the model at the given index in its tab,
+	 * scrolled to the position the model was left at.
+	 * 
+	 * @param index
+	 *            is the index of the tab.
+	 */
+	private void showTextComponent(int index) {
+		SingleDocumentModel model = models.get(index);
+		JScrollPane pane = new JScrollPane(model.getTextComponent());
+		setComponentAt(index, pane);
+		
+		Integer scroll = savedScrolls.remove(model);
+		if (scroll != null) {
+			SwingUtilities.invokeLater(() -> pane.getViewport().setViewPosition(new Point(0, scroll)));
+		}
+	}
+	
+	/**
+	 * Returns the vertical scroll position of the tab at the given index.
+	 * 
+	 * @param index
+	 *            is the index of the tab.
+	 * @return the scroll position in pixels.
+	 */
+	private int getScrollPosition(int index) {
+		Component view = getComponentAt(index);
+		if (view instanceof JScrollPane) {
+			return ((JScrollPane) view).getViewport().getViewPosition().y;
+		}
+		return savedScrolls.getOrDefault(models.get(index), 0);
+	}
+	
+	/**
+	 * Loads the file of the placeholder model, or restores the text of the
+	 * hibernated model, in the background. The line index and the statistics
+	 * of the loaded document are built in the background as well. The tab
+	 * shows the progress with an empty document until the loaded one is
+	 * swapped in. The tab of a
+	 * placeholder is closed if the loading fails or is cancelled, while a
+	 * hibernated model keeps its text and is restored again the next time its
+	 * tab is selected, and the user is told if the restoring failed.
+	 * 
+	 * @param model
+	 *            is the placeholder or the hibernated model.
+	 * @return a future completed with the model once its text is loaded.
+	 */
+	private CompletableFuture<SingleDocumentModel> materialize(DefaultSingleDocumentModel model) {
+		CompletableFuture<SingleDocumentModel> pending = pendingLoads.get(model);
+		if (pending != null) {
+			return pending;
+		}
+		if (!model.isPlaceholder() && !model.isHibernated()) {
+			return CompletableFuture.completedFuture(model);
+		}
+		
+		CompletableFuture<SingleDocumentModel> result = new CompletableFuture<>();
+		LoadingPanel panel = new LoadingPanel(lp, () -> result.cancel(false));
+		pendingLoads.put(model, result);
+		int caret = model.getCaretPosition();
+		HibernatedText hibernated = model.startRestoring();
+		if (hibernated == null) {
+			model.setDocument(new PieceTableDocument());
+		}
+		setComponentAt(models.indexOf(model), panel);
+		
+		result.whenComplete((loaded, exception) -> SwingUtilities.invokeLater(() -> {
+			panel.dispose();
+			pendingLoads.remove(model);
+			if (exception == null || !models.contains(model)) {
+				return;
+			}
+			if (hibernated == null) {
+				closeDocument(model);
+				return;
+			}
+			setComponentAt(models.indexOf(model), new JPanel());
+			if (!(exception instanceof CancellationException)) {
+				reportUnrestorable(model, exception);
+			}
+		}));
+		
+		Path path = model.getFilePath();
+		DocumentLoader.getExecutor().execute(() -> {
+			try {
+				Document document = hibernated != null ? hibernated.read() : loader.load(path, 
+						percent -> SwingUtilities.invokeLater(() -> panel.setProgress(percent)),
+						result::isCancelled);
+				LineIndex lines = new LineIndex(document);
+				DocumentStatistics counts = new DocumentStatistics(document);
+				SwingUtilities.invokeLater(() -> {
+					if (result.isDone() || !models.contains(model)) {
+						return;
+					}
+					if (hibernated == null) {
+						model.setDocument(document, lines, counts);
+						model.setCaretPosition(caret);
+					} else {
+						model.finishRestoring(document, lines, counts);
+					}
+					showTextComponent(models.indexOf(model));
+					result.complete(model);
+					indexer.index(model);
+					if (model == currentModel) {
+						notifyListenersDocumentChanged(model, model);
+					}
+				});
+			} catch (CancellationException e) {
+				return;
+			} catch (Exception | OutOfMemoryError e) {
+				result.completeExceptionally(e);
+			}
+		});
+		
+		return result;
+	}
+	
+	/**
+	 * Moves the given offset by the change of the length of the text before
+	 * it after the given matches were replaced. An offset inside a match is
+	 * moved to its start.
+	 * 
+	 * @param offset
+	 *            is the given offset.
+	 * @param matches
+	 *            are the replaced matches, in order.
+	 * @return the moved offset.
+	 */
+	private static int shift(int offset, List<TextSearcher.Match> matches) {
+		int shifted = offset;
+		for (TextSearcher.Match match : matches) {
+			if (match.getEnd() <= offset) {
+				shifted += match.getReplacement().length() - (match.getEnd() - match.getStart());
+			} else {
+				if (match.getStart() < offset) {
+					shifted -= offset - match.getStart();
+				}
+				break;
+			}
+		}
+		return shifted;
+	}
+	
+	/**
+	 * Starts watching the file of the given model, if it has one.
+	 * 
+	 * @param model
+	 *            is the given model.
+	 */
+	private void watch(SingleDocumentModel model) {
+		Path path = model.getFilePath();
+		watchedPaths.put(model, path);
+		if (watcher != null && path != null) {
+			watcher.watch(path);
+		}
+	}
+	
+	/**
+	 * Stops watching the file of the given model.
+	 * 
+	 * @param model
+	 *            is the given model.
+	 */
+	private void unwatch(SingleDocumentModel model) {
+		Path path = watchedPaths.remove(model);
+		if (watcher != null && path != null) {
+			watcher.unwatch(path);
+		}
+	}
+	
+	/**
+	 * Tells the file watcher that the given file was written by the editor.
+	 * Can be called from any thread.
+	 * 
+	 * @param path
+	 *            is the written file.
+	 */
+	void acknowledgeWrite(Path path) {
+		if (watcher != null) {
+			watcher.acknowledge(path);
+		}
+	}
+	
+	/**
+	 * Reacts to a change of an opened file made by another program. An
+	 * unmodified document is reloaded, the user of a modified one is asked
+	 * first. Placeholders and documents still being loaded read the new
+	 * content anyway, and a deleted file leaves its document as it is.
+	 * 
+	 * @param file
+	 *            is the changed file.
+	 */
+	private void fileChanged(Path file) {
+		int index = getPathIndexIfExists(file);
+		if (index == -1) {
+			return;
+		}
+		
+		SingleDocumentModel model = models.get(index);
+		if (!(model instanceof DefaultSingleDocumentModel) || pendingLoads.containsKey(model)
+				|| ((DefaultSingleDocumentModel) model).isPlaceholder() || !Files.isRegularFile(file)) {
+			return;
+		}
+		if (follower.isFollowing(model)) {
+			follower.update((DefaultSingleDocumentModel) model);
+			return;
+		}
+		if (model.isModified()) {
+			resolveConflict((DefaultSingleDocumentModel) model);
+		} else {
+			reload((DefaultSingleDocumentModel) model, false);
+		}
+	}
+	
+	/**
+	 * Asks the user if the modified document whose file changed should be
+	 * reloaded, and reloads it if so.
+	 * 
+	 * @param model
+	 *            is the modified model.
+	 */
+	private void resolveConflict(DefaultSingleDocumentModel model) {
+		if (!conflicts.add(model)) {
+			return;
+		}
+		
+		int option = JOptionPane.showConfirmDialog(
+				this,
+				model.getFilePath() + "\n" + lp.getString("file-changed-message"),
+				lp.getString("file-changed-title"),
+				JOptionPane.YES_NO_OPTION,
+				JOptionPane.WARNING_MESSAGE);
+		conflicts.remove(model);
+		if (option == JOptionPane.YES_OPTION && models.contains(model)) {
+			reload(model, true);
+		}
+	}
+	
+	/**
+	 * Tells the user that the given model was not saved in the background, as
+	 * its encoding can not write all of its characters.
+	 * 
+	 * @param model
+	 *            is the unsaved model.
+	 */
+	private void reportUnencodable(DefaultSingleDocumentModel model) {
+		if (!models.contains(model)) {
+			return;
+		}
+		JOptionPane.showMessageDialog(
+				this,
+				model.getFilePath() + "\n" + lp.getString("unmappable-characters") + ": " + model.getEncoding()
+						+ "\n" + lp.getString("autosave-skipped"),
+				lp.getString("error"),
+				JOptionPane.WARNING_MESSAGE);
+	}
+	
+	/**
+	 * Tells the user that the text of the given hibernated model could not be
+	 * restored. The model keeps its compressed text, and is restored again
+	 * the next time its tab is selected.
+	 * 
+	 * @param model
+	 *            is the hibernated model.
+	 * @param exception
+	 *            is the reason the restoring failed.
+	 */
+	private void reportUnrestorable(DefaultSingleDocumentModel model, Throwable exception) {
+		exception.printStackTrace();
+		JOptionPane.showMessageDialog(
+				this,
+				(model.getFilePath() == null ? ASTERISK : model.getFilePath()) + "\n"
+						+ lp.getString("restore-failed") + ": " + exception.getMessage(),
+				lp.getString("error"),
+				JOptionPane.ERROR_MESSAGE);
+	}
+	
+	/**
+	 * Loads the file of the given model in the background and patches the
+	 * model with it. If the model gets modified while the file is loading,
+	 * the user is asked first, unless the reload was forced. The patch is
+	 * computed in the background as well, see
+	 * {@link #patch(DefaultSingleDocumentModel, Path, Document, boolean)}.
+	 * 
+	 * @param model
+	 *            is the model to reload.
+	 * @param force
+	 *            true if the changes of the model should be discarded.
+	 */
+	private void reload(DefaultSingleDocumentModel model, boolean force) {
+		Path path = model.getFilePath();
+		DocumentLoader.getExecutor().execute(() -> {
+			Document document;
+			try {
+				document = loader.load(path, null, null);
+			} catch (Exception e) {
+				e.printStackTrace();
+				return;
+			}
+			
+			SwingUtilities.invokeLater(() -> patch(model, path, document, force));
+		});
+	}
+
+	/**
+	 * Computes the patch from a snapshot of the text of the given model to
+	 * the given loaded text in the background, and applies it on the event
+	 * dispatch thread if the text did not change in the meantime. Otherwise
+	 * the patch is computed again from a new snapshot. Called on the event
+	 * dispatch thread.
+	 * 
+	 * @param model
+	 *            is the model to reload.
+	 * @param path
+	 *            is the path the text was loaded from.
+	 * @param loaded
+	 *            is the loaded text.
+	 * @param force
+	 *            true if the changes of the model should be discarded.
+	 */
+	private void patch(DefaultSingleDocumentModel model, Path path, Document loaded, boolean force) {
+		if (!models.contains(model) || !path.equals(model.getFilePath()) || pendingLoads.containsKey(model)) {
+			return;
+		}
+		if (model.isModified() && !force) {
+			resolveConflict(model);
+			return;
+		}
+		
+		PieceTableContent.Snapshot snapshot = model.snapshotPieces();
+		long edits = model.getEditCount();
+		DocumentLoader.getExecutor().execute(() -> {
+			DocumentPatch patch = null;
+			if (snapshot != null) {
+				try {
+					patch = DocumentPatch.between(snapshot, loaded);
+				} catch (BadLocationException e) {
+					e.printStackTrace();
+				}
+			}
+			
+			DocumentPatch computed = patch;
+			SwingUtilities.invokeLater(() -> {
+				if (!models.contains(model) || !path.equals(model.getFilePath()) || pendingLoads.containsKey(model)) {
+					return;
+				}
+				if (model.isModified() && !force) {
+					resolveConflict(model);
+					return;
+				}
+				if (model.getEditCount() != edits) {
+					patch(model, path, loaded, force);
+					return;
+				}
+				model.reload(loaded, computed);
+				if (model == currentModel) {
+					notifyListenersDocumentChanged(model, model);
+				}
+			});
+		});
+	}
+	
+	/**
+	 * Replays the journal with the given identifier from the journal
+	 * directory. The journal file is kept until the recovered document is in
+	 * a tab, and a journal that can not be replayed, e.g. because its base
+	 * file changed, is kept as well. A journal without any edits is deleted.
+	 * 
+	 * @param id
+	 *            is the identifier of the journal, can be null.
+	 * @return the recovered document, null if there is nothing to recover.
+	 */
+	private EditJournal.Recovery recoverJournal(String id) {
+		if (journalDirectory == null || id == null) {
+			return null;
+		}
+		
+		Path file = journalDirectory.resolve(id + EditJournal.EXTENSION);
+		if (!Files.exists(file)) {
+			return null;
+		}
+		EditJournal.Recovery recovery;
+		try {
+			recovery = EditJournal.recover(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		if (recovery == null) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return recovery;
+	}
+
+	/**
+	 * Deletes the journal with the given identifier, once the journal of the
+	 * model its document was recovered into has recorded the recovered text.
+	 * 
+	 * @param recovered
+	 *            is the model holding the recovered document.
+	 * @param id
+	 *            is the identifier of the recovered journal.
+	 */
+	private void supersedeJournal(DefaultSingleDocumentModel recovered, String id) {
+		if (recovered.getJournal() != null) {
+			recovered.getJournal().supersede(journalDirectory.resolve(id + EditJournal.EXTENSION));
+		}
+	}
+	
+	/**
+	 * Hibernates all the inactive documents whenever a heap pool stays above
+	 * the {@link #MEMORY_THRESHOLD} after a garbage collection.
+	 */
+	private void watchMemory() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			long max = pool.getUsage().getMax();
+			if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+				pool.setCollectionUsageThreshold((long) (max * MEMORY_THRESHOLD));
+			}
+		}
+		
+		NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+		emitter.addNotificationListener((notification, handback) -> {
+			if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+				SwingUtilities.invokeLater(() -> hibernateInactiveDocuments(0));
+			}
+		}, null, null);
+	}
+	
 	/**
 	 * An auxiliary method that check if given path exists among the currently
 	 * opened documents.
@@ -240,28 +1529,47 @@ public class DefaultMultipleDocumentModel extends JTabbedPane implements Multipl
 	 * @return index of model if exists, -1 if such path does not exist.
 	 */
 	private int getPathIndexIfExists(Path path) {
-		for (int i = 0; i < models.size(); ++i) {
-			if (path.equals(models.get(i).getFilePath()))
-				return i;
-		}
-		return -1;
+		return models.indexOf(path);
 	}
 	
 	/**
-	 * Adds model specified by given path and text to the tabbed pane.
+	 * Adds model specified by given path and document to the tabbed pane.
 	 * 
 	 * @param path
 	 *            is the path of the model to add, can be null if a new file is
 	 *            being created.
-	 * @param text
-	 *            is the text to be set to the new model.
+	 * @param document
+	 *            is the document holding the text of the new model.
 	 * @return the generated new model.
 	 */
-	private SingleDocumentModel addModelToPane(Path path, String text) {
-		SingleDocumentModel newModel = new DefaultSingleDocumentModel(path, text);
-		models.add(newModel);
-		
-		int index = models.indexOf(newModel);
+	private SingleDocumentModel addModelToPane(Path path, Document document) {
+		SingleDocumentModel newModel = new DefaultSingleDocumentModel(path, document);
+		return addModelToPane(newModel, new JScrollPane(newModel.getTextComponent()), true);
+	}
+	
+	/**
+	 * Adds the given model to the tabbed pane, shown by the given component.
+	 * 
+	 * @param newModel
+	 *            is the model to add.
+	 * @param view
+	 *            is the component shown in the tab.
+	 * @param select
+	 *            true if the new tab should be selected.
+	 * @return the added model.
+	 */
+	private SingleDocumentModel addModelToPane(SingleDocumentModel newModel, Component view, boolean select) {
+		Path path = newModel.getFilePath();
+		int index = models.add(newModel);
+		if (newModel instanceof DefaultSingleDocumentModel) {
+			if (journalDirectory != null) {
+				((DefaultSingleDocumentModel) newModel).setJournal(new EditJournal(journalDirectory, path,
+						((DefaultSingleDocumentModel) newModel).getFileStamp()));
+			}
+			((DefaultSingleDocumentModel) newModel).setUndoBudget(undoBudget);
+			autosaver.track((DefaultSingleDocumentModel) newModel);
+			watch(newModel);
+		}
 		newModel.addSingleDocumentListener(new SingleDocumentListener() {
 			
 			@Override
@@ -276,6 +1584,11 @@ public class DefaultMultipleDocumentModel extends JTabbedPane implements Multipl
 			
 			@Override
 			public void documentFilePathUpdated(SingleDocumentModel model) {
+				models.pathChanged(model);
+				if (watchedPaths.containsKey(model)) {
+					unwatch(model);
+					watch(model);
+				}
 				int index = models.indexOf(model);
 
 				setTitleAt(index, model.getFilePath().getFileName().toString());
@@ -283,12 +1596,14 @@ public class DefaultMultipleDocumentModel extends JTabbedPane implements Multipl
 			}
 		});
 		
-		addTab(path == null ? ASTERISK : path.getFileName().toString(), 
-				new JScrollPane(newModel.getTextComponent()));
+		addTab(path == null ? ASTERISK : path.getFileName().toString(), view);
 		setToolTipTextAt(index, path == null ? ASTERISK : path.toString());
-		setIconAt(index, RED_DISKETTE);
-		setSelectedIndex(index);
+		setIconAt(index, newModel.isModified() ? GREEN_DISKETTE : RED_DISKETTE);
+		if (select) {
+			setSelectedIndex(index);
+		}
 		notifyListenersDocumentAdded(newModel);
+		indexer.index(newModel);
 		
 		return newModel;
 	}
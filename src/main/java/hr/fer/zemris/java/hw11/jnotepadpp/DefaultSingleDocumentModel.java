@@ -1,5 +1,8 @@
 package hr.fer.zemris.java.hw11.jnotepadpp;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -9,15 +12,42 @@ import java.util.Objects;
 import javax.swing.JTextArea;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.DocumentFilter;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.DocumentPatch;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.HibernatedText;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.DocumentStatistics;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineIndex;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableContent;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableDocument;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.UndoBudget;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.UndoHistory;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.EditJournal;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.FileStamp;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.TextEncoding;
+import hr.fer.zemris.java.hw11.jnotepadpp.syntax.Lexer;
+import hr.fer.zemris.java.hw11.jnotepadpp.syntax.SyntaxHighlighter;
+import hr.fer.zemris.java.hw11.jnotepadpp.syntax.SyntaxTextAreaUI;
 
 /**
  * The implementation of the {@link SingleDocumentModel}. Represents one
- * document in the {@link JNotepadPP}.
+ * document in the {@link JNotepadPP}. An inactive model can be hibernated: its
+ * text, compressed in the background, is swapped in for the text component.
+ * The text is restored in the background as well, while the model shows an
+ * empty read-only document, see {@link #startRestoring()}. A placeholder model has no text component until its file,
+ * loaded in the background by the documents model, is set as its document.
+ * The edits can be recorded in an {@link EditJournal}, so they survive a
+ * crash. The edits of a {@link PieceTableDocument} can be undone with an
+ * {@link UndoHistory}, which is forgotten when the model hibernates. The text of a file in a known language is highlighted by a
+ * {@link SyntaxHighlighter}, chosen again whenever the file path changes.
  * 
  * @author Marin
  *
  */
-public class DefaultSingleDocumentModel implements SingleDocumentModel {
+public class DefaultSingleDocumentModel implements SingleDocumentModel, Closeable {
 	
 	/**
 	 * The specified document file path. Can be <code>null</code> if the document is
@@ -32,6 +62,84 @@ public class DefaultSingleDocumentModel implements SingleDocumentModel {
 	 * The {@link JTextArea} of the model.
 	 */
 	private JTextArea textArea;
+	/**
+	 * The index of the line starts of the document.
+	 */
+	private LineIndex lineIndex;
+	/**
+	 * The statistics of the document.
+	 */
+	private DocumentStatistics statistics;
+	/**
+	 * The highlighter of the document, null if its language is not known.
+	 */
+	private SyntaxHighlighter highlighter;
+	/**
+	 * The budget of the undo history, null if the edits can not be undone.
+	 */
+	private UndoBudget undoBudget;
+	/**
+	 * The undo history of the document, null if there is none.
+	 */
+	private UndoHistory history;
+	/**
+	 * The encoding of the document file.
+	 */
+	private TextEncoding encoding;
+	/**
+	 * The stamp of the file the text was last loaded from or saved to, null
+	 * if it is not known.
+	 */
+	private FileStamp stamp;
+	/**
+	 * The compressed text of the hibernated model, null if the model is awake.
+	 */
+	private HibernatedText hibernated;
+	/**
+	 * The caret position kept while the model has no text component.
+	 */
+	private int savedCaret;
+	/**
+	 * The flag that represents if the model is a placeholder whose file has
+	 * not been read yet.
+	 */
+	private boolean placeholder;
+	/**
+	 * The journal recording the edits, null if they are not recorded.
+	 */
+	private EditJournal journal;
+	/**
+	 * The flag that represents if the whole text has to be recorded in the
+	 * journal once the model wakes up.
+	 */
+	private boolean journalSnapshotPending;
+	/**
+	 * The number of edits of the text since the model was created, telling if
+	 * the text changed since a snapshot was taken.
+	 */
+	private long edits;
+	/**
+	 * The listener that marks the model modified on every document change.
+	 */
+	private DocumentListener modificationListener = new DocumentListener() {
+		
+		@Override
+		public void removeUpdate(DocumentEvent arg0) {
+			edits++;
+			setModified(true);
+		}
+		
+		@Override
+		public void insertUpdate(DocumentEvent arg0) {
+			edits++;
+			setModified(true);
+		}
+		
+		@Override
+		public void changedUpdate(DocumentEvent arg0) {
+			setModified(true);
+		}
+	};
 	/**
 	 * The {@link SingleDocumentListener} attached to the model.
 	 */
@@ -50,35 +158,548 @@ public class DefaultSingleDocumentModel implements SingleDocumentModel {
 	 *            is the given initial content of the document.
 	 */
 	public DefaultSingleDocumentModel(Path filepath, String textContent) {
+		this(filepath, new PieceTableDocument(textContent.toCharArray(), textContent.length()));
+	}
+
+	/**
+	 * The model constructor.
+	 * 
+	 * @param filepath
+	 *            is the given file path.
+	 * @param document
+	 *            is the given {@link Document} holding the initial content,
+	 *            its {@link TextEncoding#PROPERTY} is used as the encoding.
+	 */
+	public DefaultSingleDocumentModel(Path filepath, Document document) {
 		this.filepath = filepath;
 		modified = false;
 		listeners = new ArrayList<>();
+		encoding = encodingOf(document);
+		stamp = stampOf(document);
 		
-		textArea = new JTextArea(textContent);
-		textArea.getDocument().addDocumentListener(new DocumentListener() {
-			
-			@Override
-			public void removeUpdate(DocumentEvent arg0) {
-				setModified(true);
+		attach(document, 0, null, null);
+	}
+
+	/**
+	 * The placeholder model constructor. Only the path is kept, the text
+	 * component is created when the loaded document is set. Until then, the
+	 * text component, the line index and the statistics can not be asked
+	 * for.
+	 * 
+	 * @param filepath
+	 *            is the path of the file.
+	 */
+	public DefaultSingleDocumentModel(Path filepath) {
+		this.filepath = Objects.requireNonNull(filepath);
+		modified = false;
+		listeners = new ArrayList<>();
+		encoding = TextEncoding.UTF_8;
+		placeholder = true;
+	}
+
+	/**
+	 * The hibernated model constructor. Used to restore an unsaved document,
+	 * whose text is decompressed when the text component is first asked for.
+	 * The model is modified.
+	 * 
+	 * @param filepath
+	 *            is the given file path, can be null.
+	 * @param text
+	 *            is the compressed text of the document.
+	 * @param encoding
+	 *            is the encoding of the document.
+	 * @param caret
+	 *            is the caret position.
+	 */
+	public DefaultSingleDocumentModel(Path filepath, HibernatedText text, TextEncoding encoding, int caret) {
+		this.filepath = filepath;
+		modified = true;
+		listeners = new ArrayList<>();
+		this.encoding = Objects.requireNonNull(encoding);
+		hibernated = Objects.requireNonNull(text);
+		savedCaret = caret;
+	}
+
+	/**
+	 * Replaces the document shown by the model in one step. Used to swap in a
+	 * document loaded in the background. The model is not modified afterwards.
+	 * 
+	 * @param document
+	 *            is the new document, its {@link TextEncoding#PROPERTY} is used
+	 *            as the encoding.
+	 */
+	public void setDocument(Document document) {
+		setDocument(document, null, null);
+	}
+
+	/**
+	 * Replaces the document shown by the model in one step, with its line
+	 * index and statistics built in the background together with the
+	 * document, so the event dispatch thread does not scan the whole text.
+	 * The model is not modified afterwards.
+	 * 
+	 * @param document
+	 *            is the new document, its {@link TextEncoding#PROPERTY} is used
+	 *            as the encoding.
+	 * @param lines
+	 *            is the line index of the new document, null to build it here.
+	 * @param counts
+	 *            is the statistics of the new document, null to build them
+	 *            here.
+	 */
+	public void setDocument(Document document, LineIndex lines, DocumentStatistics counts) {
+		if (lineIndex != null) {
+			detach(textArea.getDocument());
+		}
+		if (hibernated != null) {
+			hibernated.dispose();
+			hibernated = null;
+		}
+		placeholder = false;
+		
+		encoding = encodingOf(document);
+		stamp = stampOf(document);
+		journalSnapshotPending = false;
+		attach(document, 0, lines, counts);
+		if (journal != null) {
+			journal.reset(filepath, stamp);
+		}
+		setModified(false);
+	}
+
+	/**
+	 * Updates the model to the given freshly loaded text of its file. An awake
+	 * model is patched in place, so only the changed range of its document is
+	 * replaced and the caret and the scroll position are kept. A hibernated
+	 * model takes the loaded document over. The model is not modified
+	 * afterwards.
+	 * 
+	 * @param loaded
+	 *            is the loaded document, its {@link TextEncoding#PROPERTY} is
+	 *            used as the encoding.
+	 * @param patch
+	 *            is the patch from the text of the model to the loaded text,
+	 *            computed in the background from a snapshot taken at the
+	 *            current {@link #getEditCount()}, null to compute it here.
+	 */
+	public void reload(Document loaded, DocumentPatch patch) {
+		if (textArea == null || hibernated != null) {
+			int caret = getCaretPosition();
+			setDocument(loaded);
+			setCaretPosition(caret);
+			return;
+		}
+		
+		Document document = textArea.getDocument();
+		try {
+			if (patch == null) {
+				patch = DocumentPatch.between(document, loaded);
 			}
-			
-			@Override
-			public void insertUpdate(DocumentEvent arg0) {
-				setModified(true);
+			if (!patch.isEmpty()) {
+				patch.apply(document);
 			}
-			
-			@Override
-			public void changedUpdate(DocumentEvent arg0) {
-				setModified(true);
+		} catch (BadLocationException e) {
+			setDocument(loaded);
+			return;
+		}
+		if (history != null) {
+			history.clear();
+		}
+		encoding = encodingOf(loaded);
+		document.putProperty(TextEncoding.PROPERTY, encoding);
+		stamp = stampOf(loaded);
+		if (journal != null) {
+			journal.reset(filepath, stamp);
+		}
+		setModified(false);
+	}
+
+	/**
+	 * Applies the given patch that brings the document closer to its file,
+	 * like the lines a followed log file grew by. The patch is not recorded in
+	 * the journal and does not mark the model modified, and the journal starts
+	 * over from the patched text. Wakes the model up.
+	 * 
+	 * @param patch
+	 *            is the patch to apply.
+	 * @param stamp
+	 *            is the stamp of the file the patch was read from, null if it
+	 *            is not known.
+	 * @throws BadLocationException
+	 *             if the patch does not fit the document.
+	 */
+	public void applyFromFile(DocumentPatch patch, FileStamp stamp) throws BadLocationException {
+		Document document = getTextComponent().getDocument();
+		document.removeDocumentListener(modificationListener);
+		if (journal != null) {
+			journal.detach(document);
+		}
+		try {
+			patch.apply(document);
+		} finally {
+			document.addDocumentListener(modificationListener);
+			this.stamp = stamp;
+			if (journal != null) {
+				journal.attach(document);
+				journal.reset(filepath, stamp);
+			}
+			if (history != null) {
+				history.clear();
+			}
+		}
+	}
+
+	/**
+	 * Sets the budget of the undo history. The edits made from now on can be
+	 * undone, the history recorded so far is forgotten.
+	 * 
+	 * @param budget
+	 *            is the budget, null to stop recording the history.
+	 */
+	public void setUndoBudget(UndoBudget budget) {
+		if (history != null) {
+			history.dispose();
+			history = null;
+		}
+		undoBudget = budget;
+		if (textArea != null) {
+			history = createHistory(textArea.getDocument());
+		}
+	}
+
+	/**
+	 * Undoes the last step of the undo history and moves the caret to it.
+	 * Wakes the model up.
+	 * 
+	 * @return true if a step was undone, false otherwise.
+	 */
+	public boolean undo() {
+		wake();
+		if (history == null) {
+			return false;
+		}
+		int caret = history.undo();
+		if (caret < 0) {
+			return false;
+		}
+		setCaretPosition(caret);
+		return true;
+	}
+
+	/**
+	 * Redoes the last undone step of the undo history and moves the caret to
+	 * it. Wakes the model up.
+	 * 
+	 * @return true if a step was redone, false otherwise.
+	 */
+	public boolean redo() {
+		wake();
+		if (history == null) {
+			return false;
+		}
+		int caret = history.redo();
+		if (caret < 0) {
+			return false;
+		}
+		setCaretPosition(caret);
+		return true;
+	}
+
+	/**
+	 * Sets the journal recording the edits of the model. If the model is
+	 * modified, its whole text is recorded first, right away or once the model
+	 * wakes up.
+	 * 
+	 * @param journal
+	 *            is the journal, null to stop recording.
+	 */
+	public void setJournal(EditJournal journal) {
+		if (this.journal != null && textArea != null) {
+			this.journal.detach(textArea.getDocument());
+		}
+		this.journal = journal;
+		journalSnapshotPending = false;
+		if (journal == null) {
+			return;
+		}
+		
+		if (textArea != null) {
+			journal.attach(textArea.getDocument());
+			if (modified) {
+				journal.snapshot(textArea.getDocument());
 			}
-		});
+		} else {
+			journalSnapshotPending = modified;
+		}
+	}
+
+	/**
+	 * A getter for the journal recording the edits.
+	 * 
+	 * @return the journal, null if the edits are not recorded.
+	 */
+	public EditJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Returns the number of edits of the text since the model was created,
+	 * without waking the model up. The text is the same as when a snapshot
+	 * was taken as long as the number does not change.
+	 * 
+	 * @return the number of edits.
+	 */
+	public long getEditCount() {
+		return edits;
+	}
+
+	/**
+	 * A getter for the stamp of the file the text was last loaded from or
+	 * saved to.
+	 * 
+	 * @return the stamp, null if it is not known.
+	 */
+	public FileStamp getFileStamp() {
+		return stamp;
+	}
+
+	/**
+	 * Marks the model as equal to its file again, after the file was written
+	 * with the text of the model. The journal starts over from the file.
+	 * 
+	 * @param stamp
+	 *            is the stamp of the file taken right after it was written,
+	 *            null if it is not known.
+	 */
+	public void markWritten(FileStamp stamp) {
+		this.stamp = stamp;
+		setModified(false);
+		if (journal != null) {
+			journal.reset(filepath, stamp);
+		}
+	}
+
+	/**
+	 * Marks the model as modified after its document was recovered from a
+	 * journal, and records the recovered text in the journal of the model.
+	 */
+	public void markRecovered() {
+		setModified(true);
+		if (journal != null && textArea != null) {
+			journal.snapshot(textArea.getDocument());
+		}
+	}
+
+	/**
+	 * Checks if the model is a placeholder whose file has not been read yet.
+	 * 
+	 * @return true if it is, false otherwise.
+	 */
+	public boolean isPlaceholder() {
+		return placeholder;
+	}
+
+	/**
+	 * Hibernates the model with the given compressed text, and releases the
+	 * text component and the line index. The text is compressed in the
+	 * background from a {@link #snapshotPieces()}, and has to be taken at the
+	 * current {@link #getEditCount()}. The modified flag and the caret
+	 * position are kept.
+	 * 
+	 * @param text
+	 *            is the compressed text of the model, owned by the model
+	 *            afterwards.
+	 * @throws IllegalStateException
+	 *             if the model is hibernated or a placeholder.
+	 */
+	public void hibernate(HibernatedText text) {
+		if (hibernated != null || placeholder) {
+			throw new IllegalStateException("The document is not awake: " + filepath);
+		}
+		
+		Document document = textArea.getDocument();
+		hibernated = Objects.requireNonNull(text);
+		savedCaret = textArea.getCaretPosition();
+		detach(document);
+		textArea = null;
+		lineIndex = null;
+		statistics = null;
+	}
+
+	/**
+	 * Checks if the model is hibernated. A model being restored is hibernated
+	 * until the restored document is set.
+	 * 
+	 * @return true if it is, false otherwise.
+	 */
+	public boolean isHibernated() {
+		return hibernated != null;
+	}
+
+	/**
+	 * Starts restoring the hibernated model. Until the restored document is
+	 * set with
+	 * {@link #finishRestoring(Document, LineIndex, DocumentStatistics)}, the
+	 * model shows an empty document that can not be edited, and keeps the
+	 * compressed text, so the text of the model can still be copied and
+	 * saved. Calling the method
+	 * again, e.g. after the restoring failed, returns the same text.
+	 * 
+	 * @return the compressed text to decompress in the background with
+	 *         {@link HibernatedText#read()}, null if the model is not
+	 *         hibernated.
+	 */
+	public HibernatedText startRestoring() {
+		if (hibernated == null) {
+			return null;
+		}
+		if (textArea == null) {
+			PieceTableDocument empty = new PieceTableDocument();
+			empty.setDocumentFilter(new DocumentFilter() {
+				
+				@Override
+				public void insertString(FilterBypass fb, int offset, String string, AttributeSet attr) {
+				}
+				
+				@Override
+				public void remove(FilterBypass fb, int offset, int length) {
+				}
+				
+				@Override
+				public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs) {
+				}
+			});
+			textArea = new JTextArea(empty);
+			textArea.setUI(new SyntaxTextAreaUI());
+			lineIndex = new LineIndex(empty);
+			statistics = new DocumentStatistics(empty);
+		}
+		return hibernated;
+	}
+
+	/**
+	 * Shows the restored text of the model being restored, with the caret
+	 * where it was. The modified flag is kept, and the compressed text is
+	 * released.
+	 * 
+	 * @param document
+	 *            is the document decompressed from the text returned by
+	 *            {@link #startRestoring()}.
+	 * @param lines
+	 *            is the line index of the document, built in the background,
+	 *            null to build it here.
+	 * @param counts
+	 *            is the statistics of the document, built in the background,
+	 *            null to build them here.
+	 */
+	public void finishRestoring(Document document, LineIndex lines, DocumentStatistics counts) {
+		if (hibernated == null || textArea == null) {
+			return;
+		}
+		
+		lineIndex.dispose();
+		statistics.dispose();
+		hibernated.dispose();
+		hibernated = null;
+		document.putProperty(TextEncoding.PROPERTY, encoding);
+		attach(document, savedCaret, lines, counts);
+	}
+
+	/**
+	 * Creates a compressed copy of the text of the model, without waking the
+	 * model up. The copy is owned by the caller.
+	 * 
+	 * @return the copy of the text.
+	 * @throws IOException
+	 *             if the text can not be stored.
+	 */
+	public HibernatedText snapshotText() throws IOException {
+		if (hibernated != null) {
+			return hibernated.copy();
+		}
+		if (placeholder) {
+			return HibernatedText.store(new PieceTableDocument());
+		}
+		return HibernatedText.store(textArea.getDocument());
+	}
+
+	/**
+	 * Takes a read-only snapshot of the text of an awake model, which can be
+	 * compressed on another thread. Costs time proportional to the number of
+	 * pieces of the document, not to the length of its text.
+	 * 
+	 * @return the snapshot, null if the model is hibernated, a placeholder,
+	 *         or its document has no pieces.
+	 */
+	public PieceTableContent.Snapshot snapshotPieces() {
+		if (hibernated != null || placeholder) {
+			return null;
+		}
+		Document document = textArea.getDocument();
+		return document instanceof PieceTableDocument ? ((PieceTableDocument) document).snapshot() : null;
+	}
+
+	/**
+	 * Returns the caret position, without waking the model up. The caret of a
+	 * model being restored is where it was when the model hibernated.
+	 * 
+	 * @return the caret position.
+	 */
+	public int getCaretPosition() {
+		return textArea == null || hibernated != null ? savedCaret : textArea.getCaretPosition();
+	}
+
+	/**
+	 * Moves the caret, without waking the model up. The position is limited
+	 * to the length of the document.
+	 * 
+	 * @param caret
+	 *            is the caret position.
+	 */
+	public void setCaretPosition(int caret) {
+		if (textArea == null || hibernated != null) {
+			savedCaret = caret;
+		} else {
+			textArea.setCaretPosition(Math.max(0, Math.min(caret, textArea.getDocument().getLength())));
+		}
+	}
+
+	/**
+	 * Releases the text of the hibernated model and the undo history, and
+	 * deletes the journal.
+	 */
+	@Override
+	public void close() {
+		if (hibernated != null) {
+			hibernated.dispose();
+		}
+		if (history != null) {
+			history.dispose();
+			history = null;
+		}
+		if (journal != null) {
+			journal.delete();
+		}
 	}
 
 	@Override
 	public JTextArea getTextComponent() {
+		wake();
 		return textArea;
 	}
 
+	@Override
+	public LineIndex getLineIndex() {
+		wake();
+		return lineIndex;
+	}
+
+	@Override
+	public DocumentStatistics getStatistics() {
+		wake();
+		return statistics;
+	}
+
 	@Override
 	public Path getFilePath() {
 		return filepath;
@@ -95,9 +716,22 @@ public class DefaultSingleDocumentModel implements SingleDocumentModel {
 		Objects.requireNonNull("Given path should not be null.");
 		
 		this.filepath = path;
+		if (textArea != null) {
+			updateHighlighter(textArea.getDocument());
+		}
 		notifyPathChanged();
 	}
 
+	@Override
+	public TextEncoding getEncoding() {
+		return encoding;
+	}
+
+	@Override
+	public void setEncoding(TextEncoding encoding) {
+		this.encoding = Objects.requireNonNull(encoding);
+	}
+
 	@Override
 	public boolean isModified() {
 		return modified;
@@ -126,6 +760,159 @@ public class DefaultSingleDocumentModel implements SingleDocumentModel {
 		}
 	}
 
+	/**
+	 * Restores the text of the hibernated model into a new text component.
+	 * The caret of the hibernated model is put where it was. Does nothing if
+	 * the model is awake or being restored in the background.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the model is a placeholder, whose file is never read on
+	 *             the calling thread.
+	 * @throws UncheckedIOException
+	 *             if the text can not be restored.
+	 */
+	private void wake() {
+		if (placeholder) {
+			throw new IllegalStateException("The file of the document is not loaded yet: " + filepath);
+		}
+		if (hibernated == null || textArea != null) {
+			return;
+		}
+		
+		Document document;
+		try {
+			document = hibernated.restore();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		hibernated = null;
+		document.putProperty(TextEncoding.PROPERTY, encoding);
+		attach(document, savedCaret, null, null);
+	}
+
+	/**
+	 * Shows the given document in the text component, creating the component
+	 * if there is none, and starts tracking the document changes.
+	 * 
+	 * @param document
+	 *            is the document to show.
+	 * @param caret
+	 *            is the caret position.
+	 * @param lines
+	 *            is the line index of the document, null to build it here.
+	 * @param counts
+	 *            is the statistics of the document, null to build them here.
+	 */
+	private void attach(Document document, int caret, LineIndex lines, DocumentStatistics counts) {
+		edits++;
+		if (textArea == null) {
+			textArea = new JTextArea(document);
+			textArea.setUI(new SyntaxTextAreaUI());
+		} else {
+			textArea.setDocument(document);
+		}
+		textArea.setCaretPosition(Math.max(0, Math.min(caret, document.getLength())));
+		lineIndex = lines != null ? lines : new LineIndex(document);
+		statistics = counts != null ? counts : new DocumentStatistics(document);
+		updateHighlighter(document);
+		history = createHistory(document);
+		document.addDocumentListener(modificationListener);
+		if (journal != null) {
+			journal.attach(document);
+			if (journalSnapshotPending) {
+				journal.snapshot(document);
+				journalSnapshotPending = false;
+			}
+		}
+	}
+
+	/**
+	 * Stops tracking the changes of the given document and releases the line
+	 * index, the statistics and the undo history.
+	 * 
+	 * @param document
+	 *            is the document shown until now.
+	 */
+	private void detach(Document document) {
+		document.removeDocumentListener(modificationListener);
+		if (journal != null) {
+			journal.detach(document);
+		}
+		lineIndex.dispose();
+		statistics.dispose();
+		if (highlighter != null) {
+			highlighter.dispose();
+			highlighter = null;
+		}
+		if (history != null) {
+			history.dispose();
+			history = null;
+		}
+	}
+
+	/**
+	 * Gives the given document the highlighter of the language of the file, or
+	 * none if the language is not known. A highlighter of the same language is
+	 * kept.
+	 * 
+	 * @param document
+	 *            is the document shown by the model.
+	 */
+	private void updateHighlighter(Document document) {
+		Lexer lexer = Lexer.forFile(filepath);
+		if (highlighter != null) {
+			if (lexer != null && lexer.getClass() == highlighter.getLexer().getClass()) {
+				return;
+			}
+			highlighter.dispose();
+			highlighter = null;
+		}
+		if (lexer != null) {
+			highlighter = new SyntaxHighlighter(document, lexer);
+		}
+		textArea.repaint();
+	}
+
+	/**
+	 * Creates the undo history of the given document, if there is a budget
+	 * and the document is a {@link PieceTableDocument}.
+	 * 
+	 * @param document
+	 *            is the given document.
+	 * @return the undo history, null if there is none.
+	 */
+	private UndoHistory createHistory(Document document) {
+		if (undoBudget == null || !(document instanceof PieceTableDocument)) {
+			return null;
+		}
+		return new UndoHistory((PieceTableDocument) document, undoBudget);
+	}
+
+	/**
+	 * Returns the encoding stored in the given document, or UTF-8 if there is
+	 * none.
+	 * 
+	 * @param document
+	 *            is the given document.
+	 * @return the encoding.
+	 */
+	private static TextEncoding encodingOf(Document document) {
+		Object property = document.getProperty(TextEncoding.PROPERTY);
+		return property instanceof TextEncoding ? (TextEncoding) property : TextEncoding.UTF_8;
+	}
+
+	/**
+	 * Returns the file stamp stored in the given document.
+	 * 
+	 * @param document
+	 *            is the given document.
+	 * @return the stamp, null if there is none.
+	 */
+	private static FileStamp stampOf(Document document) {
+		Object property = document.getProperty(FileStamp.PROPERTY);
+		return property instanceof FileStamp ? (FileStamp) property : null;
+	}
+
 	/**
 	 * Used to notify the listeners about that the model is modified.
 	 */
@@ -0,0 +1,100 @@
+package hr.fer.zemris.java.hw11.jnotepadpp;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Walks a directory tree in a {@link ForkJoinPool}. The task lists its
+ * directory and forks a task for each of its subdirectories and accepted
+ * files, so both the walk and the work on the files use all the cores.
+ * <p>
+ * Symbolic links are not followed, and hidden directories, whose names start
+ * with a dot, are skipped. Unreadable directories are skipped too.
+ *
+ * @author Marin
+ *
+ */
+class DirectoryTask extends RecursiveAction {
+
+	/**
+	 * Serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The listed directory.
+	 */
+	private final Path directory;
+	/**
+	 * Decides which regular files are visited.
+	 */
+	private final Predicate<Path> accepted;
+	/**
+	 * Visits an accepted file, on a pool thread.
+	 */
+	private final Consumer<Path> visitor;
+	/**
+	 * Stops the walk once it returns true.
+	 */
+	private final BooleanSupplier stopped;
+
+	/**
+	 * The {@link DirectoryTask} constructor.
+	 *
+	 * @param directory
+	 *            is the listed directory.
+	 * @param accepted
+	 *            decides which regular files are visited.
+	 * @param visitor
+	 *            visits an accepted file, on a pool thread.
+	 * @param stopped
+	 *            stops the walk once it returns true.
+	 */
+	DirectoryTask(Path directory, Predicate<Path> accepted, Consumer<Path> visitor, BooleanSupplier stopped) {
+		this.directory = directory;
+		this.accepted = accepted;
+		this.visitor = visitor;
+		this.stopped = stopped;
+	}
+
+	@Override
+	protected void compute() {
+		if (stopped.getAsBoolean()) {
+			return;
+		}
+
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+			for (Path entry : entries) {
+				BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+						LinkOption.NOFOLLOW_LINKS);
+				if (attributes.isDirectory()) {
+					if (!entry.getFileName().toString().startsWith(".")) {
+						tasks.add(new DirectoryTask(entry, accepted, visitor, stopped));
+					}
+				} else if (attributes.isRegularFile() && accepted.test(entry)) {
+					tasks.add(ForkJoinTask.adapt(() -> {
+						if (!stopped.getAsBoolean()) {
+							visitor.accept(entry);
+						}
+					}));
+				}
+			}
+		} catch (IOException | DirectoryIteratorException ignorable) {
+		}
+		invokeAll(tasks);
+	}
+}
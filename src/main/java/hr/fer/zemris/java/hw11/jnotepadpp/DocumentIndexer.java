@@ -0,0 +1,355 @@
+package hr.fer.zemris.java.hw11.jnotepadpp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.DocumentCharSequence;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableContent;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableDocument;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TrigramIndex;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.IndexCache;
+import hr.fer.zemris.java.hw11.jnotepadpp.viewer.MappedFileSearcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.viewer.ViewerDocumentModel;
+
+/**
+ * Gives the large documents a {@link TrigramIndex}, so a search skips the
+ * parts of them that can not hold a match. The index of a file is read from
+ * the {@link IndexCache} if it was stored for the file as it is, and is built
+ * on a background thread of low priority otherwise, and stored for the next
+ * time. A viewed file is indexed as a whole; a document is indexed from a
+ * snapshot of its text and the index is then kept up to date with its edits,
+ * and stored again whenever the document is saved. A document edited while
+ * its index is built is indexed again.
+ * <p>
+ * Nothing is indexed without a cache.
+ *
+ * @author Marin
+ *
+ */
+class DocumentIndexer {
+
+	/**
+	 * The length in characters from which a document is indexed.
+	 */
+	static final int DOCUMENT_THRESHOLD = 16 * 1024 * 1024;
+	/**
+	 * The size of the blocks of the index of a document, one chunk of a
+	 * search.
+	 */
+	private static final int DOCUMENT_BLOCK_SIZE = TextSearcher.CHUNK_SIZE;
+
+	/**
+	 * A building index.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Build {
+
+		/**
+		 * The flag telling the building thread to stop.
+		 */
+		private volatile boolean cancelled;
+	}
+
+	/**
+	 * A listener noting that a document was edited.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class EditFlag implements DocumentListener {
+
+		/**
+		 * True once the document was edited.
+		 */
+		private boolean edited;
+
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			edited = true;
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			edited = true;
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+		}
+	}
+
+	/**
+	 * The thread building and storing the indexes, one at a time.
+	 */
+	private final ExecutorService builder = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "Document indexer");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+	/**
+	 * The building indexes, by their models.
+	 */
+	private final Map<SingleDocumentModel, Build> builds = new IdentityHashMap<>();
+	/**
+	 * The cache of the indexes, null if nothing is indexed.
+	 */
+	private IndexCache cache;
+
+	/**
+	 * A getter for the cache of the indexes.
+	 *
+	 * @return the cache, null if nothing is indexed.
+	 */
+	IndexCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * A setter for the cache of the indexes. Only the documents opened
+	 * afterwards are indexed.
+	 *
+	 * @param cache
+	 *            is the cache, null to stop indexing.
+	 */
+	void setCache(IndexCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Starts indexing the given model in the background, if it is large
+	 * enough and has no index yet. Called on the event dispatch thread.
+	 *
+	 * @param model
+	 *            is the given model.
+	 */
+	void index(SingleDocumentModel model) {
+		if (cache == null || builds.containsKey(model)) {
+			return;
+		}
+		if (model instanceof ViewerDocumentModel) {
+			indexViewer((ViewerDocumentModel) model);
+		} else if (model instanceof DefaultSingleDocumentModel) {
+			indexDocument((DefaultSingleDocumentModel) model);
+		}
+	}
+
+	/**
+	 * Stores the index of the given model once it is saved to its file, or
+	 * starts indexing it if it has no index or its index degraded. Called on
+	 * the event dispatch thread.
+	 *
+	 * @param model
+	 *            is the saved model.
+	 */
+	void saved(SingleDocumentModel model) {
+		if (cache == null || !(model instanceof DefaultSingleDocumentModel)) {
+			return;
+		}
+		DefaultSingleDocumentModel saved = (DefaultSingleDocumentModel) model;
+		if (saved.isHibernated() || saved.isPlaceholder() || model.getFilePath() == null) {
+			return;
+		}
+		Object attached = model.getTextComponent().getDocument().getProperty(TrigramIndex.PROPERTY);
+		if (!(attached instanceof TrigramIndex) || ((TrigramIndex) attached).isDegraded()) {
+			index(model);
+			return;
+		}
+
+		Path path = model.getFilePath();
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException ignorable) {
+			return;
+		}
+		TrigramIndex copy = ((TrigramIndex) attached).copy();
+		IndexCache target = cache;
+		builder.execute(() -> store(target, path, attributes, copy));
+	}
+
+	/**
+	 * Stops indexing the given model. Called on the event dispatch thread.
+	 *
+	 * @param model
+	 *            is the given model.
+	 */
+	void cancel(SingleDocumentModel model) {
+		Build build = builds.remove(model);
+		if (build != null) {
+			build.cancelled = true;
+		}
+	}
+
+	/**
+	 * Reads or builds the index of the viewed file, and gives it to the
+	 * viewer.
+	 *
+	 * @param model
+	 *            is the viewer.
+	 */
+	private void indexViewer(ViewerDocumentModel model) {
+		if (model.getIndex() != null) {
+			return;
+		}
+		Path path = model.getFilePath();
+		IndexCache target = cache;
+		Build build = new Build();
+		builds.put(model, build);
+		builder.execute(() -> {
+			TrigramIndex index = null;
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				index = target.load(path, attributes);
+				if (index == null && !build.cancelled) {
+					index = MappedFileSearcher.index(path, () -> build.cancelled);
+					if (index != null && index.length() == attributes.size()) {
+						store(target, path, attributes, index);
+					}
+				}
+			} catch (IOException ignorable) {
+			}
+			TrigramIndex built = index;
+			SwingUtilities.invokeLater(() -> {
+				if (finish(model, build) && built != null) {
+					model.setIndex(built);
+				}
+			});
+		});
+	}
+
+	/**
+	 * Reads or builds the index of a snapshot of the document, and attaches
+	 * it to the document, if the document was not edited in the meantime.
+	 *
+	 * @param model
+	 *            is the model of the document.
+	 */
+	private void indexDocument(DefaultSingleDocumentModel model) {
+		if (model.isHibernated() || model.isPlaceholder()) {
+			return;
+		}
+		Document document = model.getTextComponent().getDocument();
+		if (!(document instanceof PieceTableDocument) || document.getLength() < DOCUMENT_THRESHOLD) {
+			return;
+		}
+		Object attached = document.getProperty(TrigramIndex.PROPERTY);
+		if (attached instanceof TrigramIndex && !((TrigramIndex) attached).isDegraded()) {
+			return;
+		}
+
+		Path path = model.getFilePath();
+		BasicFileAttributes attributes = null;
+		if (path != null && !model.isModified()) {
+			try {
+				attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			} catch (IOException ignorable) {
+			}
+		}
+		PieceTableContent.Snapshot snapshot = ((PieceTableDocument) document).snapshot();
+		EditFlag flag = new EditFlag();
+		document.addDocumentListener(flag);
+		BasicFileAttributes key = attributes;
+		IndexCache target = cache;
+		Build build = new Build();
+		builds.put(model, build);
+		builder.execute(() -> {
+			TrigramIndex index = key == null ? null : target.load(path, key);
+			if (index == null || index.length() != snapshot.length()) {
+				index = build(new DocumentCharSequence(snapshot), build);
+				if (index != null && key != null) {
+					store(target, path, key, index);
+				}
+			}
+			TrigramIndex built = index;
+			SwingUtilities.invokeLater(() -> {
+				document.removeDocumentListener(flag);
+				if (!finish(model, build) || built == null || model.isHibernated()
+						|| model.getTextComponent().getDocument() != document) {
+					return;
+				}
+				if (flag.edited) {
+					index(model);
+					return;
+				}
+				Object old = document.getProperty(TrigramIndex.PROPERTY);
+				if (old instanceof TrigramIndex) {
+					((TrigramIndex) old).detach();
+				}
+				built.attach(document);
+			});
+		});
+	}
+
+	/**
+	 * Removes the given build of the given model, once it is done.
+	 *
+	 * @param model
+	 *            is the given model.
+	 * @param build
+	 *            is the given build.
+	 * @return true if the build was not cancelled, false otherwise.
+	 */
+	private boolean finish(SingleDocumentModel model, Build build) {
+		if (build.cancelled || builds.get(model) != build) {
+			return false;
+		}
+		builds.remove(model);
+		return true;
+	}
+
+	/**
+	 * Builds the index of the given text, block by block.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @param build
+	 *            is checked before every block.
+	 * @return the index, null if the build was cancelled.
+	 */
+	private static TrigramIndex build(CharSequence text, Build build) {
+		TrigramIndex index = new TrigramIndex(text.length(), DOCUMENT_BLOCK_SIZE);
+		for (int block = 0; block < index.getBlockCount(); ++block) {
+			if (build.cancelled) {
+				return null;
+			}
+			int start = block * DOCUMENT_BLOCK_SIZE;
+			index.add(block, text, start, Math.min(text.length(), start + DOCUMENT_BLOCK_SIZE));
+		}
+		return index;
+	}
+
+	/**
+	 * Stores the index of the given file. A failure is ignored, as the file is
+	 * then simply indexed again the next time.
+	 *
+	 * @param cache
+	 *            is the cache the index is stored to.
+	 * @param path
+	 *            is the indexed file.
+	 * @param attributes
+	 *            are the attributes of the file the index was built of.
+	 * @param index
+	 *            is the index.
+	 */
+	private static void store(IndexCache cache, Path path, BasicFileAttributes attributes, TrigramIndex index) {
+		try {
+			cache.store(path, attributes, index);
+		} catch (IOException ignorable) {
+		}
+	}
+}
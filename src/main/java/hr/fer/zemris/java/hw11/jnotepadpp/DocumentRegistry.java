@@ -0,0 +1,199 @@
+package hr.fer.zemris.java.hw11.jnotepadpp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The registry of the opened {@link SingleDocumentModel}s, in the order of
+ * their tabs. Besides the list, it keeps the tab index of every model and the
+ * model of every opened file, so looking up the tab of a model or of a path
+ * takes constant time, no matter how many documents are opened. Paths are
+ * compared by their real path, so different paths leading to the same file
+ * find the same model.
+ *
+ * @author Marin
+ *
+ */
+class DocumentRegistry implements Iterable<SingleDocumentModel> {
+
+	/**
+	 * The models, in the order of their tabs.
+	 */
+	private List<SingleDocumentModel> models = new ArrayList<>();
+	/**
+	 * The tab index of every model.
+	 */
+	private Map<SingleDocumentModel, Integer> indices = new IdentityHashMap<>();
+	/**
+	 * The normalized path under which every model with a path is registered.
+	 */
+	private Map<SingleDocumentModel, Path> keys = new IdentityHashMap<>();
+	/**
+	 * The model of every normalized path.
+	 */
+	private Map<Path, SingleDocumentModel> byPath = new HashMap<>();
+
+	/**
+	 * Adds the model to the end of the registry.
+	 *
+	 * @param model
+	 *            is the model to add.
+	 * @return the index of the added model.
+	 */
+	public int add(SingleDocumentModel model) {
+		int index = models.size();
+		models.add(model);
+		indices.put(model, index);
+		register(model);
+		return index;
+	}
+
+	/**
+	 * Removes the model from the registry. The indices of the following models
+	 * are moved down by one.
+	 *
+	 * @param model
+	 *            is the model to remove.
+	 * @return the index the model had, -1 if it was not registered.
+	 */
+	public int remove(SingleDocumentModel model) {
+		Integer index = indices.remove(model);
+		if (index == null) {
+			return -1;
+		}
+
+		models.remove((int) index);
+		for (int i = index; i < models.size(); ++i) {
+			indices.put(models.get(i), i);
+		}
+		unregister(model);
+		return index;
+	}
+
+	/**
+	 * Updates the path under which the model is registered, after the path of
+	 * the model changed.
+	 *
+	 * @param model
+	 *            is the model whose path changed.
+	 */
+	public void pathChanged(SingleDocumentModel model) {
+		if (!indices.containsKey(model)) {
+			return;
+		}
+		unregister(model);
+		register(model);
+	}
+
+	/**
+	 * Returns the index of the given model.
+	 *
+	 * @param model
+	 *            is the given model.
+	 * @return the index, -1 if the model is not registered.
+	 */
+	public int indexOf(SingleDocumentModel model) {
+		Integer index = indices.get(model);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the index of the model opened from the given path.
+	 *
+	 * @param path
+	 *            is the given path.
+	 * @return the index, -1 if no model has that path.
+	 */
+	public int indexOf(Path path) {
+		SingleDocumentModel model = byPath.get(normalize(path));
+		return model == null ? -1 : indexOf(model);
+	}
+
+	/**
+	 * Checks if the model is registered.
+	 *
+	 * @param model
+	 *            is the given model.
+	 * @return true if it is, false otherwise.
+	 */
+	public boolean contains(SingleDocumentModel model) {
+		return indices.containsKey(model);
+	}
+
+	/**
+	 * Returns the model at the given index.
+	 *
+	 * @param index
+	 *            is the given index.
+	 * @return the model.
+	 */
+	public SingleDocumentModel get(int index) {
+		return models.get(index);
+	}
+
+	/**
+	 * Returns the number of registered models.
+	 *
+	 * @return the number of models.
+	 */
+	public int size() {
+		return models.size();
+	}
+
+	@Override
+	public Iterator<SingleDocumentModel> iterator() {
+		return Collections.unmodifiableList(models).iterator();
+	}
+
+	/**
+	 * Registers the model under its normalized path, if it has one.
+	 *
+	 * @param model
+	 *            is the model.
+	 */
+	private void register(SingleDocumentModel model) {
+		Path path = model.getFilePath();
+		if (path == null) {
+			return;
+		}
+		Path key = normalize(path);
+		keys.put(model, key);
+		byPath.put(key, model);
+	}
+
+	/**
+	 * Removes the path registration of the model.
+	 *
+	 * @param model
+	 *            is the model.
+	 */
+	private void unregister(SingleDocumentModel model) {
+		Path key = keys.remove(model);
+		if (key != null && byPath.get(key) == model) {
+			byPath.remove(key);
+		}
+	}
+
+	/**
+	 * Returns the real path of the given path, or its normalized absolute path
+	 * if the file does not exist.
+	 *
+	 * @param path
+	 *            is the given path.
+	 * @return the normalized path.
+	 */
+	static Path normalize(Path path) {
+		try {
+			return path.toRealPath();
+		} catch (IOException e) {
+			return path.toAbsolutePath().normalize();
+		}
+	}
+}
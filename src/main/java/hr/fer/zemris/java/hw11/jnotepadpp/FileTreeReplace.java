@@ -0,0 +1,227 @@
+package hr.fer.zemris.java.hw11.jnotepadpp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.FileReplacer;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.FileSearcher;
+
+/**
+ * Replaces the matches of a {@link TextSearcher} in the files of a directory
+ * tree as one transaction of a {@link FileReplacer}. The tree is walked by
+ * {@link DirectoryTask}s in a {@link ForkJoinPool} of its own, which write
+ * the replaced files to temporary files in parallel. Once all of them are
+ * prepared the replacement can be committed, which renames the files in the
+ * background, or discarded. The documents of the replaced files that are open
+ * are then edited in place instead of being reloaded.
+ * <p>
+ * If any file can not be read or written, nothing is replaced.
+ *
+ * @author Marin
+ *
+ */
+class FileTreeReplace {
+
+	/**
+	 * The documents model the files may be open in.
+	 */
+	private final DefaultMultipleDocumentModel documents;
+	/**
+	 * The searcher with the replacement.
+	 */
+	private final TextSearcher searcher;
+	/**
+	 * The transaction replacing the files.
+	 */
+	private final FileReplacer replacer;
+	/**
+	 * The root of the tree.
+	 */
+	private final Path root;
+	/**
+	 * The matcher of the names of the replaced files.
+	 */
+	private final PathMatcher names;
+	/**
+	 * The number of matches replaced by all the tasks together.
+	 */
+	private final AtomicInteger replaced = new AtomicInteger();
+	/**
+	 * The first failure, null if there is none.
+	 */
+	private final AtomicReference<IOException> failure = new AtomicReference<>();
+	/**
+	 * True once the replacement is cancelled, read by the tasks.
+	 */
+	private volatile boolean cancelled;
+	/**
+	 * True while the files are prepared but neither committed nor discarded.
+	 */
+	private boolean prepared;
+	/**
+	 * The number of prepared files.
+	 */
+	private int files;
+
+	/**
+	 * The {@link FileTreeReplace} constructor.
+	 *
+	 * @param documents
+	 *            is the documents model the files may be open in.
+	 * @param searcher
+	 *            is the searcher, with a replacement.
+	 * @param root
+	 *            is the root of the tree.
+	 * @param names
+	 *            is the matcher of the names of the replaced files.
+	 * @param logDirectory
+	 *            is the directory the log of the replacement is written to,
+	 *            null if it is not logged.
+	 */
+	FileTreeReplace(DefaultMultipleDocumentModel documents, TextSearcher searcher, Path root, PathMatcher names,
+			Path logDirectory) {
+		this.documents = documents;
+		this.searcher = searcher;
+		this.replacer = new FileReplacer(new FileSearcher(searcher));
+		replacer.setLogDirectory(logDirectory);
+		this.root = root.toAbsolutePath();
+		this.names = names;
+	}
+
+	/**
+	 * Starts preparing the files of the tree. Called on the event dispatch
+	 * thread.
+	 *
+	 * @param finished
+	 *            is called on the event dispatch thread once all the files
+	 *            are prepared, or a file failed, unless the replacement is
+	 *            cancelled.
+	 */
+	void start(Runnable finished) {
+		ForkJoinPool pool = new ForkJoinPool();
+		pool.execute(() -> {
+			try {
+				new DirectoryTask(root, file -> names.matches(file.getFileName()) && !FileReplacer.isTemporary(file),
+						this::prepareFile, this::isStopped).invoke();
+			} finally {
+				pool.shutdown();
+				if (failure.get() != null) {
+					replacer.discard();
+				}
+				SwingUtilities.invokeLater(() -> {
+					if (cancelled) {
+						CompletableFuture.runAsync(replacer::discard);
+						return;
+					}
+					prepared = failure.get() == null;
+					files = replacer.getFileCount();
+					finished.run();
+				});
+			}
+		});
+	}
+
+	/**
+	 * Replaces the prepared files in the background, and then the matches in
+	 * their open documents. Called on the event dispatch thread once the files
+	 * are prepared.
+	 *
+	 * @param finished
+	 *            is called on the event dispatch thread once the files are
+	 *            replaced, or restored after a failure.
+	 */
+	void commit(Runnable finished) {
+		if (!prepared) {
+			return;
+		}
+		prepared = false;
+		CompletableFuture.runAsync(() -> {
+			List<Path> replacedFiles;
+			try {
+				replacedFiles = replacer.commit(documents::acknowledgeWrite);
+			} catch (IOException e) {
+				failure.compareAndSet(null, e);
+				SwingUtilities.invokeLater(finished);
+				return;
+			}
+			SwingUtilities.invokeLater(() -> {
+				for (Path file : replacedFiles) {
+					documents.replaceInDocument(file, searcher);
+				}
+				finished.run();
+			});
+		});
+	}
+
+	/**
+	 * Cancels the replacement, unless it is being committed. The prepared
+	 * files are discarded. Called on the event dispatch thread.
+	 */
+	void cancel() {
+		cancelled = true;
+		if (prepared) {
+			prepared = false;
+			CompletableFuture.runAsync(replacer::discard);
+		}
+	}
+
+	/**
+	 * A getter for the first failure.
+	 *
+	 * @return the failure, null if there is none.
+	 */
+	IOException getFailure() {
+		return failure.get();
+	}
+
+	/**
+	 * A getter for the number of replaced matches.
+	 *
+	 * @return the number of matches.
+	 */
+	int getMatchCount() {
+		return replaced.get();
+	}
+
+	/**
+	 * A getter for the number of files with matches, once they are prepared.
+	 *
+	 * @return the number of files.
+	 */
+	int getFileCount() {
+		return files;
+	}
+
+	/**
+	 * Checks if the preparation should stop, because it was cancelled or a
+	 * file failed.
+	 *
+	 * @return true if it should, false otherwise.
+	 */
+	private boolean isStopped() {
+		return cancelled || failure.get() != null;
+	}
+
+	/**
+	 * Prepares the given file on a pool thread.
+	 *
+	 * @param file
+	 *            is the given file.
+	 */
+	private void prepareFile(Path file) {
+		try {
+			replaced.addAndGet(replacer.prepare(file, this::isStopped));
+		} catch (IOException e) {
+			failure.compareAndSet(null, new IOException(file + ": " + e.getMessage(), e));
+		}
+	}
+}
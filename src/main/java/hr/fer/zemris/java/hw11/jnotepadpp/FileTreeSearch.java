@@ -0,0 +1,222 @@
+package hr.fer.zemris.java.hw11.jnotepadpp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.Caret;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.components.SearchResultsPanel;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineIndex;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.FileSearcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.viewer.ViewerDocumentModel;
+
+/**
+ * Finds the matches of a {@link FileSearcher} in the files of a directory
+ * tree, without opening them as documents. The tree is walked by
+ * {@link DirectoryTask}s in a {@link ForkJoinPool} of its own, and the matches
+ * of every file are listed in a {@link SearchResultsPanel} as soon as the file
+ * is searched. Unreadable files are skipped.
+ *
+ * @author Marin
+ *
+ */
+class FileTreeSearch {
+
+	/**
+	 * The documents model the files are opened in.
+	 */
+	private final DefaultMultipleDocumentModel documents;
+	/**
+	 * The searcher.
+	 */
+	private final FileSearcher searcher;
+	/**
+	 * The root of the searched tree.
+	 */
+	private final Path root;
+	/**
+	 * The matcher of the names of the searched files.
+	 */
+	private final PathMatcher names;
+	/**
+	 * The panel listing the matches.
+	 */
+	private final SearchResultsPanel panel;
+	/**
+	 * The number of matches found by all the tasks together.
+	 */
+	private final AtomicInteger found = new AtomicInteger();
+	/**
+	 * True once the search is cancelled, read by the tasks.
+	 */
+	private volatile boolean cancelled;
+	/**
+	 * True if more matches were found than the panel lists.
+	 */
+	private boolean truncated;
+	/**
+	 * The number of files listed so far, ordering their groups.
+	 */
+	private int listed;
+
+	/**
+	 * The {@link FileTreeSearch} constructor.
+	 *
+	 * @param documents
+	 *            is the documents model the files are opened in.
+	 * @param searcher
+	 *            is the searcher.
+	 * @param root
+	 *            is the root of the searched tree.
+	 * @param names
+	 *            is the matcher of the names of the searched files.
+	 * @param panel
+	 *            is the panel listing the matches.
+	 */
+	FileTreeSearch(DefaultMultipleDocumentModel documents, FileSearcher searcher, Path root, PathMatcher names,
+			SearchResultsPanel panel) {
+		this.documents = documents;
+		this.searcher = searcher;
+		this.root = root;
+		this.names = names;
+		this.panel = panel;
+	}
+
+	/**
+	 * Starts searching the tree. Called on the event dispatch thread.
+	 *
+	 * @param finished
+	 *            is called on the event dispatch thread once the whole tree
+	 *            is searched, unless the search is cancelled.
+	 */
+	void start(Runnable finished) {
+		ForkJoinPool pool = new ForkJoinPool();
+		pool.execute(() -> {
+			try {
+				new DirectoryTask(root, file -> names.matches(file.getFileName()), this::searchFile,
+						this::isStopped).invoke();
+			} finally {
+				pool.shutdown();
+				SwingUtilities.invokeLater(() -> {
+					if (cancelled) {
+						return;
+					}
+					if (found.get() >= SearchResultsPanel.MAX_RESULTS) {
+						truncated = true;
+					}
+					finished.run();
+				});
+			}
+		});
+	}
+
+	/**
+	 * Cancels the search. Called on the event dispatch thread.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Checks if more matches were found than the panel lists.
+	 *
+	 * @return true if they were, false otherwise.
+	 */
+	boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Checks if the search should stop, because it was cancelled or because
+	 * the panel can not list more matches.
+	 *
+	 * @return true if it should, false otherwise.
+	 */
+	private boolean isStopped() {
+		return cancelled || found.get() >= SearchResultsPanel.MAX_RESULTS;
+	}
+
+	/**
+	 * Searches the given file on a pool thread, and hands its matches over to
+	 * the event dispatch thread.
+	 *
+	 * @param file
+	 *            is the given file.
+	 */
+	private void searchFile(Path file) {
+		List<FileSearcher.Hit> hits;
+		try {
+			hits = searcher.search(file, this::isStopped);
+		} catch (IOException ignorable) {
+			return;
+		}
+		if (!hits.isEmpty()) {
+			found.addAndGet(hits.size());
+			SwingUtilities.invokeLater(() -> list(file, hits));
+		}
+	}
+
+	/**
+	 * Lists the matches of the given file.
+	 *
+	 * @param file
+	 *            is the given file.
+	 * @param hits
+	 *            are the matches.
+	 */
+	private void list(Path file, List<FileSearcher.Hit> hits) {
+		if (cancelled) {
+			return;
+		}
+		List<SearchResultsPanel.Result> results = new ArrayList<>(hits.size());
+		for (FileSearcher.Hit hit : hits) {
+			results.add(new SearchResultsPanel.Result(hit.getLine(), hit.getPreview(),
+					() -> open(documents, file, hit)));
+		}
+		if (!panel.addResults(file, root.relativize(file).toString(), listed++, results)) {
+			truncated = true;
+		}
+	}
+
+	/**
+	 * Opens the given file, or selects its tab if it is already open, and
+	 * selects the given match in it.
+	 *
+	 * @param documents
+	 *            is the documents model the file is opened in.
+	 * @param file
+	 *            is the given file.
+	 * @param hit
+	 *            is the given match.
+	 */
+	static void open(DefaultMultipleDocumentModel documents, Path file, FileSearcher.Hit hit) {
+		documents.loadDocumentAsync(file).whenComplete((model, failure) -> {
+			if (failure != null || model == null) {
+				return;
+			}
+			if (model instanceof ViewerDocumentModel) {
+				if (hit.getLineOffset() >= 0) {
+					((ViewerDocumentModel) model).scrollTo(hit.getLineOffset());
+				}
+				return;
+			}
+
+			JTextArea textArea = model.getTextComponent();
+			LineIndex lines = model.getLineIndex();
+			int length = textArea.getDocument().getLength();
+			int line = Math.min(hit.getLine(), lines.getLineCount()) - 1;
+			int start = Math.min(lines.getLineStart(line) + hit.getColumn(), length);
+			Caret caret = textArea.getCaret();
+			caret.setDot(start);
+			caret.moveDot(Math.min(start + hit.getLength(), length));
+			textArea.requestFocusInWindow();
+		});
+	}
+}
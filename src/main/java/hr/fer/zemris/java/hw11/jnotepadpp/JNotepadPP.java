@@ -1,44 +1,81 @@
 package hr.fer.zemris.java.hw11.jnotepadpp;
 
 import java.awt.BorderLayout;
+import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.UnmappableCharacterException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.Collator;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.StringJoiner;
-import java.util.function.Function;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 import javax.swing.Action;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextArea;
+import javax.swing.JTextField;
 import javax.swing.JToolBar;
 import javax.swing.KeyStroke;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.CaretEvent;
 import javax.swing.event.CaretListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AbstractDocument;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Caret;
 import javax.swing.text.Document;
 
+import hr.fer.zemris.java.hw11.jnotepadpp.components.SearchHighlighter;
+import hr.fer.zemris.java.hw11.jnotepadpp.components.SearchResultsPanel;
 import hr.fer.zemris.java.hw11.jnotepadpp.components.StatusBar;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.CaseTransformer;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.DocumentStatistics;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineDeduplicator;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineSorter;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.EditJournal;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.IndexCache;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.FileReplacer;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.FileSearcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.SessionFile;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.TextEncoding;
 import hr.fer.zemris.java.hw11.jnotepadpp.local.FormLocalizationProvider;
 import hr.fer.zemris.java.hw11.jnotepadpp.local.LJMenu;
 import hr.fer.zemris.java.hw11.jnotepadpp.local.LocalizableAction;
 import hr.fer.zemris.java.hw11.jnotepadpp.local.LocalizationProvider;
+import hr.fer.zemris.java.hw11.jnotepadpp.viewer.ViewerDocumentModel;
 
 /**
  * The {@link JNotepadPP} is a text editor, supporting editing multiple
@@ -63,6 +100,15 @@ public class JNotepadPP extends JFrame {
 	 * Colon used in text output.
 	 */
 	private static final String COLON = " : ";
+	/**
+	 * The interval in milliseconds between two periodic session writes.
+	 */
+	private static final int SESSION_INTERVAL = 60 * 1000;
+	/**
+	 * The length of the selected text above which the line transformations
+	 * run on a background thread.
+	 */
+	private static final int BACKGROUND_TRANSFORMATION_LENGTH = 64 * 1024;
 	
 	/**
 	 * The model used to support multiple documents at a time.
@@ -86,6 +132,67 @@ public class JNotepadPP extends JFrame {
 	 * The panel representing the {@link JNotepadPP} status bar.
 	 */
 	private StatusBar statusBar;
+	/**
+	 * The timer writing the session periodically.
+	 */
+	private Timer sessionTimer;
+	/**
+	 * The executor writing the periodic sessions in the background, one at a
+	 * time.
+	 */
+	private ExecutorService sessionWriter = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "session-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	/**
+	 * The highlighter of the matches in the current document, null if
+	 * nothing is highlighted.
+	 */
+	private SearchHighlighter searchHighlighter;
+	/**
+	 * The searcher of the last search, null if nothing was searched yet.
+	 */
+	private TextSearcher lastSearcher;
+	/**
+	 * The last searched text.
+	 */
+	private String lastQuery = "";
+	/**
+	 * The last replacement text.
+	 */
+	private String lastReplacement = "";
+	/**
+	 * The options of the last search.
+	 */
+	private Set<TextSearcher.Option> lastSearchOptions = EnumSet.noneOf(TextSearcher.Option.class);
+	/**
+	 * The panel listing the matches found in all the open documents.
+	 */
+	private SearchResultsPanel searchResults;
+	/**
+	 * The running or the last search of all the open documents, null if there
+	 * is none.
+	 */
+	private OpenDocumentsSearch openDocumentsSearch;
+	/**
+	 * The running or the last search of a directory tree, null if there is
+	 * none.
+	 */
+	private FileTreeSearch fileTreeSearch;
+	/**
+	 * The running or the last replacement in the files of a directory tree,
+	 * null if there is none.
+	 */
+	private FileTreeReplace fileTreeReplace;
+	/**
+	 * The last searched directory.
+	 */
+	private String lastFolder = System.getProperty("user.dir");
+	/**
+	 * The patterns of the names of the last searched files.
+	 */
+	private String lastFileNames = "*";
 	
 	/**
 	 * The {@link JNotepadPP} constructor. Initializes the GUI.
@@ -104,6 +211,31 @@ public class JNotepadPP extends JFrame {
 		setSize(1000, 600);
 		
 		initGUI();
+		
+		sessionTimer = new Timer(SESSION_INTERVAL, e -> {
+			SessionFile session = documentsModel.createSession();
+			sessionWriter.execute(() -> writeSession(session));
+		});
+		sessionTimer.start();
+	}
+
+	/**
+	 * Writes the given session to the session file and releases it.
+	 * 
+	 * @param session
+	 *            is the session to write.
+	 * @return true if the session is written, false otherwise.
+	 */
+	private static boolean writeSession(SessionFile session) {
+		try {
+			session.write(SessionFile.defaultPath());
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			session.dispose();
+		}
 	}
 
 	/**
@@ -128,29 +260,39 @@ public class JNotepadPP extends JFrame {
 	 * title and the status bar.
 	 */
 	private void createDocumentArea() {
-		documentsModel = new DefaultMultipleDocumentModel();
+		documentsModel = new DefaultMultipleDocumentModel(flp);
+		documentsModel.setJournalDirectory(EditJournal.defaultDirectory());
+		documentsModel.setIndexDirectory(IndexCache.defaultDirectory());
 		documentsModel.addMultipleDocumentListener(new MultipleDocumentListener() {
 			
 			@Override
 			public void documentRemoved(SingleDocumentModel model) {
+				if (openDocumentsSearch != null) {
+					openDocumentsSearch.documentRemoved(model);
+				}
 			}
 			
 			@Override
 			public void documentAdded(SingleDocumentModel model) {
-				currentModel = model;
+				currentModel = documentsModel.getCurrentDocument();
 				updateTitle();
-				statusBar.updateDocument(currentModel == null ? null : currentModel.getTextComponent());
+				statusBar.updateDocument(currentModel);
 			}
 			
 			@Override
 			public void currentDocumentChanged(SingleDocumentModel previousModel, SingleDocumentModel currentModel) {
 				JNotepadPP.this.currentModel = currentModel;
+				clearSearchHighlights();
 				updateTitle();
-				statusBar.updateDocument(currentModel == null ? null : currentModel.getTextComponent());
+				statusBar.updateDocument(currentModel);
 			}
 		});
 
 		mainPanel.add(documentsModel, SwingConstants.CENTER);
+		
+		searchResults = new SearchResultsPanel(flp);
+		searchResults.setClosedAction(this::cancelResultsSearch);
+		mainPanel.add(searchResults, BorderLayout.PAGE_END);
 	}
 	
 	/**
@@ -183,6 +325,15 @@ public class JNotepadPP extends JFrame {
 		cutDocumentAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control X"));
 		copyDocumentAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control C"));
 		pasteDocumentAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control V"));
+		undoAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control Z"));
+		redoAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control Y"));
+		findAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control F"));
+		findNextAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("F3"));
+		findPreviousAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("shift F3"));
+		replaceAllAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control H"));
+		findInOpenDocumentsAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control shift F"));
+		findInFilesAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control alt F"));
+		replaceInFilesAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control alt H"));
 		statisticsAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control I"));
 		exitAppAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("alt F4"));
 		
@@ -198,8 +349,13 @@ public class JNotepadPP extends JFrame {
 			@Override
 			public void documentAdded(SingleDocumentModel model) {
 				setEnableToDocumentsDependentActions(true);
+				updateStatisticsAction(documentsModel.getCurrentDocument());
+				if (model != documentsModel.getCurrentDocument()) {
+					return;
+				}
 				setEnableToSelectionDependentActions(false);
 				saveDocumentAction.setEnabled(model.isModified());
+				followAction.putValue(Action.SELECTED_KEY, documentsModel.isFollowing(model));
 				
 				attachCaretListener(model);
 				attachModifiedListener(model);
@@ -217,7 +373,9 @@ public class JNotepadPP extends JFrame {
 					detachModifiedListener(previousModel);
 				}
 				
+				followAction.putValue(Action.SELECTED_KEY, documentsModel.isFollowing(currentModel));
 				if (currentModel != null) {
+					updateStatisticsAction(currentModel);
 					saveDocumentAction.setEnabled(currentModel.isModified());
 					attachCaretListener(currentModel);
 					attachModifiedListener(currentModel);
@@ -226,6 +384,18 @@ public class JNotepadPP extends JFrame {
 		});
 	}
 
+	/**
+	 * Enables the statistics action for the given current document. The
+	 * statistics of a viewed file cover only its visible lines, so the action
+	 * is disabled for it.
+	 * 
+	 * @param model
+	 *            is the current document.
+	 */
+	private void updateStatisticsAction(SingleDocumentModel model) {
+		statisticsAction.setEnabled(model != null && !(model instanceof ViewerDocumentModel));
+	}
+
 	/**
 	 * Sets if the actions dependent on the document are enabled. If there is no
 	 * document this actions should be disabled.
@@ -238,6 +408,14 @@ public class JNotepadPP extends JFrame {
 		saveAsDocumentAction.setEnabled(b);
 		closeDocumentAction.setEnabled(b);
 		pasteDocumentAction.setEnabled(b);
+		undoAction.setEnabled(b);
+		redoAction.setEnabled(b);
+		findAction.setEnabled(b);
+		findNextAction.setEnabled(b);
+		findPreviousAction.setEnabled(b);
+		replaceAllAction.setEnabled(b);
+		findInOpenDocumentsAction.setEnabled(b);
+		followAction.setEnabled(b);
 	}
 	
 	/**
@@ -346,19 +524,32 @@ public class JNotepadPP extends JFrame {
 		
 		fileMenu.add(new JMenuItem(createDocumentAction));
 		fileMenu.add(new JMenuItem(openDocumentAction));
+		fileMenu.add(new JMenuItem(openViewerAction));
 		fileMenu.addSeparator();
 		fileMenu.add(new JMenuItem(saveDocumentAction));
 		fileMenu.add(new JMenuItem(saveAsDocumentAction));
+		fileMenu.add(new JCheckBoxMenuItem(autosaveAction));
 		fileMenu.addSeparator();
 		fileMenu.add(new JMenuItem(closeDocumentAction));
 		fileMenu.add(new JMenuItem(exitAppAction));
 		
 		JMenu editMenu = new LJMenu("edit", flp);
 		menuBar.add(editMenu);
+		editMenu.add(new JMenuItem(undoAction));
+		editMenu.add(new JMenuItem(redoAction));
+		editMenu.addSeparator();
 		editMenu.add(new JMenuItem(cutDocumentAction));
 		editMenu.add(new JMenuItem(copyDocumentAction));
 		editMenu.add(new JMenuItem(pasteDocumentAction));
 		editMenu.addSeparator();
+		editMenu.add(new JMenuItem(findAction));
+		editMenu.add(new JMenuItem(findNextAction));
+		editMenu.add(new JMenuItem(findPreviousAction));
+		editMenu.add(new JMenuItem(replaceAllAction));
+		editMenu.add(new JMenuItem(findInOpenDocumentsAction));
+		editMenu.add(new JMenuItem(findInFilesAction));
+		editMenu.add(new JMenuItem(replaceInFilesAction));
+		editMenu.addSeparator();
 		editMenu.add(new JMenuItem(statisticsAction));
 		
 		JMenu languagesMenu = new LJMenu("languages", flp);
@@ -378,8 +569,20 @@ public class JNotepadPP extends JFrame {
 		toolsMenu.add(sortMenu);
 		sortMenu.add(new JMenuItem(ascendingAction));
 		sortMenu.add(new JMenuItem(descendingAction));
+		sortMenu.addSeparator();
+		sortMenu.add(new JCheckBoxMenuItem(ignoreCaseSortAction));
+		sortMenu.add(new JCheckBoxMenuItem(numericSortAction));
+		sortMenu.add(new JCheckBoxMenuItem(stableSortAction));
 		toolsMenu.addSeparator();
-		toolsMenu.add(new JMenuItem(uniqueAction));
+		JMenu uniqueMenu = new LJMenu("unique-menu", flp);
+		toolsMenu.add(uniqueMenu);
+		uniqueMenu.add(new JMenuItem(uniqueAction));
+		uniqueMenu.addSeparator();
+		uniqueMenu.add(new JCheckBoxMenuItem(ignoreCaseUniqueAction));
+		uniqueMenu.add(new JCheckBoxMenuItem(ignoreWhitespaceUniqueAction));
+		uniqueMenu.add(new JCheckBoxMenuItem(countUniqueAction));
+		toolsMenu.addSeparator();
+		toolsMenu.add(new JCheckBoxMenuItem(followAction));
 		
 		this.setJMenuBar(menuBar);		
 	}
@@ -422,14 +625,32 @@ public class JNotepadPP extends JFrame {
 	}
 
 	/**
-	 * From this method the program starts.
+	 * From this method the program starts. A replacement in files cut short by
+	 * a crash is undone first, before any of the files is opened.
 	 * 
 	 * @param args
 	 *            are the command line arguments, not used here.
 	 */
 	public static void main(String[] args) {
+		FileReplacer.recover(FileReplacer.defaultLogDirectory());
+		
+		SessionFile session = null;
+		Path sessionPath = SessionFile.defaultPath();
+		if (Files.exists(sessionPath)) {
+			try {
+				session = SessionFile.read(sessionPath);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		SessionFile restored = session;
 		SwingUtilities.invokeLater(() -> {
-			JFrame frame = new JNotepadPP();
+			JNotepadPP frame = new JNotepadPP();
+			if (restored != null) {
+				frame.documentsModel.restoreSession(restored);
+			}
+			frame.documentsModel.recoverJournals();
 			frame.setVisible(true);
 		});
 	}
@@ -467,6 +688,54 @@ public class JNotepadPP extends JFrame {
 			String errorMessage = flp.getString("open-error-message");
 			String error = flp.getString("error");
 			
+			List<Path> filepaths = chooseFilepaths(fileChooserTitle);
+			for (int i = 0; i < filepaths.size(); ++i) {
+				Path filepath = filepaths.get(i);
+				if(!Files.isReadable(filepath)) {
+					JOptionPane.showMessageDialog(
+							JNotepadPP.this,
+							errorMessage + filepath.toAbsolutePath().toString(),
+							error,
+							JOptionPane.ERROR_MESSAGE);
+					continue;
+				}
+				
+				if (i < filepaths.size() - 1) {
+					documentsModel.openDocumentLazily(filepath);
+					continue;
+				}
+
+				documentsModel.loadDocumentAsync(filepath).whenComplete((model, exception) -> {
+					if (exception == null || exception instanceof CancellationException)
+						return;
+					
+					SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(
+							JNotepadPP.this,
+							errorMessage + filepath.toAbsolutePath().toString(),
+							error,
+							JOptionPane.ERROR_MESSAGE));
+				});
+			}
+		}
+	};
+	
+	/**
+	 * This action gives the option to choose a file and open it in the
+	 * read-only viewer, which reads only the visible part of the file.
+	 */
+	private final Action openViewerAction = new LocalizableAction("open-viewer", "open-viewer-mn", "open-viewer-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			String fileChooserTitle = flp.getString("open-viewer");
+			String errorMessage = flp.getString("open-error-message");
+			String error = flp.getString("error");
+			
 			Path filepath = chooseFilepath(fileChooserTitle);
 			if (filepath == null)
 				return;
@@ -480,7 +749,7 @@ public class JNotepadPP extends JFrame {
 				return;
 			}
 
-			documentsModel.loadDocument(filepath);
+			documentsModel.viewDocument(filepath);
 		}
 	};
 	
@@ -587,7 +856,205 @@ public class JNotepadPP extends JFrame {
 	};
 	
 	/**
-	 * This actions outputs the statistics of the current document.
+	 * Undoes the last step of the edits of the current document.
+	 */
+	private Action undoAction = new LocalizableAction("undo", "undo-mn", "undo-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			documentsModel.undo(documentsModel.getCurrentDocument());
+		}
+	};
+	
+	/**
+	 * Redoes the last undone step of the edits of the current document.
+	 */
+	private Action redoAction = new LocalizableAction("redo", "redo-mn", "redo-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			documentsModel.redo(documentsModel.getCurrentDocument());
+		}
+	};
+	
+	/**
+	 * Asks for the text to find, selects its next occurrence and highlights
+	 * all of them.
+	 */
+	private Action findAction = new LocalizableAction("find", "find-mn", "find-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			TextSearcher searcher = showSearchDialog("find", false);
+			if (searcher == null) {
+				return;
+			}
+			lastSearcher = searcher;
+			clearSearchHighlights();
+			searchHighlighter = new SearchHighlighter(currentModel.getTextComponent());
+			searchHighlighter.highlight(searcher);
+			performFind(true);
+		}
+	};
+	
+	/**
+	 * Selects the next occurrence of the last searched text.
+	 */
+	private Action findNextAction = new LocalizableAction("find-next", "find-next-mn", "find-next-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (lastSearcher == null) {
+				findAction.actionPerformed(e);
+			} else {
+				performFind(true);
+			}
+		}
+	};
+	
+	/**
+	 * Selects the previous occurrence of the last searched text.
+	 */
+	private Action findPreviousAction = new LocalizableAction("find-previous", "find-previous-mn",
+			"find-previous-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (lastSearcher == null) {
+				findAction.actionPerformed(e);
+			} else {
+				performFind(false);
+			}
+		}
+	};
+	
+	/**
+	 * Asks for the text to find and its replacement, and replaces all the
+	 * occurrences in one step.
+	 */
+	private Action replaceAllAction = new LocalizableAction("replace-all", "replace-all-mn", "replace-all-desc",
+			flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			JTextArea textArea = currentModel.getTextComponent();
+			if (!textArea.isEditable()) {
+				return;
+			}
+			TextSearcher searcher = showSearchDialog("replace-all", true);
+			if (searcher == null) {
+				return;
+			}
+			lastSearcher = searcher;
+			clearSearchHighlights();
+			performReplaceAll(textArea.getDocument(), searcher);
+		}
+	};
+	
+	/**
+	 * Asks for the text to find and lists its occurrences in all the open
+	 * documents.
+	 */
+	private Action findInOpenDocumentsAction = new LocalizableAction("find-all", "find-all-mn", "find-all-desc",
+			flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			TextSearcher searcher = showSearchDialog("find-all", false);
+			if (searcher == null) {
+				return;
+			}
+			lastSearcher = searcher;
+			performFindInOpenDocuments(searcher);
+		}
+	};
+	
+	/**
+	 * Asks for the text to find, a directory and the names of the files, and
+	 * lists the occurrences of the text in the files of the directory tree,
+	 * without opening them.
+	 */
+	private Action findInFilesAction = new LocalizableAction("find-in-files", "find-in-files-mn",
+			"find-in-files-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			TextSearcher searcher = showFileSearchDialog("find-in-files", false);
+			if (searcher == null) {
+				return;
+			}
+			lastSearcher = searcher;
+			performFindInFiles(Paths.get(lastFolder), fileNameMatcher(lastFileNames), searcher);
+		}
+	};
+	
+	/**
+	 * Asks for the text to find, its replacement, a directory and the names
+	 * of the files, and replaces the text in all the files of the directory
+	 * tree at once, after the user confirms.
+	 */
+	private Action replaceInFilesAction = new LocalizableAction("replace-in-files", "replace-in-files-mn",
+			"replace-in-files-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			TextSearcher searcher = showFileSearchDialog("replace-in-files", true);
+			if (searcher == null) {
+				return;
+			}
+			lastSearcher = searcher;
+			performReplaceInFiles(Paths.get(lastFolder), fileNameMatcher(lastFileNames), searcher);
+		}
+	};
+	
+	/**
+	 * This actions outputs the statistics of the current document, which are
+	 * kept up to date by the model, so the text is not scanned again.
 	 */
 	private Action statisticsAction = new LocalizableAction("statistics", "stat-mn", "stat-desc", flp) {
 		
@@ -598,21 +1065,11 @@ public class JNotepadPP extends JFrame {
 		
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			SingleDocumentModel model = documentsModel.getCurrentDocument();
-			String content = model.getTextComponent().getText();
-			
-			int numberOfCharacters = content.length();
-			int numberOfNonBlank = numberOfCharacters;
-			int numberOfLines = 1;
+			DocumentStatistics documentStatistics = documentsModel.getCurrentDocument().getStatistics();
 			
-			for (char c : content.toCharArray()) {
-				if (Character.isWhitespace(c)) {
-					numberOfNonBlank--;
-					if (c == '\n') {
-						numberOfLines++;
-					}
-				}
-			}
+			int numberOfCharacters = documentStatistics.getCharacterCount();
+			int numberOfNonBlank = documentStatistics.getNonBlankCount();
+			int numberOfLines = documentStatistics.getLineCount();
 			
 			String totalCharacters = flp.getString("total-characters");
 			String nonBlank = flp.getString("non-blank");
@@ -633,8 +1090,9 @@ public class JNotepadPP extends JFrame {
 	};
 
 	/**
-	 * This action is used to exit the program. Before exiting checks if there are
-	 * any unsaved documents.
+	 * This action is used to exit the program. Before exiting writes the
+	 * session, which keeps the unsaved documents. If the session can not be
+	 * written, checks if there are any unsaved documents.
 	 */
 	private Action exitAppAction = new LocalizableAction("exit", "exit-mn", "exit-desc", flp) {
 		
@@ -645,16 +1103,26 @@ public class JNotepadPP extends JFrame {
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
+			sessionTimer.stop();
+			SessionFile session = documentsModel.createSession();
+			boolean sessionWritten;
+			try {
+				sessionWritten = sessionWriter.submit(() -> writeSession(session)).get();
+			} catch (InterruptedException | ExecutionException ex) {
+				sessionWritten = false;
+			}
 			while (documentsModel.getNumberOfDocuments() > 0) {
 				SingleDocumentModel model = documentsModel.getCurrentDocument();
 				
-				if(model.isModified()) {
+				if(model.isModified() && !sessionWritten) {
 					if (!canBeClosed(model)) {
+						sessionTimer.start();
 						return;
 					}
 				}
 				documentsModel.closeDocument(model);
 			}
+			sessionWriter.shutdown();
 			dispose();
 			statusBar.stopTimer();
 		}
@@ -672,7 +1140,7 @@ public class JNotepadPP extends JFrame {
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			performCaseOperation(s -> s.toUpperCase());
+			performCaseOperation(CaseTransformer.Mode.UPPER);
 		}
 	};
 
@@ -688,7 +1156,7 @@ public class JNotepadPP extends JFrame {
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			performCaseOperation(s -> s.toLowerCase());
+			performCaseOperation(CaseTransformer.Mode.LOWER);
 		}
 	};
 
@@ -704,39 +1172,29 @@ public class JNotepadPP extends JFrame {
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			performCaseOperation(s -> {
-				char[] array = s.toCharArray();
-				for (int i = 0; i < array.length; ++i) {
-					char c = array[i];
-					if (Character.isLowerCase(c)) {
-						array[i] = Character.toUpperCase(c);
-					} else {
-						array[i] = Character.toLowerCase(c);
-					}
-				}
-				return new String(array);
-			});
+			performCaseOperation(CaseTransformer.Mode.INVERT);
 		}
 	};
 	
 	/**
-	 * Performs given function on the selected range of the text.
+	 * Performs the given case transformation on the selected range of the
+	 * text, by the rules of the current language, see {@link CaseTransformer}.
+	 * The range stays selected.
 	 * 
-	 * @param function
-	 *            is the given function.
+	 * @param mode
+	 *            is the given case transformation.
 	 */
-	private void performCaseOperation(Function<String, String> function) {
-		Document document = currentModel.getTextComponent().getDocument();
-		Caret caret = currentModel.getTextComponent().getCaret();
+	private void performCaseOperation(CaseTransformer.Mode mode) {
+		JTextArea textArea = currentModel.getTextComponent();
+		Caret caret = textArea.getCaret();
 		
 		int length = Math.abs(caret.getDot() - caret.getMark());
 		int offset = Math.min(caret.getDot(), caret.getMark());
 	
 		try {
-			String selected = document.getText(offset, length);
-			selected = function.apply(selected);
-			document.remove(offset, length);
-			document.insertString(offset, selected, null);
+			CaseTransformer transformer = new CaseTransformer(mode, new Locale(flp.getString("locale")));
+			int newLength = transformer.transform((AbstractDocument) textArea.getDocument(), offset, length);
+			textArea.select(offset, offset + newLength);
 		} catch (BadLocationException ev) {
 			ev.printStackTrace();
 		}
@@ -755,12 +1213,7 @@ public class JNotepadPP extends JFrame {
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			performLineModification(lines -> {
-				Locale locale = new Locale(flp.getString("locale"));
-				Collator collator = Collator.getInstance(locale);
-				Collections.sort(lines, (f, s) -> collator.compare(f, s));
-				return lines;
-			});
+			performLineSort(false);
 		}
 	};
 
@@ -777,20 +1230,15 @@ public class JNotepadPP extends JFrame {
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			performLineModification(lines -> {
-				Locale locale = new Locale(flp.getString("locale"));
-				Collator collator = Collator.getInstance(locale);
-				Collections.sort(lines, (f, s) -> collator.compare(s, f));
-				return lines;
-			});
+			performLineSort(true);
 		}
 	};
-	
+
 	/**
-	 * From the selected range of lines(if the selection starts in the middle of the
-	 * line, the whole line is affected) removes the redundant lines.
+	 * Toggles ignoring the letter case when sorting lines.
 	 */
-	private Action uniqueAction = new LocalizableAction("unique", "unique-mn", "unique-desc", flp) {
+	private final Action ignoreCaseSortAction = new LocalizableAction("sort-ignore-case", "sort-ignore-case-mn",
+			"sort-ignore-case-desc", flp) {
 		
 		/**
 		 * Serial version UID.
@@ -799,76 +1247,746 @@ public class JNotepadPP extends JFrame {
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			performLineModification(lines -> {
-				for(int i = 0; i < lines.size() - 1; ++i) {
-					for(int j = i + 1; j < lines.size();) {
-						if(lines.get(i).equals(lines.get(j))) {
-							lines.remove(j);
-						} else {
-							++j;
-						}
-					}
-				}
-				return lines;
-			});
 		}
 	};
-	
+
 	/**
-	 * Applies the given function on the selected range of lines.
-	 * 
-	 * @param function
-	 *            is the function to apply.
+	 * Toggles comparing the numbers in the lines by their value when sorting
+	 * lines.
 	 */
-	private void performLineModification(Function<List<String>, List<String>> function) {
-		try {
-			JTextArea textArea = currentModel.getTextComponent();
-			Document document = textArea.getDocument();
-			Caret caret = textArea.getCaret();
-
-			int startSelection = Math.min(caret.getDot(), caret.getMark());
-			int startLine = textArea.getLineOfOffset(startSelection);
-			int endSelection = Math.max(caret.getDot(), caret.getMark());
-			int endLine = textArea.getLineOfOffset(endSelection);
-			startSelection = textArea.getLineStartOffset(startLine);
-			endSelection = textArea.getLineEndOffset(endLine);
-
-			List<String> lines = new ArrayList<>();
-			int lineNumber = startLine;
-			while (lineNumber <= endLine) {
-				int currentLineStart = textArea.getLineStartOffset(lineNumber);
-				int currentLineEnd = textArea.getLineEndOffset(lineNumber);
-				
-				String line = textArea.getText(currentLineStart, currentLineEnd - currentLineStart);
-				lines.add(line);
+	private final Action numericSortAction = new LocalizableAction("sort-numeric", "sort-numeric-mn",
+			"sort-numeric-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
 
-				lineNumber++;
-			}
-			
-			String last = lines.get(lines.size() - 1);
-			boolean isTheLastLine = !last.endsWith("\n");
-			if (isTheLastLine) {
-				lines.remove(lines.size() - 1);
-				lines.add(last + '\n');
-			}
+		@Override
+		public void actionPerformed(ActionEvent e) {
+		}
+	};
 
-			lines = function.apply(lines);
-			
-			StringBuilder builder = new StringBuilder();
-			for (String line : lines) {
-				builder.append(line);
-			}
-			if (isTheLastLine) {
-				builder.deleteCharAt(builder.length() - 1);
+	/**
+	 * Toggles keeping the original order of the equal lines when sorting
+	 * lines.
+	 */
+	private final Action stableSortAction = new LocalizableAction("sort-stable", "sort-stable-mn",
+			"sort-stable-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+		}
+	};
+	
+	/**
+	 * From the selected range of lines(if the selection starts in the middle of the
+	 * line, the whole line is affected) removes the redundant lines.
+	 */
+	private Action uniqueAction = new LocalizableAction("unique", "unique-mn", "unique-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			Set<LineDeduplicator.Option> options = EnumSet.noneOf(LineDeduplicator.Option.class);
+			if (Boolean.TRUE.equals(ignoreCaseUniqueAction.getValue(Action.SELECTED_KEY))) {
+				options.add(LineDeduplicator.Option.IGNORE_CASE);
+			}
+			if (Boolean.TRUE.equals(ignoreWhitespaceUniqueAction.getValue(Action.SELECTED_KEY))) {
+				options.add(LineDeduplicator.Option.IGNORE_WHITESPACE);
+			}
+			if (Boolean.TRUE.equals(countUniqueAction.getValue(Action.SELECTED_KEY))) {
+				options.add(LineDeduplicator.Option.COUNT);
+			}
+			LineDeduplicator deduplicator = new LineDeduplicator(options);
+
+			int[] removed = { 0 };
+			performLineTransformation(text -> {
+				LineDeduplicator.Result result = deduplicator.deduplicate(text);
+				removed[0] = result.getRemoved();
+				return result.getText();
+			}, () -> JOptionPane.showMessageDialog(
+					JNotepadPP.this,
+					flp.getString("unique-removed") + COLON + removed[0],
+					flp.getString("unique"),
+					JOptionPane.INFORMATION_MESSAGE));
+		}
+	};
+
+	/**
+	 * Toggles ignoring the letter case when removing the redundant lines.
+	 */
+	private final Action ignoreCaseUniqueAction = new LocalizableAction("unique-ignore-case", "unique-ignore-case-mn",
+			"unique-ignore-case-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+		}
+	};
+
+	/**
+	 * Toggles ignoring the whitespace when removing the redundant lines.
+	 */
+	private final Action ignoreWhitespaceUniqueAction = new LocalizableAction("unique-ignore-whitespace",
+			"unique-ignore-whitespace-mn", "unique-ignore-whitespace-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+		}
+	};
+
+	/**
+	 * Toggles writing the number of occurrences in front of every line kept
+	 * when removing the redundant lines.
+	 */
+	private final Action countUniqueAction = new LocalizableAction("unique-count", "unique-count-mn",
+			"unique-count-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+		}
+	};
+	
+	/**
+	 * Toggles saving the modified documents in the background, which is off
+	 * by default since it overwrites their files.
+	 */
+	private final Action autosaveAction = new LocalizableAction("autosave", "autosave-mn", "autosave-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			boolean autosave = Boolean.TRUE.equals(getValue(Action.SELECTED_KEY));
+			documentsModel.setAutosaveDelay(autosave ? DefaultMultipleDocumentModel.AUTOSAVE_DELAY : 0);
+		}
+	};
+	
+	/**
+	 * Toggles following the growing file of the current document, like a log:
+	 * the text appended to the file is appended to the document.
+	 */
+	private final Action followAction = new LocalizableAction("follow", "follow-mn", "follow-desc", flp) {
+		
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			boolean following = Boolean.TRUE.equals(getValue(Action.SELECTED_KEY));
+			putValue(Action.SELECTED_KEY, documentsModel.setFollowing(currentModel, following));
+		}
+	};
+	
+	/**
+	 * Sorts the selected range of lines with the chosen sorting options, see
+	 * {@link LineSorter}.
+	 * 
+	 * @param descending
+	 *            if true the sort is descending, otherwise ascending.
+	 */
+	private void performLineSort(boolean descending) {
+		Set<LineSorter.Option> options = EnumSet.noneOf(LineSorter.Option.class);
+		if (descending) {
+			options.add(LineSorter.Option.DESCENDING);
+		}
+		if (Boolean.TRUE.equals(ignoreCaseSortAction.getValue(Action.SELECTED_KEY))) {
+			options.add(LineSorter.Option.IGNORE_CASE);
+		}
+		if (Boolean.TRUE.equals(numericSortAction.getValue(Action.SELECTED_KEY))) {
+			options.add(LineSorter.Option.NUMERIC);
+		}
+		if (Boolean.TRUE.equals(stableSortAction.getValue(Action.SELECTED_KEY))) {
+			options.add(LineSorter.Option.STABLE);
+		}
+		LineSorter sorter = new LineSorter(new Locale(flp.getString("locale")), options);
+		performLineTransformation(sorter::sort, () -> {});
+	}
+
+	/**
+	 * Asks for the text to find, its replacement and the search options,
+	 * starting from the last ones.
+	 * 
+	 * @param title
+	 *            is the key of the title of the dialog.
+	 * @param replace
+	 *            if true the replacement is asked for too.
+	 * @param extra
+	 *            are the components added before the search options.
+	 * @return the searcher, null if the user cancelled or if the query is not
+	 *         valid, in which case the user is told so.
+	 */
+	private TextSearcher showSearchDialog(String title, boolean replace, JComponent... extra) {
+		String selected = currentModel == null ? null : currentModel.getTextComponent().getSelectedText();
+		JTextField queryField = new JTextField(
+				selected != null && !selected.isEmpty() && selected.indexOf('\n') < 0 ? selected : lastQuery, 30);
+		JTextField replacementField = new JTextField(lastReplacement, 30);
+		JCheckBox matchCase = new JCheckBox(flp.getString("search-match-case"),
+				lastSearchOptions.contains(TextSearcher.Option.MATCH_CASE));
+		JCheckBox wholeWord = new JCheckBox(flp.getString("search-whole-word"),
+				lastSearchOptions.contains(TextSearcher.Option.WHOLE_WORD));
+		JCheckBox regex = new JCheckBox(flp.getString("search-regex"),
+				lastSearchOptions.contains(TextSearcher.Option.REGEX));
+
+		JPanel panel = new JPanel(new GridLayout(0, 1));
+		panel.add(new JLabel(flp.getString("search-find-what")));
+		panel.add(queryField);
+		if (replace) {
+			panel.add(new JLabel(flp.getString("search-replace-with")));
+			panel.add(replacementField);
+		}
+		for (JComponent component : extra) {
+			panel.add(component);
+		}
+		panel.add(matchCase);
+		panel.add(wholeWord);
+		panel.add(regex);
+
+		int answer = JOptionPane.showConfirmDialog(
+				JNotepadPP.this,
+				panel,
+				flp.getString(title),
+				JOptionPane.OK_CANCEL_OPTION,
+				JOptionPane.PLAIN_MESSAGE);
+		if (answer != JOptionPane.OK_OPTION || queryField.getText().isEmpty()) {
+			return null;
+		}
+
+		lastQuery = queryField.getText();
+		lastSearchOptions = EnumSet.noneOf(TextSearcher.Option.class);
+		if (matchCase.isSelected()) {
+			lastSearchOptions.add(TextSearcher.Option.MATCH_CASE);
+		}
+		if (wholeWord.isSelected()) {
+			lastSearchOptions.add(TextSearcher.Option.WHOLE_WORD);
+		}
+		if (regex.isSelected()) {
+			lastSearchOptions.add(TextSearcher.Option.REGEX);
+		}
+		if (replace) {
+			lastReplacement = replacementField.getText();
+		}
+		try {
+			return new TextSearcher(lastQuery, replace ? lastReplacement : null, lastSearchOptions);
+		} catch (IllegalArgumentException e) {
+			showSearchError(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Asks for the text to find, its replacement and the search options like
+	 * {@link #showSearchDialog(String, boolean, JComponent...)}, and for the
+	 * searched directory and the names of the files, which are remembered as
+	 * the last ones.
+	 * 
+	 * @param title
+	 *            is the key of the title of the dialog.
+	 * @param replace
+	 *            if true the replacement is asked for too.
+	 * @return the searcher, null if the user cancelled or if the input is not
+	 *         valid, in which case the user is told so.
+	 */
+	private TextSearcher showFileSearchDialog(String title, boolean replace) {
+		JTextField folderField = new JTextField(lastFolder, 30);
+		JButton browseButton = new JButton("...");
+		browseButton.addActionListener(event -> {
+			JFileChooser fileChooser = new JFileChooser(folderField.getText());
+			fileChooser.setDialogTitle(flp.getString(title));
+			fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+			if (fileChooser.showOpenDialog(JNotepadPP.this) == JFileChooser.APPROVE_OPTION) {
+				folderField.setText(fileChooser.getSelectedFile().getPath());
+			}
+		});
+		JPanel folderPanel = new JPanel(new BorderLayout());
+		folderPanel.add(folderField, BorderLayout.CENTER);
+		folderPanel.add(browseButton, BorderLayout.LINE_END);
+		JTextField namesField = new JTextField(lastFileNames, 30);
+
+		TextSearcher searcher = showSearchDialog(title, replace,
+				new JLabel(flp.getString("search-folder")), folderPanel,
+				new JLabel(flp.getString("search-file-names")), namesField);
+		if (searcher == null) {
+			return null;
+		}
+
+		Path folder;
+		try {
+			folder = Paths.get(folderField.getText());
+			fileNameMatcher(namesField.getText());
+		} catch (IllegalArgumentException ex) {
+			showSearchError(ex);
+			return null;
+		}
+		if (!Files.isDirectory(folder)) {
+			JOptionPane.showMessageDialog(
+					JNotepadPP.this,
+					flp.getString("search-folder-invalid") + COLON + folder,
+					flp.getString("error"),
+					JOptionPane.ERROR_MESSAGE);
+			return null;
+		}
+		lastFolder = folderField.getText();
+		lastFileNames = namesField.getText();
+		return searcher;
+	}
+
+	/**
+	 * Selects the next or the previous occurrence of the last searched text,
+	 * counting from the selection. The search wraps around the document. A
+	 * viewed file is searched as a whole, in the background.
+	 * 
+	 * @param forward
+	 *            if true the next occurrence is selected, otherwise the
+	 *            previous one.
+	 */
+	private void performFind(boolean forward) {
+		if (currentModel instanceof ViewerDocumentModel) {
+			((ViewerDocumentModel) currentModel).find(lastSearcher, forward).whenComplete((found, failure) -> {
+				if (failure instanceof IOException) {
+					failure.printStackTrace();
+				} else if (failure == null && !found) {
+					showNotFound();
+				}
+			});
+			return;
+		}
+		
+		JTextArea textArea = currentModel.getTextComponent();
+		Document document = textArea.getDocument();
+		TextSearcher.Match match;
+		if (forward) {
+			match = lastSearcher.findNext(document, textArea.getSelectionEnd());
+			if (match == null) {
+				match = lastSearcher.findNext(document, 0);
+			}
+		} else {
+			match = lastSearcher.findPrevious(document, textArea.getSelectionStart());
+			if (match == null) {
+				match = lastSearcher.findPrevious(document, document.getLength());
+			}
+		}
+
+		if (match == null) {
+			showNotFound();
+			return;
+		}
+		Caret caret = textArea.getCaret();
+		caret.setDot(match.getStart());
+		caret.moveDot(match.getEnd());
+	}
+	
+	/**
+	 * Tells the user that the last searched text was not found.
+	 */
+	private void showNotFound() {
+		JOptionPane.showMessageDialog(
+				JNotepadPP.this,
+				flp.getString("search-not-found") + COLON + lastQuery,
+				flp.getString("find"),
+				JOptionPane.INFORMATION_MESSAGE);
+	}
+
+	/**
+	 * Replaces all the matches of the given searcher in one step. A document
+	 * longer than {@link #BACKGROUND_TRANSFORMATION_LENGTH} is searched on a
+	 * background thread, and nothing is replaced if it was edited in the
+	 * meantime.
+	 * 
+	 * @param document
+	 *            is the document.
+	 * @param searcher
+	 *            is the searcher, with a replacement.
+	 */
+	private void performReplaceAll(Document document, TextSearcher searcher) {
+		Supplier<List<TextSearcher.Match>> search = () -> {
+			List<TextSearcher.Match> matches = new ArrayList<>();
+			searcher.findAll(document, matches::addAll, () -> false);
+			return matches;
+		};
+		Consumer<List<TextSearcher.Match>> apply = matches -> {
+			try {
+				searcher.replace((AbstractDocument) document, matches);
+			} catch (BadLocationException e) {
+				e.printStackTrace();
+				return;
+			}
+			JOptionPane.showMessageDialog(
+					JNotepadPP.this,
+					flp.getString("replace-count") + COLON + matches.size(),
+					flp.getString("replace-all"),
+					JOptionPane.INFORMATION_MESSAGE);
+		};
+
+		if (document.getLength() <= BACKGROUND_TRANSFORMATION_LENGTH) {
+			apply.accept(search.get());
+		} else {
+			computeUnlessEdited(document, search, apply);
+		}
+	}
+
+	/**
+	 * Lists the matches of the given searcher in all the open documents,
+	 * replacing the results of the previous search.
+	 * 
+	 * @param searcher
+	 *            is the searcher.
+	 */
+	private void performFindInOpenDocuments(TextSearcher searcher) {
+		cancelResultsSearch();
+		OpenDocumentsSearch search = new OpenDocumentsSearch(documentsModel, searcher, searchResults);
+		openDocumentsSearch = search;
+		searchResults.start(flp.getString("search-running"));
+		mainPanel.revalidate();
+		search.start(() -> showResultsStatus(search.isTruncated()));
+	}
+
+	/**
+	 * Lists the matches of the given searcher in the files of the given
+	 * directory tree, replacing the results of the previous search.
+	 * 
+	 * @param folder
+	 *            is the root of the tree.
+	 * @param names
+	 *            is the matcher of the names of the searched files.
+	 * @param searcher
+	 *            is the searcher.
+	 */
+	private void performFindInFiles(Path folder, PathMatcher names, TextSearcher searcher) {
+		cancelResultsSearch();
+		FileTreeSearch search = new FileTreeSearch(documentsModel, new FileSearcher(searcher), folder, names,
+				searchResults);
+		fileTreeSearch = search;
+		searchResults.start(flp.getString("search-running"));
+		mainPanel.revalidate();
+		search.start(() -> showResultsStatus(search.isTruncated()));
+	}
+
+	/**
+	 * Replaces the matches of the given searcher in the files of the given
+	 * directory tree. The files are prepared in the background, then the user
+	 * is asked to confirm, and only then are all of them replaced at once. The
+	 * search results panel shows the progress, and closing it cancels the
+	 * replacement before it is confirmed.
+	 * 
+	 * @param folder
+	 *            is the root of the tree.
+	 * @param names
+	 *            is the matcher of the names of the replaced files.
+	 * @param searcher
+	 *            is the searcher, with a replacement.
+	 */
+	private void performReplaceInFiles(Path folder, PathMatcher names, TextSearcher searcher) {
+		cancelResultsSearch();
+		FileTreeReplace replace = new FileTreeReplace(documentsModel, searcher, folder, names,
+				FileReplacer.defaultLogDirectory());
+		fileTreeReplace = replace;
+		searchResults.start(flp.getString("replace-running"));
+		mainPanel.revalidate();
+		replace.start(() -> {
+			if (replace.getFailure() != null) {
+				showReplaceError(replace.getFailure());
+				return;
+			}
+			String summary = flp.getString("search-results") + COLON + replace.getMatchCount() + ", "
+					+ flp.getString("replace-files") + COLON + replace.getFileCount();
+			if (replace.getFileCount() == 0) {
+				searchResults.setStatus(summary);
+				return;
 			}
 			
-			document.remove(startSelection, endSelection - startSelection);
-			document.insertString(startSelection, builder.toString(), null);
-		} catch (BadLocationException e1) {
-			e1.printStackTrace();
+			int option = JOptionPane.showConfirmDialog(
+					JNotepadPP.this,
+					summary + "\n" + flp.getString("replace-files-confirm"),
+					flp.getString("replace-in-files"),
+					JOptionPane.YES_NO_OPTION,
+					JOptionPane.QUESTION_MESSAGE);
+			if (option != JOptionPane.YES_OPTION || replace != fileTreeReplace) {
+				replace.cancel();
+				searchResults.setStatus(flp.getString("replace-files-cancelled"));
+				return;
+			}
+			replace.commit(() -> {
+				if (replace.getFailure() != null) {
+					showReplaceError(replace.getFailure());
+					return;
+				}
+				searchResults.setStatus(flp.getString("replace-count") + COLON + replace.getMatchCount() + ", "
+						+ flp.getString("replace-files") + COLON + replace.getFileCount());
+			});
+		});
+	}
+
+	/**
+	 * Tells the user that no file was replaced because of the given failure.
+	 * 
+	 * @param failure
+	 *            is the failure.
+	 */
+	private void showReplaceError(IOException failure) {
+		searchResults.setStatus(flp.getString("replace-files-failed"));
+		JOptionPane.showMessageDialog(
+				JNotepadPP.this,
+				flp.getString("replace-files-failed") + "\n" + failure.getMessage(),
+				flp.getString("error"),
+				JOptionPane.ERROR_MESSAGE);
+	}
+
+	/**
+	 * Shows the number of the listed matches once a search is over.
+	 * 
+	 * @param truncated
+	 *            true if more matches were found than are listed.
+	 */
+	private void showResultsStatus(boolean truncated) {
+		String status = flp.getString("search-results") + COLON + searchResults.getResultCount();
+		if (truncated) {
+			status += " " + flp.getString("search-results-limited");
+		}
+		searchResults.setStatus(status);
+	}
+
+	/**
+	 * Cancels the search listing its results, or the replacement in files
+	 * that is not confirmed yet, if there is one.
+	 */
+	private void cancelResultsSearch() {
+		if (openDocumentsSearch != null) {
+			openDocumentsSearch.cancel();
+			openDocumentsSearch = null;
+		}
+		if (fileTreeSearch != null) {
+			fileTreeSearch.cancel();
+			fileTreeSearch = null;
+		}
+		if (fileTreeReplace != null) {
+			fileTreeReplace.cancel();
+			fileTreeReplace = null;
+		}
+	}
+
+	/**
+	 * Creates the matcher of the file names from the given glob patterns,
+	 * separated by commas or semicolons. No pattern matches all the names.
+	 * 
+	 * @param patterns
+	 *            are the patterns.
+	 * @return the matcher.
+	 * @throws IllegalArgumentException
+	 *             if a pattern is not valid.
+	 */
+	private static PathMatcher fileNameMatcher(String patterns) {
+		StringJoiner glob = new StringJoiner(",", "glob:{", "}");
+		for (String pattern : patterns.split("[,;]")) {
+			if (!pattern.trim().isEmpty()) {
+				glob.add(pattern.trim());
+			}
+		}
+		if (glob.length() == "glob:{}".length()) {
+			glob.add("*");
+		}
+		return FileSystems.getDefault().getPathMatcher(glob.toString());
+	}
+
+	/**
+	 * Tells the user the searched text or its replacement is not valid.
+	 * 
+	 * @param e
+	 *            is the exception describing the problem.
+	 */
+	private void showSearchError(IllegalArgumentException e) {
+		JOptionPane.showMessageDialog(
+				JNotepadPP.this,
+				flp.getString("search-invalid") + COLON + e.getMessage(),
+				flp.getString("error"),
+				JOptionPane.ERROR_MESSAGE);
+	}
+
+	/**
+	 * Stops highlighting the matches of the last search.
+	 */
+	private void clearSearchHighlights() {
+		if (searchHighlighter != null) {
+			searchHighlighter.clear();
+			searchHighlighter = null;
 		}
 	}
 
+	/**
+	 * Applies the given transformation on the text of the selected range of
+	 * lines, and replaces the range with the result in one step. The text of
+	 * a selection longer than {@link #BACKGROUND_TRANSFORMATION_LENGTH} is
+	 * transformed on a background thread, and the result is dropped if the
+	 * document was edited in the meantime.
+	 * 
+	 * @param transformation
+	 *            is the transformation, called on any thread.
+	 * @param applied
+	 *            is called on the event dispatch thread once the result
+	 *            replaced the range.
+	 */
+	private void performLineTransformation(UnaryOperator<String> transformation, Runnable applied) {
+		JTextArea textArea = currentModel.getTextComponent();
+		Document document = textArea.getDocument();
+		int start;
+		int end;
+		String text;
+		try {
+			int[] range = selectedLineRange(textArea);
+			start = range[0];
+			end = range[1];
+			text = document.getText(start, end - start);
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		if (text.length() <= BACKGROUND_TRANSFORMATION_LENGTH) {
+			replaceLines(document, start, end, text, transformation.apply(text));
+			applied.run();
+			return;
+		}
+
+		computeUnlessEdited(document, () -> transformation.apply(text), transformed -> {
+			replaceLines(document, start, end, text, transformed);
+			applied.run();
+		});
+	}
+
+	/**
+	 * Computes a result on a background thread and hands it over on the event
+	 * dispatch thread, unless the document was edited in the meantime. The
+	 * user is told if the result was discarded because of an edit, or if it
+	 * could not be computed.
+	 * 
+	 * @param <T>
+	 *            is the type of the result.
+	 * @param document
+	 *            is the document the result depends on.
+	 * @param task
+	 *            computes the result, called on a background thread.
+	 * @param consumer
+	 *            is given the result on the event dispatch thread.
+	 */
+	private <T> void computeUnlessEdited(Document document, Supplier<T> task, Consumer<T> consumer) {
+		boolean[] edited = { false };
+		DocumentListener editListener = new DocumentListener() {
+			
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				edited[0] = true;
+			}
+			
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				edited[0] = true;
+			}
+			
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+			}
+		};
+		document.addDocumentListener(editListener);
+
+		ForkJoinPool.commonPool().execute(() -> {
+			try {
+				T result = task.get();
+				SwingUtilities.invokeLater(() -> {
+					if (edited[0]) {
+						JOptionPane.showMessageDialog(
+								JNotepadPP.this,
+								flp.getString("background-discarded"),
+								flp.getString("error"),
+								JOptionPane.WARNING_MESSAGE);
+					} else {
+						consumer.accept(result);
+					}
+				});
+			} catch (RuntimeException | OutOfMemoryError e) {
+				e.printStackTrace();
+				SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(
+						JNotepadPP.this,
+						flp.getString("background-failed") + COLON + e,
+						flp.getString("error"),
+						JOptionPane.ERROR_MESSAGE));
+			} finally {
+				SwingUtilities.invokeLater(() -> document.removeDocumentListener(editListener));
+			}
+		});
+	}
+
+	/**
+	 * Replaces the given range of lines with the transformed text, unless it
+	 * did not change.
+	 * 
+	 * @param document
+	 *            is the document holding the lines.
+	 * @param start
+	 *            is the start of the range.
+	 * @param end
+	 *            is the end of the range.
+	 * @param text
+	 *            is the text of the range.
+	 * @param transformed
+	 *            is the transformed text.
+	 */
+	private static void replaceLines(Document document, int start, int end, String text, String transformed) {
+		if (transformed.equals(text)) {
+			return;
+		}
+		try {
+			((AbstractDocument) document).replace(start, end - start, transformed, null);
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns the range of the lines touched by the selection of the given
+	 * text area, from the start of the first line to the end of the last one.
+	 * 
+	 * @param textArea
+	 *            is the given text area.
+	 * @return the start and the end offset of the range.
+	 * @throws BadLocationException
+	 *             if the selection is not inside the document.
+	 */
+	private static int[] selectedLineRange(JTextArea textArea) throws BadLocationException {
+		Caret caret = textArea.getCaret();
+		int startLine = textArea.getLineOfOffset(Math.min(caret.getDot(), caret.getMark()));
+		int endLine = textArea.getLineOfOffset(Math.max(caret.getDot(), caret.getMark()));
+		return new int[] { textArea.getLineStartOffset(startLine), textArea.getLineEndOffset(endLine) };
+	}
+
 	/**
 	 * Checks if the given document can be closed, i.e. if is modified, the program
 	 * asks the user if he wants to save or discard the changes.
@@ -960,8 +2078,7 @@ public class JNotepadPP extends JFrame {
 	private boolean save(SingleDocumentModel model) {
 		Path filepath = model.getFilePath();
 		if (filepath != null) {
-			documentsModel.saveDocument(model, filepath);
-			return true;
+			return write(model, filepath);
 		} else {
 			return saveAs(model);
 		}
@@ -1003,10 +2120,47 @@ public class JNotepadPP extends JFrame {
 					return false;
 			}
 			
+			return write(model, filepath);
+		}
+		return false;
+	}
+
+	/**
+	 * Saves the given model to the given path, and tells the user if it fails.
+	 * If the encoding of the model can not write all of its characters, the
+	 * user can switch the model to UTF-8.
+	 * 
+	 * @param model
+	 *            is the given model.
+	 * @param filepath
+	 *            is the given path.
+	 * @return true if saving succeeded, false otherwise.
+	 */
+	private boolean write(SingleDocumentModel model, Path filepath) {
+		try {
 			documentsModel.saveDocument(model, filepath);
 			return true;
+		} catch (UnmappableCharacterException e) {
+			int option = JOptionPane.showConfirmDialog(
+					JNotepadPP.this,
+					flp.getString("unmappable-characters") + COLON + model.getEncoding() + "\n"
+							+ flp.getString("save-as-utf8"),
+					flp.getString("error"),
+					JOptionPane.YES_NO_OPTION,
+					JOptionPane.WARNING_MESSAGE);
+			if (option != JOptionPane.YES_OPTION) {
+				return false;
+			}
+			model.setEncoding(TextEncoding.UTF_8);
+			return write(model, filepath);
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(
+					JNotepadPP.this,
+					flp.getString("save-failed") + COLON + filepath.toAbsolutePath() + "\n" + e.getMessage(),
+					flp.getString("error"),
+					JOptionPane.ERROR_MESSAGE);
+			return false;
 		}
-		return false;
 	}
 	
 	/**
@@ -1018,17 +2172,16 @@ public class JNotepadPP extends JFrame {
 	 * @return true if such path already exists, false otherwise.
 	 */
 	private boolean alreadyOpened(Path filepath) {
-		for(SingleDocumentModel m : documentsModel) {
-			if(filepath.equals(m.getFilePath())) {
-				JOptionPane.showMessageDialog(
-						JNotepadPP.this,
-						flp.getString("already-exists") + ": " + filepath.toAbsolutePath().toString(),
-						flp.getString("error"),
-						JOptionPane.ERROR_MESSAGE);
-				return true;
-			}
+		if (documentsModel.findDocument(filepath) == null) {
+			return false;
 		}
-		return false;
+		
+		JOptionPane.showMessageDialog(
+				JNotepadPP.this,
+				flp.getString("already-exists") + ": " + filepath.toAbsolutePath().toString(),
+				flp.getString("error"),
+				JOptionPane.ERROR_MESSAGE);
+		return true;
 	}
 
 	/**
@@ -1047,4 +2200,26 @@ public class JNotepadPP extends JFrame {
 		
 		return fileChooser.getSelectedFile().toPath();
 	}
+
+	/**
+	 * Asks the user to choose one or more paths.
+	 * 
+	 * @param title
+	 *            is the title to be set to the {@link JFileChooser}.
+	 * @return the chosen paths, empty if user aborts the choosing.
+	 */
+	private List<Path> chooseFilepaths(String title) {
+		JFileChooser fileChooser = new JFileChooser();
+		fileChooser.setDialogTitle(title);
+		fileChooser.setMultiSelectionEnabled(true);
+		if (fileChooser.showOpenDialog(JNotepadPP.this)!=JFileChooser.APPROVE_OPTION) {
+			return new ArrayList<>();
+		}
+		
+		List<Path> filepaths = new ArrayList<>();
+		for (File file : fileChooser.getSelectedFiles()) {
+			filepaths.add(file.toPath());
+		}
+		return filepaths;
+	}
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package hr.fer.zemris.java.hw11.jnotepadpp;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An interface used to represent a model that has zero, one ore more documents.
@@ -34,6 +36,41 @@ public interface MultipleDocumentModel extends Iterable<SingleDocumentModel> {
 	 */
 	SingleDocumentModel loadDocument(Path path);
 
+	/**
+	 * Loads the document from the given path in the background. The document
+	 * is shown immediately, with the loading progress, and its content is
+	 * swapped in once it is loaded. Cancelling the returned future cancels the
+	 * loading and closes the document.
+	 * 
+	 * @param path
+	 *            is the given path.
+	 * @return a future completed with the model representing the loaded file.
+	 */
+	CompletableFuture<SingleDocumentModel> loadDocumentAsync(Path path);
+
+	/**
+	 * Adds a tab for the document from the given path without reading the
+	 * file. The tab is not selected, and the file is read only when the tab is
+	 * first selected, so opening many documents costs only as much as the
+	 * documents that are actually viewed.
+	 * 
+	 * @param path
+	 *            is the given path.
+	 * @return a model representing the file, or the already opened model of
+	 *         the same file.
+	 */
+	SingleDocumentModel openDocumentLazily(Path path);
+
+	/**
+	 * Opens the document from the given path in a read-only viewer, that reads
+	 * only the visible part of the file. Used for files too big to be loaded.
+	 * 
+	 * @param path
+	 *            is the given path.
+	 * @return a model representing the viewed file.
+	 */
+	SingleDocumentModel viewDocument(Path path);
+
 	/**
 	 * Saves the model to the path specified.
 	 * 
@@ -41,8 +78,11 @@ public interface MultipleDocumentModel extends Iterable<SingleDocumentModel> {
 	 *            is the model to save.
 	 * @param newPath
 	 *            is the path to save to.
+	 * @throws IOException
+	 *             if the document can not be saved, in that case it stays
+	 *             modified.
 	 */
-	void saveDocument(SingleDocumentModel model, Path newPath);
+	void saveDocument(SingleDocumentModel model, Path newPath) throws IOException;
 
 	/**
 	 * Closes the specified document model.
@@ -68,6 +108,16 @@ public interface MultipleDocumentModel extends Iterable<SingleDocumentModel> {
 	 */
 	void removeMultipleDocumentListener(MultipleDocumentListener l);
 
+	/**
+	 * Finds the opened document of the file at the given path. Paths leading
+	 * to the same file find the same document.
+	 * 
+	 * @param path
+	 *            is the given path.
+	 * @return the document, or null if the file is not opened.
+	 */
+	SingleDocumentModel findDocument(Path path);
+
 	/**
 	 * Returns the number of documents.
 	 * 
@@ -0,0 +1,551 @@
+package hr.fer.zemris.java.hw11.jnotepadpp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Caret;
+import javax.swing.text.Document;
+import javax.swing.text.Position;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.components.SearchResultsPanel;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.DocumentCharSequence;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.HibernatedText;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineCounter;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableDocument;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.FileSearcher;
+
+/**
+ * Finds the matches of a {@link TextSearcher} in all the open documents at
+ * once. The text of every document is snapshotted on the event dispatch
+ * thread, which only copies the piece list, and the snapshots are searched in
+ * parallel by the common {@link java.util.concurrent.ForkJoinPool}, one task
+ * per document, so the search takes as long as the largest document, not as
+ * all of them together. The matches of every searched chunk are listed in a
+ * {@link SearchResultsPanel} right away, grouped by document in the order of
+ * the tabs.
+ * <p>
+ * Hibernated documents are searched in a decompressed copy, without waking
+ * them up. Documents whose files are not read yet or are still being loaded,
+ * like most of the tabs of a restored session, and file viewers are searched
+ * in their files by a {@link FileSearcher}, so no tab is left out, and their
+ * matches open the file at the matching line. The listed matches move with
+ * the text when their document is edited; the matches found in a snapshot a
+ * document was edited after are dropped, as their offsets are out of date.
+ *
+ * @author Marin
+ *
+ */
+class OpenDocumentsSearch {
+
+	/**
+	 * A searched document.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Target {
+
+		/**
+		 * The model of the document.
+		 */
+		private final SingleDocumentModel model;
+		/**
+		 * The index of the tab of the document.
+		 */
+		private final int index;
+		/**
+		 * The document being edited, null if the model is hibernated.
+		 */
+		private final Document live;
+		/**
+		 * The snapshot of the text, null if the model is hibernated.
+		 */
+		private final CharSequence text;
+		/**
+		 * The copy of the hibernated text, null if the model is awake.
+		 */
+		private final HibernatedText hibernated;
+		/**
+		 * The listener noticing the edits of the live document.
+		 */
+		private final DocumentListener editListener = new DocumentListener() {
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				edited = true;
+			}
+
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				edited = true;
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+			}
+		};
+		/**
+		 * True once the live document was edited after the snapshot.
+		 */
+		private boolean edited;
+		/**
+		 * True once the search of the document is cancelled, read by the
+		 * background thread.
+		 */
+		private volatile boolean cancelled;
+
+		/**
+		 * The {@link Target} constructor for an awake model.
+		 *
+		 * @param model
+		 *            is the model.
+		 * @param index
+		 *            is the index of the tab.
+		 * @param live
+		 *            is the document of the model.
+		 * @param text
+		 *            is the snapshot of the text.
+		 */
+		private Target(SingleDocumentModel model, int index, Document live, CharSequence text) {
+			this.model = model;
+			this.index = index;
+			this.live = live;
+			this.text = text;
+			this.hibernated = null;
+			live.addDocumentListener(editListener);
+		}
+
+		/**
+		 * The {@link Target} constructor for a hibernated model.
+		 *
+		 * @param model
+		 *            is the model.
+		 * @param index
+		 *            is the index of the tab.
+		 * @param hibernated
+		 *            is the copy of the hibernated text.
+		 */
+		private Target(SingleDocumentModel model, int index, HibernatedText hibernated) {
+			this.model = model;
+			this.index = index;
+			this.live = null;
+			this.text = null;
+			this.hibernated = hibernated;
+		}
+
+		/**
+		 * Stops noticing the edits of the live document.
+		 */
+		private void detach() {
+			if (live != null) {
+				live.removeDocumentListener(editListener);
+			}
+		}
+	}
+
+	/**
+	 * A match found on the background thread, with its line.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Hit {
+
+		/**
+		 * The start of the match.
+		 */
+		private final int start;
+		/**
+		 * The end of the match.
+		 */
+		private final int end;
+		/**
+		 * The number of the line holding the match, starting from one.
+		 */
+		private final int line;
+		/**
+		 * The text of the line around the match.
+		 */
+		private final String preview;
+
+		/**
+		 * The {@link Hit} constructor.
+		 *
+		 * @param start
+		 *            is the start of the match.
+		 * @param end
+		 *            is the end of the match.
+		 * @param line
+		 *            is the number of the line holding the match.
+		 * @param preview
+		 *            is the text of the line around the match.
+		 */
+		private Hit(int start, int end, int line, String preview) {
+			this.start = start;
+			this.end = end;
+			this.line = line;
+			this.preview = preview;
+		}
+	}
+
+	/**
+	 * The documents model.
+	 */
+	private final DefaultMultipleDocumentModel documents;
+	/**
+	 * The searcher.
+	 */
+	private final TextSearcher searcher;
+	/**
+	 * The searcher of the documents searched in their files.
+	 */
+	private final FileSearcher files;
+	/**
+	 * The panel listing the matches.
+	 */
+	private final SearchResultsPanel panel;
+	/**
+	 * The searched documents by their models.
+	 */
+	private final Map<SingleDocumentModel, Target> targets = new IdentityHashMap<>();
+	/**
+	 * The documents searched in their files.
+	 */
+	private final Set<SingleDocumentModel> onDisk = Collections.newSetFromMap(new IdentityHashMap<>());
+	/**
+	 * The number of matches found by all the tasks together.
+	 */
+	private final AtomicInteger found = new AtomicInteger();
+	/**
+	 * True if more matches were found than the panel lists.
+	 */
+	private boolean truncated;
+	/**
+	 * True once the search is cancelled, read by the background threads.
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * The {@link OpenDocumentsSearch} constructor.
+	 *
+	 * @param documents
+	 *            is the documents model.
+	 * @param searcher
+	 *            is the searcher.
+	 * @param panel
+	 *            is the panel listing the matches.
+	 */
+	OpenDocumentsSearch(DefaultMultipleDocumentModel documents, TextSearcher searcher, SearchResultsPanel panel) {
+		this.documents = documents;
+		this.searcher = searcher;
+		this.files = new FileSearcher(searcher);
+		this.panel = panel;
+	}
+
+	/**
+	 * Snapshots the open documents and starts searching them. Called on the
+	 * event dispatch thread.
+	 *
+	 * @param finished
+	 *            is called on the event dispatch thread once all the
+	 *            documents are searched, unless the search is cancelled.
+	 */
+	void start(Runnable finished) {
+		List<CompletableFuture<Void>> tasks = new ArrayList<>();
+		for (int i = 0, n = documents.getNumberOfDocuments(); i < n; ++i) {
+			SingleDocumentModel model = documents.getDocument(i);
+			Target target = createTarget(model, i);
+			if (target != null) {
+				targets.put(target.model, target);
+				tasks.add(CompletableFuture.runAsync(() -> search(target)));
+			} else if (model.getFilePath() != null) {
+				int index = i;
+				onDisk.add(model);
+				tasks.add(CompletableFuture.runAsync(() -> searchFile(model, index, model.getFilePath())));
+			}
+		}
+
+		CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).whenComplete(
+				(result, failure) -> SwingUtilities.invokeLater(() -> {
+					if (cancelled) {
+						return;
+					}
+					detachAll();
+					finished.run();
+				}));
+	}
+
+	/**
+	 * Cancels the search. Called on the event dispatch thread.
+	 */
+	void cancel() {
+		cancelled = true;
+		for (Target target : targets.values()) {
+			target.cancelled = true;
+		}
+		detachAll();
+	}
+
+	/**
+	 * Stops the search of the given closed model and removes its matches.
+	 * Called on the event dispatch thread.
+	 *
+	 * @param model
+	 *            is the closed model.
+	 */
+	void documentRemoved(SingleDocumentModel model) {
+		Target target = targets.remove(model);
+		if (target != null) {
+			target.cancelled = true;
+			target.detach();
+		}
+		onDisk.remove(model);
+		panel.removeGroup(model);
+	}
+
+	/**
+	 * Checks if more matches were found than the panel lists.
+	 *
+	 * @return true if they were, false otherwise.
+	 */
+	boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Snapshots the text of the given model.
+	 *
+	 * @param model
+	 *            is the given model.
+	 * @param index
+	 *            is the index of its tab.
+	 * @return the searched document, null if the model is not searched in
+	 *         its text.
+	 */
+	private Target createTarget(SingleDocumentModel model, int index) {
+		if (!(model instanceof DefaultSingleDocumentModel) || documents.isLoading(model)) {
+			return null;
+		}
+		DefaultSingleDocumentModel searched = (DefaultSingleDocumentModel) model;
+		if (searched.isPlaceholder()) {
+			return null;
+		}
+		if (searched.isHibernated()) {
+			try {
+				return new Target(model, index, searched.snapshotText());
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+
+		Document document = model.getTextComponent().getDocument();
+		CharSequence text;
+		if (document instanceof PieceTableDocument) {
+			text = new DocumentCharSequence(((PieceTableDocument) document).snapshot());
+		} else {
+			try {
+				text = document.getText(0, document.getLength());
+			} catch (BadLocationException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+		return new Target(model, index, document, text);
+	}
+
+	/**
+	 * Searches the given document on a background thread, and hands the
+	 * matches of every chunk over to the event dispatch thread.
+	 *
+	 * @param target
+	 *            is the searched document.
+	 */
+	private void search(Target target) {
+		CharSequence text = target.text;
+		if (target.hibernated != null) {
+			if (target.cancelled) {
+				target.hibernated.dispose();
+				return;
+			}
+			try {
+				text = new DocumentCharSequence(target.hibernated.restore().snapshot());
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			} finally {
+				target.hibernated.dispose();
+			}
+		}
+
+		LineCounter lines = new LineCounter(text);
+		searcher.findAll(text, matches -> {
+			List<Hit> hits = new ArrayList<>(matches.size());
+			for (TextSearcher.Match match : matches) {
+				lines.moveTo(match.getStart());
+				hits.add(new Hit(match.getStart(), match.getEnd(), lines.getLine(), lines.preview(match.getEnd())));
+			}
+			found.addAndGet(hits.size());
+			SwingUtilities.invokeLater(() -> list(target, hits));
+		}, () -> target.cancelled || found.get() >= SearchResultsPanel.MAX_RESULTS);
+	}
+
+	/**
+	 * Searches the file of the given model on a background thread, and hands
+	 * its matches over to the event dispatch thread.
+	 *
+	 * @param model
+	 *            is the given model.
+	 * @param index
+	 *            is the index of its tab.
+	 * @param file
+	 *            is the file of the model.
+	 */
+	private void searchFile(SingleDocumentModel model, int index, Path file) {
+		List<FileSearcher.Hit> hits;
+		try {
+			hits = files.search(file, () -> cancelled || found.get() >= SearchResultsPanel.MAX_RESULTS);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		if (!hits.isEmpty()) {
+			found.addAndGet(hits.size());
+			SwingUtilities.invokeLater(() -> listFile(model, index, file, hits));
+		}
+	}
+
+	/**
+	 * Lists the given matches found in the file of the given model. They are
+	 * opened by line and column, as the file is read again to open them.
+	 *
+	 * @param model
+	 *            is the given model.
+	 * @param index
+	 *            is the index of its tab.
+	 * @param file
+	 *            is the file of the model.
+	 * @param hits
+	 *            are the matches.
+	 */
+	private void listFile(SingleDocumentModel model, int index, Path file, List<FileSearcher.Hit> hits) {
+		if (cancelled || !onDisk.contains(model)) {
+			return;
+		}
+		List<SearchResultsPanel.Result> results = new ArrayList<>(hits.size());
+		for (FileSearcher.Hit hit : hits) {
+			results.add(new SearchResultsPanel.Result(hit.getLine(), hit.getPreview(),
+					() -> FileTreeSearch.open(documents, file, hit)));
+		}
+		if (!panel.addResults(model, title(model), index, results)) {
+			truncated = true;
+		}
+	}
+
+	/**
+	 * Lists the given matches of the given document, unless their offsets are
+	 * out of date. The matches of an awake document get positions, so they
+	 * move with its text.
+	 *
+	 * @param target
+	 *            is the searched document.
+	 * @param hits
+	 *            are the matches.
+	 */
+	private void list(Target target, List<Hit> hits) {
+		if (cancelled || targets.get(target.model) != target) {
+			return;
+		}
+		if (target.edited) {
+			target.cancelled = true;
+			return;
+		}
+
+		List<SearchResultsPanel.Result> results = new ArrayList<>(hits.size());
+		for (Hit hit : hits) {
+			Position start;
+			Position end;
+			try {
+				start = target.live != null ? target.live.createPosition(hit.start) : fixedPosition(hit.start);
+				end = target.live != null ? target.live.createPosition(hit.end) : fixedPosition(hit.end);
+			} catch (BadLocationException e) {
+				e.printStackTrace();
+				return;
+			}
+			results.add(new SearchResultsPanel.Result(hit.line, hit.preview, () -> open(target.model, start, end)));
+		}
+		if (!panel.addResults(target.model, title(target.model), target.index, results)) {
+			truncated = true;
+		}
+	}
+
+	/**
+	 * Selects the tab of the given model and the given match in it.
+	 *
+	 * @param model
+	 *            is the given model.
+	 * @param start
+	 *            is the start of the match.
+	 * @param end
+	 *            is the end of the match.
+	 */
+	private void open(SingleDocumentModel model, Position start, Position end) {
+		if (!documents.selectDocument(model)) {
+			return;
+		}
+		JTextArea textArea = model.getTextComponent();
+		int length = textArea.getDocument().getLength();
+		Caret caret = textArea.getCaret();
+		caret.setDot(Math.min(start.getOffset(), length));
+		caret.moveDot(Math.min(end.getOffset(), length));
+		textArea.requestFocusInWindow();
+	}
+
+	/**
+	 * Stops noticing the edits of all the documents.
+	 */
+	private void detachAll() {
+		for (Target target : targets.values()) {
+			target.detach();
+		}
+	}
+
+	/**
+	 * Returns the title of the group of the given model.
+	 *
+	 * @param model
+	 *            is the given model.
+	 * @return the title.
+	 */
+	private static String title(SingleDocumentModel model) {
+		Path path = model.getFilePath();
+		return path == null ? DefaultMultipleDocumentModel.ASTERISK : path.toString();
+	}
+
+	/**
+	 * Returns a position that stays at the given offset. The text of a
+	 * hibernated document does not change while it sleeps, so its matches
+	 * keep their offsets.
+	 *
+	 * @param offset
+	 *            is the given offset.
+	 * @return the position.
+	 */
+	private static Position fixedPosition(int offset) {
+		return () -> offset;
+	}
+}
@@ -4,6 +4,10 @@ import java.nio.file.Path;
 
 import javax.swing.JTextArea;
 
+import hr.fer.zemris.java.hw11.jnotepadpp.document.DocumentStatistics;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineIndex;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.TextEncoding;
+
 /**
  * Represents the model of a single document. Contains all informations relevant
  * for working with the model, like: file path, modification status, ...
@@ -20,6 +24,22 @@ public interface SingleDocumentModel {
 	 */
 	JTextArea getTextComponent();
 
+	/**
+	 * A getter for the index of the line starts of the document, kept up to
+	 * date with the document changes.
+	 * 
+	 * @return the line index.
+	 */
+	LineIndex getLineIndex();
+
+	/**
+	 * A getter for the character, non-blank and line counts of the document,
+	 * kept up to date with the document changes.
+	 * 
+	 * @return the statistics.
+	 */
+	DocumentStatistics getStatistics();
+
 	/**
 	 * A getter for the file path associated with the model.
 	 * 
@@ -35,6 +55,22 @@ public interface SingleDocumentModel {
 	 */
 	void setFilePath(Path path);
 
+	/**
+	 * A getter for the encoding the document was read with, used again when
+	 * the document is saved.
+	 * 
+	 * @return the encoding.
+	 */
+	TextEncoding getEncoding();
+
+	/**
+	 * A setter for the encoding of the document.
+	 * 
+	 * @param encoding
+	 *            is the given encoding.
+	 */
+	void setEncoding(TextEncoding encoding);
+
 	/**
 	 * Method used for checking if the model is modified.
 	 * 
@@ -0,0 +1,467 @@
+package hr.fer.zemris.java.hw11.jnotepadpp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.DocumentPatch;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableDocument;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.FileStamp;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.TextEncoding;
+
+/**
+ * Follows growing files, like logs, in their tabs. For every followed document
+ * the number of bytes of its file already shown is remembered, starting from
+ * the size of the file the document was loaded from or saved to, so on a
+ * change only the appended bytes are read, with positional reads on a
+ * background thread, decoded and appended to the document in one insert. A
+ * multi-byte character split between two reads is finished by the next one.
+ * The caret stays at the end if it was there, so the tab scrolls with the
+ * file, and the oldest lines can be dropped to keep the document below a line
+ * limit.
+ * <p>
+ * A file that got shorter, e.g. after a log rotation, is read again from the
+ * start and the document patched to its last lines within the line limit.
+ * Appending pauses while the document is modified by the user, and goes on
+ * from the size of the file once the document is saved. Besides the file watcher notifications, the
+ * followed files are polled every {@link #POLL_INTERVAL} milliseconds, for
+ * file systems that do not report changes.
+ *
+ * @author Marin
+ *
+ */
+class TailFollower {
+
+	/**
+	 * The interval in milliseconds between two polls of the followed files.
+	 */
+	private static final int POLL_INTERVAL = 1000;
+	/**
+	 * The number of bytes read at once.
+	 */
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * The state of a followed document.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class State {
+
+		/**
+		 * The number of bytes of the file shown in the document, -1 if it
+		 * has to be taken from the stamp of the model.
+		 */
+		private long offset = -1;
+		/**
+		 * True if the document has to be synchronized with the whole file.
+		 */
+		private boolean resync;
+		/**
+		 * The decoder of the file, kept between the reads.
+		 */
+		private CharsetDecoder decoder;
+		/**
+		 * The bytes of an unfinished character at the end of the last read.
+		 */
+		private byte[] leftover = new byte[0];
+		/**
+		 * True while the file is being read.
+		 */
+		private boolean reading;
+		/**
+		 * True if the file changed again while it was being read.
+		 */
+		private boolean again;
+	}
+
+	/**
+	 * The text read from a followed file.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Chunk {
+
+		/**
+		 * True if the text is the whole file, false if it is only the appended
+		 * part.
+		 */
+		private boolean whole;
+		/**
+		 * The read text.
+		 */
+		private String text;
+		/**
+		 * The number of bytes of the file read so far.
+		 */
+		private long offset;
+		/**
+		 * The bytes of an unfinished character at the end of the read.
+		 */
+		private byte[] leftover;
+		/**
+		 * The stamp of the read part of the file.
+		 */
+		private FileStamp stamp;
+	}
+
+	/**
+	 * The states of the followed documents.
+	 */
+	private Map<DefaultSingleDocumentModel, State> states = new IdentityHashMap<>();
+	/**
+	 * The thread reading the followed files.
+	 */
+	private ExecutorService reader;
+	/**
+	 * The largest number of lines of a followed document, zero or less if
+	 * there is no limit.
+	 */
+	private int lineLimit;
+
+	/**
+	 * The {@link TailFollower} constructor. Starts polling the followed files.
+	 */
+	public TailFollower() {
+		reader = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "tail-follower");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		Timer timer = new Timer(POLL_INTERVAL, e -> {
+			for (DefaultSingleDocumentModel model : new ArrayList<>(states.keySet())) {
+				update(model);
+			}
+		});
+		timer.start();
+	}
+
+	/**
+	 * A getter for the line limit.
+	 *
+	 * @return the largest number of lines of a followed document, zero or
+	 *         less if there is no limit.
+	 */
+	public int getLineLimit() {
+		return lineLimit;
+	}
+
+	/**
+	 * A setter for the line limit. Applied on the next change of each
+	 * followed file.
+	 *
+	 * @param lineLimit
+	 *            is the largest number of lines of a followed document, zero
+	 *            or less if there is no limit.
+	 */
+	public void setLineLimit(int lineLimit) {
+		this.lineLimit = lineLimit;
+	}
+
+	/**
+	 * Starts following the file of the given model. Only the bytes appended
+	 * since the document was loaded or saved are read, and the caret is moved
+	 * to the end.
+	 *
+	 * @param model
+	 *            is the given model.
+	 * @return true if the model is followed, false if it can not be, because
+	 *         it has no file, is modified or its text is not loaded.
+	 */
+	public boolean follow(DefaultSingleDocumentModel model) {
+		if (states.containsKey(model)) {
+			return true;
+		}
+		if (model.getFilePath() == null || model.isModified() || model.isPlaceholder() || model.isHibernated()) {
+			return false;
+		}
+
+		states.put(model, new State());
+		JTextArea textArea = model.getTextComponent();
+		textArea.setCaretPosition(textArea.getDocument().getLength());
+		update(model);
+		return true;
+	}
+
+	/**
+	 * Stops following the file of the given model.
+	 *
+	 * @param model
+	 *            is the given model.
+	 */
+	public void unfollow(DefaultSingleDocumentModel model) {
+		states.remove(model);
+	}
+
+	/**
+	 * Checks if the file of the given model is followed.
+	 *
+	 * @param model
+	 *            is the given model.
+	 * @return true if it is, false otherwise.
+	 */
+	public boolean isFollowing(SingleDocumentModel model) {
+		return states.containsKey(model);
+	}
+
+	/**
+	 * Reads what was appended to the file of the given followed model since
+	 * the last read, and appends it to the document.
+	 *
+	 * @param model
+	 *            is the given model.
+	 */
+	public void update(DefaultSingleDocumentModel model) {
+		State state = states.get(model);
+		if (state == null || model.isModified()) {
+			return;
+		}
+		if (state.reading) {
+			state.again = true;
+			return;
+		}
+
+		state.reading = true;
+		Path path = model.getFilePath();
+		TextEncoding encoding = model.getEncoding();
+		if (state.decoder == null || !state.decoder.charset().equals(encoding.getCharset())) {
+			state.decoder = encoding.getCharset().newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			state.offset = -1;
+		}
+		if (state.offset < 0) {
+			FileStamp stamp = model.getFileStamp();
+			if (stamp == null) {
+				state.resync = true;
+			} else {
+				state.offset = stamp.getSize();
+				state.leftover = new byte[0];
+				state.decoder.reset();
+			}
+		}
+		long offset = state.resync ? -1 : state.offset;
+		int limit = lineLimit;
+		byte[] leftover = state.leftover;
+		CharsetDecoder decoder = state.decoder;
+
+		reader.execute(() -> {
+			Chunk chunk = null;
+			try {
+				chunk = read(path, encoding, decoder, offset, leftover, limit);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			Chunk result = chunk;
+			SwingUtilities.invokeLater(() -> apply(model, state, result));
+		});
+	}
+
+	/**
+	 * Reads the file from the given offset to its end. Run by the reader
+	 * thread.
+	 *
+	 * @param path
+	 *            is the path of the file.
+	 * @param encoding
+	 *            is the encoding of the file.
+	 * @param decoder
+	 *            is the decoder of the file.
+	 * @param offset
+	 *            is the number of bytes already read, -1 to read the whole
+	 *            file.
+	 * @param leftover
+	 *            are the bytes of an unfinished character at the offset.
+	 * @param lineLimit
+	 *            is the largest number of lines kept of the whole file, zero
+	 *            or less if there is no limit.
+	 * @return the read text.
+	 * @throws IOException
+	 *             if reading fails.
+	 */
+	private static Chunk read(Path path, TextEncoding encoding, CharsetDecoder decoder, long offset, byte[] leftover,
+			int lineLimit) throws IOException {
+		long modified = Files.getLastModifiedTime(path).toMillis();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			Chunk chunk = new Chunk();
+			chunk.whole = offset < 0 || size < offset;
+			long position = offset;
+			ByteBuffer in = ByteBuffer.allocate(CHUNK_SIZE + 16);
+			if (chunk.whole) {
+				decoder.reset();
+				position = skipByteOrderMark(channel, encoding);
+			} else {
+				in.put(leftover);
+			}
+
+			StringBuilder text = new StringBuilder();
+			CharBuffer out = CharBuffer.allocate(CHUNK_SIZE);
+			while (position < size) {
+				int limit = (int) Math.min(in.remaining(), size - position);
+				in.limit(in.position() + limit);
+				int read = channel.read(in, position);
+				if (read <= 0) {
+					break;
+				}
+				position += read;
+				in.limit(in.capacity());
+
+				in.flip();
+				while (decoder.decode(in, out, false) == CoderResult.OVERFLOW) {
+					text.append(out.flip());
+					out.clear();
+				}
+				text.append(out.flip());
+				out.clear();
+				in.compact();
+			}
+
+			in.flip();
+			chunk.leftover = Arrays.copyOfRange(in.array(), in.position(), in.limit());
+			chunk.text = chunk.whole && lineLimit > 0 ? lastLines(text, lineLimit) : text.toString();
+			chunk.offset = position;
+			chunk.stamp = new FileStamp(position, modified);
+			return chunk;
+		}
+	}
+
+	/**
+	 * Returns the last lines of the given text, as many as the line limit
+	 * keeps in a document.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @param limit
+	 *            is the largest number of lines.
+	 * @return the last lines.
+	 */
+	static String lastLines(CharSequence text, int limit) {
+		int lines = 1;
+		for (int i = text.length() - 1; i >= 0; --i) {
+			if (text.charAt(i) == '\n' && lines++ == limit) {
+				return text.subSequence(i + 1, text.length()).toString();
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Returns the offset of the text in the file, after the byte order mark
+	 * of the encoding if the file starts with it.
+	 *
+	 * @param channel
+	 *            is the channel of the file.
+	 * @param encoding
+	 *            is the encoding of the file.
+	 * @return the offset of the text.
+	 * @throws IOException
+	 *             if reading fails.
+	 */
+	private static long skipByteOrderMark(FileChannel channel, TextEncoding encoding) throws IOException {
+		byte[] mark = encoding.getByteOrderMark();
+		if (mark.length == 0) {
+			return 0;
+		}
+		ByteBuffer head = ByteBuffer.allocate(mark.length);
+		while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+		}
+		return head.hasRemaining() || !Arrays.equals(head.array(), mark) ? 0 : mark.length;
+	}
+
+	/**
+	 * Appends the read text to the document, or patches the document to it
+	 * if the whole file was read, and applies the line limit.
+	 *
+	 * @param model
+	 *            is the followed model.
+	 * @param state
+	 *            is the state of the model.
+	 * @param chunk
+	 *            is the read text, null if reading failed.
+	 */
+	private void apply(DefaultSingleDocumentModel model, State state, Chunk chunk) {
+		state.reading = false;
+		if (states.get(model) != state) {
+			return;
+		}
+		if (model.isModified()) {
+			state.offset = -1;
+			return;
+		}
+		if (chunk == null) {
+			return;
+		}
+
+		JTextArea textArea = model.getTextComponent();
+		Document document = textArea.getDocument();
+		boolean atEnd = textArea.getCaretPosition() == document.getLength();
+		try {
+			if (chunk.whole) {
+				char[] chars = chunk.text.toCharArray();
+				model.applyFromFile(DocumentPatch.between(document, new PieceTableDocument(chars, chars.length)),
+						chunk.stamp);
+			} else if (!chunk.text.isEmpty()) {
+				model.applyFromFile(DocumentPatch.insert(document.getLength(), chunk.text), chunk.stamp);
+			}
+			trim(model, document);
+			state.offset = chunk.offset;
+			state.leftover = chunk.leftover;
+			state.resync = false;
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+			state.resync = true;
+		}
+		if (atEnd) {
+			textArea.setCaretPosition(document.getLength());
+		}
+
+		if (state.again) {
+			state.again = false;
+			update(model);
+		}
+	}
+
+	/**
+	 * Removes the oldest lines of the document above the line limit.
+	 *
+	 * @param model
+	 *            is the followed model.
+	 * @param document
+	 *            is the document of the model.
+	 * @throws BadLocationException
+	 *             if the document can not be edited.
+	 */
+	private void trim(DefaultSingleDocumentModel model, Document document) throws BadLocationException {
+		Element root = document.getDefaultRootElement();
+		int lines = root.getElementCount();
+		if (lineLimit <= 0 || lines <= lineLimit) {
+			return;
+		}
+		int end = root.getElement(lines - lineLimit).getStartOffset();
+		model.applyFromFile(DocumentPatch.remove(0, end), model.getFileStamp());
+	}
+}
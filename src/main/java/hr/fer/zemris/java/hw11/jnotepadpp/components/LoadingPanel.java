@@ -0,0 +1,119 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.components;
+
+import java.awt.GridBagLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.local.ILocalizationListener;
+import hr.fer.zemris.java.hw11.jnotepadpp.local.ILocalizationProvider;
+
+/**
+ * The panel shown in a tab while its document is being loaded. Shows the
+ * loading progress and offers a button to cancel the loading.
+ *
+ * @author Marin
+ *
+ */
+public class LoadingPanel extends JPanel {
+
+	/**
+	 * Serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The label describing the loading.
+	 */
+	private JLabel label;
+	/**
+	 * The bar showing the progress.
+	 */
+	private JProgressBar progressBar;
+	/**
+	 * The button used to cancel the loading.
+	 */
+	private JButton cancelButton;
+	/**
+	 * The given {@link ILocalizationProvider}.
+	 */
+	private ILocalizationProvider lp;
+	/**
+	 * The listener updating the names when the language changes.
+	 */
+	private ILocalizationListener localizationListener;
+
+	/**
+	 * The {@link LoadingPanel} constructor.
+	 *
+	 * @param lp
+	 *            is the given {@link ILocalizationProvider}.
+	 * @param onCancel
+	 *            is run when the user cancels the loading.
+	 */
+	public LoadingPanel(ILocalizationProvider lp, Runnable onCancel) {
+		setLayout(new GridBagLayout());
+
+		JPanel content = new JPanel();
+		content.setLayout(new BoxLayout(content, BoxLayout.PAGE_AXIS));
+		label = new JLabel();
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
+		cancelButton = new JButton();
+		cancelButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				onCancel.run();
+			}
+		});
+
+		content.add(label);
+		content.add(progressBar);
+		content.add(cancelButton);
+		add(content);
+
+		this.lp = lp;
+		updateNames(lp);
+		localizationListener = new ILocalizationListener() {
+			@Override
+			public void localizationChanged() {
+				updateNames(lp);
+			}
+		};
+		lp.addLocalizationListener(localizationListener);
+	}
+
+	/**
+	 * Detaches the panel from the {@link ILocalizationProvider}, once the
+	 * loading is over.
+	 */
+	public void dispose() {
+		lp.removeLocalizationListener(localizationListener);
+	}
+
+	/**
+	 * Sets the shown progress.
+	 *
+	 * @param percent
+	 *            is the loaded percentage.
+	 */
+	public void setProgress(int percent) {
+		progressBar.setValue(percent);
+	}
+
+	/**
+	 * The method used to update the names, depending on the current language.
+	 *
+	 * @param lp
+	 *            is the {@link ILocalizationProvider}.
+	 */
+	private void updateNames(ILocalizationProvider lp) {
+		label.setText(lp.getString("loading"));
+		cancelButton.setText(lp.getString("cancel"));
+	}
+}
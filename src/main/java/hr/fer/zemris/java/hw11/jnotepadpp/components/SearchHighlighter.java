@@ -0,0 +1,250 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.components;
+
+import java.awt.Color;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
+import javax.swing.text.Highlighter;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher;
+
+/**
+ * Highlights all the matches of a {@link TextSearcher} in a text area. The
+ * document is searched on a background thread, and the matches of every
+ * searched chunk are highlighted together on the event dispatch thread, so
+ * the first matches show up right away even in a huge document. At most
+ * {@link #MAX_HIGHLIGHTS} matches are highlighted, as the highlighter paints
+ * all of them on every repaint.
+ * <p>
+ * The highlights move with the text when the document is edited, and the
+ * search is started over once the edits pause for {@link #RESTART_DELAY}
+ * milliseconds.
+ *
+ * @author Marin
+ *
+ */
+public class SearchHighlighter {
+
+	/**
+	 * The largest number of highlighted matches.
+	 */
+	public static final int MAX_HIGHLIGHTS = 10_000;
+	/**
+	 * The time in milliseconds after the last edit the search is started over.
+	 */
+	private static final int RESTART_DELAY = 300;
+	/**
+	 * The painter of the highlights.
+	 */
+	private static final Highlighter.HighlightPainter PAINTER = new DefaultHighlighter.DefaultHighlightPainter(
+			new Color(255, 225, 110));
+
+	/**
+	 * The text area.
+	 */
+	private final JTextArea textArea;
+	/**
+	 * The added highlights.
+	 */
+	private final List<Object> highlights = new ArrayList<>();
+	/**
+	 * The timer starting the search over after the edits.
+	 */
+	private final Timer restartTimer;
+	/**
+	 * The listener noticing the edits of the document.
+	 */
+	private final DocumentListener editListener = new DocumentListener() {
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			edited();
+		}
+
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			edited();
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+		}
+	};
+	/**
+	 * The listener clearing the highlights when the text area gets another
+	 * document.
+	 */
+	private final PropertyChangeListener documentListener = e -> clear();
+	/**
+	 * The searcher whose matches are highlighted, null if there is none.
+	 */
+	private TextSearcher searcher;
+	/**
+	 * The searched document.
+	 */
+	private Document document;
+	/**
+	 * The running search, null if there is none.
+	 */
+	private Search search;
+
+	/**
+	 * A search on the background thread.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private class Search {
+
+		/**
+		 * True once the search is cancelled, read by the background thread.
+		 */
+		private volatile boolean cancelled;
+
+		/**
+		 * Finds the matches and hands them over to the event dispatch thread
+		 * chunk by chunk.
+		 *
+		 * @param searcher
+		 *            is the searcher.
+		 * @param document
+		 *            is the searched document.
+		 */
+		private void run(TextSearcher searcher, Document document) {
+			int[] found = { 0 };
+			searcher.findAll(document, batch -> {
+				found[0] += batch.size();
+				if (found[0] >= MAX_HIGHLIGHTS) {
+					cancelled = true;
+				}
+				SwingUtilities.invokeLater(() -> highlight(this, batch));
+			}, () -> cancelled);
+		}
+	}
+
+	/**
+	 * The {@link SearchHighlighter} constructor.
+	 *
+	 * @param textArea
+	 *            is the text area whose matches are highlighted.
+	 */
+	public SearchHighlighter(JTextArea textArea) {
+		this.textArea = Objects.requireNonNull(textArea);
+		restartTimer = new Timer(RESTART_DELAY, e -> start());
+		restartTimer.setRepeats(false);
+	}
+
+	/**
+	 * Highlights the matches of the given searcher, replacing the highlights
+	 * of the previous one.
+	 *
+	 * @param searcher
+	 *            is the given searcher.
+	 */
+	public void highlight(TextSearcher searcher) {
+		clear();
+		this.searcher = Objects.requireNonNull(searcher);
+		document = textArea.getDocument();
+		document.addDocumentListener(editListener);
+		textArea.addPropertyChangeListener("document", documentListener);
+		start();
+	}
+
+	/**
+	 * Stops the search and removes the highlights.
+	 */
+	public void clear() {
+		if (searcher == null) {
+			return;
+		}
+		cancel();
+		restartTimer.stop();
+		removeHighlights();
+		document.removeDocumentListener(editListener);
+		textArea.removePropertyChangeListener("document", documentListener);
+		searcher = null;
+		document = null;
+	}
+
+	/**
+	 * Starts the search over.
+	 */
+	private void start() {
+		cancel();
+		removeHighlights();
+		Search started = new Search();
+		search = started;
+		TextSearcher searched = searcher;
+		Document searchedDocument = document;
+		ForkJoinPool.commonPool().execute(() -> started.run(searched, searchedDocument));
+	}
+
+	/**
+	 * Cancels the running search.
+	 */
+	private void cancel() {
+		if (search != null) {
+			search.cancelled = true;
+			search = null;
+		}
+	}
+
+	/**
+	 * Cancels the search after an edit, as the offsets it finds are out of
+	 * date, and starts it over once the edits pause.
+	 */
+	private void edited() {
+		cancel();
+		restartTimer.restart();
+	}
+
+	/**
+	 * Highlights the given matches, unless their search was cancelled.
+	 *
+	 * @param from
+	 *            is the search that found the matches.
+	 * @param batch
+	 *            are the matches.
+	 */
+	private void highlight(Search from, List<TextSearcher.Match> batch) {
+		if (from != search) {
+			return;
+		}
+		Highlighter highlighter = textArea.getHighlighter();
+		for (TextSearcher.Match match : batch) {
+			if (highlights.size() >= MAX_HIGHLIGHTS) {
+				return;
+			}
+			if (match.getStart() == match.getEnd()) {
+				continue;
+			}
+			try {
+				highlights.add(highlighter.addHighlight(match.getStart(), match.getEnd(), PAINTER));
+			} catch (BadLocationException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Removes the added highlights.
+	 */
+	private void removeHighlights() {
+		Highlighter highlighter = textArea.getHighlighter();
+		for (Object highlight : highlights) {
+			highlighter.removeHighlight(highlight);
+		}
+		highlights.clear();
+	}
+}
@@ -0,0 +1,345 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.components;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTree;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
+import javax.swing.tree.TreeSelectionModel;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.local.ILocalizationProvider;
+
+/**
+ * The panel listing the results of a search, grouped by the searched document
+ * or file. The results are added while the search runs, a group at a time, so
+ * the first ones can be opened before the search is over. Selecting a result
+ * opens it. At most {@link #MAX_RESULTS} results are listed, as the tree keeps
+ * a node for every one of them.
+ *
+ * @author Marin
+ *
+ */
+public class SearchResultsPanel extends JPanel {
+
+	/**
+	 * Serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+	/**
+	 * The largest number of listed results.
+	 */
+	public static final int MAX_RESULTS = 10_000;
+	/**
+	 * The preferred height of the panel.
+	 */
+	private static final int PREFERRED_HEIGHT = 200;
+
+	/**
+	 * A result of a search.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public static class Result {
+
+		/**
+		 * The number of the line holding the result, starting from one.
+		 */
+		private final int line;
+		/**
+		 * The text of the line around the result.
+		 */
+		private final String preview;
+		/**
+		 * Opens the result.
+		 */
+		private final Runnable opener;
+
+		/**
+		 * The {@link Result} constructor.
+		 *
+		 * @param line
+		 *            is the number of the line holding the result, starting
+		 *            from one.
+		 * @param preview
+		 *            is the text of the line around the result.
+		 * @param opener
+		 *            opens the result, called on the event dispatch thread.
+		 */
+		public Result(int line, String preview, Runnable opener) {
+			this.line = line;
+			this.preview = Objects.requireNonNull(preview);
+			this.opener = Objects.requireNonNull(opener);
+		}
+
+		@Override
+		public String toString() {
+			return line + ": " + preview;
+		}
+	}
+
+	/**
+	 * A group of results.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Group {
+
+		/**
+		 * The title of the group.
+		 */
+		private final String title;
+		/**
+		 * The place of the group among the others.
+		 */
+		private final int order;
+		/**
+		 * The node of the group.
+		 */
+		private final DefaultMutableTreeNode node = new DefaultMutableTreeNode(this);
+
+		/**
+		 * The {@link Group} constructor.
+		 *
+		 * @param title
+		 *            is the title of the group.
+		 * @param order
+		 *            is the place of the group among the others.
+		 */
+		private Group(String title, int order) {
+			this.title = title;
+			this.order = order;
+		}
+
+		@Override
+		public String toString() {
+			return title + " (" + node.getChildCount() + ")";
+		}
+	}
+
+	/**
+	 * The root of the tree.
+	 */
+	private final DefaultMutableTreeNode root = new DefaultMutableTreeNode();
+	/**
+	 * The model of the tree.
+	 */
+	private final DefaultTreeModel treeModel = new DefaultTreeModel(root);
+	/**
+	 * The tree listing the results.
+	 */
+	private final JTree tree = new JTree(treeModel);
+	/**
+	 * The groups by their keys.
+	 */
+	private final Map<Object, Group> groups = new HashMap<>();
+	/**
+	 * The label describing the search.
+	 */
+	private final JLabel statusLabel = new JLabel();
+	/**
+	 * The number of listed results.
+	 */
+	private int count;
+	/**
+	 * Called when the panel is closed, null if there is nothing to call.
+	 */
+	private Runnable closed;
+
+	/**
+	 * The {@link SearchResultsPanel} constructor. The panel is hidden until
+	 * the first search.
+	 *
+	 * @param flp
+	 *            is the given {@link ILocalizationProvider}.
+	 */
+	public SearchResultsPanel(ILocalizationProvider flp) {
+		super(new BorderLayout());
+		setBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, Color.GRAY));
+		setPreferredSize(new Dimension(0, PREFERRED_HEIGHT));
+
+		tree.setRootVisible(false);
+		tree.setShowsRootHandles(true);
+		tree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
+		tree.addTreeSelectionListener(e -> open(e.getNewLeadSelectionPath()));
+		tree.addMouseListener(new MouseAdapter() {
+
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				open(tree.getPathForLocation(e.getX(), e.getY()));
+			}
+		});
+
+		JButton closeButton = new JButton(flp.getString("close"));
+		flp.addLocalizationListener(() -> closeButton.setText(flp.getString("close")));
+		closeButton.addActionListener(e -> {
+			setVisible(false);
+			if (closed != null) {
+				closed.run();
+			}
+		});
+
+		JPanel header = new JPanel(new BorderLayout());
+		header.add(statusLabel, BorderLayout.CENTER);
+		header.add(closeButton, BorderLayout.LINE_END);
+		add(header, BorderLayout.PAGE_START);
+		add(new JScrollPane(tree), BorderLayout.CENTER);
+		setVisible(false);
+	}
+
+	/**
+	 * A setter for the action called when the user closes the panel.
+	 *
+	 * @param closed
+	 *            is the action, null if there is nothing to call.
+	 */
+	public void setClosedAction(Runnable closed) {
+		this.closed = closed;
+	}
+
+	/**
+	 * Removes all the results and shows the panel with the given status.
+	 *
+	 * @param status
+	 *            is the text describing the new search.
+	 */
+	public void start(String status) {
+		root.removeAllChildren();
+		treeModel.reload();
+		groups.clear();
+		count = 0;
+		statusLabel.setText(status);
+		setVisible(true);
+	}
+
+	/**
+	 * A setter for the text describing the search.
+	 *
+	 * @param status
+	 *            is the text.
+	 */
+	public void setStatus(String status) {
+		statusLabel.setText(status);
+	}
+
+	/**
+	 * Adds the given results to the end of the group with the given key. A
+	 * new group is placed before the groups with a greater order, and is
+	 * expanded.
+	 *
+	 * @param key
+	 *            is the key of the group.
+	 * @param title
+	 *            is the title of the group, used if the group is new.
+	 * @param order
+	 *            is the place of the group among the others, used if the
+	 *            group is new.
+	 * @param results
+	 *            are the results to add.
+	 * @return false if some of the results were not added because
+	 *         {@link #MAX_RESULTS} were listed, true otherwise.
+	 */
+	public boolean addResults(Object key, String title, int order, List<Result> results) {
+		int free = Math.min(results.size(), MAX_RESULTS - count);
+		if (free == 0) {
+			return results.isEmpty();
+		}
+		Group group = groups.get(key);
+		boolean added = group == null;
+		if (added) {
+			group = new Group(title, order);
+			groups.put(key, group);
+			int index = root.getChildCount();
+			while (index > 0 && groupAt(index - 1).order > order) {
+				index--;
+			}
+			root.insert(group.node, index);
+		}
+
+		int first = group.node.getChildCount();
+		for (int i = 0; i < free; ++i) {
+			group.node.add(new DefaultMutableTreeNode(results.get(i), false));
+		}
+		count += free;
+
+		if (added) {
+			treeModel.nodesWereInserted(root, new int[] { root.getIndex(group.node) });
+			tree.expandPath(new TreePath(group.node.getPath()));
+		} else {
+			int[] inserted = new int[free];
+			for (int i = 0; i < free; ++i) {
+				inserted[i] = first + i;
+			}
+			treeModel.nodesWereInserted(group.node, inserted);
+			treeModel.nodeChanged(group.node);
+		}
+		return free == results.size();
+	}
+
+	/**
+	 * Removes the group with the given key, if there is one.
+	 *
+	 * @param key
+	 *            is the key of the group.
+	 */
+	public void removeGroup(Object key) {
+		Group group = groups.remove(key);
+		if (group != null) {
+			count -= group.node.getChildCount();
+			treeModel.removeNodeFromParent(group.node);
+		}
+	}
+
+	/**
+	 * Returns the group at the given index of the tree.
+	 *
+	 * @param index
+	 *            is the given index.
+	 * @return the group.
+	 */
+	private Group groupAt(int index) {
+		return (Group) ((DefaultMutableTreeNode) root.getChildAt(index)).getUserObject();
+	}
+
+	/**
+	 * Opens the result at the given path of the tree, if there is one. A
+	 * result is opened when it is selected, and again when it is clicked
+	 * while already selected.
+	 *
+	 * @param path
+	 *            is the path, can be null.
+	 */
+	private void open(TreePath path) {
+		if (path == null) {
+			return;
+		}
+		Object selected = ((DefaultMutableTreeNode) path.getLastPathComponent()).getUserObject();
+		if (selected instanceof Result) {
+			((Result) selected).opener.run();
+		}
+	}
+
+	/**
+	 * A getter for the number of listed results.
+	 *
+	 * @return the number of results.
+	 */
+	public int getResultCount() {
+		return count;
+	}
+}
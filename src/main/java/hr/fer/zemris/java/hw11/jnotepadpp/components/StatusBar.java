@@ -17,12 +17,15 @@ import javax.swing.SwingConstants;
 import javax.swing.Timer;
 import javax.swing.event.CaretEvent;
 import javax.swing.event.CaretListener;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
-import javax.swing.text.Document;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
+import hr.fer.zemris.java.hw11.jnotepadpp.SingleDocumentModel;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.DocumentStatistics;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineIndex;
 import hr.fer.zemris.java.hw11.jnotepadpp.local.ILocalizationListener;
 import hr.fer.zemris.java.hw11.jnotepadpp.local.ILocalizationProvider;
+import hr.fer.zemris.java.hw11.jnotepadpp.viewer.ViewerDocumentModel;
 
 /**
  * The class that encapsulates all the logic behind the status bar.
@@ -45,6 +48,10 @@ public class StatusBar extends JPanel {
 	 * The 'length' word used in output, separated for the purpose of localization.
 	 */
 	private String length;
+	/**
+	 * The 'lines' word used in output, separated for the purpose of localization.
+	 */
+	private String lines;
 	/**
 	 * The 'line' word used in output, separated for the purpose of localization.
 	 */
@@ -57,11 +64,31 @@ public class StatusBar extends JPanel {
 	 * The 'selection' word used in output, separated for the purpose of localization.
 	 */
 	private String selection;
+	/**
+	 * The 'bytes' word used in output, separated for the purpose of localization.
+	 */
+	private String bytes;
+	/**
+	 * The 'offset' word used in output, separated for the purpose of localization.
+	 */
+	private String offset;
 	
 	/**
-	 * The currently opened text area.
+	 * The currently opened document model.
+	 */
+	private SingleDocumentModel currentModel;
+	/**
+	 * The statistics of the current model the listeners are attached to.
+	 */
+	private DocumentStatistics currentStatistics;
+	/**
+	 * The listener tracking the statistics of the current document.
 	 */
-	private JTextArea currentTextArea;
+	private ChangeListener lengthListener;
+	/**
+	 * The listener tracking the caret of the current document.
+	 */
+	private CaretListener caretListener;
 	/**
 	 * The label that outputs the current length.
 	 */
@@ -117,7 +144,7 @@ public class StatusBar extends JPanel {
 			@Override
 			public void localizationChanged() {
 				updateNames(flp);
-				updateDocument(currentTextArea);
+				updateDocument(currentModel);
 			}
 		});
 		
@@ -131,58 +158,69 @@ public class StatusBar extends JPanel {
 	 */
 	private void updateNames(ILocalizationProvider flp) {
 		length = flp.getString("length");
+		lines = flp.getString("lines");
 		line = flp.getString("ln");
 		column = flp.getString("col");
 		selection = flp.getString("sel");
+		bytes = flp.getString("bytes");
+		offset = flp.getString("offset");
 	}
 
 	/**
 	 * Updates the document area, whether the document is changed or the
 	 * localization is changed.
 	 * 
-	 * @param textArea
-	 *            is the given text area.
+	 * @param model
+	 *            is the given document model.
 	 */
-	public void updateDocument(JTextArea textArea) {
-		this.currentTextArea = textArea;
+	public void updateDocument(SingleDocumentModel model) {
+		detachListeners();
+		this.currentModel = model;
 		
-		if(textArea == null) {
-			lengthLabel.setText(length + COLON);
+		if(model == null) {
+			lengthLabel.setText(String.format("%s : %s : ", length, lines));
 			selectionLabel.setText(String.format("%s : %s : %s : ", line, column, selection));
 		} else {
-			Document document = currentTextArea.getDocument();
-			lengthLabel.setText(length + COLON + document.getLength());
-			document.addDocumentListener(new DocumentListener() {
-				
-				@Override
-				public void removeUpdate(DocumentEvent arg0) {
-					lengthLabel.setText(length + COLON + document.getLength());
-				}
+			JTextArea textArea = model.getTextComponent();
+			DocumentStatistics statistics = model.getStatistics();
+			currentStatistics = statistics;
+			updateLengthLabel(model);
+			lengthListener = new ChangeListener() {
 				
 				@Override
-				public void insertUpdate(DocumentEvent arg0) {
-					lengthLabel.setText(length + COLON + document.getLength());
+				public void stateChanged(ChangeEvent e) {
+					updateLengthLabel(model);
 				}
-				
-				@Override
-				public void changedUpdate(DocumentEvent arg0) {
-					lengthLabel.setText(length + COLON + document.getLength());
-				}
-			});
-			
+			};
+			statistics.addChangeListener(lengthListener);
 			
-			updateSelectionLabel(textArea);
-			currentTextArea.addCaretListener(new CaretListener() {
+			updateSelectionLabel(model);
+			caretListener = new CaretListener() {
 				
 				@Override
 				public void caretUpdate(CaretEvent r) {
-					updateSelectionLabel(textArea);
+					updateSelectionLabel(model);
 				}
-			});
-			currentTextArea.getCaret().setDot(currentTextArea.getCaretPosition());
+			};
+			textArea.addCaretListener(caretListener);
 		}
 	}
 	
+	/**
+	 * Detaches the listeners from the previously shown document.
+	 */
+	private void detachListeners() {
+		if (currentModel == null) {
+			return;
+		}
+		
+		currentStatistics.removeChangeListener(lengthListener);
+		currentModel.getTextComponent().removeCaretListener(caretListener);
+		currentStatistics = null;
+		lengthListener = null;
+		caretListener = null;
+	}
+	
 	/**
 	 * Stops the {@link Timer}.
 	 */
@@ -191,26 +229,54 @@ public class StatusBar extends JPanel {
 	}
 	
 	/**
-	 * An auxiliary method used to update the selection label.
+	 * An auxiliary method used to update the length label from the
+	 * statistics of the document, which are kept up to date as it changes.
+	 * The statistics of a viewed file cover only its visible lines, so the
+	 * size of the whole file is shown for it instead.
+	 * 
+	 * @param model
+	 *            is the current document model.
+	 */
+	private void updateLengthLabel(SingleDocumentModel model) {
+		if (model instanceof ViewerDocumentModel) {
+			lengthLabel.setText(String.format("%s : %d", bytes, ((ViewerDocumentModel) model).getFileSize()));
+			return;
+		}
+		
+		DocumentStatistics statistics = model.getStatistics();
+		lengthLabel.setText(String.format("%s : %d %s : %d",
+				length, statistics.getCharacterCount(),
+				lines, statistics.getLineCount()));
+	}
+	
+	/**
+	 * An auxiliary method used to update the selection label. The line and
+	 * the column are looked up in the {@link LineIndex} of the model, so the
+	 * text is never scanned. The line index of a viewed file covers only its
+	 * visible lines, so the offset of the caret in the file is shown for it
+	 * instead of the line.
 	 * 
-	 * @param textArea
-	 *            is the given textArea used to update..
+	 * @param model
+	 *            is the given model used to update.
 	 */
-	private void updateSelectionLabel(JTextArea textArea) {
+	private void updateSelectionLabel(SingleDocumentModel model) {
+		JTextArea textArea = model.getTextComponent();
 		int dotPosition = textArea.getCaret().getDot();
 		int markPosition = textArea.getCaret().getMark();
 		
-		String untilCaret = textArea.getText().substring(0, dotPosition);
-		int lineNumber = 1;
-		for (char c : untilCaret.toCharArray()) {
-			if (c == '\n') {
-				lineNumber++;
-			}
-		}
-		
-		int col = Math.abs(untilCaret.lastIndexOf('\n') - dotPosition);
+		LineIndex lineIndex = model.getLineIndex();
+		int col = lineIndex.getColumnOfOffset(dotPosition) + 1;
 		int sel = Math.abs(dotPosition - markPosition);
 		
+		if (model instanceof ViewerDocumentModel) {
+			selectionLabel.setText(String.format("%s : %d %s : %d %s : %d", 
+					offset, ((ViewerDocumentModel) model).getCaretOffset(), 
+					column, col,
+					selection, sel));
+			return;
+		}
+		
+		int lineNumber = lineIndex.getLineOfOffset(dotPosition) + 1;
 		selectionLabel.setText(String.format("%s : %d %s : %d %s : %d", 
 				line, lineNumber, 
 				column, col,
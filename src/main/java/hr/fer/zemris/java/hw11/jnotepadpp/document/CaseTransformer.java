@@ -0,0 +1,305 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+/**
+ * Changes the letter case of a range of a document in place. The range is
+ * read segment by segment, without copying it, and only the runs of
+ * characters that actually change are replaced, so upper casing text that is
+ * mostly upper case already touches only a few characters. All the
+ * replacements are reported to the undoable edit listeners of the document as
+ * one compound edit, so they are undone in one step.
+ * <p>
+ * ASCII characters are converted with arithmetic. The other characters are
+ * converted in runs by the rules of the given language, so a character may
+ * become more than one, like the German sharp s becoming "SS". The languages
+ * whose rules change ASCII letters, like Turkish, do not use the ASCII
+ * shortcut.
+ *
+ * @author Marin
+ *
+ */
+public class CaseTransformer {
+
+	/**
+	 * The languages whose case rules change ASCII letters.
+	 */
+	private static final List<String> SPECIAL_LANGUAGES = List.of("tr", "az", "lt");
+
+	/**
+	 * The case transformations.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public enum Mode {
+		/**
+		 * Changes the letters to upper case.
+		 */
+		UPPER,
+		/**
+		 * Changes the letters to lower case.
+		 */
+		LOWER,
+		/**
+		 * Changes the lower case letters to upper case and the other way
+		 * round.
+		 */
+		INVERT
+	}
+
+	/**
+	 * A run of changed characters.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Change {
+
+		/**
+		 * The start of the run.
+		 */
+		private final int offset;
+		/**
+		 * The length of the run.
+		 */
+		private int length;
+		/**
+		 * The text replacing the run.
+		 */
+		private final StringBuilder replacement = new StringBuilder();
+
+		/**
+		 * The {@link Change} constructor.
+		 *
+		 * @param offset
+		 *            is the start of the run.
+		 */
+		private Change(int offset) {
+			this.offset = offset;
+		}
+	}
+
+	/**
+	 * The case transformation.
+	 */
+	private final Mode mode;
+	/**
+	 * The language whose rules are used.
+	 */
+	private final Locale locale;
+	/**
+	 * True if the ASCII characters can be converted with arithmetic.
+	 */
+	private final boolean asciiShortcut;
+
+	/**
+	 * The {@link CaseTransformer} constructor.
+	 *
+	 * @param mode
+	 *            is the case transformation.
+	 * @param locale
+	 *            is the language whose rules are used.
+	 */
+	public CaseTransformer(Mode mode, Locale locale) {
+		this.mode = Objects.requireNonNull(mode);
+		this.locale = Objects.requireNonNull(locale);
+		this.asciiShortcut = !SPECIAL_LANGUAGES.contains(locale.getLanguage());
+	}
+
+	/**
+	 * Transforms the given range of the document.
+	 *
+	 * @param document
+	 *            is the document.
+	 * @param offset
+	 *            is the start of the range.
+	 * @param length
+	 *            is the length of the range.
+	 * @return the length of the range after the transformation.
+	 * @throws BadLocationException
+	 *             if the range is not inside the document.
+	 */
+	public int transform(AbstractDocument document, int offset, int length) throws BadLocationException {
+		List<Change> changes = findChanges(document, offset, length);
+		if (changes.isEmpty()) {
+			return length;
+		}
+
+		int newLength = length;
+		for (Change change : changes) {
+			newLength += change.replacement.length() - change.length;
+		}
+		EditGroup.apply(document, () -> {
+			for (int i = changes.size() - 1; i >= 0; --i) {
+				Change change = changes.get(i);
+				document.replace(change.offset, change.length, change.replacement.toString(), null);
+			}
+		});
+		return newLength;
+	}
+
+	/**
+	 * Reads the given range segment by segment and collects the runs of
+	 * characters changed by the transformation.
+	 *
+	 * @param document
+	 *            is the document.
+	 * @param offset
+	 *            is the start of the range.
+	 * @param length
+	 *            is the length of the range.
+	 * @return the changed runs, in order.
+	 * @throws BadLocationException
+	 *             if the range is not inside the document.
+	 */
+	private List<Change> findChanges(AbstractDocument document, int offset, int length) throws BadLocationException {
+		List<Change> changes = new ArrayList<>();
+		Segment segment = new Segment();
+		segment.setPartialReturn(true);
+		StringBuilder run = new StringBuilder();
+		int runStart = offset;
+
+		int position = offset;
+		int end = offset + length;
+		while (position < end) {
+			document.getText(position, end - position, segment);
+			for (int i = 0; i < segment.count; ++i) {
+				char c = segment.array[segment.offset + i];
+				int at = position + i;
+				if (c >= 0x80 || !asciiShortcut) {
+					if (run.length() == 0) {
+						runStart = at;
+					}
+					run.append(c);
+					continue;
+				}
+
+				if (run.length() > 0) {
+					recordRun(changes, runStart, run.toString(), convert(run.toString()));
+					run.setLength(0);
+				}
+				char converted = convertAscii(c);
+				if (converted != c) {
+					recordCharacter(changes, at, converted);
+				}
+			}
+			position += segment.count;
+		}
+		if (run.length() > 0) {
+			recordRun(changes, runStart, run.toString(), convert(run.toString()));
+		}
+		return changes;
+	}
+
+	/**
+	 * Records a converted run of characters if it changed.
+	 *
+	 * @param changes
+	 *            are the changes recorded so far.
+	 * @param offset
+	 *            is the start of the run.
+	 * @param original
+	 *            is the original run.
+	 * @param converted
+	 *            is the converted run.
+	 */
+	private static void recordRun(List<Change> changes, int offset, String original, String converted) {
+		if (original.equals(converted)) {
+			return;
+		}
+		Change change = extend(changes, offset);
+		change.length += original.length();
+		change.replacement.append(converted);
+	}
+
+	/**
+	 * Records one changed character.
+	 *
+	 * @param changes
+	 *            are the changes recorded so far.
+	 * @param offset
+	 *            is the offset of the character.
+	 * @param converted
+	 *            is the converted character.
+	 */
+	private static void recordCharacter(List<Change> changes, int offset, char converted) {
+		Change change = extend(changes, offset);
+		change.length++;
+		change.replacement.append(converted);
+	}
+
+	/**
+	 * Returns the last change if it ends at the given offset, or a new change
+	 * starting there.
+	 *
+	 * @param changes
+	 *            are the changes recorded so far.
+	 * @param offset
+	 *            is the given offset.
+	 * @return the change to extend.
+	 */
+	private static Change extend(List<Change> changes, int offset) {
+		if (!changes.isEmpty()) {
+			Change last = changes.get(changes.size() - 1);
+			if (last.offset + last.length == offset) {
+				return last;
+			}
+		}
+		Change change = new Change(offset);
+		changes.add(change);
+		return change;
+	}
+
+	/**
+	 * Converts an ASCII character with arithmetic.
+	 *
+	 * @param c
+	 *            is the character.
+	 * @return the converted character.
+	 */
+	private char convertAscii(char c) {
+		boolean lower = c >= 'a' && c <= 'z';
+		boolean upper = c >= 'A' && c <= 'Z';
+		if (lower && mode != Mode.LOWER) {
+			return (char) (c - 'a' + 'A');
+		}
+		if (upper && mode != Mode.UPPER) {
+			return (char) (c - 'A' + 'a');
+		}
+		return c;
+	}
+
+	/**
+	 * Converts a run of characters by the rules of the language.
+	 *
+	 * @param run
+	 *            is the run.
+	 * @return the converted run.
+	 */
+	private String convert(String run) {
+		switch (mode) {
+		case UPPER:
+			return run.toUpperCase(locale);
+		case LOWER:
+			return run.toLowerCase(locale);
+		default:
+			StringBuilder builder = new StringBuilder(run.length());
+			for (int i = 0; i < run.length();) {
+				int codePoint = run.codePointAt(i);
+				String character = new String(Character.toChars(codePoint));
+				builder.append(Character.isLowerCase(codePoint) ? character.toUpperCase(locale)
+						: character.toLowerCase(locale));
+				i += Character.charCount(codePoint);
+			}
+			return builder.toString();
+		}
+	}
+}
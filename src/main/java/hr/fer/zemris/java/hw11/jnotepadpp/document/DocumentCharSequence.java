@@ -0,0 +1,190 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.util.Objects;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * A {@link CharSequence} view of a range of a {@link Document} or of a
+ * {@link PieceTableContent.Snapshot}. The text is read through a
+ * {@link Segment} with partial return, so a piece table hands out its buffers
+ * piece by piece and nothing is copied. The last read segment is kept, so
+ * reading the characters in order asks the document only once per piece. The
+ * view of a document does not follow its changes, and is used while the
+ * document can not change, on the event dispatch thread or under its read
+ * lock. The view of a snapshot can be used on any thread.
+ *
+ * @author Marin
+ *
+ */
+public class DocumentCharSequence implements CharSequence {
+
+	/**
+	 * The text read by the view.
+	 *
+	 * @author Marin
+	 *
+	 */
+	@FunctionalInterface
+	private interface Source {
+
+		/**
+		 * Points the given segment to the text at the given offset, see
+		 * {@link Document#getText(int, int, Segment)}.
+		 *
+		 * @param offset
+		 *            is the offset of the text.
+		 * @param length
+		 *            is the wanted length of the text.
+		 * @param segment
+		 *            is the segment to fill.
+		 * @throws BadLocationException
+		 *             if the range is not inside the text.
+		 */
+		void getText(int offset, int length, Segment segment) throws BadLocationException;
+	}
+
+	/**
+	 * The viewed text.
+	 */
+	private final Source source;
+	/**
+	 * The offset of the range in the document.
+	 */
+	private final int start;
+	/**
+	 * The length of the range.
+	 */
+	private final int length;
+	/**
+	 * The last read segment.
+	 */
+	private final Segment segment = new Segment();
+	/**
+	 * The offset of the last read segment in the document.
+	 */
+	private int segmentStart;
+
+	/**
+	 * The {@link DocumentCharSequence} constructor. Views the whole document.
+	 *
+	 * @param document
+	 *            is the document.
+	 */
+	public DocumentCharSequence(Document document) {
+		this(document, 0, document.getLength());
+	}
+
+	/**
+	 * The {@link DocumentCharSequence} constructor.
+	 *
+	 * @param document
+	 *            is the document.
+	 * @param start
+	 *            is the offset of the range in the document.
+	 * @param length
+	 *            is the length of the range.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is not inside the document.
+	 */
+	public DocumentCharSequence(Document document, int start, int length) {
+		this(document::getText, start, length, document.getLength());
+	}
+
+	/**
+	 * The {@link DocumentCharSequence} constructor. Views the whole snapshot.
+	 *
+	 * @param snapshot
+	 *            is the snapshot.
+	 */
+	public DocumentCharSequence(PieceTableContent.Snapshot snapshot) {
+		this(snapshot::getChars, 0, snapshot.length(), snapshot.length());
+	}
+
+	/**
+	 * The {@link DocumentCharSequence} constructor.
+	 *
+	 * @param source
+	 *            is the viewed text.
+	 * @param start
+	 *            is the offset of the range in the text.
+	 * @param length
+	 *            is the length of the range.
+	 * @param total
+	 *            is the length of the text.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is not inside the text.
+	 */
+	private DocumentCharSequence(Source source, int start, int length, int total) {
+		this.source = Objects.requireNonNull(source);
+		if (start < 0 || length < 0 || start + length > total) {
+			throw new IndexOutOfBoundsException("Range " + start + "+" + length + " is not inside the document.");
+		}
+		this.start = start;
+		this.length = length;
+		segment.setPartialReturn(true);
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		int offset = start + index;
+		int relative = offset - segmentStart;
+		if (relative < 0 || relative >= segment.count) {
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException("Index " + index + " is not inside the length " + length + ".");
+			}
+			read(offset);
+			relative = 0;
+		}
+		return segment.array[segment.offset + relative];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || start > end || end > length) {
+			throw new IndexOutOfBoundsException("Range " + start + "-" + end + " is not inside the length " + length + ".");
+		}
+		return new DocumentCharSequence(source, this.start + start, end - start, this.start + length);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(length);
+		Segment part = new Segment();
+		part.setPartialReturn(true);
+		int offset = start;
+		try {
+			while (offset < start + length) {
+				source.getText(offset, start + length - offset, part);
+				builder.append(part.array, part.offset, part.count);
+				offset += part.count;
+			}
+		} catch (BadLocationException e) {
+			throw new IndexOutOfBoundsException(e.getMessage());
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Reads the segment starting at the given offset, up to the end of the
+	 * range.
+	 *
+	 * @param offset
+	 *            is the given offset in the document.
+	 */
+	private void read(int offset) {
+		try {
+			source.getText(offset, start + length - offset, segment);
+		} catch (BadLocationException e) {
+			throw new IndexOutOfBoundsException(e.getMessage());
+		}
+		segmentStart = offset;
+	}
+}
@@ -0,0 +1,323 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * Turns the text of one {@link Document} into the text of another with as
+ * small an edit as possible. The common start and the common end of the two
+ * texts are skipped, and only the range between them is replaced. So a file
+ * that grew at the end becomes one insert, and a line changed in the middle
+ * one remove and one insert, while the positions, the caret and the line
+ * elements of the rest of the document stay where they are. The patch can be
+ * computed against a {@link PieceTableContent.Snapshot} of the target, on
+ * another thread than the one editing it.
+ *
+ * @author Marin
+ *
+ */
+public class DocumentPatch {
+
+	/**
+	 * The number of characters compared at once from the end.
+	 */
+	private static final int CHUNK_SIZE = 4096;
+
+	/**
+	 * A text read in segments, either a document or a snapshot.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private interface Text {
+
+		/**
+		 * Returns the length of the text.
+		 *
+		 * @return the length.
+		 */
+		int length();
+
+		/**
+		 * Points the given segment to the text at the given offset. Less than
+		 * the wanted length can be returned.
+		 *
+		 * @param offset
+		 *            is the offset of the text.
+		 * @param length
+		 *            is the wanted length of the text.
+		 * @param segment
+		 *            is the segment to fill.
+		 * @throws BadLocationException
+		 *             if the range is not inside the text.
+		 */
+		void getText(int offset, int length, Segment segment) throws BadLocationException;
+	}
+
+	/**
+	 * The offset of the first differing character.
+	 */
+	private final int start;
+	/**
+	 * The length of the replaced range of the target.
+	 */
+	private final int removed;
+	/**
+	 * The text inserted instead of the replaced range.
+	 */
+	private final String inserted;
+
+	/**
+	 * The {@link DocumentPatch} constructor.
+	 *
+	 * @param start
+	 *            is the offset of the first differing character.
+	 * @param removed
+	 *            is the length of the replaced range of the target.
+	 * @param inserted
+	 *            is the inserted text.
+	 */
+	private DocumentPatch(int start, int removed, String inserted) {
+		this.start = start;
+		this.removed = removed;
+		this.inserted = inserted;
+	}
+
+	/**
+	 * Creates a patch inserting the given text.
+	 *
+	 * @param offset
+	 *            is the insert offset.
+	 * @param text
+	 *            is the inserted text.
+	 * @return the patch.
+	 */
+	public static DocumentPatch insert(int offset, String text) {
+		return new DocumentPatch(offset, 0, text);
+	}
+
+	/**
+	 * Creates a patch removing the given range.
+	 *
+	 * @param offset
+	 *            is the start of the range.
+	 * @param length
+	 *            is the length of the range.
+	 * @return the patch.
+	 */
+	public static DocumentPatch remove(int offset, int length) {
+		return new DocumentPatch(offset, length, "");
+	}
+
+	/**
+	 * Computes the patch turning the target text into the source text.
+	 *
+	 * @param target
+	 *            is the document to change.
+	 * @param source
+	 *            is the document with the wanted text.
+	 * @return the patch.
+	 * @throws BadLocationException
+	 *             if a document changes while it is read.
+	 */
+	public static DocumentPatch between(Document target, Document source) throws BadLocationException {
+		return between(text(target), source);
+	}
+
+	/**
+	 * Computes the patch turning the text of the given snapshot into the
+	 * source text. The patch applies to the document the snapshot was taken
+	 * of, as long as the document does not change in the meantime.
+	 *
+	 * @param target
+	 *            is the snapshot of the document to change.
+	 * @param source
+	 *            is the document with the wanted text.
+	 * @return the patch.
+	 * @throws BadLocationException
+	 *             if the source document changes while it is read.
+	 */
+	public static DocumentPatch between(PieceTableContent.Snapshot target, Document source)
+			throws BadLocationException {
+		return between(new Text() {
+
+			@Override
+			public int length() {
+				return target.length();
+			}
+
+			@Override
+			public void getText(int offset, int length, Segment segment) throws BadLocationException {
+				target.getChars(offset, length, segment);
+			}
+		}, source);
+	}
+
+	/**
+	 * Computes the patch turning the target text into the source text.
+	 *
+	 * @param target
+	 *            is the text to change.
+	 * @param source
+	 *            is the document with the wanted text.
+	 * @return the patch.
+	 * @throws BadLocationException
+	 *             if a text changes while it is read.
+	 */
+	private static DocumentPatch between(Text target, Document source) throws BadLocationException {
+		int targetLength = target.length();
+		int sourceLength = source.getLength();
+		int limit = Math.min(targetLength, sourceLength);
+
+		Text text = text(source);
+		int prefix = commonPrefix(target, text, limit);
+		int suffix = commonSuffix(target, text, limit - prefix);
+		int removed = targetLength - prefix - suffix;
+		String inserted = source.getText(prefix, sourceLength - prefix - suffix);
+		return new DocumentPatch(prefix, removed, inserted);
+	}
+
+	/**
+	 * Returns the text of the given document, read with partial returns.
+	 *
+	 * @param document
+	 *            is the given document.
+	 * @return the text.
+	 */
+	private static Text text(Document document) {
+		return new Text() {
+
+			@Override
+			public int length() {
+				return document.getLength();
+			}
+
+			@Override
+			public void getText(int offset, int length, Segment segment) throws BadLocationException {
+				segment.setPartialReturn(true);
+				document.getText(offset, length, segment);
+			}
+		};
+	}
+
+	/**
+	 * Checks if the patch changes nothing.
+	 *
+	 * @return true if it does not, false otherwise.
+	 */
+	public boolean isEmpty() {
+		return removed == 0 && inserted.isEmpty();
+	}
+
+	/**
+	 * Applies the patch to the target it was computed for.
+	 *
+	 * @param target
+	 *            is the target document.
+	 * @throws BadLocationException
+	 *             if the target changed since the patch was computed.
+	 */
+	public void apply(Document target) throws BadLocationException {
+		if (removed > 0) {
+			target.remove(start, removed);
+		}
+		if (!inserted.isEmpty()) {
+			target.insertString(start, inserted, null);
+		}
+	}
+
+	/**
+	 * Returns the length of the common start of the two texts.
+	 *
+	 * @param first
+	 *            is the first text.
+	 * @param second
+	 *            is the second text.
+	 * @param limit
+	 *            is the largest possible length.
+	 * @return the length.
+	 * @throws BadLocationException
+	 *             if a text changes while it is read.
+	 */
+	private static int commonPrefix(Text first, Text second, int limit) throws BadLocationException {
+		Segment a = new Segment();
+		Segment b = new Segment();
+
+		int offset = 0;
+		while (offset < limit) {
+			first.getText(offset, limit - offset, a);
+			second.getText(offset, a.count, b);
+			int count = b.count;
+			for (int i = 0; i < count; ++i) {
+				if (a.array[a.offset + i] != b.array[b.offset + i]) {
+					return offset + i;
+				}
+			}
+			offset += count;
+		}
+		return limit;
+	}
+
+	/**
+	 * Returns the length of the common end of the two texts.
+	 *
+	 * @param first
+	 *            is the first text.
+	 * @param second
+	 *            is the second text.
+	 * @param limit
+	 *            is the largest possible length.
+	 * @return the length.
+	 * @throws BadLocationException
+	 *             if a text changes while it is read.
+	 */
+	private static int commonSuffix(Text first, Text second, int limit) throws BadLocationException {
+		char[] a = new char[CHUNK_SIZE];
+		char[] b = new char[CHUNK_SIZE];
+		Segment segment = new Segment();
+		int firstLength = first.length();
+		int secondLength = second.length();
+
+		int matched = 0;
+		while (matched < limit) {
+			int count = Math.min(CHUNK_SIZE, limit - matched);
+			copy(first, firstLength - matched - count, count, a, segment);
+			copy(second, secondLength - matched - count, count, b, segment);
+			for (int i = count - 1; i >= 0; --i) {
+				if (a[i] != b[i]) {
+					return matched + count - 1 - i;
+				}
+			}
+			matched += count;
+		}
+		return limit;
+	}
+
+	/**
+	 * Copies the given range of the given text to the start of the given
+	 * array.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @param offset
+	 *            is the start of the range.
+	 * @param count
+	 *            is the length of the range.
+	 * @param into
+	 *            is the array.
+	 * @param segment
+	 *            is the segment used for reading.
+	 * @throws BadLocationException
+	 *             if the text changes while it is read.
+	 */
+	private static void copy(Text text, int offset, int count, char[] into, Segment segment)
+			throws BadLocationException {
+		int copied = 0;
+		while (copied < count) {
+			text.getText(offset + copied, count - copied, segment);
+			System.arraycopy(segment.array, segment.offset, into, copied, segment.count);
+			copied += segment.count;
+		}
+	}
+}
@@ -0,0 +1,326 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * The character, non-blank and line counts of a {@link Document}, kept up to
+ * date incrementally as a {@link DocumentListener}. Only the inserted or
+ * removed text is scanned on an edit, so reading the counts costs nothing.
+ * <p>
+ * The text of a removal is gone by the time the document listeners are told
+ * about it, so for a {@link PieceTableDocument} the removed range is scanned
+ * just before it is removed, through a
+ * {@link PieceTableContent.RemovalListener}. Other documents are scanned
+ * again whole on every removal. The first scan of a piece table document is
+ * done over a snapshot, split between the threads of the common
+ * {@link ForkJoinPool}.
+ *
+ * @author Marin
+ *
+ */
+public class DocumentStatistics implements DocumentListener, PieceTableContent.RemovalListener {
+
+	/**
+	 * The largest number of characters counted by one fork/join task.
+	 */
+	private static final int TASK_SIZE = 256 * 1024;
+
+	/**
+	 * The counts of a range of text.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Counts {
+
+		/**
+		 * The number of line breaks.
+		 */
+		private int breaks;
+		/**
+		 * The number of whitespace characters.
+		 */
+		private int blanks;
+
+		/**
+		 * Adds the counts of the given characters.
+		 *
+		 * @param array
+		 *            is the array holding the characters.
+		 * @param offset
+		 *            is the offset of the first character.
+		 * @param count
+		 *            is the number of characters.
+		 */
+		private void add(char[] array, int offset, int count) {
+			for (int i = offset, end = offset + count; i < end; ++i) {
+				char c = array[i];
+				if (Character.isWhitespace(c)) {
+					blanks++;
+					if (c == '\n') {
+						breaks++;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts a range of a snapshot, splitting it in halves until they are
+	 * small enough.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class CountTask extends RecursiveTask<Counts> {
+
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The counted snapshot.
+		 */
+		private final PieceTableContent.Snapshot snapshot;
+		/**
+		 * The start of the range.
+		 */
+		private final int start;
+		/**
+		 * The end of the range.
+		 */
+		private final int end;
+
+		/**
+		 * The {@link CountTask} constructor.
+		 *
+		 * @param snapshot
+		 *            is the counted snapshot.
+		 * @param start
+		 *            is the start of the range.
+		 * @param end
+		 *            is the end of the range.
+		 */
+		private CountTask(PieceTableContent.Snapshot snapshot, int start, int end) {
+			this.snapshot = snapshot;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Counts compute() {
+			if (end - start > TASK_SIZE) {
+				int middle = (start + end) >>> 1;
+				CountTask left = new CountTask(snapshot, start, middle);
+				left.fork();
+				Counts counts = new CountTask(snapshot, middle, end).compute();
+				Counts other = left.join();
+				counts.breaks += other.breaks;
+				counts.blanks += other.blanks;
+				return counts;
+			}
+
+			Counts counts = new Counts();
+			Segment segment = new Segment();
+			try {
+				int position = start;
+				while (position < end) {
+					snapshot.getChars(position, end - position, segment);
+					counts.add(segment.array, segment.offset, segment.count);
+					position += segment.count;
+				}
+			} catch (BadLocationException e) {
+				e.printStackTrace();
+			}
+			return counts;
+		}
+	}
+
+	/**
+	 * The counted document.
+	 */
+	private Document document;
+	/**
+	 * The number of line breaks in the document.
+	 */
+	private int breaks;
+	/**
+	 * The number of whitespace characters in the document.
+	 */
+	private int blanks;
+	/**
+	 * True if the last removal was already counted before it happened.
+	 */
+	private boolean removalCounted;
+	/**
+	 * The segment used to read the changed text.
+	 */
+	private Segment segment;
+	/**
+	 * The listeners told about the changes of the counts.
+	 */
+	private List<ChangeListener> listeners = new ArrayList<>();
+
+	/**
+	 * The {@link DocumentStatistics} constructor. Counts the whole document
+	 * and starts listening to its changes.
+	 *
+	 * @param document
+	 *            is the document to count.
+	 */
+	public DocumentStatistics(Document document) {
+		this.document = document;
+		segment = new Segment();
+		segment.setPartialReturn(true);
+
+		Counts counts;
+		if (document instanceof PieceTableDocument) {
+			PieceTableContent.Snapshot snapshot = ((PieceTableDocument) document).snapshot();
+			counts = ForkJoinPool.commonPool().invoke(new CountTask(snapshot, 0, snapshot.length()));
+			((PieceTableDocument) document).addRemovalListener(this);
+		} else {
+			counts = count(0, document.getLength());
+		}
+		breaks = counts.breaks;
+		blanks = counts.blanks;
+		document.addDocumentListener(this);
+	}
+
+	/**
+	 * Stops listening to the document changes.
+	 */
+	public void dispose() {
+		document.removeDocumentListener(this);
+		if (document instanceof PieceTableDocument) {
+			((PieceTableDocument) document).removeRemovalListener(this);
+		}
+	}
+
+	/**
+	 * Adds a listener told about every change of the counts, after the
+	 * counts are updated.
+	 *
+	 * @param listener
+	 *            is the listener to add.
+	 */
+	public void addChangeListener(ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes the given change listener.
+	 *
+	 * @param listener
+	 *            is the listener to remove.
+	 */
+	public void removeChangeListener(ChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Returns the number of characters in the document.
+	 *
+	 * @return the number of characters.
+	 */
+	public int getCharacterCount() {
+		return document.getLength();
+	}
+
+	/**
+	 * Returns the number of characters in the document that are not
+	 * whitespace.
+	 *
+	 * @return the number of non-blank characters.
+	 */
+	public int getNonBlankCount() {
+		return document.getLength() - blanks;
+	}
+
+	/**
+	 * Returns the number of lines in the document, one more than the number
+	 * of line breaks.
+	 *
+	 * @return the number of lines.
+	 */
+	public int getLineCount() {
+		return breaks + 1;
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		Counts counts = count(e.getOffset(), e.getLength());
+		breaks += counts.breaks;
+		blanks += counts.blanks;
+		fireStateChanged();
+	}
+
+	@Override
+	public void textRemoving(int where, int nitems) {
+		Counts counts = count(where, nitems);
+		breaks -= counts.breaks;
+		blanks -= counts.blanks;
+		removalCounted = true;
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		if (!removalCounted) {
+			Counts counts = count(0, document.getLength());
+			breaks = counts.breaks;
+			blanks = counts.blanks;
+		}
+		removalCounted = false;
+		fireStateChanged();
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	/**
+	 * Counts the given range of the document.
+	 *
+	 * @param offset
+	 *            is the start of the range.
+	 * @param count
+	 *            is the length of the range.
+	 * @return the counts.
+	 */
+	private Counts count(int offset, int count) {
+		Counts counts = new Counts();
+		try {
+			int position = offset;
+			int end = offset + count;
+			while (position < end) {
+				document.getText(position, end - position, segment);
+				counts.add(segment.array, segment.offset, segment.count);
+				position += segment.count;
+			}
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+		}
+		return counts;
+	}
+
+	/**
+	 * Tells the listeners the counts changed.
+	 */
+	private void fireStateChanged() {
+		ChangeEvent event = new ChangeEvent(this);
+		for (ChangeListener listener : new ArrayList<>(listeners)) {
+			listener.stateChanged(event);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.undo.CompoundEdit;
+
+/**
+ * Reports a group of edits of a document to its undoable edit listeners as
+ * one compound edit, so they are undone in one step. The listeners are taken
+ * off the document while the edits are made, and get one event at the end.
+ *
+ * @author Marin
+ *
+ */
+final class EditGroup {
+
+	/**
+	 * The edits of a group.
+	 *
+	 * @author Marin
+	 *
+	 */
+	@FunctionalInterface
+	interface Edits {
+
+		/**
+		 * Makes the edits.
+		 *
+		 * @throws BadLocationException
+		 *             if an edit is not inside the document.
+		 */
+		void apply() throws BadLocationException;
+	}
+
+	/**
+	 * Prevents creating instances.
+	 */
+	private EditGroup() {
+	}
+
+	/**
+	 * Makes the given edits of the document as one compound edit. The edits
+	 * made before a failure are still reported.
+	 *
+	 * @param document
+	 *            is the document.
+	 * @param edits
+	 *            are the edits.
+	 * @throws BadLocationException
+	 *             if an edit is not inside the document.
+	 */
+	static void apply(AbstractDocument document, Edits edits) throws BadLocationException {
+		UndoableEditListener[] listeners = document.getUndoableEditListeners();
+		for (UndoableEditListener listener : listeners) {
+			document.removeUndoableEditListener(listener);
+		}
+		CompoundEdit compound = new CompoundEdit();
+		UndoableEditListener collector = e -> compound.addEdit(e.getEdit());
+		document.addUndoableEditListener(collector);
+
+		try {
+			edits.apply();
+		} finally {
+			document.removeUndoableEditListener(collector);
+			for (UndoableEditListener listener : listeners) {
+				document.addUndoableEditListener(listener);
+			}
+			compound.end();
+			UndoableEditEvent event = new UndoableEditEvent(document, compound);
+			for (UndoableEditListener listener : listeners) {
+				listener.undoableEditHappened(event);
+			}
+		}
+	}
+}
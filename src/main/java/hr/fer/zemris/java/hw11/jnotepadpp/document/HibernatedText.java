@@ -0,0 +1,370 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * The text of a hibernated document. The characters are compressed with a
+ * {@link Deflater}, and if the compressed text is still big it is spilled to a
+ * temporary file, so the heap only keeps a few bytes for the document until it
+ * is restored.
+ *
+ * @author Marin
+ *
+ */
+public class HibernatedText {
+
+	/**
+	 * The compressed size in bytes from which the text is spilled to a file.
+	 */
+	public static final int SPILL_THRESHOLD = 1024 * 1024;
+
+	/**
+	 * The number of characters compressed at once.
+	 */
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	/**
+	 * The number of characters in the text.
+	 */
+	private final int length;
+	/**
+	 * The compressed text, null if the text is spilled.
+	 */
+	private volatile byte[] compressed;
+	/**
+	 * The file holding the compressed text, null if the text is kept in memory.
+	 */
+	private volatile Path spill;
+
+	/**
+	 * The {@link HibernatedText} constructor.
+	 *
+	 * @param length
+	 *            is the number of characters in the text.
+	 * @param compressed
+	 *            is the compressed text.
+	 * @param spill
+	 *            is the file holding the compressed text.
+	 */
+	private HibernatedText(int length, byte[] compressed, Path spill) {
+		this.length = length;
+		this.compressed = compressed;
+		this.spill = spill;
+	}
+
+	/**
+	 * Compresses the whole text of the given document.
+	 *
+	 * @param document
+	 *            is the given document.
+	 * @return the compressed text.
+	 * @throws IOException
+	 *             if the text can not be spilled to a file.
+	 */
+	public static HibernatedText store(Document document) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int[] length = new int[1];
+		Runnable compressor = () -> length[0] = compress(document.getLength(), document::getText, bytes);
+		if (document instanceof AbstractDocument) {
+			((AbstractDocument) document).render(compressor);
+		} else {
+			compressor.run();
+		}
+		return keep(length[0], bytes);
+	}
+
+	/**
+	 * Compresses the whole text of the given snapshot. The snapshot is never
+	 * modified, so it can be compressed on any thread, without locking the
+	 * document it was taken from.
+	 *
+	 * @param snapshot
+	 *            is the given snapshot.
+	 * @return the compressed text.
+	 * @throws IOException
+	 *             if the text can not be spilled to a file.
+	 */
+	public static HibernatedText store(PieceTableContent.Snapshot snapshot) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int length = compress(snapshot.length(), snapshot::getChars, bytes);
+		return keep(length, bytes);
+	}
+
+	/**
+	 * Keeps the given compressed text in memory, or spills it to a file if
+	 * it is big.
+	 *
+	 * @param length
+	 *            is the number of compressed characters.
+	 * @param bytes
+	 *            holds the compressed text.
+	 * @return the compressed text.
+	 * @throws IOException
+	 *             if the text can not be spilled to a file.
+	 */
+	private static HibernatedText keep(int length, ByteArrayOutputStream bytes) throws IOException {
+		if (bytes.size() < SPILL_THRESHOLD) {
+			return new HibernatedText(length, bytes.toByteArray(), null);
+		}
+
+		Path spill = Files.createTempFile("jnotepadpp", ".hibernated");
+		try (OutputStream os = Files.newOutputStream(spill)) {
+			bytes.writeTo(os);
+		} catch (IOException e) {
+			Files.deleteIfExists(spill);
+			throw e;
+		}
+		spill.toFile().deleteOnExit();
+		return new HibernatedText(length, null, spill);
+	}
+
+	/**
+	 * Reads the compressed text written by {@link #writeTo(DataOutput)}. The
+	 * text is not decompressed, and is spilled to a file if it is big.
+	 *
+	 * @param in
+	 *            is the input to read from.
+	 * @return the read text.
+	 * @throws IOException
+	 *             if reading fails.
+	 */
+	public static HibernatedText readFrom(DataInput in) throws IOException {
+		int length = in.readInt();
+		int size = in.readInt();
+		if (length < 0 || size < 0) {
+			throw new IOException("Invalid hibernated text.");
+		}
+
+		if (size < SPILL_THRESHOLD) {
+			byte[] compressed = new byte[size];
+			in.readFully(compressed);
+			return new HibernatedText(length, compressed, null);
+		}
+
+		Path spill = Files.createTempFile("jnotepadpp", ".hibernated");
+		try (OutputStream os = Files.newOutputStream(spill)) {
+			byte[] buffer = new byte[CHUNK_SIZE * 2];
+			for (int remaining = size; remaining > 0;) {
+				int count = Math.min(remaining, buffer.length);
+				in.readFully(buffer, 0, count);
+				os.write(buffer, 0, count);
+				remaining -= count;
+			}
+		} catch (IOException e) {
+			Files.deleteIfExists(spill);
+			throw e;
+		}
+		spill.toFile().deleteOnExit();
+		return new HibernatedText(length, null, spill);
+	}
+
+	/**
+	 * Writes the compressed text, without decompressing it.
+	 *
+	 * @param out
+	 *            is the output to write to.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(length);
+		if (spill == null) {
+			out.writeInt(compressed.length);
+			out.write(compressed);
+			return;
+		}
+
+		out.writeInt((int) Files.size(spill));
+		try (InputStream is = Files.newInputStream(spill)) {
+			byte[] buffer = new byte[CHUNK_SIZE * 2];
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		}
+	}
+
+	/**
+	 * Creates an independent copy of the text, which stays valid after this
+	 * text is restored or released.
+	 *
+	 * @return the copy.
+	 * @throws IOException
+	 *             if the spill file can not be copied.
+	 */
+	public HibernatedText copy() throws IOException {
+		if (spill == null) {
+			return new HibernatedText(length, compressed, null);
+		}
+
+		Path copy = Files.createTempFile("jnotepadpp", ".hibernated");
+		Files.copy(spill, copy, StandardCopyOption.REPLACE_EXISTING);
+		copy.toFile().deleteOnExit();
+		return new HibernatedText(length, null, copy);
+	}
+
+	/**
+	 * Decompresses the text into a new document. The stored text is released
+	 * afterwards, so the text can be restored only once.
+	 *
+	 * @return the restored document.
+	 * @throws IOException
+	 *             if the spilled text can not be read.
+	 */
+	public PieceTableDocument restore() throws IOException {
+		PieceTableDocument document = read();
+		dispose();
+		return document;
+	}
+
+	/**
+	 * Decompresses the text into a new document, keeping the stored text. The
+	 * text can be read on any thread; if it is released in the meantime, the
+	 * reading fails.
+	 *
+	 * @return the decompressed document.
+	 * @throws IOException
+	 *             if the text is released or the spilled text can not be read.
+	 */
+	public PieceTableDocument read() throws IOException {
+		byte[] compressed = this.compressed;
+		Path spill = this.spill;
+		if (compressed == null && spill == null) {
+			throw new IOException("Hibernated text is released.");
+		}
+
+		char[] text = new char[length];
+		try (InputStream is = new InflaterInputStream(
+				spill == null ? new ByteArrayInputStream(compressed) : Files.newInputStream(spill))) {
+			byte[] buffer = new byte[CHUNK_SIZE * 2];
+			int position = 0;
+			int pending = 0;
+			while (position < length) {
+				int read = is.read(buffer, pending, buffer.length - pending);
+				if (read == -1) {
+					throw new IOException("Hibernated text is truncated.");
+				}
+				pending += read;
+				int i = 0;
+				for (; i + 1 < pending; i += 2) {
+					text[position++] = (char) ((buffer[i] & 0xFF) << 8 | buffer[i + 1] & 0xFF);
+				}
+				if (i < pending) {
+					buffer[0] = buffer[i];
+				}
+				pending -= i;
+			}
+		}
+		return new PieceTableDocument(text, length);
+	}
+
+	/**
+	 * Releases the stored text, deleting the spill file if there is one.
+	 */
+	public void dispose() {
+		compressed = null;
+		if (spill != null) {
+			try {
+				Files.deleteIfExists(spill);
+			} catch (IOException ignorable) {
+			}
+			spill = null;
+		}
+	}
+
+	/**
+	 * A getter for the number of characters in the text.
+	 *
+	 * @return the length.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Checks if the text is spilled to a file.
+	 *
+	 * @return true if it is, false if it is kept in memory.
+	 */
+	public boolean isSpilled() {
+		return spill != null;
+	}
+
+	/**
+	 * Compresses a text, read in chunks through a {@link Segment}.
+	 *
+	 * @param length
+	 *            is the length of the text.
+	 * @param text
+	 *            reads the chunks of the text.
+	 * @param bytes
+	 *            is the stream receiving the compressed text.
+	 * @return the number of compressed characters.
+	 */
+	private static int compress(int length, Source text, OutputStream bytes) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		Segment segment = new Segment();
+		segment.setPartialReturn(true);
+		byte[] buffer = new byte[CHUNK_SIZE * 2];
+
+		try (DeflaterOutputStream os = new DeflaterOutputStream(bytes, deflater, buffer.length)) {
+			int offset = 0;
+			while (offset < length) {
+				text.getText(offset, Math.min(CHUNK_SIZE, length - offset), segment);
+				int count = 0;
+				for (int i = segment.offset, end = segment.offset + segment.count; i < end; ++i) {
+					char c = segment.array[i];
+					buffer[count++] = (byte) (c >>> 8);
+					buffer[count++] = (byte) c;
+				}
+				os.write(buffer, 0, count);
+				offset += segment.count;
+			}
+		} catch (IOException | BadLocationException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			deflater.end();
+		}
+		return length;
+	}
+
+	/**
+	 * A text read in chunks, like the text of a {@link Document}.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private interface Source {
+		/**
+		 * Points the given segment to the text at the given offset, at most
+		 * the given length of it.
+		 *
+		 * @param offset
+		 *            is the offset of the text.
+		 * @param length
+		 *            is the wanted length of the text.
+		 * @param segment
+		 *            is the segment to fill.
+		 * @throws BadLocationException
+		 *             if the range is not in the text.
+		 */
+		void getText(int offset, int length, Segment segment) throws BadLocationException;
+	}
+}
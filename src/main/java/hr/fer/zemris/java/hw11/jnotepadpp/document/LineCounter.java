@@ -0,0 +1,135 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.util.Objects;
+
+/**
+ * Finds the lines of increasing offsets of a text, like the matches of a
+ * search are found. The characters are counted only once, from the last
+ * located offset to the next one, so locating all the matches of a text costs
+ * no more than reading it up to the last match.
+ *
+ * @author Marin
+ *
+ */
+public class LineCounter {
+
+	/**
+	 * The largest number of characters of a line shown around a match.
+	 */
+	public static final int PREVIEW_LENGTH = 160;
+	/**
+	 * The number of characters of a line shown before a match.
+	 */
+	private static final int PREVIEW_BEFORE = 40;
+
+	/**
+	 * The text.
+	 */
+	private final CharSequence text;
+	/**
+	 * The offset the characters are counted up to.
+	 */
+	private int counted;
+	/**
+	 * The number of the line holding the counted offset, starting from one.
+	 */
+	private int line = 1;
+	/**
+	 * The start of the line holding the counted offset.
+	 */
+	private int lineStart;
+
+	/**
+	 * The {@link LineCounter} constructor.
+	 *
+	 * @param text
+	 *            is the text.
+	 */
+	public LineCounter(CharSequence text) {
+		this.text = Objects.requireNonNull(text);
+	}
+
+	/**
+	 * Moves to the given offset.
+	 *
+	 * @param offset
+	 *            is the given offset, not before the last one.
+	 * @throws IllegalArgumentException
+	 *             if the offset is before the last one.
+	 */
+	public void moveTo(int offset) {
+		if (offset < counted) {
+			throw new IllegalArgumentException("Offset " + offset + " is before " + counted + ".");
+		}
+		for (int i = counted; i < offset; ++i) {
+			if (text.charAt(i) == '\n') {
+				line++;
+				lineStart = i + 1;
+			}
+		}
+		counted = offset;
+	}
+
+	/**
+	 * A getter for the number of the line holding the current offset,
+	 * starting from one.
+	 *
+	 * @return the line number.
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * A getter for the start of the line holding the current offset.
+	 *
+	 * @return the start of the line.
+	 */
+	public int getLineStart() {
+		return lineStart;
+	}
+
+	/**
+	 * Returns the text of the line around the given match at the current
+	 * offset, see {@link #preview(CharSequence, int, int, int)}.
+	 *
+	 * @param end
+	 *            is the end of the match.
+	 * @return the text of the line.
+	 */
+	public String preview(int end) {
+		return preview(text, lineStart, counted, end);
+	}
+
+	/**
+	 * Returns the text of the line around the given match, at most
+	 * {@link #PREVIEW_LENGTH} characters of it. The line breaks inside the
+	 * match and the tabs are shown as spaces.
+	 *
+	 * @param text
+	 *            is the text.
+	 * @param lineStart
+	 *            is the start of the line holding the match.
+	 * @param start
+	 *            is the start of the match.
+	 * @param end
+	 *            is the end of the match.
+	 * @return the text of the line.
+	 */
+	public static String preview(CharSequence text, int lineStart, int start, int end) {
+		int from = Math.max(lineStart, start - PREVIEW_BEFORE);
+		int limit = Math.min(text.length(), from + PREVIEW_LENGTH);
+		StringBuilder builder = new StringBuilder();
+		for (int i = from; i < limit; ++i) {
+			char c = text.charAt(i);
+			if (c == '\n' || c == '\r') {
+				if (i >= end) {
+					break;
+				}
+				c = ' ';
+			}
+			builder.append(c == '\t' ? ' ' : c);
+		}
+		return builder.toString().trim();
+	}
+}
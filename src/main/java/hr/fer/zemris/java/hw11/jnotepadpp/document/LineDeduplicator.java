@@ -0,0 +1,369 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Removes the repeated lines of a text, keeping the first occurrence of every
+ * line in its place. The lines are read once, and each one is looked up by its
+ * 64-bit hash in an open addressing table of the lines kept so far. Equal
+ * hashes are confirmed by comparing the lines, so a collision never removes a
+ * line. The lines are compared in place, without creating a string for them,
+ * even when the letter case or the whitespace is ignored.
+ * <p>
+ * The number of occurrences of every kept line can be written in front of it,
+ * like <code>uniq -c</code> does.
+ *
+ * @author Marin
+ *
+ */
+public class LineDeduplicator {
+
+	/**
+	 * The FNV-1a offset basis.
+	 */
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	/**
+	 * The FNV-1a prime.
+	 */
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * The deduplication options.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public enum Option {
+		/**
+		 * Lines differing only in letter case are equal.
+		 */
+		IGNORE_CASE,
+		/**
+		 * Lines differing only in whitespace are equal.
+		 */
+		IGNORE_WHITESPACE,
+		/**
+		 * Writes the number of occurrences in front of every kept line.
+		 */
+		COUNT
+	}
+
+	/**
+	 * The result of a deduplication.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public static class Result {
+
+		/**
+		 * The text without the repeated lines.
+		 */
+		private final String text;
+		/**
+		 * The number of removed lines.
+		 */
+		private final int removed;
+
+		/**
+		 * The {@link Result} constructor.
+		 *
+		 * @param text
+		 *            is the text without the repeated lines.
+		 * @param removed
+		 *            is the number of removed lines.
+		 */
+		private Result(String text, int removed) {
+			this.text = text;
+			this.removed = removed;
+		}
+
+		/**
+		 * A getter for the text.
+		 *
+		 * @return the text without the repeated lines.
+		 */
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * A getter for the number of removed lines.
+		 *
+		 * @return the number of removed lines.
+		 */
+		public int getRemoved() {
+			return removed;
+		}
+	}
+
+	/**
+	 * The deduplication options.
+	 */
+	private final Set<Option> options;
+
+	/**
+	 * The text being deduplicated.
+	 */
+	private String text;
+	/**
+	 * The starts of the kept lines.
+	 */
+	private int[] starts;
+	/**
+	 * The ends of the kept lines.
+	 */
+	private int[] ends;
+	/**
+	 * The number of occurrences of the kept lines.
+	 */
+	private int[] counts;
+	/**
+	 * The number of kept lines.
+	 */
+	private int kept;
+	/**
+	 * The hashes of the kept lines, by slot.
+	 */
+	private long[] hashes;
+	/**
+	 * The index of the kept line plus one, by slot, zero for an empty slot.
+	 */
+	private int[] slots;
+
+	/**
+	 * The {@link LineDeduplicator} constructor.
+	 *
+	 * @param options
+	 *            are the deduplication options.
+	 */
+	public LineDeduplicator(Set<Option> options) {
+		this.options = options.isEmpty() ? EnumSet.noneOf(Option.class) : EnumSet.copyOf(options);
+	}
+
+	/**
+	 * Removes the repeated lines of the given text. If the text ends with a
+	 * line break, so does the result. Can be called from any thread, but not
+	 * from more than one at once.
+	 *
+	 * @param text
+	 *            is the text to deduplicate.
+	 * @return the result.
+	 */
+	public Result deduplicate(String text) {
+		this.text = text;
+		boolean terminated = text.endsWith("\n");
+		int end = terminated ? text.length() - 1 : text.length();
+
+		starts = new int[16];
+		ends = new int[16];
+		counts = new int[16];
+		kept = 0;
+		hashes = new long[32];
+		slots = new int[32];
+
+		int lines = 0;
+		int start = 0;
+		while (start <= end) {
+			int lineEnd = text.indexOf('\n', start);
+			if (lineEnd < 0 || lineEnd > end) {
+				lineEnd = end;
+			}
+			add(start, lineEnd);
+			lines++;
+			start = lineEnd + 1;
+		}
+
+		String result = join(terminated);
+		int removed = lines - kept;
+		this.text = null;
+		starts = ends = counts = slots = null;
+		hashes = null;
+		return new Result(result, removed);
+	}
+
+	/**
+	 * Looks up the given line among the kept ones, keeping it if it is not
+	 * there.
+	 *
+	 * @param start
+	 *            is the start of the line.
+	 * @param end
+	 *            is the end of the line.
+	 */
+	private void add(int start, int end) {
+		long hash = hash(start, end);
+		int mask = slots.length - 1;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (slots[slot] != 0) {
+			int index = slots[slot] - 1;
+			if (hashes[slot] == hash && equal(starts[index], ends[index], start, end)) {
+				counts[index]++;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (kept == starts.length) {
+			starts = Arrays.copyOf(starts, kept * 2);
+			ends = Arrays.copyOf(ends, kept * 2);
+			counts = Arrays.copyOf(counts, kept * 2);
+		}
+		starts[kept] = start;
+		ends[kept] = end;
+		counts[kept] = 1;
+		kept++;
+		hashes[slot] = hash;
+		slots[slot] = kept;
+
+		if (kept * 2 > slots.length) {
+			grow();
+		}
+	}
+
+	/**
+	 * Doubles the hash table.
+	 */
+	private void grow() {
+		long[] oldHashes = hashes;
+		int[] oldSlots = slots;
+		hashes = new long[oldSlots.length * 2];
+		slots = new int[oldSlots.length * 2];
+		int mask = slots.length - 1;
+		for (int i = 0; i < oldSlots.length; ++i) {
+			if (oldSlots[i] == 0) {
+				continue;
+			}
+			long hash = oldHashes[i];
+			int slot = (int) (hash ^ (hash >>> 32)) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			hashes[slot] = hash;
+			slots[slot] = oldSlots[i];
+		}
+	}
+
+	/**
+	 * Computes the 64-bit FNV-1a hash of the compared characters of a line.
+	 *
+	 * @param start
+	 *            is the start of the line.
+	 * @param end
+	 *            is the end of the line.
+	 * @return the hash.
+	 */
+	private long hash(int start, int end) {
+		long hash = FNV_OFFSET;
+		for (int i = start; i < end; ++i) {
+			char c = text.charAt(i);
+			if (skipped(c)) {
+				continue;
+			}
+			c = normalized(c);
+			hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+			hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Checks if the compared characters of two lines are equal.
+	 *
+	 * @param firstStart
+	 *            is the start of the first line.
+	 * @param firstEnd
+	 *            is the end of the first line.
+	 * @param secondStart
+	 *            is the start of the second line.
+	 * @param secondEnd
+	 *            is the end of the second line.
+	 * @return true if they are, false otherwise.
+	 */
+	private boolean equal(int firstStart, int firstEnd, int secondStart, int secondEnd) {
+		int i = firstStart;
+		int j = secondStart;
+		while (true) {
+			while (i < firstEnd && skipped(text.charAt(i))) {
+				i++;
+			}
+			while (j < secondEnd && skipped(text.charAt(j))) {
+				j++;
+			}
+			if (i == firstEnd || j == secondEnd) {
+				return i == firstEnd && j == secondEnd;
+			}
+			if (normalized(text.charAt(i)) != normalized(text.charAt(j))) {
+				return false;
+			}
+			i++;
+			j++;
+		}
+	}
+
+	/**
+	 * Checks if the given character is left out of the comparison.
+	 *
+	 * @param c
+	 *            is the given character.
+	 * @return true if it is, false otherwise.
+	 */
+	private boolean skipped(char c) {
+		return Character.isWhitespace(c) && options.contains(Option.IGNORE_WHITESPACE);
+	}
+
+	/**
+	 * Returns the given character as it is compared.
+	 *
+	 * @param c
+	 *            is the given character.
+	 * @return the compared character.
+	 */
+	private char normalized(char c) {
+		if (options.contains(Option.IGNORE_CASE)) {
+			return Character.toLowerCase(Character.toUpperCase(c));
+		}
+		return c;
+	}
+
+	/**
+	 * Joins the kept lines, with their number of occurrences in front if
+	 * asked for.
+	 *
+	 * @param terminated
+	 *            if true the result ends with a line break.
+	 * @return the joined lines.
+	 */
+	private String join(boolean terminated) {
+		boolean count = options.contains(Option.COUNT);
+		int width = 0;
+		if (count) {
+			int largest = 0;
+			for (int i = 0; i < kept; ++i) {
+				largest = Math.max(largest, counts[i]);
+			}
+			width = Integer.toString(largest).length();
+		}
+
+		StringBuilder builder = new StringBuilder(text.length());
+		for (int i = 0; i < kept; ++i) {
+			if (i > 0) {
+				builder.append('\n');
+			}
+			if (count) {
+				String number = Integer.toString(counts[i]);
+				for (int pad = number.length(); pad < width; ++pad) {
+					builder.append(' ');
+				}
+				builder.append(number).append(' ');
+			}
+			builder.append(text, starts[i], ends[i]);
+		}
+		if (terminated) {
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,243 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.util.Arrays;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * An index of the line starts of a {@link Document}, kept up to date
+ * incrementally as a {@link DocumentListener}. The line starts are stored in a
+ * primitive array with a gap at the location of the last edit. Line starts
+ * before the gap are absolute offsets, the ones after the gap are stored
+ * relative to the end of the document, so an edit shifts all the following
+ * lines without touching them. Looking up the line of an offset is a binary
+ * search and does not allocate.
+ *
+ * @author Marin
+ *
+ */
+public class LineIndex implements DocumentListener {
+
+	/**
+	 * The initial capacity of the line starts array.
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The indexed document.
+	 */
+	private Document document;
+	/**
+	 * The line starts, with a gap between {@link #gapStart} and
+	 * {@link #gapEnd}.
+	 */
+	private int[] starts;
+	/**
+	 * The index of the first empty entry.
+	 */
+	private int gapStart;
+	/**
+	 * The index of the first used entry after the gap.
+	 */
+	private int gapEnd;
+	/**
+	 * The document length the relative line starts are measured from.
+	 */
+	private int length;
+	/**
+	 * The segment used to read the inserted text.
+	 */
+	private Segment segment;
+
+	/**
+	 * The {@link LineIndex} constructor. Indexes the whole document and starts
+	 * listening to its changes.
+	 *
+	 * @param document
+	 *            is the document to index.
+	 */
+	public LineIndex(Document document) {
+		this.document = document;
+		segment = new Segment();
+		segment.setPartialReturn(true);
+
+		starts = new int[INITIAL_CAPACITY];
+		starts[0] = 0;
+		gapStart = 1;
+		gapEnd = starts.length;
+		length = 0;
+
+		int documentLength = document.getLength();
+		scan(0, documentLength);
+		length = documentLength;
+		document.addDocumentListener(this);
+	}
+
+	/**
+	 * Stops listening to the document changes.
+	 */
+	public void dispose() {
+		document.removeDocumentListener(this);
+	}
+
+	/**
+	 * Returns the number of lines in the document.
+	 *
+	 * @return the number of lines.
+	 */
+	public int getLineCount() {
+		return starts.length - (gapEnd - gapStart);
+	}
+
+	/**
+	 * Returns the start offset of the given line.
+	 *
+	 * @param line
+	 *            is the zero based line index.
+	 * @return the start offset.
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such line.
+	 */
+	public int getLineStart(int line) {
+		if (line < 0 || line >= getLineCount()) {
+			throw new IndexOutOfBoundsException("Invalid line: " + line);
+		}
+		return start(line);
+	}
+
+	/**
+	 * Returns the index of the line containing the given offset.
+	 *
+	 * @param offset
+	 *            is the given offset.
+	 * @return the zero based line index.
+	 */
+	public int getLineOfOffset(int offset) {
+		int low = 0;
+		int high = getLineCount() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (start(middle) <= offset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the zero based column of the given offset.
+	 *
+	 * @param offset
+	 *            is the given offset.
+	 * @return the column.
+	 */
+	public int getColumnOfOffset(int offset) {
+		return offset - start(getLineOfOffset(offset));
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		int offset = e.getOffset();
+		int inserted = e.getLength();
+
+		moveGap(getLineOfOffset(offset) + 1);
+		scan(offset, inserted);
+		length += inserted;
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		int offset = e.getOffset();
+		int end = offset + e.getLength();
+
+		moveGap(getLineOfOffset(offset) + 1);
+		while (gapEnd < starts.length && starts[gapEnd] + length <= end) {
+			gapEnd++;
+		}
+		length -= e.getLength();
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	/**
+	 * Returns the start of the given line, without checking the index.
+	 *
+	 * @param line
+	 *            is the line index.
+	 * @return the start offset.
+	 */
+	private int start(int line) {
+		if (line < gapStart) {
+			return starts[line];
+		}
+		return starts[line + gapEnd - gapStart] + length;
+	}
+
+	/**
+	 * Moves the gap so it starts at the given line index.
+	 *
+	 * @param index
+	 *            is the line index.
+	 */
+	private void moveGap(int index) {
+		while (gapStart > index) {
+			starts[--gapEnd] = starts[--gapStart] - length;
+		}
+		while (gapStart < index) {
+			starts[gapStart++] = starts[gapEnd++] + length;
+		}
+	}
+
+	/**
+	 * Scans the given range of the document for line breaks and adds a line
+	 * start before the gap for each of them.
+	 *
+	 * @param offset
+	 *            is the start of the range.
+	 * @param count
+	 *            is the length of the range.
+	 */
+	private void scan(int offset, int count) {
+		try {
+			int position = offset;
+			int end = offset + count;
+			while (position < end) {
+				document.getText(position, end - position, segment);
+				char[] array = segment.array;
+				for (int i = 0; i < segment.count; ++i) {
+					if (array[segment.offset + i] == '\n') {
+						addStart(position + i + 1);
+					}
+				}
+				position += segment.count;
+			}
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Adds the given line start at the start of the gap.
+	 *
+	 * @param start
+	 *            is the absolute line start.
+	 */
+	private void addStart(int start) {
+		if (gapStart == gapEnd) {
+			int tail = starts.length - gapEnd;
+			int[] grown = Arrays.copyOf(starts, starts.length * 2);
+			System.arraycopy(starts, gapEnd, grown, grown.length - tail, tail);
+			gapEnd = grown.length - tail;
+			starts = grown;
+		}
+		starts[gapStart++] = start;
+	}
+}
@@ -0,0 +1,327 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts lines of text by the rules of a language. Comparing two strings with
+ * a {@link Collator} decomposes both of them every time, so instead a
+ * {@link CollationKey} is computed once for every line, split between the
+ * threads of the common {@link ForkJoinPool}, and the lines are sorted by
+ * their keys with {@link Arrays#parallelSort(Object[], Comparator)}, a
+ * parallel merge sort on the same pool. The collator of each language is
+ * created once and copied for every thread, as a collator can not be shared.
+ * <p>
+ * Numeric ordering splits the lines into runs of digits and the rest, and
+ * compares the digit runs by their value, so "file2" comes before "file10".
+ * Without stable ordering, lines equal by the rules of the language are
+ * ordered by their characters, otherwise they keep their original order.
+ *
+ * @author Marin
+ *
+ */
+public class LineSorter {
+
+	/**
+	 * The largest number of lines a key task computes the keys for.
+	 */
+	private static final int TASK_SIZE = 8 * 1024;
+
+	/**
+	 * The created collators, by language.
+	 */
+	private static final Map<Locale, Collator> COLLATORS = new ConcurrentHashMap<>();
+
+	/**
+	 * The sorting options.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public enum Option {
+		/**
+		 * Sorts from the last line to the first.
+		 */
+		DESCENDING,
+		/**
+		 * Ignores the differences in letter case.
+		 */
+		IGNORE_CASE,
+		/**
+		 * Compares the runs of digits by their value.
+		 */
+		NUMERIC,
+		/**
+		 * Keeps the original order of the equal lines.
+		 */
+		STABLE
+	}
+
+	/**
+	 * A line with its sort key.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Entry {
+
+		/**
+		 * The line.
+		 */
+		private final String line;
+		/**
+		 * The parts of the key: a {@link CollationKey} for text, a string
+		 * without the leading zeros for a run of digits.
+		 */
+		private Object[] key;
+
+		/**
+		 * The {@link Entry} constructor.
+		 *
+		 * @param line
+		 *            is the line.
+		 */
+		private Entry(String line) {
+			this.line = line;
+		}
+	}
+
+	/**
+	 * Computes the keys of a range of entries, splitting it in halves until
+	 * they are small enough.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private class KeyTask extends RecursiveAction {
+
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The entries.
+		 */
+		private final Entry[] entries;
+		/**
+		 * The start of the range.
+		 */
+		private final int start;
+		/**
+		 * The end of the range.
+		 */
+		private final int end;
+
+		/**
+		 * The {@link KeyTask} constructor.
+		 *
+		 * @param entries
+		 *            are the entries.
+		 * @param start
+		 *            is the start of the range.
+		 * @param end
+		 *            is the end of the range.
+		 */
+		private KeyTask(Entry[] entries, int start, int end) {
+			this.entries = entries;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > TASK_SIZE) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new KeyTask(entries, start, middle), new KeyTask(entries, middle, end));
+				return;
+			}
+
+			Collator collator = createCollator();
+			for (int i = start; i < end; ++i) {
+				entries[i].key = key(collator, entries[i].line);
+			}
+		}
+	}
+
+	/**
+	 * The language of the sort.
+	 */
+	private final Locale locale;
+	/**
+	 * The sorting options.
+	 */
+	private final Set<Option> options;
+
+	/**
+	 * The {@link LineSorter} constructor.
+	 *
+	 * @param locale
+	 *            is the language whose rules are used.
+	 * @param options
+	 *            are the sorting options.
+	 */
+	public LineSorter(Locale locale, Set<Option> options) {
+		this.locale = Objects.requireNonNull(locale);
+		this.options = options.isEmpty() ? EnumSet.noneOf(Option.class) : EnumSet.copyOf(options);
+	}
+
+	/**
+	 * Sorts the lines of the given text. If the text ends with a line break,
+	 * so does the result. Can be called from any thread.
+	 *
+	 * @param text
+	 *            is the text to sort.
+	 * @return the sorted text.
+	 */
+	public String sort(String text) {
+		boolean terminated = text.endsWith("\n");
+		String body = terminated ? text.substring(0, text.length() - 1) : text;
+		String[] lines = body.split("\n", -1);
+		sort(lines);
+
+		String sorted = String.join("\n", lines);
+		return terminated ? sorted + '\n' : sorted;
+	}
+
+	/**
+	 * Sorts the given lines in place. Can be called from any thread.
+	 *
+	 * @param lines
+	 *            are the lines to sort.
+	 */
+	public void sort(String[] lines) {
+		Entry[] entries = new Entry[lines.length];
+		for (int i = 0; i < lines.length; ++i) {
+			entries[i] = new Entry(lines[i]);
+		}
+		ForkJoinPool.commonPool().invoke(new KeyTask(entries, 0, entries.length));
+
+		Comparator<Entry> comparator = (f, s) -> compareKeys(f.key, s.key);
+		if (!options.contains(Option.STABLE)) {
+			comparator = comparator.thenComparing(e -> e.line);
+		}
+		if (options.contains(Option.DESCENDING)) {
+			comparator = comparator.reversed();
+		}
+		Arrays.parallelSort(entries, comparator);
+
+		for (int i = 0; i < lines.length; ++i) {
+			lines[i] = entries[i].line;
+		}
+	}
+
+	/**
+	 * Creates a collator for the language and the options of the sort,
+	 * copied from the one created for the language.
+	 *
+	 * @return the collator.
+	 */
+	private Collator createCollator() {
+		Collator collator = (Collator) COLLATORS.computeIfAbsent(locale, Collator::getInstance).clone();
+		collator.setStrength(options.contains(Option.IGNORE_CASE) ? Collator.SECONDARY : Collator.TERTIARY);
+		return collator;
+	}
+
+	/**
+	 * Computes the key of the given line.
+	 *
+	 * @param collator
+	 *            is the collator of the thread.
+	 * @param line
+	 *            is the given line.
+	 * @return the parts of the key.
+	 */
+	private Object[] key(Collator collator, String line) {
+		if (!options.contains(Option.NUMERIC)) {
+			return new Object[] { collator.getCollationKey(line) };
+		}
+
+		List<Object> parts = new ArrayList<>();
+		int length = line.length();
+		int start = 0;
+		while (start < length) {
+			boolean digits = Character.isDigit(line.charAt(start));
+			int end = start + 1;
+			while (end < length && Character.isDigit(line.charAt(end)) == digits) {
+				end++;
+			}
+			if (digits) {
+				int first = start;
+				while (first < end - 1 && Character.digit(line.charAt(first), 10) == 0) {
+					first++;
+				}
+				parts.add(line.substring(first, end));
+			} else {
+				parts.add(collator.getCollationKey(line.substring(start, end)));
+			}
+			start = end;
+		}
+		return parts.toArray();
+	}
+
+	/**
+	 * Compares two keys part by part. A run of digits comes before text, and
+	 * shorter runs of digits, having no leading zeros, are smaller numbers.
+	 *
+	 * @param first
+	 *            is the first key.
+	 * @param second
+	 *            is the second key.
+	 * @return a negative number, zero or a positive number as the first key is
+	 *         smaller than, equal to or greater than the second.
+	 */
+	private static int compareKeys(Object[] first, Object[] second) {
+		int count = Math.min(first.length, second.length);
+		for (int i = 0; i < count; ++i) {
+			Object a = first[i];
+			Object b = second[i];
+			int result;
+			if (a instanceof CollationKey && b instanceof CollationKey) {
+				result = ((CollationKey) a).compareTo((CollationKey) b);
+			} else if (a instanceof String && b instanceof String) {
+				result = compareNumbers((String) a, (String) b);
+			} else {
+				result = a instanceof String ? -1 : 1;
+			}
+			if (result != 0) {
+				return result;
+			}
+		}
+		return Integer.compare(first.length, second.length);
+	}
+
+	/**
+	 * Compares two runs of digits without leading zeros by their value.
+	 *
+	 * @param first
+	 *            is the first run.
+	 * @param second
+	 *            is the second run.
+	 * @return the result of the comparison.
+	 */
+	private static int compareNumbers(String first, String second) {
+		if (first.length() != second.length()) {
+			return Integer.compare(first.length(), second.length());
+		}
+		for (int i = 0; i < first.length(); ++i) {
+			int result = Integer.compare(Character.digit(first.charAt(i), 10), Character.digit(second.charAt(i), 10));
+			if (result != 0) {
+				return result;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,1388 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * An implementation of the {@link AbstractDocument.Content} built on a piece
+ * table. The original text is kept in a read-only buffer that is never copied
+ * or moved, while all the inserted text is appended to a separate add buffer.
+ * The document itself is described by a list of pieces, each one pointing to a
+ * range of one of those two buffers. That way editing a huge document costs
+ * memory proportional to the edits, not to the size of the document.
+ * <p>
+ * Positions are kept in a sorted array split by a gap. Positions before the gap
+ * store their absolute offset, positions after the gap store their offset
+ * relative to the end of the content, so an edit only touches the positions
+ * between the previous and the current edit location.
+ *
+ * @author Marin
+ *
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+
+	/**
+	 * The initial capacity of the add buffer.
+	 */
+	private static final int INITIAL_ADD_CAPACITY = 1024;
+	/**
+	 * An empty array, used for empty segments.
+	 */
+	private static final char[] EMPTY = new char[0];
+
+	/**
+	 * The read-only buffer holding the original text.
+	 */
+	private char[] original;
+	/**
+	 * The append-only buffer holding all the inserted text.
+	 */
+	private char[] added;
+	/**
+	 * The number of used characters in the add buffer.
+	 */
+	private int addedLength;
+	/**
+	 * The pieces describing the content, in order.
+	 */
+	private List<Piece> pieces;
+	/**
+	 * The starting offsets of the pieces. Only the first
+	 * {@link #validOffsets} entries are up to date.
+	 */
+	private int[] pieceOffsets;
+	/**
+	 * The number of valid entries in {@link #pieceOffsets}.
+	 */
+	private int validOffsets;
+	/**
+	 * The total length of the content.
+	 */
+	private int length;
+
+	/**
+	 * The marks backing the created positions, sorted by offset. The marks
+	 * stored relative to the end of the content are kept at the end of the
+	 * array, so the free entries lie between them and the others, where the
+	 * marks of an edit are created.
+	 */
+	private Mark[] marks;
+	/**
+	 * The number of used entries in {@link #marks}.
+	 */
+	private int markCount;
+	/**
+	 * The index of the first mark stored relative to the end of the content,
+	 * which is also the index of the first free entry of {@link #marks}.
+	 */
+	private int markGap;
+	/**
+	 * The queue notified when a position is no longer referenced.
+	 */
+	private ReferenceQueue<PiecePosition> queue;
+	/**
+	 * The number of marks whose positions are no longer referenced.
+	 */
+	private int unusedMarks;
+	/**
+	 * The listeners told about the text about to be removed.
+	 */
+	private List<RemovalListener> removalListeners = new ArrayList<>();
+
+	/**
+	 * Listens for the text about to be removed from the content. A
+	 * {@link javax.swing.event.DocumentListener} is told about a removal only
+	 * after the text is gone, while this listener can still read it. Removals
+	 * done by undoing an insert or redoing a remove are reported as well.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public interface RemovalListener {
+
+		/**
+		 * Called before the given range is removed, while it can still be
+		 * read.
+		 *
+		 * @param where
+		 *            is the start of the range.
+		 * @param nitems
+		 *            is the length of the range.
+		 */
+		void textRemoving(int where, int nitems);
+	}
+
+	/**
+	 * The {@link PieceTableContent} constructor. Creates a content holding only
+	 * the implied line break, as the {@link AbstractDocument} expects it.
+	 */
+	public PieceTableContent() {
+		original = EMPTY;
+		added = new char[INITIAL_ADD_CAPACITY];
+		added[0] = '\n';
+		addedLength = 1;
+
+		pieces = new ArrayList<>();
+		pieces.add(new Piece(true, 0, 1));
+		pieceOffsets = new int[16];
+		validOffsets = 0;
+		length = 1;
+
+		marks = new Mark[16];
+		queue = new ReferenceQueue<>();
+	}
+
+	/**
+	 * Sets the original text of an empty content. The given array is not
+	 * copied, so it must not be modified afterwards.
+	 *
+	 * @param text
+	 *            is the array holding the original text.
+	 * @param textLength
+	 *            is the number of used characters in the array.
+	 * @throws IllegalStateException
+	 *             if the content is not empty.
+	 */
+	void loadOriginal(char[] text, int textLength) {
+		if (length != 1) {
+			throw new IllegalStateException("Original text can only be set to an empty content.");
+		}
+		if (textLength == 0) {
+			return;
+		}
+
+		original = text;
+		pieces.add(0, new Piece(false, 0, textLength));
+		validOffsets = 0;
+		moveMarkGap(0, false);
+		length += textLength;
+	}
+
+	@Override
+	public Position createPosition(int offset) throws BadLocationException {
+		if (offset < 0 || offset > length) {
+			throw new BadLocationException("Invalid position offset.", offset);
+		}
+		removeUnusedMarks();
+
+		int index = findMark(offset);
+		if (index < markCount && offsetOf(mark(index)) == offset) {
+			PiecePosition position = mark(index).get();
+			if (position != null) {
+				return position;
+			}
+		}
+
+		PiecePosition position = new PiecePosition();
+		Mark mark = new Mark(position, queue);
+		position.mark = mark;
+		if (index <= markGap) {
+			mark.value = offset;
+		} else {
+			mark.value = offset - length;
+			mark.tail = true;
+		}
+		insertMark(index, mark);
+		return position;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public UndoableEdit insertString(int where, String str) throws BadLocationException {
+		if (where < 0 || where >= length) {
+			throw new BadLocationException("Invalid insert location.", where);
+		}
+
+		int strLength = str.length();
+		ensureAddCapacity(strLength);
+		str.getChars(0, strLength, added, addedLength);
+		Piece piece = new Piece(true, addedLength, strLength);
+		addedLength += strLength;
+
+		insertPiece(where, piece);
+		return new InsertEdit(where, piece);
+	}
+
+	@Override
+	public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+		if (where < 0 || nitems < 0 || where + nitems >= length) {
+			throw new BadLocationException("Invalid remove range.", where + nitems);
+		}
+
+		RemoveEdit edit = new RemoveEdit(where, nitems);
+		edit.collapsed = snapshotMarks(where, nitems);
+		edit.removed = removePieces(where, nitems);
+		collapseMarks(where, nitems);
+		return edit;
+	}
+
+	@Override
+	public String getString(int where, int len) throws BadLocationException {
+		Segment segment = new Segment();
+		getChars(where, len, segment);
+		return new String(segment.array, segment.offset, segment.count);
+	}
+
+	@Override
+	public void getChars(int where, int len, Segment txt) throws BadLocationException {
+		if (where < 0 || len < 0 || where + len > length) {
+			throw new BadLocationException("Invalid range.", where + len);
+		}
+		if (len == 0) {
+			txt.array = EMPTY;
+			txt.offset = 0;
+			txt.count = 0;
+			return;
+		}
+
+		int index = pieceIndexAt(where);
+		Piece piece = pieces.get(index);
+		int start = where - pieceOffsets[index];
+		int available = piece.length - start;
+		if (len <= available || txt.isPartialReturn()) {
+			txt.array = piece.added ? added : original;
+			txt.offset = piece.start + start;
+			txt.count = Math.min(len, available);
+			return;
+		}
+
+		char[] chars = new char[len];
+		int copied = 0;
+		while (copied < len) {
+			piece = pieces.get(index++);
+			int count = Math.min(len - copied, piece.length - start);
+			System.arraycopy(piece.added ? added : original, piece.start + start, chars, copied, count);
+			copied += count;
+			start = 0;
+		}
+		txt.array = chars;
+		txt.offset = 0;
+		txt.count = len;
+	}
+
+	/**
+	 * Adds the given removal listener.
+	 *
+	 * @param listener
+	 *            is the listener to add.
+	 */
+	public void addRemovalListener(RemovalListener listener) {
+		removalListeners.add(listener);
+	}
+
+	/**
+	 * Removes the given removal listener.
+	 *
+	 * @param listener
+	 *            is the listener to remove.
+	 */
+	public void removeRemovalListener(RemovalListener listener) {
+		removalListeners.remove(listener);
+	}
+
+	/**
+	 * Returns the number of pieces currently describing the content.
+	 *
+	 * @return the number of pieces.
+	 */
+	public int getPieceCount() {
+		return pieces.size();
+	}
+
+	/**
+	 * Creates a read-only snapshot of the content, without the implied line
+	 * break. Only the piece list is copied: the original buffer is never
+	 * modified and the add buffer is only appended to, so the snapshot shares
+	 * both and stays valid after later edits. The snapshot can be read from
+	 * any thread.
+	 *
+	 * @return the snapshot.
+	 */
+	public Snapshot snapshot() {
+		int count = pieces.size();
+		boolean[] fromAdded = new boolean[count];
+		int[] starts = new int[count];
+		int[] offsets = new int[count];
+		int offset = 0;
+		for (int i = 0; i < count; ++i) {
+			Piece piece = pieces.get(i);
+			fromAdded[i] = piece.added;
+			starts[i] = piece.start;
+			offsets[i] = offset;
+			offset += piece.length;
+		}
+		return new Snapshot(original, added, fromAdded, starts, offsets, length - 1);
+	}
+
+	/**
+	 * Returns the pieces describing the given range, without the text. The
+	 * original buffer is never modified and the add buffer is only appended
+	 * to, so the span describes the same text for as long as the content
+	 * lives, and can be inserted back with {@link #insertSpan(int, Span)}.
+	 *
+	 * @param where
+	 *            is the start of the range.
+	 * @param len
+	 *            is the length of the range.
+	 * @return the span.
+	 * @throws BadLocationException
+	 *             if the range is not inside the content.
+	 */
+	public Span span(int where, int len) throws BadLocationException {
+		if (where < 0 || len < 0 || where + len > length) {
+			throw new BadLocationException("Invalid range.", where + len);
+		}
+
+		List<Piece> range = new ArrayList<>();
+		if (len > 0) {
+			int index = pieceIndexAt(where);
+			int start = where - pieceOffsets[index];
+			int taken = 0;
+			while (taken < len) {
+				Piece piece = pieces.get(index++);
+				int count = Math.min(len - taken, piece.length - start);
+				range.add(new Piece(piece.added, piece.start + start, count));
+				taken += count;
+				start = 0;
+			}
+		}
+		return new Span(range, len);
+	}
+
+	/**
+	 * Appends the given text to the add buffer without inserting it, so it
+	 * can be inserted later as a part of a span.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @return the span of the stored text.
+	 */
+	public Span store(String text) {
+		int textLength = text.length();
+		ensureAddCapacity(textLength);
+		text.getChars(0, textLength, added, addedLength);
+		List<Piece> stored = new ArrayList<>(1);
+		if (textLength > 0) {
+			stored.add(new Piece(true, addedLength, textLength));
+		}
+		addedLength += textLength;
+		return new Span(stored, textLength);
+	}
+
+	/**
+	 * Inserts the text described by the given span, created by this content,
+	 * without copying it.
+	 *
+	 * @param where
+	 *            is the insert offset.
+	 * @param span
+	 *            is the inserted span.
+	 * @return the undoable edit of the insert.
+	 * @throws BadLocationException
+	 *             if the offset is not inside the content.
+	 * @throws IllegalArgumentException
+	 *             if the span points outside of the buffers.
+	 */
+	UndoableEdit insertSpan(int where, Span span) throws BadLocationException {
+		if (where < 0 || where >= length) {
+			throw new BadLocationException("Invalid insert location.", where);
+		}
+		List<Piece> toInsert = span.toPieces();
+		for (Piece piece : toInsert) {
+			int bufferLength = piece.added ? addedLength : original.length;
+			if (piece.start < 0 || piece.length < 0 || piece.start + piece.length > bufferLength) {
+				throw new IllegalArgumentException("Span does not belong to the content.");
+			}
+		}
+
+		insertPieces(where, toInsert, span.length());
+		return new SpanInsertEdit(where, toInsert, span.length());
+	}
+
+	/**
+	 * Inserts the given piece at the given offset. If the piece continues the
+	 * piece ending at the offset, the two are merged, so typing does not
+	 * fragment the table.
+	 *
+	 * @param where
+	 *            is the insert offset.
+	 * @param piece
+	 *            is the piece to insert.
+	 */
+	private void insertPiece(int where, Piece piece) {
+		int index = split(where);
+		Piece previous = index > 0 ? pieces.get(index - 1) : null;
+		if (previous != null && previous.added && piece.added && previous.start + previous.length == piece.start) {
+			pieces.set(index - 1, new Piece(true, previous.start, previous.length + piece.length));
+			invalidateOffsets(index);
+		} else {
+			pieces.add(index, piece);
+			invalidateOffsets(index);
+		}
+
+		moveMarkGap(where, true);
+		length += piece.length;
+	}
+
+	/**
+	 * Inserts the given pieces at the given offset.
+	 *
+	 * @param where
+	 *            is the insert offset.
+	 * @param toInsert
+	 *            are the pieces to insert.
+	 * @param toInsertLength
+	 *            is the total length of the given pieces.
+	 */
+	private void insertPieces(int where, List<Piece> toInsert, int toInsertLength) {
+		int index = split(where);
+		pieces.addAll(index, toInsert);
+		invalidateOffsets(index);
+
+		moveMarkGap(where, true);
+		length += toInsertLength;
+	}
+
+	/**
+	 * Removes the given range from the piece table.
+	 *
+	 * @param where
+	 *            is the start of the range.
+	 * @param nitems
+	 *            is the length of the range.
+	 * @return the removed pieces.
+	 */
+	private List<Piece> removePieces(int where, int nitems) {
+		for (RemovalListener listener : removalListeners) {
+			listener.textRemoving(where, nitems);
+		}
+
+		int from = split(where);
+		int to = split(where + nitems);
+		List<Piece> range = pieces.subList(from, to);
+		List<Piece> removed = new ArrayList<>(range);
+		range.clear();
+		invalidateOffsets(from);
+		return removed;
+	}
+
+	/**
+	 * Makes sure a piece starts at the given offset, splitting the piece that
+	 * contains it if needed.
+	 *
+	 * @param offset
+	 *            is the given offset.
+	 * @return the index of the piece starting at the offset, or the number of
+	 *         pieces if the offset is the end of the content.
+	 */
+	private int split(int offset) {
+		if (offset == length) {
+			return pieces.size();
+		}
+
+		int index = pieceIndexAt(offset);
+		int start = offset - pieceOffsets[index];
+		if (start == 0) {
+			return index;
+		}
+
+		Piece piece = pieces.get(index);
+		pieces.set(index, new Piece(piece.added, piece.start, start));
+		pieces.add(index + 1, new Piece(piece.added, piece.start + start, piece.length - start));
+		invalidateOffsets(index + 1);
+		return index + 1;
+	}
+
+	/**
+	 * Finds the index of the piece containing the given offset.
+	 *
+	 * @param offset
+	 *            is the given offset, must be smaller than the content length.
+	 * @return the piece index.
+	 */
+	private int pieceIndexAt(int offset) {
+		updateOffsets();
+
+		int low = 0;
+		int high = pieces.size() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (pieceOffsets[middle] <= offset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Marks the piece offsets starting from the given index as out of date.
+	 *
+	 * @param index
+	 *            is the first changed piece index.
+	 */
+	private void invalidateOffsets(int index) {
+		validOffsets = Math.min(validOffsets, index);
+	}
+
+	/**
+	 * Recalculates the out of date piece offsets.
+	 */
+	private void updateOffsets() {
+		int size = pieces.size();
+		if (validOffsets == size) {
+			return;
+		}
+		if (pieceOffsets.length < size) {
+			pieceOffsets = Arrays.copyOf(pieceOffsets, Math.max(size, pieceOffsets.length * 2));
+		}
+
+		int i = validOffsets;
+		int offset = i == 0 ? 0 : pieceOffsets[i - 1] + pieces.get(i - 1).length;
+		for (; i < size; ++i) {
+			pieceOffsets[i] = offset;
+			offset += pieces.get(i).length;
+		}
+		validOffsets = size;
+	}
+
+	/**
+	 * Makes sure the add buffer can take the given number of characters.
+	 *
+	 * @param toAdd
+	 *            is the number of characters to add.
+	 */
+	private void ensureAddCapacity(int toAdd) {
+		int required = addedLength + toAdd;
+		if (required > added.length) {
+			added = Arrays.copyOf(added, Math.max(required, added.length * 2));
+		}
+	}
+
+	/**
+	 * Calculates the current offset of the given mark.
+	 *
+	 * @param mark
+	 *            is the given mark.
+	 * @return the offset.
+	 */
+	private int offsetOf(Mark mark) {
+		return mark.tail ? mark.value + length : mark.value;
+	}
+
+	/**
+	 * Finds the index of the first mark whose offset is not smaller than the
+	 * given one.
+	 *
+	 * @param offset
+	 *            is the given offset.
+	 * @return the mark index.
+	 */
+	private int findMark(int offset) {
+		int low = 0;
+		int high = markCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (offsetOf(mark(middle)) < offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the mark at the given index, skipping the free entries.
+	 *
+	 * @param index
+	 *            is the given index.
+	 * @return the mark.
+	 */
+	private Mark mark(int index) {
+		return marks[index < markGap ? index : index + marks.length - markCount];
+	}
+
+	/**
+	 * Returns the index in the marks array of the first mark stored relative
+	 * to the end of the content.
+	 *
+	 * @return the index.
+	 */
+	private int tailStart() {
+		return marks.length - (markCount - markGap);
+	}
+
+	/**
+	 * Inserts the given mark to the given index of the marks. Only the marks
+	 * between the index and the free entries are moved, so creating the marks
+	 * of an edit in order costs constant time each. A mark inserted at or
+	 * before the mark gap is stored relative to the start of the content.
+	 *
+	 * @param index
+	 *            is the given index.
+	 * @param mark
+	 *            is the mark to insert.
+	 */
+	private void insertMark(int index, Mark mark) {
+		if (markCount == marks.length) {
+			Mark[] grown = new Mark[marks.length * 2];
+			System.arraycopy(marks, 0, grown, 0, markGap);
+			int tailCount = markCount - markGap;
+			System.arraycopy(marks, marks.length - tailCount, grown, grown.length - tailCount, tailCount);
+			marks = grown;
+		}
+
+		if (index <= markGap) {
+			System.arraycopy(marks, index, marks, index + 1, markGap - index);
+			marks[index] = mark;
+			markGap++;
+		} else {
+			int tailStart = tailStart();
+			int at = index + tailStart - markGap;
+			System.arraycopy(marks, tailStart, marks, tailStart - 1, at - tailStart);
+			marks[at - 1] = mark;
+		}
+		markCount++;
+	}
+
+	/**
+	 * Moves the last mark stored relative to the start of the content to the
+	 * marks stored relative to the end.
+	 *
+	 * @return the moved mark.
+	 */
+	private Mark moveMarkToTail() {
+		Mark mark = marks[--markGap];
+		marks[markGap] = null;
+		marks[tailStart()] = mark;
+		return mark;
+	}
+
+	/**
+	 * Moves the first mark stored relative to the end of the content to the
+	 * marks stored relative to the start.
+	 *
+	 * @return the moved mark.
+	 */
+	private Mark moveMarkToHead() {
+		int tailStart = tailStart();
+		Mark mark = marks[tailStart];
+		marks[tailStart] = null;
+		marks[markGap++] = mark;
+		return mark;
+	}
+
+	/**
+	 * Moves the mark gap so that all the marks that should move with the edit
+	 * at the given offset are stored relative to the end of the content.
+	 *
+	 * @param where
+	 *            is the edit offset.
+	 * @param insert
+	 *            true if the edit is an insert, in that case the marks at the
+	 *            offset move with the inserted text, unless the offset is 0.
+	 */
+	private void moveMarkGap(int where, boolean insert) {
+		while (markGap > 0 && movesWithEdit(offsetOf(marks[markGap - 1]), where, insert)) {
+			Mark mark = moveMarkToTail();
+			mark.value -= length;
+			mark.tail = true;
+		}
+		while (markGap < markCount && !movesWithEdit(offsetOf(mark(markGap)), where, insert)) {
+			Mark mark = moveMarkToHead();
+			mark.value += length;
+			mark.tail = false;
+		}
+	}
+
+	/**
+	 * Checks if a mark at the given offset moves with the edit.
+	 *
+	 * @param offset
+	 *            is the mark offset.
+	 * @param where
+	 *            is the edit offset.
+	 * @param insert
+	 *            true if the edit is an insert.
+	 * @return true if the mark moves.
+	 */
+	private static boolean movesWithEdit(int offset, int where, boolean insert) {
+		if (insert) {
+			return offset > where || (offset == where && offset != 0);
+		}
+		return offset > where;
+	}
+
+	/**
+	 * Moves the mark gap for the removal of the given range and collapses all
+	 * the marks inside of the range to its start.
+	 *
+	 * @param where
+	 *            is the start of the range.
+	 * @param nitems
+	 *            is the length of the range.
+	 */
+	private void collapseMarks(int where, int nitems) {
+		moveMarkGap(where, false);
+
+		int end = where + nitems;
+		while (markGap < markCount && offsetOf(mark(markGap)) <= end) {
+			Mark mark = moveMarkToHead();
+			mark.value = where;
+			mark.tail = false;
+		}
+
+		length -= nitems;
+	}
+
+	/**
+	 * Remembers the offsets of all the marks inside of the given range, so
+	 * they can be restored once the removal of the range is undone.
+	 *
+	 * @param where
+	 *            is the start of the range.
+	 * @param nitems
+	 *            is the length of the range.
+	 * @return the marks and their offsets.
+	 */
+	private MarkSnapshot snapshotMarks(int where, int nitems) {
+		int from = findMark(where);
+		int to = findMark(where + nitems + 1);
+		Mark[] range = new Mark[to - from];
+		for (int i = from; i < to; ++i) {
+			range[i - from] = mark(i);
+		}
+		return new MarkSnapshot(range, length);
+	}
+
+	/**
+	 * Restores the marks of a range whose removal has been undone.
+	 *
+	 * @param snapshot
+	 *            are the collapsed marks.
+	 * @param where
+	 *            is the start of the restored range.
+	 * @param nitems
+	 *            is the length of the restored range.
+	 */
+	private void restoreMarks(MarkSnapshot snapshot, int where, int nitems) {
+		if (snapshot.marks.length == 0) {
+			return;
+		}
+
+		int from = findMark(where);
+		int to = from;
+		while (to < markCount && offsetOf(mark(to)) <= where + nitems) {
+			to++;
+		}
+		// the marks of the range are stored relative to the start afterwards,
+		// so they are at their own indexes in the array
+		moveMarkGap(where + nitems, false);
+		for (int i = 0; i < snapshot.marks.length; ++i) {
+			Mark mark = snapshot.marks[i];
+			if (mark.tail) {
+				mark.value = snapshot.offsets[i] - length;
+			} else {
+				mark.value = snapshot.offsets[i];
+			}
+		}
+		Arrays.sort(marks, from, to, (first, second) -> Integer.compare(offsetOf(first), offsetOf(second)));
+	}
+
+	/**
+	 * Removes the marks whose positions are no longer referenced, if there are
+	 * enough of them.
+	 */
+	private void removeUnusedMarks() {
+		while (queue.poll() != null) {
+			unusedMarks++;
+		}
+		if (unusedMarks <= Math.max(5, markCount / 10)) {
+			return;
+		}
+
+		int kept = 0;
+		for (int i = 0; i < markGap; ++i) {
+			if (marks[i].get() != null) {
+				marks[kept++] = marks[i];
+			}
+		}
+		int keptTail = marks.length;
+		for (int i = marks.length - 1; i >= tailStart(); --i) {
+			if (marks[i].get() != null) {
+				marks[--keptTail] = marks[i];
+			}
+		}
+		Arrays.fill(marks, kept, keptTail, null);
+		markCount = kept + marks.length - keptTail;
+		markGap = kept;
+		unusedMarks = 0;
+	}
+
+	/**
+	 * A read-only snapshot of the content, created by {@link #snapshot()}.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public static final class Snapshot {
+		/**
+		 * The original buffer at the time of the snapshot.
+		 */
+		private final char[] original;
+		/**
+		 * The add buffer at the time of the snapshot.
+		 */
+		private final char[] added;
+		/**
+		 * True for the pieces pointing to the add buffer.
+		 */
+		private final boolean[] fromAdded;
+		/**
+		 * The starts of the pieces in their buffers.
+		 */
+		private final int[] starts;
+		/**
+		 * The offsets of the pieces in the snapshot.
+		 */
+		private final int[] offsets;
+		/**
+		 * The length of the snapshot.
+		 */
+		private final int length;
+
+		/**
+		 * The {@link Snapshot} constructor.
+		 *
+		 * @param original
+		 *            is the original buffer.
+		 * @param added
+		 *            is the add buffer.
+		 * @param fromAdded
+		 *            are true for the pieces pointing to the add buffer.
+		 * @param starts
+		 *            are the starts of the pieces in their buffers.
+		 * @param offsets
+		 *            are the offsets of the pieces in the snapshot.
+		 * @param length
+		 *            is the length of the snapshot.
+		 */
+		private Snapshot(char[] original, char[] added, boolean[] fromAdded, int[] starts, int[] offsets,
+				int length) {
+			this.original = original;
+			this.added = added;
+			this.fromAdded = fromAdded;
+			this.starts = starts;
+			this.offsets = offsets;
+			this.length = length;
+		}
+
+		/**
+		 * Returns the length of the snapshot.
+		 *
+		 * @return the length.
+		 */
+		public int length() {
+			return length;
+		}
+
+		/**
+		 * Points the given segment to the text at the given offset. The text is
+		 * never copied, so at most the rest of the piece holding the offset is
+		 * returned, like a segment with partial return would.
+		 *
+		 * @param where
+		 *            is the offset of the text.
+		 * @param len
+		 *            is the wanted length of the text.
+		 * @param txt
+		 *            is the segment to fill.
+		 * @throws BadLocationException
+		 *             if the range is not inside the snapshot.
+		 */
+		public void getChars(int where, int len, Segment txt) throws BadLocationException {
+			if (where < 0 || len < 0 || where + len > length) {
+				throw new BadLocationException("Invalid range.", where + len);
+			}
+			if (len == 0) {
+				txt.array = EMPTY;
+				txt.offset = 0;
+				txt.count = 0;
+				return;
+			}
+
+			int index = Arrays.binarySearch(offsets, where);
+			if (index < 0) {
+				index = -index - 2;
+			}
+			while (index + 1 < offsets.length && offsets[index + 1] == where) {
+				index++;
+			}
+			int start = where - offsets[index];
+			int end = index + 1 < offsets.length ? offsets[index + 1] : length + 1;
+			txt.array = fromAdded[index] ? added : original;
+			txt.offset = starts[index] + start;
+			txt.count = Math.min(len, end - where);
+		}
+	}
+
+	/**
+	 * The pieces describing a range of the content, created by
+	 * {@link #span(int, int)}. Holds only the positions of the text in the
+	 * buffers, never the text itself.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public static final class Span {
+		/**
+		 * True for the pieces pointing to the add buffer.
+		 */
+		private final boolean[] fromAdded;
+		/**
+		 * The starts of the pieces in their buffers.
+		 */
+		private final int[] starts;
+		/**
+		 * The lengths of the pieces.
+		 */
+		private final int[] lengths;
+		/**
+		 * The length of the span.
+		 */
+		private final int length;
+
+		/**
+		 * The {@link Span} constructor.
+		 *
+		 * @param pieces
+		 *            are the pieces of the span.
+		 * @param length
+		 *            is the length of the span.
+		 */
+		private Span(List<Piece> pieces, int length) {
+			int count = pieces.size();
+			fromAdded = new boolean[count];
+			starts = new int[count];
+			lengths = new int[count];
+			for (int i = 0; i < count; ++i) {
+				Piece piece = pieces.get(i);
+				fromAdded[i] = piece.added;
+				starts[i] = piece.start;
+				lengths[i] = piece.length;
+			}
+			this.length = length;
+		}
+
+		/**
+		 * Returns the length of the span.
+		 *
+		 * @return the length.
+		 */
+		public int length() {
+			return length;
+		}
+
+		/**
+		 * Returns the number of pieces of the span.
+		 *
+		 * @return the number of pieces.
+		 */
+		public int getPieceCount() {
+			return starts.length;
+		}
+
+		/**
+		 * Returns the span followed by the given one. If the last piece of
+		 * this span continues into the first piece of the other, as it does
+		 * for text typed one character at a time, the two are merged.
+		 *
+		 * @param next
+		 *            is the following span.
+		 * @return the joined span.
+		 */
+		public Span concat(Span next) {
+			return join(List.of(this, next));
+		}
+
+		/**
+		 * Returns the given spans one after another, merging the pieces that
+		 * continue into each other.
+		 *
+		 * @param spans
+		 *            are the given spans.
+		 * @return the joined span.
+		 */
+		public static Span join(List<Span> spans) {
+			List<Piece> joined = new ArrayList<>();
+			int length = 0;
+			for (Span span : spans) {
+				for (Piece piece : span.toPieces()) {
+					Piece last = joined.isEmpty() ? null : joined.get(joined.size() - 1);
+					if (last != null && last.added == piece.added && last.start + last.length == piece.start) {
+						joined.set(joined.size() - 1, new Piece(last.added, last.start, last.length + piece.length));
+					} else {
+						joined.add(piece);
+					}
+				}
+				length += span.length;
+			}
+			return new Span(joined, length);
+		}
+
+		/**
+		 * Writes the span to the given output.
+		 *
+		 * @param out
+		 *            is the given output.
+		 * @throws IOException
+		 *             if writing fails.
+		 */
+		public void write(DataOutput out) throws IOException {
+			out.writeInt(length);
+			out.writeInt(starts.length);
+			for (int i = 0; i < starts.length; ++i) {
+				out.writeBoolean(fromAdded[i]);
+				out.writeInt(starts[i]);
+				out.writeInt(lengths[i]);
+			}
+		}
+
+		/**
+		 * Reads a span written by {@link #write(DataOutput)}.
+		 *
+		 * @param in
+		 *            is the input to read from.
+		 * @return the span.
+		 * @throws IOException
+		 *             if reading fails.
+		 */
+		public static Span read(DataInput in) throws IOException {
+			int length = in.readInt();
+			int count = in.readInt();
+			List<Piece> pieces = new ArrayList<>(count);
+			for (int i = 0; i < count; ++i) {
+				boolean added = in.readBoolean();
+				int start = in.readInt();
+				pieces.add(new Piece(added, start, in.readInt()));
+			}
+			return new Span(pieces, length);
+		}
+
+		/**
+		 * Returns the pieces of the span.
+		 *
+		 * @return the pieces.
+		 */
+		private List<Piece> toPieces() {
+			List<Piece> pieces = new ArrayList<>(starts.length);
+			for (int i = 0; i < starts.length; ++i) {
+				pieces.add(new Piece(fromAdded[i], starts[i], lengths[i]));
+			}
+			return pieces;
+		}
+	}
+
+	/**
+	 * A range of one of the buffers.
+	 */
+	private static final class Piece {
+		/**
+		 * True if the piece points to the add buffer, false if to the original.
+		 */
+		final boolean added;
+		/**
+		 * The start of the range in the buffer.
+		 */
+		final int start;
+		/**
+		 * The length of the range.
+		 */
+		final int length;
+
+		/**
+		 * The {@link Piece} constructor.
+		 *
+		 * @param added
+		 *            true if the piece points to the add buffer.
+		 * @param start
+		 *            is the start of the range.
+		 * @param length
+		 *            is the length of the range.
+		 */
+		Piece(boolean added, int start, int length) {
+			this.added = added;
+			this.start = start;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * The data backing a {@link Position}. Referenced weakly from the marks
+	 * array, so marks of unused positions can be removed.
+	 */
+	private static final class Mark extends WeakReference<PiecePosition> {
+		/**
+		 * The absolute offset, or the offset relative to the content end if
+		 * the mark is after the gap.
+		 */
+		int value;
+		/**
+		 * True if the mark is after the gap.
+		 */
+		boolean tail;
+
+		/**
+		 * The {@link Mark} constructor.
+		 *
+		 * @param position
+		 *            is the position backed by the mark.
+		 * @param queue
+		 *            is the queue notified when the position is collected.
+		 */
+		Mark(PiecePosition position, ReferenceQueue<PiecePosition> queue) {
+			super(position, queue);
+		}
+	}
+
+	/**
+	 * A {@link Position} backed by a mark.
+	 */
+	private final class PiecePosition implements Position {
+		/**
+		 * The backing mark.
+		 */
+		private Mark mark;
+
+		@Override
+		public int getOffset() {
+			return offsetOf(mark);
+		}
+
+		@Override
+		public String toString() {
+			return Integer.toString(getOffset());
+		}
+	}
+
+	/**
+	 * The marks inside of a removed range, together with their offsets before
+	 * the removal.
+	 */
+	private static final class MarkSnapshot {
+		/**
+		 * The marks inside of the range.
+		 */
+		final Mark[] marks;
+		/**
+		 * The offsets of the marks before the removal.
+		 */
+		final int[] offsets;
+
+		/**
+		 * The {@link MarkSnapshot} constructor.
+		 *
+		 * @param marks
+		 *            are the marks inside of the range.
+		 * @param length
+		 *            is the content length before the removal.
+		 */
+		MarkSnapshot(Mark[] marks, int length) {
+			this.marks = marks;
+			offsets = new int[marks.length];
+			for (int i = 0; i < marks.length; ++i) {
+				offsets[i] = marks[i].tail ? marks[i].value + length : marks[i].value;
+			}
+		}
+	}
+
+	/**
+	 * An undoable insert. Holds only the inserted range of the add buffer.
+	 */
+	private final class InsertEdit extends AbstractUndoableEdit {
+
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The insert offset.
+		 */
+		private final int where;
+		/**
+		 * The inserted piece.
+		 */
+		private final Piece piece;
+		/**
+		 * The marks inside of the inserted range, valid after an undo.
+		 */
+		private MarkSnapshot collapsed;
+
+		/**
+		 * The {@link InsertEdit} constructor.
+		 *
+		 * @param where
+		 *            is the insert offset.
+		 * @param piece
+		 *            is the inserted piece.
+		 */
+		InsertEdit(int where, Piece piece) {
+			this.where = where;
+			this.piece = piece;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			collapsed = snapshotMarks(where, piece.length);
+			removePieces(where, piece.length);
+			collapseMarks(where, piece.length);
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			insertPiece(where, piece);
+			restoreMarks(collapsed, where, piece.length);
+			collapsed = null;
+		}
+	}
+
+	/**
+	 * An undoable insert of a span. Holds only the inserted pieces.
+	 */
+	private final class SpanInsertEdit extends AbstractUndoableEdit {
+
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The insert offset.
+		 */
+		private final int where;
+		/**
+		 * The inserted pieces.
+		 */
+		private final List<Piece> inserted;
+		/**
+		 * The number of inserted characters.
+		 */
+		private final int nitems;
+		/**
+		 * The marks inside of the inserted range, valid after an undo.
+		 */
+		private MarkSnapshot collapsed;
+
+		/**
+		 * The {@link SpanInsertEdit} constructor.
+		 *
+		 * @param where
+		 *            is the insert offset.
+		 * @param inserted
+		 *            are the inserted pieces.
+		 * @param nitems
+		 *            is the number of inserted characters.
+		 */
+		SpanInsertEdit(int where, List<Piece> inserted, int nitems) {
+			this.where = where;
+			this.inserted = inserted;
+			this.nitems = nitems;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			collapsed = snapshotMarks(where, nitems);
+			removePieces(where, nitems);
+			collapseMarks(where, nitems);
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			insertPieces(where, inserted, nitems);
+			restoreMarks(collapsed, where, nitems);
+			collapsed = null;
+		}
+	}
+
+	/**
+	 * An undoable remove. Holds only the removed pieces, not the removed text.
+	 */
+	private final class RemoveEdit extends AbstractUndoableEdit {
+
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The remove offset.
+		 */
+		private final int where;
+		/**
+		 * The number of removed characters.
+		 */
+		private final int nitems;
+		/**
+		 * The removed pieces.
+		 */
+		private List<Piece> removed;
+		/**
+		 * The marks inside of the removed range.
+		 */
+		private MarkSnapshot collapsed;
+
+		/**
+		 * The {@link RemoveEdit} constructor.
+		 *
+		 * @param where
+		 *            is the remove offset.
+		 * @param nitems
+		 *            is the number of removed characters.
+		 */
+		RemoveEdit(int where, int nitems) {
+			this.where = where;
+			this.nitems = nitems;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			insertPieces(where, removed, nitems);
+			restoreMarks(collapsed, where, nitems);
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			collapsed = snapshotMarks(where, nitems);
+			removed = removePieces(where, nitems);
+			collapseMarks(where, nitems);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * A {@link PlainDocument} backed by the {@link PieceTableContent}. The initial
+ * text of the document is given as a character array that becomes the
+ * read-only original buffer of the piece table, so it is never copied into a
+ * {@link String} or a gap buffer.
+ *
+ * @author Marin
+ *
+ */
+public class PieceTableDocument extends PlainDocument {
+
+	/**
+	 * Serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The {@link PieceTableDocument} constructor. Creates an empty document.
+	 */
+	public PieceTableDocument() {
+		super(new PieceTableContent());
+	}
+
+	/**
+	 * The {@link PieceTableDocument} constructor. Creates a document with the
+	 * given initial text. The given array is not copied, so it must not be
+	 * modified afterwards.
+	 *
+	 * @param text
+	 *            is the array holding the initial text.
+	 * @param length
+	 *            is the number of used characters in the array.
+	 */
+	public PieceTableDocument(char[] text, int length) {
+		this();
+		loadOriginal(text, length);
+	}
+
+	/**
+	 * Creates a read-only snapshot of the text, see
+	 * {@link PieceTableContent#snapshot()}. Costs time proportional to the
+	 * number of pieces, not to the length of the text.
+	 *
+	 * @return the snapshot.
+	 */
+	public PieceTableContent.Snapshot snapshot() {
+		readLock();
+		try {
+			return ((PieceTableContent) getContent()).snapshot();
+		} finally {
+			readUnlock();
+		}
+	}
+
+	/**
+	 * Returns the pieces describing the given range of the text, see
+	 * {@link PieceTableContent#span(int, int)}. Costs time proportional to the
+	 * number of pieces in the range, not to its length.
+	 *
+	 * @param offset
+	 *            is the start of the range.
+	 * @param length
+	 *            is the length of the range.
+	 * @return the span.
+	 * @throws BadLocationException
+	 *             if the range is not inside the document.
+	 */
+	public PieceTableContent.Span span(int offset, int length) throws BadLocationException {
+		readLock();
+		try {
+			return ((PieceTableContent) getContent()).span(offset, length);
+		} finally {
+			readUnlock();
+		}
+	}
+
+	/**
+	 * Stores the given text without inserting it, see
+	 * {@link PieceTableContent#store(String)}. The document does not change.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @return the span of the stored text.
+	 */
+	public PieceTableContent.Span store(String text) {
+		writeLock();
+		try {
+			return ((PieceTableContent) getContent()).store(text);
+		} finally {
+			writeUnlock();
+		}
+	}
+
+	/**
+	 * Inserts the text described by the given span, created by this document,
+	 * without copying it. Notifies the listeners like
+	 * {@link #insertString(int, String, javax.swing.text.AttributeSet)} does.
+	 *
+	 * @param offset
+	 *            is the insert offset.
+	 * @param span
+	 *            is the inserted span.
+	 * @throws BadLocationException
+	 *             if the offset is not inside the document.
+	 */
+	public void insert(int offset, PieceTableContent.Span span) throws BadLocationException {
+		if (span.length() == 0) {
+			return;
+		}
+
+		writeLock();
+		try {
+			UndoableEdit edit = ((PieceTableContent) getContent()).insertSpan(offset, span);
+			DefaultDocumentEvent event = new DefaultDocumentEvent(offset, span.length(), DocumentEvent.EventType.INSERT);
+			event.addEdit(edit);
+			insertUpdate(event, null);
+			event.end();
+			fireInsertUpdate(event);
+			fireUndoableEditUpdate(new UndoableEditEvent(this, event));
+		} finally {
+			writeUnlock();
+		}
+	}
+
+	/**
+	 * Adds the given listener for the text about to be removed, see
+	 * {@link PieceTableContent.RemovalListener}. The listener is called under
+	 * the write lock, so it can read the document.
+	 *
+	 * @param listener
+	 *            is the listener to add.
+	 */
+	public void addRemovalListener(PieceTableContent.RemovalListener listener) {
+		((PieceTableContent) getContent()).addRemovalListener(listener);
+	}
+
+	/**
+	 * Removes the given listener for the text about to be removed.
+	 *
+	 * @param listener
+	 *            is the listener to remove.
+	 */
+	public void removeRemovalListener(PieceTableContent.RemovalListener listener) {
+		((PieceTableContent) getContent()).removeRemovalListener(listener);
+	}
+
+	/**
+	 * Loads the original text into the empty content and builds the line
+	 * structure for it, like an insert would, but without copying the text.
+	 *
+	 * @param text
+	 *            is the array holding the original text.
+	 * @param length
+	 *            is the number of used characters in the array.
+	 */
+	private void loadOriginal(char[] text, int length) {
+		if (length == 0) {
+			return;
+		}
+
+		writeLock();
+		try {
+			((PieceTableContent) getContent()).loadOriginal(text, length);
+
+			DefaultDocumentEvent event = new DefaultDocumentEvent(0, length, DocumentEvent.EventType.INSERT);
+			insertUpdate(event, null);
+			event.end();
+			fireInsertUpdate(event);
+		} finally {
+			writeUnlock();
+		}
+	}
+}
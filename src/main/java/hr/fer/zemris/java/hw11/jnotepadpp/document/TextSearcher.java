@@ -0,0 +1,942 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+/**
+ * Finds and replaces text in a {@link Document} without copying it out. The
+ * document is read through a {@link DocumentCharSequence}. A literal query is
+ * found with the Boyer-Moore-Horspool algorithm, which skips ahead by up to
+ * the length of the query after every mismatch. A regular expression is
+ * matched by {@link java.util.regex} over the same view.
+ * <p>
+ * The document is searched in chunks of {@link #CHUNK_SIZE} characters, each
+ * under the read lock of the document, so a search on a background thread
+ * lets the document be edited between the chunks. A regular expression that
+ * reaches the end of a chunk is matched again over a longer chunk, so a match
+ * is never cut in two. A literal query skips the blocks of a document that
+ * its attached {@link TrigramIndex} rules out. A searcher is immutable and
+ * can be used by many threads at once.
+ *
+ * @author Marin
+ *
+ */
+public class TextSearcher {
+
+	/**
+	 * The number of characters searched under one read lock.
+	 */
+	public static final int CHUNK_SIZE = 1024 * 1024;
+
+	/**
+	 * The search options.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public enum Option {
+		/**
+		 * Letters differing in case do not match.
+		 */
+		MATCH_CASE,
+		/**
+		 * Matches only whole words, not parts of longer words.
+		 */
+		WHOLE_WORD,
+		/**
+		 * The query is a regular expression, and the replacement can refer to
+		 * its groups with <code>$1</code> or <code>${name}</code>.
+		 */
+		REGEX
+	}
+
+	/**
+	 * A found occurrence of the query.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public static class Match {
+
+		/**
+		 * The offset of the match.
+		 */
+		private final int start;
+		/**
+		 * The end offset of the match.
+		 */
+		private final int end;
+		/**
+		 * The text replacing the match, null if the searcher has no
+		 * replacement.
+		 */
+		private final String replacement;
+
+		/**
+		 * The {@link Match} constructor.
+		 *
+		 * @param start
+		 *            is the offset of the match.
+		 * @param end
+		 *            is the end offset of the match.
+		 * @param replacement
+		 *            is the text replacing the match.
+		 */
+		private Match(int start, int end, String replacement) {
+			this.start = start;
+			this.end = end;
+			this.replacement = replacement;
+		}
+
+		/**
+		 * A getter for the offset of the match.
+		 *
+		 * @return the offset.
+		 */
+		public int getStart() {
+			return start;
+		}
+
+		/**
+		 * A getter for the end offset of the match.
+		 *
+		 * @return the end offset, exclusive.
+		 */
+		public int getEnd() {
+			return end;
+		}
+
+		/**
+		 * A getter for the text replacing the match, with the references to
+		 * the groups of a regular expression filled in.
+		 *
+		 * @return the replacement, null if the searcher has no replacement.
+		 */
+		public String getReplacement() {
+			return replacement;
+		}
+	}
+
+	/**
+	 * A part of the replacement of a regular expression: literal text or a
+	 * reference to a group.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Part {
+
+		/**
+		 * The literal text, null for a reference.
+		 */
+		private final String literal;
+		/**
+		 * The number of the referenced group.
+		 */
+		private final int group;
+		/**
+		 * The name of the referenced group, null if it is referenced by its
+		 * number.
+		 */
+		private final String name;
+
+		/**
+		 * The {@link Part} constructor.
+		 *
+		 * @param literal
+		 *            is the literal text.
+		 * @param group
+		 *            is the number of the referenced group.
+		 * @param name
+		 *            is the name of the referenced group.
+		 */
+		private Part(String literal, int group, String name) {
+			this.literal = literal;
+			this.group = group;
+			this.name = name;
+		}
+	}
+
+	/**
+	 * The progress of a search through a document.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Scan {
+
+		/**
+		 * The offset the search continues from.
+		 */
+		private int position;
+		/**
+		 * The offset of the last found empty match, -1 if there is none.
+		 */
+		private int lastEmpty = -1;
+		/**
+		 * The offset the search stops at, once a chunk ends past it.
+		 */
+		private int stop = Integer.MAX_VALUE;
+		/**
+		 * True once the end of the document was searched.
+		 */
+		private boolean done;
+
+		/**
+		 * The {@link Scan} constructor.
+		 *
+		 * @param position
+		 *            is the offset the search starts from.
+		 */
+		private Scan(int position) {
+			this.position = position;
+		}
+	}
+
+	/**
+	 * The text or the regular expression to find.
+	 */
+	private final String query;
+	/**
+	 * The search options.
+	 */
+	private final Set<Option> options;
+	/**
+	 * The compiled regular expression, null for a literal query.
+	 */
+	private final Pattern pattern;
+	/**
+	 * The literal query, case folded if the case is ignored.
+	 */
+	private final char[] needle;
+	/**
+	 * The Horspool shifts, by the low byte of the character.
+	 */
+	private final int[] shifts;
+	/**
+	 * The buckets of the trigrams of the literal query, null if the query can
+	 * not be found with a {@link TrigramIndex}.
+	 */
+	private final int[] trigrams;
+	/**
+	 * The replacement, null if there is none.
+	 */
+	private final String replacement;
+	/**
+	 * The parts of the replacement of a regular expression.
+	 */
+	private final List<Part> parts;
+
+	/**
+	 * The {@link TextSearcher} constructor, for finding only.
+	 *
+	 * @param query
+	 *            is the text or the regular expression to find.
+	 * @param options
+	 *            are the search options.
+	 * @throws IllegalArgumentException
+	 *             if the query is empty, or if it is not a valid regular
+	 *             expression.
+	 */
+	public TextSearcher(String query, Set<Option> options) {
+		this(query, null, options);
+	}
+
+	/**
+	 * The {@link TextSearcher} constructor.
+	 *
+	 * @param query
+	 *            is the text or the regular expression to find.
+	 * @param replacement
+	 *            is the text replacing the matches, null for finding only.
+	 * @param options
+	 *            are the search options.
+	 * @throws IllegalArgumentException
+	 *             if the query is empty, if it is not a valid regular
+	 *             expression, or if the replacement refers to a group the
+	 *             expression does not have.
+	 */
+	public TextSearcher(String query, String replacement, Set<Option> options) {
+		if (query.isEmpty()) {
+			throw new IllegalArgumentException("Query should not be empty.");
+		}
+		this.query = query;
+		this.options = options.isEmpty() ? EnumSet.noneOf(Option.class) : EnumSet.copyOf(options);
+		this.replacement = replacement;
+
+		if (this.options.contains(Option.REGEX)) {
+			String expression = this.options.contains(Option.WHOLE_WORD)
+					? "(?<![\\p{L}\\p{N}_])(?:" + query + ")(?![\\p{L}\\p{N}_])"
+					: query;
+			int flags = Pattern.MULTILINE;
+			if (!this.options.contains(Option.MATCH_CASE)) {
+				flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+			}
+			pattern = Pattern.compile(expression, flags);
+			parts = replacement == null ? null : parseReplacement(replacement, pattern.matcher("").groupCount());
+			if (parts != null) {
+				checkGroupNames(expression, flags);
+			}
+			needle = null;
+			shifts = null;
+			trigrams = null;
+			return;
+		}
+
+		pattern = null;
+		parts = null;
+		needle = new char[query.length()];
+		for (int i = 0; i < needle.length; ++i) {
+			needle[i] = fold(query.charAt(i));
+		}
+		shifts = new int[256];
+		Arrays.fill(shifts, needle.length);
+		for (int i = 0; i < needle.length - 1; ++i) {
+			shifts[needle[i] & 0xff] = needle.length - 1 - i;
+		}
+		trigrams = TrigramIndex.buckets(query);
+	}
+
+	/**
+	 * A getter for the text or the regular expression to find.
+	 *
+	 * @return the query.
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * A getter for the text replacing the matches, which can refer to the
+	 * groups of a regular expression.
+	 *
+	 * @return the replacement, null if the searcher has no replacement.
+	 */
+	public String getReplacement() {
+		return replacement;
+	}
+
+	/**
+	 * A getter for the search options.
+	 *
+	 * @return the options, not modifiable.
+	 */
+	public Set<Option> getOptions() {
+		return Collections.unmodifiableSet(options);
+	}
+
+	/**
+	 * Finds the first match starting at or after the given offset.
+	 *
+	 * @param document
+	 *            is the searched document.
+	 * @param from
+	 *            is the given offset.
+	 * @return the match, null if there is none.
+	 */
+	public Match findNext(Document document, int from) {
+		Match[] found = new Match[1];
+		search(document, -1, new Scan(Math.max(0, from)), match -> {
+			found[0] = match;
+			return false;
+		}, () -> false);
+		return found[0];
+	}
+
+	/**
+	 * Finds the last match ending at or before the given offset.
+	 *
+	 * @param document
+	 *            is the searched document.
+	 * @param before
+	 *            is the given offset.
+	 * @return the match, null if there is none.
+	 */
+	public Match findPrevious(Document document, int before) {
+		int end = Math.min(before, document.getLength());
+		Match[] found = new Match[1];
+		int stop = end;
+		while (true) {
+			Scan scan = new Scan(Math.max(0, stop - CHUNK_SIZE));
+			scan.stop = stop;
+			search(document, end, scan, match -> {
+				found[0] = match;
+				return true;
+			}, () -> false);
+			if (found[0] != null || stop <= CHUNK_SIZE) {
+				return found[0];
+			}
+			stop -= CHUNK_SIZE;
+		}
+	}
+
+	/**
+	 * Finds all the matches in the document, chunk by chunk. The matches of
+	 * every chunk are handed over as soon as the chunk is searched, outside
+	 * the read lock. Can be called from any thread; once the search is
+	 * cancelled, the offsets of the matches handed over so far may be out of
+	 * date.
+	 *
+	 * @param document
+	 *            is the searched document.
+	 * @param batches
+	 *            is given the matches of every chunk, in order.
+	 * @param cancelled
+	 *            is checked under the read lock before every chunk, the
+	 *            search stops once it returns true.
+	 * @return true if the whole document was searched, false if the search
+	 *         was cancelled.
+	 */
+	public boolean findAll(Document document, Consumer<List<Match>> batches, BooleanSupplier cancelled) {
+		Scan scan = new Scan(0);
+		while (!scan.done) {
+			List<Match> batch = new ArrayList<>();
+			if (!searchChunk(document, -1, scan, match -> batch.add(match), cancelled)) {
+				return false;
+			}
+			if (!batch.isEmpty()) {
+				batches.accept(batch);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds all the matches in the given text, which must not change during
+	 * the search, like a {@link PieceTableContent.Snapshot} viewed by a
+	 * {@link DocumentCharSequence}. Nothing is locked, so many texts can be
+	 * searched in parallel. The matches are handed over chunk by chunk, like
+	 * {@link #findAll(Document, Consumer, BooleanSupplier)} does.
+	 *
+	 * @param text
+	 *            is the searched text.
+	 * @param batches
+	 *            is given the matches of every chunk, in order.
+	 * @param cancelled
+	 *            is checked before every chunk, the search stops once it
+	 *            returns true.
+	 * @return true if the whole text was searched, false if the search was
+	 *         cancelled.
+	 */
+	public boolean findAll(CharSequence text, Consumer<List<Match>> batches, BooleanSupplier cancelled) {
+		Scan scan = new Scan(0);
+		while (!scan.done) {
+			if (cancelled.getAsBoolean()) {
+				return false;
+			}
+			List<Match> batch = new ArrayList<>();
+			searchText(text, scan, batch::add);
+			if (!batch.isEmpty()) {
+				batches.accept(batch);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces the given matches with their replacements, as one undoable
+	 * edit. In a {@link PieceTableDocument} the range from the first match to
+	 * the last one is replaced at once, by the pieces of the text between the
+	 * matches and of the stored replacements, so the time does not grow with
+	 * the number of matches times the number of pieces. Used on the event
+	 * dispatch thread.
+	 *
+	 * @param document
+	 *            is the document the matches were found in, unchanged since.
+	 * @param matches
+	 *            are the matches, in order and not overlapping.
+	 * @throws BadLocationException
+	 *             if a match is not inside the document.
+	 * @throws IllegalStateException
+	 *             if the searcher has no replacement.
+	 */
+	public void replace(AbstractDocument document, List<Match> matches) throws BadLocationException {
+		if (replacement == null) {
+			throw new IllegalStateException("Searcher has no replacement.");
+		}
+		if (matches.isEmpty()) {
+			return;
+		}
+		if (document instanceof PieceTableDocument) {
+			splice((PieceTableDocument) document, matches);
+			return;
+		}
+		EditGroup.apply(document, () -> {
+			for (int i = matches.size() - 1; i >= 0; --i) {
+				Match match = matches.get(i);
+				document.replace(match.start, match.end - match.start, match.replacement, null);
+			}
+		});
+	}
+
+	/**
+	 * Replaces the range from the first match to the last one by the pieces
+	 * of the text between the matches and of their replacements. A literal
+	 * replacement is stored only once.
+	 *
+	 * @param document
+	 *            is the document the matches were found in.
+	 * @param matches
+	 *            are the matches, in order and not overlapping.
+	 * @throws BadLocationException
+	 *             if a match is not inside the document.
+	 */
+	private void splice(PieceTableDocument document, List<Match> matches) throws BadLocationException {
+		int start = matches.get(0).start;
+		int end = matches.get(matches.size() - 1).end;
+		PieceTableContent.Span literal = pattern == null ? document.store(replacement) : null;
+
+		List<PieceTableContent.Span> spans = new ArrayList<>();
+		int position = start;
+		for (Match match : matches) {
+			if (match.start > position) {
+				spans.add(document.span(position, match.start - position));
+			}
+			spans.add(literal != null ? literal : document.store(match.replacement));
+			position = match.end;
+		}
+		PieceTableContent.Span replaced = PieceTableContent.Span.join(spans);
+
+		EditGroup.apply(document, () -> {
+			document.remove(start, end - start);
+			document.insert(start, replaced);
+		});
+	}
+
+	/**
+	 * Searches the document chunk by chunk, until the end or until the sink
+	 * asks to stop.
+	 *
+	 * @param document
+	 *            is the searched document.
+	 * @param end
+	 *            is the offset the matches have to end before, -1 for the end
+	 *            of the document.
+	 * @param scan
+	 *            is the progress of the search.
+	 * @param sink
+	 *            is given the matches, returns false to stop the search.
+	 * @param cancelled
+	 *            is checked before every chunk.
+	 */
+	private void search(Document document, int end, Scan scan, Predicate<Match> sink, BooleanSupplier cancelled) {
+		boolean[] stopped = { false };
+		while (!scan.done && !stopped[0] && scan.position < scan.stop) {
+			searchChunk(document, end, scan, match -> {
+				if (!sink.test(match)) {
+					stopped[0] = true;
+				}
+				return !stopped[0];
+			}, cancelled);
+		}
+	}
+
+	/**
+	 * Searches the next chunk of the document under its read lock.
+	 *
+	 * @param document
+	 *            is the searched document.
+	 * @param end
+	 *            is the offset the matches have to end before, -1 for the end
+	 *            of the document.
+	 * @param scan
+	 *            is the progress of the search.
+	 * @param sink
+	 *            is given the matches, returns false to stop the chunk.
+	 * @param cancelled
+	 *            is checked before the chunk.
+	 * @return false if the search was cancelled, true otherwise.
+	 */
+	private boolean searchChunk(Document document, int end, Scan scan, Predicate<Match> sink,
+			BooleanSupplier cancelled) {
+		AbstractDocument locked = document instanceof AbstractDocument ? (AbstractDocument) document : null;
+		if (locked != null) {
+			locked.readLock();
+		}
+		try {
+			if (cancelled.getAsBoolean()) {
+				return false;
+			}
+			int length = end < 0 ? document.getLength() : Math.min(end, document.getLength());
+			if (!skipToCandidate(document, length, scan)) {
+				return true;
+			}
+			searchText(new DocumentCharSequence(document, 0, length), scan, sink);
+			return true;
+		} finally {
+			if (locked != null) {
+				locked.readUnlock();
+			}
+		}
+	}
+
+	/**
+	 * Moves the search to the next block of the document a match can start in,
+	 * if the document has a {@link TrigramIndex} and the query is literal.
+	 * Called under the read lock.
+	 *
+	 * @param document
+	 *            is the searched document.
+	 * @param length
+	 *            is the length of the searched part of the document.
+	 * @param scan
+	 *            is the progress of the search.
+	 * @return false if no match can start before the end of the search, true
+	 *         otherwise.
+	 */
+	private boolean skipToCandidate(Document document, int length, Scan scan) {
+		if (trigrams == null || scan.done) {
+			return true;
+		}
+		Object property = document.getProperty(TrigramIndex.PROPERTY);
+		if (!(property instanceof TrigramIndex) || ((TrigramIndex) property).length() != document.getLength()) {
+			return true;
+		}
+		long next = ((TrigramIndex) property).nextCandidate(scan.position, trigrams, needle.length);
+		if (next < 0 || next >= Math.min(length, scan.stop)) {
+			scan.position = Math.max(scan.position, Math.min(length, scan.stop));
+			scan.done = true;
+			return false;
+		}
+		scan.position = (int) next;
+		return true;
+	}
+
+	/**
+	 * Searches the next chunk of the given text.
+	 *
+	 * @param text
+	 *            is the searched text.
+	 * @param scan
+	 *            is the progress of the search.
+	 * @param sink
+	 *            is given the matches, returns false to stop the chunk.
+	 */
+	private void searchText(CharSequence text, Scan scan, Predicate<Match> sink) {
+		if (scan.position > text.length()) {
+			scan.done = true;
+		} else if (pattern == null) {
+			searchLiteral(text, scan, sink);
+		} else {
+			searchPattern(text, scan, sink);
+		}
+	}
+
+	/**
+	 * Searches the next chunk for the literal query.
+	 *
+	 * @param text
+	 *            is the text of the document.
+	 * @param scan
+	 *            is the progress of the search.
+	 * @param sink
+	 *            is given the matches, returns false to stop the chunk.
+	 */
+	private void searchLiteral(CharSequence text, Scan scan, Predicate<Match> sink) {
+		int length = text.length();
+		int limit = (int) Math.min(length, (long) scan.position + CHUNK_SIZE);
+		int end = (int) Math.min(length, (long) limit + needle.length - 1);
+
+		int position = scan.position;
+		while (true) {
+			int start = horspool(text, position, end);
+			if (start < 0 || start >= limit) {
+				break;
+			}
+			position = start + needle.length;
+			if (!sink.test(new Match(start, position, replacement))) {
+				scan.position = position;
+				return;
+			}
+		}
+		scan.position = Math.max(limit, position);
+		scan.done = limit == length;
+	}
+
+	/**
+	 * Finds the first occurrence of the literal query inside the given range
+	 * with the Boyer-Moore-Horspool algorithm.
+	 *
+	 * @param text
+	 *            is the text of the document.
+	 * @param from
+	 *            is the start of the range.
+	 * @param to
+	 *            is the end of the range.
+	 * @return the offset of the occurrence, -1 if there is none.
+	 */
+	private int horspool(CharSequence text, int from, int to) {
+		int last = needle.length - 1;
+		int position = from;
+		while (position + last < to) {
+			char c = fold(text.charAt(position + last));
+			if (c == needle[last]) {
+				int i = last - 1;
+				while (i >= 0 && fold(text.charAt(position + i)) == needle[i]) {
+					i--;
+				}
+				if (i < 0 && isWholeWord(text, position, position + needle.length)) {
+					return position;
+				}
+			}
+			position += shifts[c & 0xff];
+		}
+		return -1;
+	}
+
+	/**
+	 * Searches the next chunk for the regular expression. A match touching the
+	 * end of the chunk could continue past it, so the chunk is made longer and
+	 * matched again. A chunk made longer is not searched again by the
+	 * following chunks: if it was matched up to the end of the text, or
+	 * without touching its end, the search moves on to its first match after
+	 * the chunk, or to the end of the text if there is none.
+	 *
+	 * @param text
+	 *            is the text of the document.
+	 * @param scan
+	 *            is the progress of the search.
+	 * @param sink
+	 *            is given the matches, returns false to stop the chunk.
+	 */
+	private void searchPattern(CharSequence text, Scan scan, Predicate<Match> sink) {
+		int length = text.length();
+		int limit = (int) Math.min(length, (long) scan.position + CHUNK_SIZE);
+		int end = limit;
+
+		Matcher matcher = pattern.matcher(text);
+		matcher.useTransparentBounds(true);
+		matcher.useAnchoringBounds(false);
+		matcher.region(scan.position, end);
+		int position = scan.position;
+		while (true) {
+			boolean found = matcher.find();
+			boolean complete = !matcher.hitEnd() || end == length;
+			if (!complete && (!found || matcher.start() < limit)) {
+				end = (int) Math.min(length, end + Math.max((long) CHUNK_SIZE, end - scan.position));
+				matcher.region(position, end);
+				continue;
+			}
+			if (!found) {
+				if (end == length) {
+					scan.position = length;
+					scan.done = true;
+					return;
+				}
+				break;
+			}
+			if (matcher.start() >= limit && limit < length) {
+				if (complete) {
+					scan.position = matcher.start();
+					return;
+				}
+				break;
+			}
+			if (matcher.start() == matcher.end()) {
+				if (matcher.start() == scan.lastEmpty) {
+					continue;
+				}
+				scan.lastEmpty = matcher.start();
+			}
+			position = matcher.end();
+			if (!sink.test(new Match(matcher.start(), position, expandReplacement(matcher)))) {
+				scan.position = position;
+				return;
+			}
+		}
+		scan.position = Math.max(limit, position);
+		scan.done = limit == length;
+	}
+
+	/**
+	 * Fills the references to the groups of the current match into the
+	 * replacement.
+	 *
+	 * @param matcher
+	 *            is the matcher at the current match.
+	 * @return the replacement, null if there is none.
+	 */
+	private String expandReplacement(Matcher matcher) {
+		if (parts == null) {
+			return null;
+		}
+		StringBuilder builder = new StringBuilder();
+		for (Part part : parts) {
+			if (part.literal != null) {
+				builder.append(part.literal);
+				continue;
+			}
+			String group = part.name != null ? matcher.group(part.name) : matcher.group(part.group);
+			if (group != null) {
+				builder.append(group);
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Checks if the match in the given range is a whole word, if only whole
+	 * words are matched.
+	 *
+	 * @param text
+	 *            is the text of the document.
+	 * @param start
+	 *            is the start of the match.
+	 * @param end
+	 *            is the end of the match.
+	 * @return true if it is or if parts of words match too, false otherwise.
+	 */
+	private boolean isWholeWord(CharSequence text, int start, int end) {
+		if (!options.contains(Option.WHOLE_WORD)) {
+			return true;
+		}
+		return (start == 0 || !isWordCharacter(text.charAt(start - 1)))
+				&& (end == text.length() || !isWordCharacter(text.charAt(end)));
+	}
+
+	/**
+	 * Folds the case of the given character if the case is ignored.
+	 *
+	 * @param c
+	 *            is the given character.
+	 * @return the compared character.
+	 */
+	private char fold(char c) {
+		if (options.contains(Option.MATCH_CASE)) {
+			return c;
+		}
+		return foldCase(c);
+	}
+
+	/**
+	 * Folds the case of the given character, so the characters matching it
+	 * when the case is ignored fold to the same character.
+	 *
+	 * @param c
+	 *            is the given character.
+	 * @return the folded character.
+	 */
+	static char foldCase(char c) {
+		if (c < 0x80) {
+			return c >= 'A' && c <= 'Z' ? (char) (c + 'a' - 'A') : c;
+		}
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/**
+	 * Checks if the given character can be a part of a word.
+	 *
+	 * @param c
+	 *            is the given character.
+	 * @return true if it can, false otherwise.
+	 */
+	private static boolean isWordCharacter(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	/**
+	 * Checks that the groups the replacement refers to by name exist. The
+	 * expression is matched with an empty alternative added, which matches
+	 * the empty text without changing the groups.
+	 *
+	 * @param expression
+	 *            is the regular expression.
+	 * @param flags
+	 *            are the flags of the expression.
+	 * @throws IllegalArgumentException
+	 *             if a group does not exist.
+	 */
+	private void checkGroupNames(String expression, int flags) {
+		Matcher probe = Pattern.compile("(?:" + expression + ")|", flags).matcher("");
+		probe.find();
+		for (Part part : parts) {
+			if (part.name != null) {
+				probe.group(part.name);
+			}
+		}
+	}
+
+	/**
+	 * Splits the replacement of a regular expression into literal text and
+	 * references to groups, like {@link Matcher#appendReplacement} does: a
+	 * group is referenced with <code>$1</code> or <code>${name}</code>, and a
+	 * backslash takes the next character literally.
+	 *
+	 * @param replacement
+	 *            is the replacement.
+	 * @param groupCount
+	 *            is the number of groups of the expression.
+	 * @return the parts of the replacement.
+	 * @throws IllegalArgumentException
+	 *             if the replacement is not valid or refers to a group the
+	 *             expression does not have.
+	 */
+	private static List<Part> parseReplacement(String replacement, int groupCount) {
+		List<Part> parts = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while (i < replacement.length()) {
+			char c = replacement.charAt(i++);
+			if (c == '\\') {
+				if (i == replacement.length()) {
+					throw new IllegalArgumentException("Character to be escaped is missing.");
+				}
+				literal.append(replacement.charAt(i++));
+				continue;
+			}
+			if (c != '$') {
+				literal.append(c);
+				continue;
+			}
+
+			if (literal.length() > 0) {
+				parts.add(new Part(literal.toString(), 0, null));
+				literal.setLength(0);
+			}
+			if (i == replacement.length()) {
+				throw new IllegalArgumentException("Illegal group reference: group index is missing.");
+			}
+			if (replacement.charAt(i) == '{') {
+				int close = replacement.indexOf('}', i);
+				if (close < 0) {
+					throw new IllegalArgumentException("Named capturing group is missing trailing '}'.");
+				}
+				parts.add(new Part(null, 0, replacement.substring(i + 1, close)));
+				i = close + 1;
+				continue;
+			}
+
+			int group = Character.digit(replacement.charAt(i), 10);
+			if (group < 0 || group > groupCount) {
+				throw new IllegalArgumentException("No group " + replacement.charAt(i) + ".");
+			}
+			i++;
+			while (i < replacement.length()) {
+				int digit = Character.digit(replacement.charAt(i), 10);
+				if (digit < 0 || group * 10 + digit > groupCount) {
+					break;
+				}
+				group = group * 10 + digit;
+				i++;
+			}
+			parts.add(new Part(null, group, null));
+		}
+		if (literal.length() > 0) {
+			parts.add(new Part(literal.toString(), 0, null));
+		}
+		return parts;
+	}
+}
@@ -0,0 +1,481 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+
+/**
+ * An index of the trigrams of a text split into blocks, used to skip the
+ * blocks a literal query can not start in. Every trigram is case folded and
+ * hashed to one of {@value #BUCKETS} buckets, and every bucket holds a bit for
+ * every block the trigram starts in, so the bits of all the buckets are one
+ * bit matrix of a fixed size. A block is a candidate for a query if every
+ * trigram of the query starts in it or in the blocks a match starting in it
+ * can reach. Hashing only adds candidates, so a search consulting the index
+ * finds exactly what a linear search does.
+ * <p>
+ * The offsets are in the units of the indexed text, characters for a
+ * {@link Document} and bytes for a viewed file. Attached to a document the
+ * index is kept up to date as a {@link DocumentListener}: the edited block
+ * grows or shrinks and the trigrams around the edit are added. Bits are never
+ * cleared, so an edited index stays correct but may get less selective, and
+ * once a block grows too much it is marked as degraded to be rebuilt.
+ *
+ * @author Marin
+ *
+ */
+public class TrigramIndex implements DocumentListener {
+
+	/**
+	 * The property of a {@link Document} holding its attached index, consulted
+	 * by the {@link TextSearcher}.
+	 */
+	public static final String PROPERTY = "trigramIndex";
+
+	/**
+	 * The number of hash buckets of the trigrams.
+	 */
+	private static final int BUCKETS = 1 << 16;
+	/**
+	 * The number of times its original size a block can grow before the index
+	 * is degraded.
+	 */
+	private static final int DEGRADED_GROWTH = 4;
+
+	/**
+	 * The size of the blocks when the index was built.
+	 */
+	private final int blockSize;
+	/**
+	 * The current lengths of the blocks.
+	 */
+	private final int[] lengths;
+	/**
+	 * The current starts of the blocks, followed by the length of the text.
+	 */
+	private final long[] starts;
+	/**
+	 * The number of words of the bits of one bucket.
+	 */
+	private final int words;
+	/**
+	 * The bits of the blocks, bucket after bucket.
+	 */
+	private final long[] bits;
+	/**
+	 * The attached document, null if there is none.
+	 */
+	private Document document;
+	/**
+	 * True once a block grew too much.
+	 */
+	private boolean degraded;
+
+	/**
+	 * The {@link TrigramIndex} constructor. Creates an index without any
+	 * trigram, of a text of the given length.
+	 *
+	 * @param length
+	 *            is the length of the text.
+	 * @param blockSize
+	 *            is the size of the blocks.
+	 * @throws IllegalArgumentException
+	 *             if the block size is not positive.
+	 */
+	public TrigramIndex(long length, int blockSize) {
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("Block size should be positive.");
+		}
+		this.blockSize = blockSize;
+		lengths = new int[(int) Math.max(1, (length + blockSize - 1) / blockSize)];
+		for (int i = 0; i < lengths.length; ++i) {
+			lengths[i] = (int) Math.min(blockSize, length - (long) i * blockSize);
+		}
+		starts = new long[lengths.length + 1];
+		updateStarts(0);
+		words = (lengths.length + 63) >>> 6;
+		bits = new long[BUCKETS * words];
+	}
+
+	/**
+	 * The {@link TrigramIndex} constructor used when reading an index.
+	 *
+	 * @param blockSize
+	 *            is the size of the blocks.
+	 * @param lengths
+	 *            are the lengths of the blocks.
+	 * @param bits
+	 *            are the bits of the blocks.
+	 */
+	private TrigramIndex(int blockSize, int[] lengths, long[] bits) {
+		this.blockSize = blockSize;
+		this.lengths = lengths;
+		starts = new long[lengths.length + 1];
+		updateStarts(0);
+		words = (lengths.length + 63) >>> 6;
+		this.bits = bits;
+	}
+
+	/**
+	 * Copies the index as it is now, without the attached document, so the
+	 * copy can be written on another thread while the index is kept up to
+	 * date.
+	 *
+	 * @return the copy.
+	 */
+	public TrigramIndex copy() {
+		TrigramIndex copy = new TrigramIndex(blockSize, lengths.clone(), bits.clone());
+		copy.degraded = degraded;
+		return copy;
+	}
+
+	/**
+	 * Hashes the query into the buckets of its trigrams, which can be given to
+	 * {@link #nextCandidate(long, int[], int)}.
+	 *
+	 * @param query
+	 *            is the literal query.
+	 * @return the distinct buckets, null if the query is too short to have a
+	 *         trigram.
+	 */
+	public static int[] buckets(CharSequence query) {
+		if (query.length() < 3) {
+			return null;
+		}
+		int[] buckets = new int[query.length() - 2];
+		for (int i = 0; i < buckets.length; ++i) {
+			buckets[i] = bucket(TextSearcher.foldCase(query.charAt(i)), TextSearcher.foldCase(query.charAt(i + 1)),
+					TextSearcher.foldCase(query.charAt(i + 2)));
+		}
+		Arrays.sort(buckets);
+		int count = 0;
+		for (int i = 0; i < buckets.length; ++i) {
+			if (i == 0 || buckets[i] != buckets[i - 1]) {
+				buckets[count++] = buckets[i];
+			}
+		}
+		return Arrays.copyOf(buckets, count);
+	}
+
+	/**
+	 * A getter for the size of the blocks when the index was built.
+	 *
+	 * @return the block size.
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * A getter for the number of blocks.
+	 *
+	 * @return the number of blocks.
+	 */
+	public int getBlockCount() {
+		return lengths.length;
+	}
+
+	/**
+	 * A getter for the current start of the given block.
+	 *
+	 * @param block
+	 *            is the index of the block.
+	 * @return the start offset.
+	 */
+	public long getBlockStart(int block) {
+		return starts[block];
+	}
+
+	/**
+	 * A getter for the current length of the indexed text.
+	 *
+	 * @return the length.
+	 */
+	public long length() {
+		return starts[lengths.length];
+	}
+
+	/**
+	 * Checks if a block grew so much since the index was built that the index
+	 * should be built again.
+	 *
+	 * @return true if it did, false otherwise.
+	 */
+	public boolean isDegraded() {
+		return degraded;
+	}
+
+	/**
+	 * Finds the block containing the given offset. The end of the text is in
+	 * the last block.
+	 *
+	 * @param offset
+	 *            is the given offset.
+	 * @return the index of the block.
+	 */
+	public int blockOf(long offset) {
+		int low = 0;
+		int high = lengths.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (starts[middle] <= offset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Adds the trigrams starting in the given range of the text to the given
+	 * block. The characters after the range complete the trigrams at its end.
+	 *
+	 * @param block
+	 *            is the index of the block.
+	 * @param text
+	 *            is the text.
+	 * @param from
+	 *            is the start of the range in the text.
+	 * @param to
+	 *            is the end of the range in the text.
+	 */
+	public void add(int block, CharSequence text, int from, int to) {
+		int end = Math.min(to, text.length() - 2);
+		if (from >= end) {
+			return;
+		}
+		int word = block >>> 6;
+		long bit = 1L << block;
+		char a = TextSearcher.foldCase(text.charAt(from));
+		char b = TextSearcher.foldCase(text.charAt(from + 1));
+		for (int i = from; i < end; ++i) {
+			char c = TextSearcher.foldCase(text.charAt(i + 2));
+			bits[bucket(a, b, c) * words + word] |= bit;
+			a = b;
+			b = c;
+		}
+	}
+
+	/**
+	 * Finds the first offset at or after the given one a match of a query can
+	 * start at, which is either the given offset or the start of a later
+	 * candidate block.
+	 *
+	 * @param from
+	 *            is the given offset.
+	 * @param buckets
+	 *            are the buckets of the trigrams of the query.
+	 * @param span
+	 *            is the length of the query.
+	 * @return the offset, -1 if no match can start at or after the given
+	 *         offset.
+	 */
+	public long nextCandidate(long from, int[] buckets, int span) {
+		for (int block = blockOf(from); block < lengths.length; ++block) {
+			if (starts[block + 1] > from && isCandidate(block, buckets, span)) {
+				return Math.max(from, starts[block]);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if a match of a query can start in the given block, which is when
+	 * every trigram of the query starts in one of the blocks the match can
+	 * reach.
+	 *
+	 * @param block
+	 *            is the index of the block.
+	 * @param buckets
+	 *            are the buckets of the trigrams of the query.
+	 * @param span
+	 *            is the length of the query.
+	 * @return true if it can, false otherwise.
+	 */
+	public boolean isCandidate(int block, int[] buckets, int span) {
+		if (lengths[block] == 0) {
+			return false;
+		}
+		long reach = starts[block + 1] + span - 3;
+		int last = block;
+		while (last + 1 < lengths.length && starts[last + 1] < reach) {
+			last++;
+		}
+		for (int bucket : buckets) {
+			int row = bucket * words;
+			boolean found = false;
+			for (int i = block; i <= last && !found; ++i) {
+				found = (bits[row + (i >>> 6)] & 1L << i) != 0;
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Starts keeping the index up to date with the edits of the given
+	 * document, and makes it the index the document is searched with. Used on
+	 * the event dispatch thread.
+	 *
+	 * @param document
+	 *            is the given document, with the text the index was built of.
+	 */
+	public void attach(Document document) {
+		this.document = document;
+		document.putProperty(PROPERTY, this);
+		document.addDocumentListener(this);
+	}
+
+	/**
+	 * Stops keeping the index up to date with its document, which is then
+	 * searched without it.
+	 */
+	public void detach() {
+		if (document == null) {
+			return;
+		}
+		document.removeDocumentListener(this);
+		if (document.getProperty(PROPERTY) == this) {
+			document.putProperty(PROPERTY, null);
+		}
+		document = null;
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		int offset = e.getOffset();
+		int block = blockOf(offset);
+		lengths[block] += e.getLength();
+		if (lengths[block] > (long) DEGRADED_GROWTH * blockSize) {
+			degraded = true;
+		}
+		updateStarts(block);
+		index(Math.max(0, offset - 2), offset + e.getLength());
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		long offset = e.getOffset();
+		long end = offset + e.getLength();
+		int first = blockOf(offset);
+		for (int block = first; block < lengths.length && starts[block] < end; ++block) {
+			lengths[block] -= (int) (Math.min(end, starts[block + 1]) - Math.max(offset, starts[block]));
+		}
+		updateStarts(first);
+		index(Math.max(0, e.getOffset() - 2), e.getOffset());
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	/**
+	 * Writes the index.
+	 *
+	 * @param output
+	 *            is the output the index is written to.
+	 * @throws IOException
+	 *             if the index can not be written.
+	 */
+	public void write(DataOutput output) throws IOException {
+		output.writeInt(blockSize);
+		output.writeInt(lengths.length);
+		for (int length : lengths) {
+			output.writeInt(length);
+		}
+		for (long word : bits) {
+			output.writeLong(word);
+		}
+	}
+
+	/**
+	 * Reads an index written by {@link #write(DataOutput)}.
+	 *
+	 * @param input
+	 *            is the input the index is read from.
+	 * @return the read index.
+	 * @throws IOException
+	 *             if the index can not be read or is not valid.
+	 */
+	public static TrigramIndex read(DataInput input) throws IOException {
+		int blockSize = input.readInt();
+		int count = input.readInt();
+		if (blockSize <= 0 || count <= 0 || count > Integer.MAX_VALUE / BUCKETS) {
+			throw new IOException("Invalid index.");
+		}
+		int[] lengths = new int[count];
+		for (int i = 0; i < count; ++i) {
+			lengths[i] = input.readInt();
+			if (lengths[i] < 0) {
+				throw new IOException("Invalid index.");
+			}
+		}
+		long[] bits = new long[BUCKETS * ((count + 63) >>> 6)];
+		for (int i = 0; i < bits.length; ++i) {
+			bits[i] = input.readLong();
+		}
+		return new TrigramIndex(blockSize, lengths, bits);
+	}
+
+	/**
+	 * Adds the trigrams starting in the given range of the attached document,
+	 * each to the block it starts in. Called under the write lock.
+	 *
+	 * @param from
+	 *            is the start of the range.
+	 * @param to
+	 *            is the end of the range.
+	 */
+	private void index(int from, int to) {
+		CharSequence text = new DocumentCharSequence(document);
+		int position = from;
+		while (position < to) {
+			int block = blockOf(position);
+			int end = (int) Math.min(to, starts[block + 1]);
+			if (end <= position) {
+				end = to;
+			}
+			add(block, text, position, end);
+			position = end;
+		}
+	}
+
+	/**
+	 * Computes the starts of the blocks from the given one onwards.
+	 *
+	 * @param from
+	 *            is the index of the first changed block.
+	 */
+	private void updateStarts(int from) {
+		for (int i = from; i < lengths.length; ++i) {
+			starts[i + 1] = starts[i] + lengths[i];
+		}
+	}
+
+	/**
+	 * Hashes the given trigram of case folded characters to its bucket.
+	 *
+	 * @param a
+	 *            is the first character.
+	 * @param b
+	 *            is the second character.
+	 * @param c
+	 *            is the third character.
+	 * @return the bucket.
+	 */
+	private static int bucket(char a, char b, char c) {
+		int hash = (a * 31 + b) * 31 + c;
+		hash ^= hash >>> 15;
+		hash *= 0x2C1B3C6D;
+		hash ^= hash >>> 12;
+		return hash & (BUCKETS - 1);
+	}
+}
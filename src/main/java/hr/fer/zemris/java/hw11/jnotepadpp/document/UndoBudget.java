@@ -0,0 +1,139 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A limit on the memory taken by the undo histories, shared by all the
+ * documents. Every history is kept below the limit per document on its own,
+ * and when all of them together go above the global limit, the largest one
+ * moves its oldest steps to its spill file until they fit again. Used on the
+ * event dispatch thread.
+ *
+ * @author Marin
+ *
+ */
+public class UndoBudget {
+
+	/**
+	 * The largest number of bytes one history can keep in memory.
+	 */
+	private final long perDocument;
+	/**
+	 * The largest number of bytes all the histories together can keep in
+	 * memory.
+	 */
+	private final long global;
+	/**
+	 * The histories sharing the budget.
+	 */
+	private final List<UndoHistory> histories = new ArrayList<>();
+	/**
+	 * The number of bytes all the histories keep in memory.
+	 */
+	private long used;
+
+	/**
+	 * The {@link UndoBudget} constructor.
+	 *
+	 * @param perDocument
+	 *            is the largest number of bytes one history can keep in
+	 *            memory.
+	 * @param global
+	 *            is the largest number of bytes all the histories together can
+	 *            keep in memory.
+	 * @throws IllegalArgumentException
+	 *             if a limit is not positive.
+	 */
+	public UndoBudget(long perDocument, long global) {
+		if (perDocument <= 0 || global <= 0) {
+			throw new IllegalArgumentException("Limits should be positive, were " + perDocument + " and " + global + ".");
+		}
+		this.perDocument = perDocument;
+		this.global = global;
+	}
+
+	/**
+	 * A getter for the limit per document.
+	 *
+	 * @return the largest number of bytes one history can keep in memory.
+	 */
+	public long getPerDocument() {
+		return perDocument;
+	}
+
+	/**
+	 * A getter for the global limit.
+	 *
+	 * @return the largest number of bytes all the histories together can keep
+	 *         in memory.
+	 */
+	public long getGlobal() {
+		return global;
+	}
+
+	/**
+	 * Returns the number of bytes all the histories keep in memory.
+	 *
+	 * @return the number of bytes.
+	 */
+	public long getUsed() {
+		return used;
+	}
+
+	/**
+	 * Adds the given history to the budget.
+	 *
+	 * @param history
+	 *            is the given history.
+	 */
+	void register(UndoHistory history) {
+		histories.add(history);
+	}
+
+	/**
+	 * Removes the given history from the budget.
+	 *
+	 * @param history
+	 *            is the given history.
+	 */
+	void unregister(UndoHistory history) {
+		histories.remove(history);
+	}
+
+	/**
+	 * Counts the given number of bytes as taken, and spills the oldest steps
+	 * of the histories until both limits are kept, starting with the largest
+	 * history.
+	 *
+	 * @param history
+	 *            is the history that took the bytes.
+	 * @param bytes
+	 *            is the number of bytes.
+	 */
+	void take(UndoHistory history, long bytes) {
+		used += bytes;
+		while (history.getMemory() > perDocument && history.spillOldest()) {
+		}
+		if (used <= global) {
+			return;
+		}
+		List<UndoHistory> largestFirst = new ArrayList<>(histories);
+		largestFirst.sort(Comparator.comparingLong(UndoHistory::getMemory).reversed());
+		for (UndoHistory candidate : largestFirst) {
+			while (used > global && candidate.spillOldest()) {
+			}
+		}
+	}
+
+	/**
+	 * Counts the given number of bytes as free again.
+	 *
+	 * @param bytes
+	 *            is the number of bytes.
+	 */
+	void release(long bytes) {
+		used -= bytes;
+	}
+}
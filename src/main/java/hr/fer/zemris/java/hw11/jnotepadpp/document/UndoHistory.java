@@ -0,0 +1,701 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.text.BadLocationException;
+
+/**
+ * The undo and redo history of a {@link PieceTableDocument}. An edit is
+ * remembered as the {@link PieceTableContent.Span} of the inserted or removed
+ * text, which holds only the positions of the text in the piece table
+ * buffers, never the text itself. Undoing a remove inserts the span back
+ * without copying it, so undoing the sort of a huge selection costs as much
+ * memory as the pieces of the selection, not as its text.
+ * <p>
+ * The edits reported between two undoable edit events form one step, and so
+ * do all the edits made while handling one user event, like the remove and
+ * the insert of a replaced selection. Characters typed or deleted one after
+ * another are merged into one step until a line break, a jump of the caret
+ * or a pause of {@link #MERGE_TIMEOUT} milliseconds.
+ * <p>
+ * The memory taken by the steps is estimated and counted against an
+ * {@link UndoBudget}. Once over it, the oldest steps are written to a
+ * temporary spill file and read back when they are undone.
+ *
+ * @author Marin
+ *
+ */
+public class UndoHistory implements DocumentListener, UndoableEditListener, PieceTableContent.RemovalListener {
+
+	/**
+	 * The longest pause in milliseconds between two typed characters merged
+	 * into one step.
+	 */
+	private static final long MERGE_TIMEOUT = 1000;
+	/**
+	 * The estimated number of bytes taken by a step.
+	 */
+	private static final int STEP_BYTES = 64;
+	/**
+	 * The estimated number of bytes taken by an edit of a step.
+	 */
+	private static final int EDIT_BYTES = 48;
+	/**
+	 * The estimated number of bytes taken by a piece of a span.
+	 */
+	private static final int PIECE_BYTES = 12;
+
+	/**
+	 * An insert or a remove.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Edit {
+
+		/**
+		 * True for an insert, false for a remove.
+		 */
+		private final boolean insert;
+		/**
+		 * The offset of the edit.
+		 */
+		private final int offset;
+		/**
+		 * The inserted or removed text.
+		 */
+		private PieceTableContent.Span span;
+
+		/**
+		 * The {@link Edit} constructor.
+		 *
+		 * @param insert
+		 *            is true for an insert, false for a remove.
+		 * @param offset
+		 *            is the offset of the edit.
+		 * @param span
+		 *            is the inserted or removed text.
+		 */
+		private Edit(boolean insert, int offset, PieceTableContent.Span span) {
+			this.insert = insert;
+			this.offset = offset;
+			this.span = span;
+		}
+	}
+
+	/**
+	 * The edits undone and redone together.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Step {
+
+		/**
+		 * The edits in the order they were made, null while the step is
+		 * spilled.
+		 */
+		private List<Edit> edits;
+		/**
+		 * The estimated number of bytes taken by the edits.
+		 */
+		private long bytes;
+		/**
+		 * The position of the step in the spill file, -1 if it was never
+		 * spilled.
+		 */
+		private long filePosition = -1;
+		/**
+		 * The number of bytes of the step in the spill file.
+		 */
+		private int fileLength;
+		/**
+		 * The user event the step was made in.
+		 */
+		private AWTEvent event;
+		/**
+		 * The time in milliseconds the step was last extended.
+		 */
+		private long time;
+		/**
+		 * True if typing can continue the step.
+		 */
+		private boolean open;
+	}
+
+	/**
+	 * The document.
+	 */
+	private final PieceTableDocument document;
+	/**
+	 * The budget the memory of the steps is counted against.
+	 */
+	private final UndoBudget budget;
+	/**
+	 * The steps, oldest first.
+	 */
+	private List<Step> steps = new ArrayList<>();
+	/**
+	 * The number of steps that can be undone, the rest can be redone.
+	 */
+	private int position;
+	/**
+	 * The index of the oldest step that might be in memory.
+	 */
+	private int firstInMemory;
+	/**
+	 * The edits reported since the last undoable edit event.
+	 */
+	private List<Edit> pending = new ArrayList<>();
+	/**
+	 * The text about to be removed.
+	 */
+	private PieceTableContent.Span removing;
+	/**
+	 * True while a step is being undone or redone.
+	 */
+	private boolean applying;
+	/**
+	 * The estimated number of bytes taken by the steps in memory.
+	 */
+	private long memory;
+	/**
+	 * The spill file, null until a step is spilled.
+	 */
+	private Path spillPath;
+	/**
+	 * The channel of the spill file.
+	 */
+	private FileChannel spill;
+	/**
+	 * The end of the used part of the spill file.
+	 */
+	private long spillEnd;
+
+	/**
+	 * The {@link UndoHistory} constructor. Starts recording the edits of the
+	 * given document.
+	 *
+	 * @param document
+	 *            is the given document.
+	 * @param budget
+	 *            is the budget the memory of the steps is counted against.
+	 */
+	public UndoHistory(PieceTableDocument document, UndoBudget budget) {
+		this.document = Objects.requireNonNull(document);
+		this.budget = Objects.requireNonNull(budget);
+		budget.register(this);
+		document.addRemovalListener(this);
+		document.addDocumentListener(this);
+		document.addUndoableEditListener(this);
+	}
+
+	/**
+	 * Stops recording the edits and forgets the history.
+	 */
+	public void dispose() {
+		document.removeRemovalListener(this);
+		document.removeDocumentListener(this);
+		document.removeUndoableEditListener(this);
+		clear();
+		budget.unregister(this);
+		closeSpill();
+	}
+
+	/**
+	 * Forgets all the steps.
+	 */
+	public void clear() {
+		budget.release(memory);
+		memory = 0;
+		steps.clear();
+		position = 0;
+		firstInMemory = 0;
+		pending.clear();
+		spillEnd = 0;
+	}
+
+	/**
+	 * Checks if there is a step to undo.
+	 *
+	 * @return true if there is, false otherwise.
+	 */
+	public boolean canUndo() {
+		return position > 0;
+	}
+
+	/**
+	 * Checks if there is a step to redo.
+	 *
+	 * @return true if there is, false otherwise.
+	 */
+	public boolean canRedo() {
+		return position < steps.size();
+	}
+
+	/**
+	 * Undoes the last step, reading it from the spill file if needed. If the
+	 * step does not fit the document, it is not undone at all.
+	 *
+	 * @return the offset of the first undone edit, -1 if there was nothing to
+	 *         undo or the step could not be undone.
+	 */
+	public int undo() {
+		if (!canUndo()) {
+			return -1;
+		}
+		Step step = steps.get(position - 1);
+		if (!load(step, position - 1) || !apply(step.edits, true)) {
+			return -1;
+		}
+		position--;
+		step.open = false;
+		return step.edits.get(0).offset;
+	}
+
+	/**
+	 * Redoes the last undone step, reading it from the spill file if needed.
+	 * If the step does not fit the document, it is not redone at all.
+	 *
+	 * @return the offset of the last redone edit, -1 if there was nothing to
+	 *         redo or the step could not be redone.
+	 */
+	public int redo() {
+		if (!canRedo()) {
+			return -1;
+		}
+		Step step = steps.get(position);
+		if (!load(step, position) || !apply(step.edits, false)) {
+			return -1;
+		}
+		position++;
+		step.open = false;
+		Edit last = step.edits.get(step.edits.size() - 1);
+		return last.insert ? last.offset + last.span.length() : last.offset;
+	}
+
+	/**
+	 * A getter for the memory taken by the steps.
+	 *
+	 * @return the estimated number of bytes taken by the steps in memory.
+	 */
+	public long getMemory() {
+		return memory;
+	}
+
+	@Override
+	public void textRemoving(int where, int nitems) {
+		if (applying) {
+			return;
+		}
+		try {
+			removing = document.span(where, nitems);
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		if (applying) {
+			return;
+		}
+		try {
+			pending.add(new Edit(true, e.getOffset(), document.span(e.getOffset(), e.getLength())));
+		} catch (BadLocationException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		if (applying || removing == null) {
+			return;
+		}
+		pending.add(new Edit(false, e.getOffset(), removing));
+		removing = null;
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	@Override
+	public void undoableEditHappened(UndoableEditEvent e) {
+		if (applying || pending.isEmpty()) {
+			return;
+		}
+		List<Edit> edits = pending;
+		pending = new ArrayList<>();
+		record(edits);
+	}
+
+	/**
+	 * Records the given edits as a new step, or as a part of the last step if
+	 * they continue it. Drops the steps that could be redone.
+	 *
+	 * @param edits
+	 *            are the edits.
+	 */
+	private void record(List<Edit> edits) {
+		truncate();
+
+		AWTEvent event = EventQueue.isDispatchThread() ? EventQueue.getCurrentEvent() : null;
+		long now = System.currentTimeMillis();
+		Step last = position > 0 ? steps.get(position - 1) : null;
+		if (last != null && last.edits != null) {
+			long before = last.bytes;
+			if (event != null && event == last.event) {
+				last.edits.addAll(edits);
+			} else if (!last.open || now - last.time > MERGE_TIMEOUT || !continueTyping(last, edits)) {
+				last = null;
+			}
+			if (last != null) {
+				last.time = now;
+				last.open = last.open && isTyping(edits);
+				last.bytes = estimate(last.edits);
+				take(last.bytes - before);
+				return;
+			}
+		}
+
+		Step step = new Step();
+		step.edits = edits;
+		step.bytes = estimate(edits);
+		step.event = event;
+		step.time = now;
+		step.open = isTyping(edits);
+		steps.add(step);
+		position++;
+		take(step.bytes);
+	}
+
+	/**
+	 * Undoes the given edits in reverse order, or redoes them in order. If an
+	 * edit does not fit the document, the edits applied so far are rolled
+	 * back, so the document is left as it was. If even that fails, the
+	 * history no longer matches the document and is cleared.
+	 *
+	 * @param edits
+	 *            are the edits of a step.
+	 * @param undo
+	 *            true to undo the edits, false to redo them.
+	 * @return true if all the edits were applied, false otherwise.
+	 */
+	private boolean apply(List<Edit> edits, boolean undo) {
+		int count = edits.size();
+		int applied = 0;
+		applying = true;
+		try {
+			for (; applied < count; ++applied) {
+				apply(edits.get(undo ? count - 1 - applied : applied), !undo);
+			}
+			return true;
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+			try {
+				while (applied-- > 0) {
+					apply(edits.get(undo ? count - 1 - applied : applied), undo);
+				}
+			} catch (BadLocationException ex) {
+				ex.printStackTrace();
+				clear();
+			}
+			return false;
+		} finally {
+			applying = false;
+		}
+	}
+
+	/**
+	 * Makes the given edit again, or reverts it.
+	 *
+	 * @param edit
+	 *            is the edit.
+	 * @param redo
+	 *            true to make the edit, false to revert it.
+	 * @throws BadLocationException
+	 *             if the edit does not fit the document.
+	 */
+	private void apply(Edit edit, boolean redo) throws BadLocationException {
+		if (edit.insert == redo) {
+			document.insert(edit.offset, edit.span);
+		} else {
+			document.remove(edit.offset, edit.span.length());
+		}
+	}
+
+	/**
+	 * Checks if the given edits are one typed or deleted character, other than
+	 * a line break.
+	 *
+	 * @param edits
+	 *            are the given edits.
+	 * @return true if they are, false otherwise.
+	 */
+	private boolean isTyping(List<Edit> edits) {
+		if (edits.size() != 1 || edits.get(0).span.length() != 1) {
+			return false;
+		}
+		Edit edit = edits.get(0);
+		if (!edit.insert) {
+			return true;
+		}
+		try {
+			return !"\n".equals(document.getText(edit.offset, 1));
+		} catch (BadLocationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Merges the given edits into the last edit of the given step if they are
+	 * one character typed or deleted right next to it.
+	 *
+	 * @param step
+	 *            is the step.
+	 * @param edits
+	 *            are the given edits.
+	 * @return true if the edits were merged, false otherwise.
+	 */
+	private boolean continueTyping(Step step, List<Edit> edits) {
+		if (!isTyping(edits)) {
+			return false;
+		}
+		Edit edit = edits.get(0);
+		int lastIndex = step.edits.size() - 1;
+		Edit last = step.edits.get(lastIndex);
+		if (edit.insert != last.insert) {
+			return false;
+		}
+
+		if (edit.insert && edit.offset == last.offset + last.span.length()) {
+			last.span = last.span.concat(edit.span);
+		} else if (!edit.insert && edit.offset == last.offset) {
+			last.span = last.span.concat(edit.span);
+		} else if (!edit.insert && edit.offset + 1 == last.offset) {
+			step.edits.set(lastIndex, new Edit(false, edit.offset, edit.span.concat(last.span)));
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Drops the steps that could be redone.
+	 */
+	private void truncate() {
+		List<Step> redoable = steps.subList(position, steps.size());
+		long freed = 0;
+		for (Step step : redoable) {
+			if (step.edits != null) {
+				freed += step.bytes;
+			}
+		}
+		redoable.clear();
+		firstInMemory = Math.min(firstInMemory, position);
+		memory -= freed;
+		budget.release(freed);
+		if (steps.isEmpty()) {
+			spillEnd = 0;
+		}
+	}
+
+	/**
+	 * Counts the given number of bytes as taken by the steps in memory.
+	 *
+	 * @param bytes
+	 *            is the number of bytes.
+	 */
+	private void take(long bytes) {
+		memory += bytes;
+		budget.take(this, bytes);
+	}
+
+	/**
+	 * Writes the oldest step in memory to the spill file, except for the last
+	 * step. If the file can not be written, the step is forgotten instead.
+	 *
+	 * @return true if a step was spilled, false if there was none to spill.
+	 */
+	boolean spillOldest() {
+		while (firstInMemory < steps.size() - 1 && steps.get(firstInMemory).edits == null) {
+			firstInMemory++;
+		}
+		if (firstInMemory >= steps.size() - 1) {
+			return false;
+		}
+
+		int index = firstInMemory;
+		Step step = steps.get(index);
+		try {
+			if (step.filePosition < 0) {
+				write(step);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			forget(index + 1);
+			return true;
+		}
+		step.edits = null;
+		memory -= step.bytes;
+		budget.release(step.bytes);
+		return true;
+	}
+
+	/**
+	 * Appends the given step to the spill file.
+	 *
+	 * @param step
+	 *            is the given step.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	private void write(Step step) throws IOException {
+		if (spill == null) {
+			spillPath = Files.createTempFile("jnotepadpp-undo", ".tmp");
+			spillPath.toFile().deleteOnExit();
+			spill = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(step.edits.size());
+		for (Edit edit : step.edits) {
+			out.writeBoolean(edit.insert);
+			out.writeInt(edit.offset);
+			edit.span.write(out);
+		}
+		out.flush();
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		long position = spillEnd;
+		while (buffer.hasRemaining()) {
+			position += spill.write(buffer, position);
+		}
+		step.filePosition = spillEnd;
+		step.fileLength = bytes.size();
+		spillEnd = position;
+	}
+
+	/**
+	 * Makes sure the edits of the given step are in memory, reading them from
+	 * the spill file if needed. If they can not be read, the step and all the
+	 * older ones are forgotten.
+	 *
+	 * @param step
+	 *            is the given step.
+	 * @param index
+	 *            is the index of the step.
+	 * @return true if the edits are in memory, false if the step was
+	 *         forgotten.
+	 */
+	private boolean load(Step step, int index) {
+		if (step.edits != null) {
+			return true;
+		}
+
+		List<Edit> edits;
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(step.fileLength);
+			long position = step.filePosition;
+			while (buffer.hasRemaining()) {
+				int read = spill.read(buffer, position);
+				if (read < 0) {
+					throw new IOException("Spill file is too short.");
+				}
+				position += read;
+			}
+
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+			int count = in.readInt();
+			edits = new ArrayList<>(count);
+			for (int i = 0; i < count; ++i) {
+				boolean insert = in.readBoolean();
+				int offset = in.readInt();
+				edits.add(new Edit(insert, offset, PieceTableContent.Span.read(in)));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			forget(index + 1);
+			return false;
+		}
+		// counted before the edits are set, so making room does not spill the
+		// step again
+		take(step.bytes);
+		step.edits = edits;
+		firstInMemory = Math.min(firstInMemory, index);
+		return true;
+	}
+
+	/**
+	 * Forgets the given number of the oldest steps.
+	 *
+	 * @param count
+	 *            is the number of steps.
+	 */
+	private void forget(int count) {
+		List<Step> forgotten = steps.subList(0, count);
+		long freed = 0;
+		for (Step step : forgotten) {
+			if (step.edits != null) {
+				freed += step.bytes;
+			}
+		}
+		forgotten.clear();
+		position = Math.max(0, position - count);
+		firstInMemory = 0;
+		memory -= freed;
+		budget.release(freed);
+	}
+
+	/**
+	 * Closes and deletes the spill file.
+	 */
+	private void closeSpill() {
+		if (spill == null) {
+			return;
+		}
+		try {
+			spill.close();
+			Files.deleteIfExists(spillPath);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		spill = null;
+		spillPath = null;
+	}
+
+	/**
+	 * Estimates the number of bytes taken by the given edits.
+	 *
+	 * @param edits
+	 *            are the given edits.
+	 * @return the number of bytes.
+	 */
+	private static long estimate(List<Edit> edits) {
+		long bytes = STEP_BYTES;
+		for (Edit edit : edits) {
+			bytes += EDIT_BYTES + (long) edit.span.getPieceCount() * PIECE_BYTES;
+		}
+		return bytes;
+	}
+}
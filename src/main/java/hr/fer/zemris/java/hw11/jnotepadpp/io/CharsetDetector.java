@@ -0,0 +1,170 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Detects the {@link TextEncoding} of a file from its first bytes. A byte
+ * order mark decides the encoding on its own. Without it, a sample of the first
+ * few kilobytes is checked: many zero bytes on every other position mean
+ * UTF-16, a valid UTF-8 sequence means UTF-8, and anything else is read as
+ * ISO-8859-1, which maps every byte and so survives saving unchanged.
+ *
+ * @author Marin
+ *
+ */
+public class CharsetDetector {
+
+	/**
+	 * The number of bytes inspected by the heuristics.
+	 */
+	public static final int SAMPLE_SIZE = 8 * 1024;
+
+	/**
+	 * The ratio of zero bytes on one parity needed to detect UTF-16.
+	 */
+	private static final double UTF_16_ZEROS = 0.3;
+	/**
+	 * The ratio of zero bytes on the other parity allowed for UTF-16.
+	 */
+	private static final double UTF_16_OTHER_ZEROS = 0.05;
+
+	/**
+	 * Detects the encoding of the given bytes. The buffer position is not
+	 * changed.
+	 *
+	 * @param head
+	 *            are the first bytes of a file, from the position to the limit.
+	 * @return the detected encoding.
+	 */
+	public static TextEncoding detect(ByteBuffer head) {
+		int start = head.position();
+		int length = Math.min(head.remaining(), SAMPLE_SIZE);
+
+		if (startsWith(head, start, length, 0xEF, 0xBB, 0xBF)) {
+			return new TextEncoding(StandardCharsets.UTF_8, true);
+		}
+		if (startsWith(head, start, length, 0xFE, 0xFF)) {
+			return new TextEncoding(StandardCharsets.UTF_16BE, true);
+		}
+		if (startsWith(head, start, length, 0xFF, 0xFE)) {
+			return new TextEncoding(StandardCharsets.UTF_16LE, true);
+		}
+
+		TextEncoding utf16 = detectUtf16(head, start, length);
+		if (utf16 != null) {
+			return utf16;
+		}
+		if (isUtf8(head, start, length, length < head.remaining())) {
+			return TextEncoding.UTF_8;
+		}
+		return new TextEncoding(StandardCharsets.ISO_8859_1, false);
+	}
+
+	/**
+	 * Checks if the bytes start with the given prefix.
+	 *
+	 * @param head
+	 *            is the buffer.
+	 * @param start
+	 *            is the index of the first byte.
+	 * @param length
+	 *            is the number of available bytes.
+	 * @param prefix
+	 *            is the prefix.
+	 * @return true if the bytes start with the prefix.
+	 */
+	private static boolean startsWith(ByteBuffer head, int start, int length, int... prefix) {
+		if (length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; ++i) {
+			if ((head.get(start + i) & 0xFF) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Detects UTF-16 without the byte order mark, from the distribution of the
+	 * zero bytes.
+	 *
+	 * @param head
+	 *            is the buffer.
+	 * @param start
+	 *            is the index of the first byte.
+	 * @param length
+	 *            is the number of inspected bytes.
+	 * @return the UTF-16 encoding, or null if the bytes do not look like it.
+	 */
+	private static TextEncoding detectUtf16(ByteBuffer head, int start, int length) {
+		int pairs = length / 2;
+		if (pairs == 0) {
+			return null;
+		}
+
+		int evenZeros = 0;
+		int oddZeros = 0;
+		for (int i = 0; i < pairs * 2; i += 2) {
+			if (head.get(start + i) == 0) {
+				evenZeros++;
+			}
+			if (head.get(start + i + 1) == 0) {
+				oddZeros++;
+			}
+		}
+
+		if (oddZeros > pairs * UTF_16_ZEROS && evenZeros < pairs * UTF_16_OTHER_ZEROS) {
+			return new TextEncoding(StandardCharsets.UTF_16LE, false);
+		}
+		if (evenZeros > pairs * UTF_16_ZEROS && oddZeros < pairs * UTF_16_OTHER_ZEROS) {
+			return new TextEncoding(StandardCharsets.UTF_16BE, false);
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if the bytes are a valid UTF-8 sequence.
+	 *
+	 * @param head
+	 *            is the buffer.
+	 * @param start
+	 *            is the index of the first byte.
+	 * @param length
+	 *            is the number of inspected bytes.
+	 * @param truncated
+	 *            true if the sample is cut from a longer input, in that case a
+	 *            sequence cut at the end is accepted.
+	 * @return true if the bytes are valid UTF-8.
+	 */
+	private static boolean isUtf8(ByteBuffer head, int start, int length, boolean truncated) {
+		int i = 0;
+		while (i < length) {
+			int b = head.get(start + i) & 0xFF;
+			int continuation;
+			if (b < 0x80) {
+				continuation = 0;
+			} else if (b >= 0xC2 && b <= 0xDF) {
+				continuation = 1;
+			} else if (b >= 0xE0 && b <= 0xEF) {
+				continuation = 2;
+			} else if (b >= 0xF0 && b <= 0xF4) {
+				continuation = 3;
+			} else {
+				return false;
+			}
+
+			if (i + continuation >= length) {
+				return truncated || i + continuation < length;
+			}
+			for (int j = 1; j <= continuation; ++j) {
+				if ((head.get(start + i + j) & 0xC0) != 0x80) {
+					return false;
+				}
+			}
+			i += continuation + 1;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,182 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableDocument;
+
+/**
+ * Reads files into {@link PieceTableDocument}s. The encoding is detected from
+ * the first chunk by the {@link CharsetDetector} and stored as the
+ * {@link TextEncoding#PROPERTY} of the document, and the {@link FileStamp} of
+ * the read bytes as its {@link FileStamp#PROPERTY}. The file is read in fixed size
+ * chunks, each chunk is decoded straight into the character array that becomes
+ * the original buffer of the document. Reading reports its progress and can be
+ * cancelled between the chunks, so it can be safely run in the background.
+ *
+ * @author Marin
+ *
+ */
+public class DocumentLoader {
+
+	/**
+	 * The size of one read chunk.
+	 */
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * The executor used for loading in the background.
+	 */
+	private static final ExecutorService EXECUTOR = createExecutor();
+
+	/**
+	 * A getter for the executor used for loading in the background. Uses
+	 * virtual threads where the platform supports them.
+	 *
+	 * @return the executor.
+	 */
+	public static ExecutorService getExecutor() {
+		return EXECUTOR;
+	}
+
+	/**
+	 * Loads the file from the given path.
+	 *
+	 * @param path
+	 *            is the given path.
+	 * @param progress
+	 *            is notified with the loaded percentage, can be null.
+	 * @param cancelled
+	 *            is checked between the chunks, can be null.
+	 * @return the loaded document.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 * @throws CancellationException
+	 *             if the loading is cancelled.
+	 */
+	public PieceTableDocument load(Path path, IntConsumer progress, BooleanSupplier cancelled) throws IOException {
+		long modified = Files.getLastModifiedTime(path).toMillis();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer in = ByteBuffer.allocate(CHUNK_SIZE);
+			long read = 0;
+			boolean eof = false;
+			while (!eof && in.position() < CharsetDetector.SAMPLE_SIZE) {
+				int count = channel.read(in);
+				eof = count == -1;
+				read += Math.max(count, 0);
+			}
+
+			in.flip();
+			TextEncoding encoding = CharsetDetector.detect(in);
+			in.position(encoding.getByteOrderMark().length);
+			CharsetDecoder decoder = encoding.getCharset().newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			if (size * decoder.maxCharsPerByte() >= Integer.MAX_VALUE) {
+				throw new IOException("File is too big to be loaded: " + path);
+			}
+
+			CharBuffer out = CharBuffer.wrap(new char[(int) (size * decoder.averageCharsPerByte()) + 16]);
+			int reported = -1;
+			while (true) {
+				if (cancelled != null && cancelled.getAsBoolean()) {
+					throw new CancellationException();
+				}
+
+				out = decode(decoder, in, out, eof);
+				in.compact();
+
+				int percent = size == 0 ? 100 : (int) (Math.min(read, size) * 100 / size);
+				if (progress != null && percent != reported) {
+					reported = percent;
+					progress.accept(percent);
+				}
+				if (eof) {
+					break;
+				}
+
+				int count = channel.read(in);
+				eof = count == -1;
+				read += Math.max(count, 0);
+				in.flip();
+			}
+			while (decoder.flush(out).isOverflow()) {
+				out = grow(out);
+			}
+
+			PieceTableDocument document = new PieceTableDocument(out.array(), out.position());
+			document.putProperty(TextEncoding.PROPERTY, encoding);
+			document.putProperty(FileStamp.PROPERTY, new FileStamp(read, modified));
+			return document;
+		}
+	}
+
+	/**
+	 * Decodes the given bytes, growing the output buffer when needed.
+	 *
+	 * @param decoder
+	 *            is the decoder to use.
+	 * @param in
+	 *            are the bytes to decode.
+	 * @param out
+	 *            is the output buffer.
+	 * @param endOfInput
+	 *            true if there are no more bytes after the given ones.
+	 * @return the output buffer, possibly a new one.
+	 */
+	private static CharBuffer decode(CharsetDecoder decoder, ByteBuffer in, CharBuffer out, boolean endOfInput) {
+		while (true) {
+			CoderResult result = decoder.decode(in, out, endOfInput);
+			if (!result.isOverflow()) {
+				return out;
+			}
+			out = grow(out);
+		}
+	}
+
+	/**
+	 * Creates a bigger copy of the given buffer.
+	 *
+	 * @param buffer
+	 *            is the given buffer.
+	 * @return the bigger copy, with the same position.
+	 */
+	private static CharBuffer grow(CharBuffer buffer) {
+		char[] grown = Arrays.copyOf(buffer.array(), Math.max(16, buffer.capacity() * 2));
+		CharBuffer result = CharBuffer.wrap(grown);
+		result.position(buffer.position());
+		return result;
+	}
+
+	/**
+	 * Creates the background executor, using virtual threads if available.
+	 *
+	 * @return the executor.
+	 */
+	private static ExecutorService createExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(r -> {
+				Thread thread = new Thread(r, "document-loader");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
@@ -0,0 +1,472 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.UnmappableCharacterException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableContent;
+
+/**
+ * Writes {@link Document}s to files. The document is read through
+ * {@link Segment}s in fixed size chunks and encoded into a reused buffer, so
+ * saving needs a constant amount of memory no matter how big the document is.
+ * The text is written to a temporary file next to the target, forced to the
+ * disk and then atomically moved over the target, so the target is never left
+ * half written. A target that is a symbolic link is resolved first, so the
+ * file it points to is replaced and the link is kept. A new file gets the
+ * default permissions of the platform, an existing one keeps its own, and
+ * its owner and group where the user is allowed to set them. A
+ * character the encoding can not write fails the save with an
+ * {@link UnmappableCharacterException} instead of being replaced, so no text
+ * is lost silently. A snapshot of a document can be saved from a background
+ * thread, optionally limited by an {@link IoBudget} and cancellable between
+ * the chunks.
+ *
+ * @author Marin
+ *
+ */
+public class DocumentSaver {
+
+	/**
+	 * The number of characters read from the document at once.
+	 */
+	private static final int CHUNK_SIZE = 64 * 1024;
+	/**
+	 * The largest number of symbolic links followed to the saved file.
+	 */
+	private static final int MAX_LINKS = 40;
+
+	/**
+	 * Reads a range of text into a {@link Segment}, possibly returning less
+	 * than asked for.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private interface TextReader {
+
+		/**
+		 * Reads the text.
+		 *
+		 * @param offset
+		 *            is the offset of the text.
+		 * @param length
+		 *            is the wanted length of the text.
+		 * @param segment
+		 *            is the segment to fill.
+		 * @throws BadLocationException
+		 *             if the range is invalid.
+		 */
+		void read(int offset, int length, Segment segment) throws BadLocationException;
+	}
+
+	/**
+	 * Writes the text of a file to its channel.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private interface ChannelWriter {
+
+		/**
+		 * Writes the text.
+		 *
+		 * @param channel
+		 *            is the channel to write to.
+		 * @throws IOException
+		 *             if writing fails.
+		 */
+		void write(FileChannel channel) throws IOException;
+	}
+
+	/**
+	 * The budget the writes are taken from, null if they are not limited.
+	 */
+	private IoBudget budget;
+
+	/**
+	 * The {@link DocumentSaver} constructor. The writes are not limited.
+	 */
+	public DocumentSaver() {
+	}
+
+	/**
+	 * The {@link DocumentSaver} constructor.
+	 *
+	 * @param budget
+	 *            is the budget the writes are taken from, null if they are
+	 *            not limited.
+	 */
+	public DocumentSaver(IoBudget budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Saves the given document to the given path.
+	 *
+	 * @param document
+	 *            is the document to save.
+	 * @param target
+	 *            is the path to save to.
+	 * @param encoding
+	 *            is the encoding of the written file.
+	 * @throws UnmappableCharacterException
+	 *             if the encoding can not write a character of the document,
+	 *             in that case the target is left untouched.
+	 * @throws IOException
+	 *             if the document can not be saved, in that case the target is
+	 *             left untouched.
+	 */
+	public void save(Document document, Path target, TextEncoding encoding) throws IOException {
+		save(channel -> write(document, channel, encoding.getCharset()), target, encoding);
+	}
+
+	/**
+	 * Saves the given snapshot to the given path. Meant to be called from a
+	 * background thread.
+	 *
+	 * @param snapshot
+	 *            is the snapshot to save.
+	 * @param target
+	 *            is the path to save to.
+	 * @param encoding
+	 *            is the encoding of the written file.
+	 * @param cancelled
+	 *            tells if the saving was cancelled, can be null.
+	 * @throws UnmappableCharacterException
+	 *             if the encoding can not write a character of the snapshot,
+	 *             in that case the target is left untouched.
+	 * @throws IOException
+	 *             if the snapshot can not be saved, in that case the target is
+	 *             left untouched.
+	 * @throws CancellationException
+	 *             if the saving is cancelled, in that case the target is left
+	 *             untouched.
+	 */
+	public void save(PieceTableContent.Snapshot snapshot, Path target, TextEncoding encoding,
+			BooleanSupplier cancelled) throws IOException {
+		save(channel -> writeChunks(snapshot::getChars, snapshot.length(), channel, encoding.getCharset(), cancelled),
+				target, encoding);
+	}
+
+	/**
+	 * Writes the text to a temporary file and moves it over the target.
+	 *
+	 * @param body
+	 *            writes the text after the byte order mark.
+	 * @param target
+	 *            is the path to save to.
+	 * @param encoding
+	 *            is the encoding of the written file.
+	 * @throws IOException
+	 *             if writing fails, in that case the target is left untouched.
+	 */
+	private void save(ChannelWriter body, Path target, TextEncoding encoding) throws IOException {
+		Path absolute = resolve(target);
+		Path directory = absolute.getParent();
+		Path temporary = createTemporary(directory, absolute.getFileName().toString());
+
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer bom = ByteBuffer.wrap(encoding.getByteOrderMark());
+				while (bom.hasRemaining()) {
+					channel.write(bom);
+				}
+				body.write(channel);
+				channel.force(true);
+			}
+			copyPermissions(absolute, temporary);
+			move(temporary, absolute);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		forceDirectory(directory);
+	}
+
+	/**
+	 * Writes the whole document to the given channel.
+	 *
+	 * @param document
+	 *            is the document to write.
+	 * @param channel
+	 *            is the channel to write to.
+	 * @param charset
+	 *            is the charset used to encode the text.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	private void write(Document document, FileChannel channel, Charset charset) throws IOException {
+		IOException[] failure = new IOException[1];
+		Runnable writer = () -> {
+			try {
+				writeChunks(document::getText, document.getLength(), channel, charset, null);
+			} catch (IOException e) {
+				failure[0] = e;
+			}
+		};
+
+		if (document instanceof AbstractDocument) {
+			((AbstractDocument) document).render(writer);
+		} else {
+			writer.run();
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+	}
+
+	/**
+	 * Reads the text in chunks, encodes them and writes them to the channel.
+	 *
+	 * @param reader
+	 *            reads the text to write.
+	 * @param length
+	 *            is the length of the text.
+	 * @param channel
+	 *            is the channel to write to.
+	 * @param charset
+	 *            is the charset used to encode the text.
+	 * @param cancelled
+	 *            tells if the writing was cancelled, can be null.
+	 * @throws IOException
+	 *             if writing fails.
+	 * @throws CancellationException
+	 *             if the writing is cancelled.
+	 */
+	private void writeChunks(TextReader reader, int length, FileChannel channel, Charset charset,
+			BooleanSupplier cancelled) throws IOException {
+		CharsetEncoder encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+		ByteBuffer bytes = ByteBuffer.allocate((int) (CHUNK_SIZE * encoder.maxBytesPerChar()));
+		Segment segment = new Segment();
+		segment.setPartialReturn(true);
+
+		int offset = 0;
+		try {
+			while (offset < length) {
+				if (cancelled != null && cancelled.getAsBoolean()) {
+					throw new CancellationException();
+				}
+				reader.read(offset, Math.min(chars.remaining(), length - offset), segment);
+				chars.put(segment.array, segment.offset, segment.count);
+				offset += segment.count;
+
+				chars.flip();
+				encode(encoder, chars, bytes, channel, offset == length);
+				chars.compact();
+			}
+			if (length == 0) {
+				chars.flip();
+				encode(encoder, chars, bytes, channel, true);
+			}
+		} catch (BadLocationException e) {
+			throw new IOException(e);
+		}
+
+		while (encoder.flush(bytes).isOverflow()) {
+			drain(bytes, channel);
+		}
+		drain(bytes, channel);
+	}
+
+	/**
+	 * Encodes the given characters, writing the encoded bytes to the channel
+	 * whenever the byte buffer fills up.
+	 *
+	 * @param encoder
+	 *            is the encoder to use.
+	 * @param chars
+	 *            are the characters to encode.
+	 * @param bytes
+	 *            is the reused byte buffer.
+	 * @param channel
+	 *            is the channel to write to.
+	 * @param endOfInput
+	 *            true if there are no more characters after the given ones.
+	 * @throws UnmappableCharacterException
+	 *             if a character can not be encoded.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	private void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer bytes, FileChannel channel,
+			boolean endOfInput) throws IOException {
+		while (true) {
+			CoderResult result = encoder.encode(chars, bytes, endOfInput);
+			if (result.isUnmappable()) {
+				result.throwException();
+			}
+			if (!result.isOverflow()) {
+				return;
+			}
+			drain(bytes, channel);
+		}
+	}
+
+	/**
+	 * Writes the whole content of the byte buffer to the channel and clears
+	 * the buffer, after taking the bytes from the budget.
+	 *
+	 * @param bytes
+	 *            is the byte buffer.
+	 * @param channel
+	 *            is the channel to write to.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	private void drain(ByteBuffer bytes, FileChannel channel) throws IOException {
+		bytes.flip();
+		if (budget != null && bytes.hasRemaining()) {
+			budget.acquire(bytes.remaining());
+		}
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+
+	/**
+	 * Returns the file actually written when saving to the given path: the
+	 * real path of an existing file, or the file a dangling symbolic link
+	 * points to.
+	 *
+	 * @param target
+	 *            is the given path.
+	 * @return the absolute path of the written file.
+	 * @throws IOException
+	 *             if the links can not be read.
+	 */
+	static Path resolve(Path target) throws IOException {
+		Path absolute = target.toAbsolutePath();
+		if (Files.exists(absolute)) {
+			return absolute.toRealPath();
+		}
+		for (int i = 0; i < MAX_LINKS && Files.isSymbolicLink(absolute); ++i) {
+			absolute = absolute.resolveSibling(Files.readSymbolicLink(absolute)).toAbsolutePath().normalize();
+		}
+		return absolute;
+	}
+
+	/**
+	 * Creates an empty temporary file in the given directory. Unlike
+	 * {@link Files#createTempFile}, which makes the file readable by its owner
+	 * only, the file gets the default permissions of the platform, so a new
+	 * file saved through it can be read as any other new file.
+	 *
+	 * @param directory
+	 *            is the given directory.
+	 * @param name
+	 *            is the name of the file the temporary one is written for.
+	 * @return the temporary file.
+	 * @throws IOException
+	 *             if the file can not be created.
+	 */
+	static Path createTemporary(Path directory, String name) throws IOException {
+		while (true) {
+			String suffix = Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36);
+			try {
+				return Files.createFile(directory.resolve("." + name + suffix + ".tmp"));
+			} catch (FileAlreadyExistsException ignorable) {
+			}
+		}
+	}
+
+	/**
+	 * Copies the owner, the group, the file permissions and the access control
+	 * list of the target to the temporary file, if the target exists. Each of
+	 * them is copied only if the file system supports it and the user is
+	 * allowed to set it; the owner usually only by the superuser.
+	 *
+	 * @param target
+	 *            is the target file.
+	 * @param temporary
+	 *            is the temporary file.
+	 */
+	static void copyPermissions(Path target, Path temporary) {
+		if (!Files.exists(target)) {
+			return;
+		}
+		try {
+			Files.setOwner(temporary, Files.getOwner(target));
+		} catch (UnsupportedOperationException | IOException ignorable) {
+		}
+		PosixFileAttributeView posix = Files.getFileAttributeView(temporary, PosixFileAttributeView.class);
+		if (posix != null) {
+			try {
+				posix.setGroup(Files.readAttributes(target, PosixFileAttributes.class).group());
+			} catch (UnsupportedOperationException | IOException ignorable) {
+			}
+		}
+		try {
+			Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(target));
+		} catch (UnsupportedOperationException | IOException ignorable) {
+		}
+		AclFileAttributeView acl = Files.getFileAttributeView(target, AclFileAttributeView.class);
+		AclFileAttributeView copy = Files.getFileAttributeView(temporary, AclFileAttributeView.class);
+		if (acl != null && copy != null) {
+			try {
+				copy.setAcl(acl.getAcl());
+			} catch (UnsupportedOperationException | IOException ignorable) {
+			}
+		}
+	}
+
+	/**
+	 * Moves the temporary file over the target, atomically if the file system
+	 * supports it.
+	 *
+	 * @param temporary
+	 *            is the temporary file.
+	 * @param target
+	 *            is the target file.
+	 * @throws IOException
+	 *             if moving fails.
+	 */
+	static void move(Path temporary, Path target) throws IOException {
+		try {
+			Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Forces the directory entry changes to the disk, where the platform
+	 * allows opening directories.
+	 *
+	 * @param directory
+	 *            is the directory.
+	 */
+	static void forceDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException ignorable) {
+		}
+	}
+}
@@ -0,0 +1,596 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableDocument;
+
+/**
+ * The write-ahead journal of one document. Every insert and remove is
+ * appended as a small binary record to a memory-mapped file, so if the
+ * application dies the unsaved edits can be replayed on top of the file they
+ * were made on. The listener only copies the inserted text and queues the
+ * record, the writing is done by the {@link JournalWriter} thread. The file is
+ * created with the first record, and is emptied whenever the document is saved
+ * or loaded again.
+ * <p>
+ * The file starts with a header holding the generation, the size and the
+ * modification time of the base file and the path of the base file. The size
+ * and the modification time are the {@link FileStamp} taken when the document
+ * was loaded or saved, not when the first record is written, so a file changed
+ * on disk in between is never mistaken for the base of the records. The
+ * records follow, each with a checksum over the generation and the record, so
+ * the records left over from an earlier generation are never replayed. A zero
+ * byte marks the end of the records.
+ *
+ * @author Marin
+ *
+ */
+public class EditJournal implements DocumentListener {
+
+	/**
+	 * The extension of the journal files.
+	 */
+	public static final String EXTENSION = ".journal";
+
+	/**
+	 * The magic number at the start of the file.
+	 */
+	private static final int MAGIC = 0x4A4E504A;
+	/**
+	 * The version of the file format.
+	 */
+	private static final short VERSION = 1;
+	/**
+	 * The size of one mapped region of the file.
+	 */
+	private static final int REGION_SIZE = 1024 * 1024;
+	/**
+	 * The record type marking the end of the records.
+	 */
+	private static final byte END = 0;
+	/**
+	 * The type of an insert record.
+	 */
+	private static final byte INSERT = 1;
+	/**
+	 * The type of a remove record.
+	 */
+	private static final byte REMOVE = 2;
+	/**
+	 * The type of a record replacing the whole text.
+	 */
+	private static final byte SNAPSHOT = 3;
+
+	/**
+	 * The writer all the journals share.
+	 */
+	private final JournalWriter writer = JournalWriter.getInstance();
+	/**
+	 * The identifier of the journal, also the name of its file.
+	 */
+	private final String id;
+	/**
+	 * The journal file.
+	 */
+	private final Path file;
+	/**
+	 * True once the journal is deleted, after that nothing is queued.
+	 */
+	private boolean deleted;
+
+	/**
+	 * The path of the base file, null for a new document. Used only by the
+	 * writer thread.
+	 */
+	private Path base;
+	/**
+	 * The stamp of the base file, null if it is not known. Used only by the
+	 * writer thread.
+	 */
+	private FileStamp stamp;
+	/**
+	 * The generation of the records. Used only by the writer thread.
+	 */
+	private long generation;
+	/**
+	 * The opened journal file, null until the first record. Used only by the
+	 * writer thread.
+	 */
+	private FileChannel channel;
+	/**
+	 * The mapped region records are appended to. Used only by the writer
+	 * thread.
+	 */
+	private MappedByteBuffer region;
+	/**
+	 * The position of the mapped region in the file. Used only by the writer
+	 * thread.
+	 */
+	private long regionStart;
+	/**
+	 * The region written since the last force. Used only by the writer thread.
+	 */
+	private boolean dirty;
+
+	/**
+	 * The {@link EditJournal} constructor. No file is created until the first
+	 * record.
+	 *
+	 * @param directory
+	 *            is the directory of the journal files.
+	 * @param base
+	 *            is the path of the base file, null for a new document.
+	 * @param stamp
+	 *            is the stamp of the base file taken when the document was
+	 *            loaded, null if it is not known.
+	 */
+	public EditJournal(Path directory, Path base, FileStamp stamp) {
+		this.id = UUID.randomUUID().toString();
+		this.file = directory.resolve(id + EXTENSION);
+		this.base = base;
+		this.stamp = stamp;
+	}
+
+	/**
+	 * Returns the default directory of the journal files, in the home
+	 * directory of the user.
+	 *
+	 * @return the directory.
+	 */
+	public static Path defaultDirectory() {
+		return Paths.get(System.getProperty("user.home"), ".jnotepadpp", "journal");
+	}
+
+	/**
+	 * A getter for the identifier of the journal.
+	 *
+	 * @return the identifier.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Starts recording the edits of the given document.
+	 *
+	 * @param document
+	 *            is the given document.
+	 */
+	public void attach(Document document) {
+		document.addDocumentListener(this);
+	}
+
+	/**
+	 * Stops recording the edits of the given document.
+	 *
+	 * @param document
+	 *            is the given document.
+	 */
+	public void detach(Document document) {
+		document.removeDocumentListener(this);
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		try {
+			String text = e.getDocument().getText(e.getOffset(), e.getLength());
+			append(INSERT, e.getOffset(), e.getLength(), text);
+		} catch (BadLocationException ignorable) {
+		}
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		append(REMOVE, e.getOffset(), e.getLength(), null);
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	/**
+	 * Records the whole text of the document, for a document whose text
+	 * differs from its base without any recorded edits.
+	 *
+	 * @param document
+	 *            is the document.
+	 */
+	public void snapshot(Document document) {
+		try {
+			String text = document.getText(0, document.getLength());
+			append(SNAPSHOT, 0, text.length(), text);
+		} catch (BadLocationException ignorable) {
+		}
+	}
+
+	/**
+	 * Drops all the records, after the document is saved to or loaded from
+	 * the given base file.
+	 *
+	 * @param base
+	 *            is the path of the base file.
+	 * @param stamp
+	 *            is the stamp of the base file taken right after the document
+	 *            was saved or loaded, null if it is not known.
+	 */
+	public void reset(Path base, FileStamp stamp) {
+		if (deleted) {
+			return;
+		}
+		writer.submit(this, () -> {
+			this.base = base;
+			this.stamp = stamp;
+			generation++;
+			if (channel != null) {
+				start();
+			}
+		});
+	}
+
+	/**
+	 * Deletes the given journal file, whose edits were recovered into the
+	 * document of this journal, once the records queued so far are forced to
+	 * the disk. The file is kept if this journal fails before that.
+	 *
+	 * @param recovered
+	 *            is the recovered journal file.
+	 */
+	public void supersede(Path recovered) {
+		if (deleted) {
+			return;
+		}
+		writer.submit(this, () -> {
+			force();
+			Files.deleteIfExists(recovered);
+		});
+	}
+
+	/**
+	 * Deletes the journal file, when the document is closed.
+	 */
+	public void delete() {
+		if (deleted) {
+			return;
+		}
+		deleted = true;
+		writer.submit(this, () -> {
+			close();
+			Files.deleteIfExists(file);
+		});
+	}
+
+	/**
+	 * Queues a record.
+	 *
+	 * @param type
+	 *            is the type of the record.
+	 * @param offset
+	 *            is the offset of the edit.
+	 * @param length
+	 *            is the length of the edit.
+	 * @param text
+	 *            is the inserted text, null for a remove.
+	 */
+	private void append(byte type, int offset, int length, String text) {
+		if (deleted) {
+			return;
+		}
+		writer.submit(this, () -> write(type, offset, length, text));
+	}
+
+	/**
+	 * Writes a record to the mapped region, creating the file if needed. Run by
+	 * the writer thread.
+	 *
+	 * @param type
+	 *            is the type of the record.
+	 * @param offset
+	 *            is the offset of the edit.
+	 * @param length
+	 *            is the length of the edit.
+	 * @param text
+	 *            is the inserted text, null for a remove.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	private void write(byte type, int offset, int length, String text) throws IOException {
+		if (channel == null) {
+			Files.createDirectories(file.getParent());
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			start();
+		}
+
+		int size = 1 + 4 + 4 + (text == null ? 0 : text.length() * 2) + 4;
+		ensureRegion(size + 1);
+		int start = region.position();
+		region.put(type).putInt(offset).putInt(length);
+		if (text != null) {
+			for (int i = 0, n = text.length(); i < n; ++i) {
+				region.putChar(text.charAt(i));
+			}
+		}
+		region.putInt(checksum(generation, region, start, region.position()));
+		region.put(region.position(), END);
+		dirty = true;
+	}
+
+	/**
+	 * Writes the header of the current generation and maps the region right
+	 * after it. Run by the writer thread.
+	 *
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	private void start() throws IOException {
+		String path = base == null ? "" : base.toAbsolutePath().toString();
+		long size = stamp == null ? -1 : stamp.getSize();
+		long modified = stamp == null ? -1 : stamp.getModified();
+
+		ByteBuffer header = ByteBuffer.allocate(4 + 2 + 8 + 8 + 8 + 4 + path.length() * 2);
+		header.putInt(MAGIC).putShort(VERSION).putLong(generation).putLong(size).putLong(modified)
+				.putInt(path.length());
+		for (int i = 0; i < path.length(); ++i) {
+			header.putChar(path.charAt(i));
+		}
+		header.flip();
+		long position = 0;
+		while (header.hasRemaining()) {
+			position += channel.write(header, position);
+		}
+		channel.force(false);
+
+		regionStart = position;
+		region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, REGION_SIZE);
+		region.put(0, END);
+		dirty = true;
+	}
+
+	/**
+	 * Makes sure the mapped region has the given number of free bytes,
+	 * mapping the next region of the file if not. Run by the writer thread.
+	 *
+	 * @param size
+	 *            is the needed number of bytes.
+	 * @throws IOException
+	 *             if mapping fails.
+	 */
+	private void ensureRegion(int size) throws IOException {
+		if (region.remaining() >= size) {
+			return;
+		}
+		region.force();
+		regionStart += region.position();
+		region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_SIZE, size));
+	}
+
+	/**
+	 * Forces the written records to the disk. Run by the writer thread once for
+	 * a group of records.
+	 *
+	 * @throws IOException
+	 *             if forcing fails.
+	 */
+	void force() throws IOException {
+		if (region != null && dirty) {
+			region.force();
+			dirty = false;
+		}
+	}
+
+	/**
+	 * Stops journaling after a write failure. Run by the writer thread.
+	 *
+	 * @param e
+	 *            is the failure.
+	 */
+	void fail(Exception e) {
+		e.printStackTrace();
+		try {
+			close();
+		} catch (IOException ignorable) {
+		}
+		deleted = true;
+	}
+
+	/**
+	 * Closes the journal file. Run by the writer thread.
+	 *
+	 * @throws IOException
+	 *             if closing fails.
+	 */
+	private void close() throws IOException {
+		region = null;
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Computes the checksum of a record.
+	 *
+	 * @param generation
+	 *            is the generation of the record.
+	 * @param buffer
+	 *            is the buffer holding the record.
+	 * @param start
+	 *            is the index of the first byte of the record.
+	 * @param end
+	 *            is the index after the last byte of the record.
+	 * @return the checksum.
+	 */
+	private static int checksum(long generation, ByteBuffer buffer, int start, int end) {
+		CRC32 crc = new CRC32();
+		crc.update(ByteBuffer.allocate(8).putLong(0, generation));
+		ByteBuffer record = buffer.duplicate();
+		record.limit(end).position(start);
+		crc.update(record);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Replays the given journal file on top of its base file.
+	 *
+	 * @param file
+	 *            is the journal file.
+	 * @return the recovered document, or null if the journal has no records.
+	 * @throws IOException
+	 *             if a file can not be read, or if the base file changed since
+	 *             the records were written, in which case the records can not
+	 *             be replayed and the journal should be kept.
+	 */
+	public static Recovery recover(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+				return null;
+			}
+			long generation = buffer.getLong();
+			long size = buffer.getLong();
+			long modified = buffer.getLong();
+			char[] chars = new char[buffer.getInt()];
+			for (int i = 0; i < chars.length; ++i) {
+				chars[i] = buffer.getChar();
+			}
+			Path base = chars.length == 0 ? null : Paths.get(new String(chars));
+
+			PieceTableDocument document;
+			if (base == null) {
+				document = new PieceTableDocument();
+			} else if (new FileStamp(size, modified).matches(base)) {
+				document = new DocumentLoader().load(base, null, null);
+			} else if (replay(buffer, generation, null) == 0) {
+				return null;
+			} else {
+				throw new IOException("The base file changed since the journal was written: " + base);
+			}
+
+			int records = replay(buffer, generation, document);
+			return records == 0 ? null : new Recovery(base, document);
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Applies the records of the current generation to the document, until
+	 * the end mark or the first broken record. Without a document the records
+	 * are only counted.
+	 *
+	 * @param buffer
+	 *            is the buffer positioned at the first record.
+	 * @param generation
+	 *            is the current generation.
+	 * @param document
+	 *            is the document, null to only count the records.
+	 * @return the number of applied records.
+	 */
+	private static int replay(ByteBuffer buffer, long generation, Document document) {
+		int records = 0;
+		try {
+			while (buffer.hasRemaining()) {
+				int start = buffer.position();
+				byte type = buffer.get();
+				if (type == END) {
+					break;
+				}
+				int offset = buffer.getInt();
+				int length = buffer.getInt();
+				String text = null;
+				if (type == INSERT || type == SNAPSHOT) {
+					char[] chars = new char[length];
+					for (int i = 0; i < length; ++i) {
+						chars[i] = buffer.getChar();
+					}
+					text = new String(chars);
+				}
+				if (buffer.getInt() != checksum(generation, buffer, start, buffer.position() - 4)) {
+					break;
+				}
+
+				if (type != INSERT && type != REMOVE && type != SNAPSHOT) {
+					break;
+				}
+				if (document != null) {
+					if (type == INSERT) {
+						document.insertString(offset, text, null);
+					} else if (type == REMOVE) {
+						document.remove(offset, length);
+					} else {
+						document.remove(0, document.getLength());
+						document.insertString(0, text, null);
+					}
+				}
+				records++;
+			}
+		} catch (BadLocationException | BufferUnderflowException | NegativeArraySizeException e) {
+			return records;
+		}
+		return records;
+	}
+
+	/**
+	 * A document recovered from a journal.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public static class Recovery {
+
+		/**
+		 * The path of the base file, null for a new document.
+		 */
+		private Path path;
+		/**
+		 * The recovered document.
+		 */
+		private PieceTableDocument document;
+
+		/**
+		 * The {@link Recovery} constructor.
+		 *
+		 * @param path
+		 *            is the path of the base file, null for a new document.
+		 * @param document
+		 *            is the recovered document.
+		 */
+		private Recovery(Path path, PieceTableDocument document) {
+			this.path = path;
+			this.document = document;
+		}
+
+		/**
+		 * A getter for the path of the base file.
+		 *
+		 * @return the path, null for a new document.
+		 */
+		public Path getPath() {
+			return path;
+		}
+
+		/**
+		 * A getter for the recovered document.
+		 *
+		 * @return the document.
+		 */
+		public PieceTableDocument getDocument() {
+			return document;
+		}
+	}
+}
@@ -0,0 +1,564 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Replaces the matches of a {@link FileSearcher} in many files as one
+ * transaction. Every file is first written with its matches replaced to a
+ * temporary file next to it and forced to the disk, which many threads can do
+ * at once. The files themselves are replaced only when all of them are
+ * prepared, by moving every file to a backup next to it and its temporary file
+ * into its place. If a file can not be replaced, or was changed since it was
+ * read, the files replaced so far are restored from their backups, so either
+ * all the files are replaced or none is.
+ * <p>
+ * The temporary file takes over the owner, the group and the permissions of
+ * the file, as far as the user is allowed to set them. A file with other hard
+ * links is backed up by a copy and written in place instead, so all its links
+ * see the replaced text. When a log directory is set, the files of the
+ * transaction are listed in a log forced to the disk before the first file is
+ * replaced, and the log is deleted once all of them are. A log left by a crash
+ * is undone by {@link #recover(Path)}, which restores the files from their
+ * backups.
+ *
+ * @author Marin
+ *
+ */
+public class FileReplacer {
+
+	/**
+	 * The suffix of the temporary files holding the replaced text.
+	 */
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	/**
+	 * The suffix of the backups of the replaced files.
+	 */
+	private static final String BACKUP_SUFFIX = ".bak";
+	/**
+	 * The extension of the logs of the transactions.
+	 */
+	private static final String LOG_EXTENSION = ".log";
+	/**
+	 * The magic number at the start of a log.
+	 */
+	private static final int LOG_MAGIC = 0x4A4E5052;
+
+	/**
+	 * A file prepared to be replaced.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Pending {
+
+		/**
+		 * The replaced file.
+		 */
+		private final Path file;
+		/**
+		 * The temporary file holding the replaced text.
+		 */
+		private final Path temporary;
+		/**
+		 * The size of the file when it was read.
+		 */
+		private final long size;
+		/**
+		 * The modification time of the file when it was read.
+		 */
+		private final FileTime modified;
+		/**
+		 * The backup of the file, null until the file is moved to it.
+		 */
+		private Path backup;
+		/**
+		 * True once the temporary file took the place of the file, or once
+		 * its text started being written in place.
+		 */
+		private boolean replaced;
+		/**
+		 * True if the file has other hard links, so its text is written in
+		 * place instead of moving the temporary file over it, which would
+		 * leave the other links with the old text.
+		 */
+		private boolean inPlace;
+
+		/**
+		 * The {@link Pending} constructor.
+		 *
+		 * @param file
+		 *            is the replaced file.
+		 * @param temporary
+		 *            is the temporary file holding the replaced text.
+		 * @param attributes
+		 *            are the attributes of the file when it was read.
+		 */
+		private Pending(Path file, Path temporary, BasicFileAttributes attributes) {
+			this(file, temporary, attributes.size(), attributes.lastModifiedTime());
+		}
+
+		/**
+		 * The {@link Pending} constructor.
+		 *
+		 * @param file
+		 *            is the replaced file.
+		 * @param temporary
+		 *            is the temporary file holding the replaced text.
+		 * @param size
+		 *            is the size of the file when it was read.
+		 * @param modified
+		 *            is the modification time of the file when it was read,
+		 *            null if it is not known.
+		 */
+		private Pending(Path file, Path temporary, long size, FileTime modified) {
+			this.file = file;
+			this.temporary = temporary;
+			this.size = size;
+			this.modified = modified;
+		}
+	}
+
+	/**
+	 * The searcher finding and replacing the matches.
+	 */
+	private final FileSearcher searcher;
+	/**
+	 * The prepared files, in the order they were prepared.
+	 */
+	private final List<Pending> pending = new ArrayList<>();
+	/**
+	 * The directory the log of the transaction is written to, null if it is
+	 * not logged.
+	 */
+	private Path logDirectory;
+
+	/**
+	 * The {@link FileReplacer} constructor.
+	 *
+	 * @param searcher
+	 *            is the searcher finding the matches, its
+	 *            {@link hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher}
+	 *            has to have a replacement.
+	 */
+	public FileReplacer(FileSearcher searcher) {
+		this.searcher = Objects.requireNonNull(searcher);
+	}
+
+	/**
+	 * Returns the default directory of the logs of the transactions, in the
+	 * home directory of the user.
+	 *
+	 * @return the path of the directory.
+	 */
+	public static Path defaultLogDirectory() {
+		return Paths.get(System.getProperty("user.home"), ".jnotepadpp", "replace");
+	}
+
+	/**
+	 * A setter for the directory the log of the transaction is written to.
+	 *
+	 * @param logDirectory
+	 *            is the directory, null if the transaction is not logged.
+	 */
+	public void setLogDirectory(Path logDirectory) {
+		this.logDirectory = logDirectory;
+	}
+
+	/**
+	 * Writes the given file with its matches replaced to a temporary file
+	 * next to it, if it has any. The file itself is not changed until the
+	 * transaction is committed. Can be called by many threads at once.
+	 *
+	 * @param file
+	 *            is the given file.
+	 * @param cancelled
+	 *            is checked between the windows of the file, the file is not
+	 *            prepared once it returns true.
+	 * @return the number of replaced matches.
+	 * @throws IOException
+	 *             if the file can not be read or its replaced text can not be
+	 *             written, in that case no temporary file is left behind.
+	 */
+	public int prepare(Path file, BooleanSupplier cancelled) throws IOException {
+		Path absolute = file.toAbsolutePath();
+		BasicFileAttributes attributes = Files.readAttributes(absolute, BasicFileAttributes.class);
+		Path[] temporary = new Path[1];
+		FileChannel[] output = new FileChannel[1];
+		int count;
+		try {
+			count = searcher.replace(absolute, () -> {
+				temporary[0] = Files.createTempFile(absolute.getParent(), "." + absolute.getFileName(),
+						TEMPORARY_SUFFIX);
+				output[0] = FileChannel.open(temporary[0], StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+				return output[0];
+			}, cancelled);
+			if (output[0] != null) {
+				output[0].force(true);
+				output[0].close();
+				DocumentSaver.copyPermissions(absolute, temporary[0]);
+			}
+		} catch (IOException | RuntimeException e) {
+			if (output[0] != null) {
+				output[0].close();
+			}
+			if (temporary[0] != null) {
+				Files.deleteIfExists(temporary[0]);
+			}
+			throw e;
+		}
+
+		if (temporary[0] == null) {
+			return 0;
+		}
+		if (cancelled.getAsBoolean()) {
+			Files.deleteIfExists(temporary[0]);
+			return 0;
+		}
+		synchronized (pending) {
+			pending.add(new Pending(absolute, temporary[0], attributes));
+		}
+		return count;
+	}
+
+	/**
+	 * Checks if the given file is named like the temporary files and the
+	 * backups, which are hidden, so a walk of the tree the files are in can
+	 * skip them.
+	 *
+	 * @param file
+	 *            is the given file.
+	 * @return true if it is, false otherwise.
+	 */
+	public static boolean isTemporary(Path file) {
+		String name = file.getFileName().toString();
+		return name.startsWith(".") && (name.endsWith(TEMPORARY_SUFFIX) || name.endsWith(BACKUP_SUFFIX));
+	}
+
+	/**
+	 * A getter for the number of the prepared files.
+	 *
+	 * @return the number of files.
+	 */
+	public int getFileCount() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * Replaces all the prepared files. The files are checked first, and none
+	 * is replaced if one of them was changed since it was read. If replacing
+	 * a file fails, the files replaced so far are restored and the temporary
+	 * files are deleted.
+	 *
+	 * @param written
+	 *            is told about every file right after it is moved, to be
+	 *            replaced or restored, called on the committing thread.
+	 * @return the replaced files.
+	 * @throws IOException
+	 *             if a file was changed or can not be replaced, in that case
+	 *             all the files are as they were.
+	 */
+	public List<Path> commit(Consumer<Path> written) throws IOException {
+		List<Pending> files;
+		synchronized (pending) {
+			files = new ArrayList<>(pending);
+			pending.clear();
+		}
+
+		Path log = null;
+		try {
+			for (Pending file : files) {
+				BasicFileAttributes attributes = Files.readAttributes(file.file, BasicFileAttributes.class);
+				if (attributes.size() != file.size || !attributes.lastModifiedTime().equals(file.modified)) {
+					throw new IOException("File changed since it was read: " + file.file);
+				}
+			}
+			for (Pending file : files) {
+				file.inPlace = linkCount(file.file) > 1;
+				file.backup = Files.createTempFile(file.file.getParent(), "." + file.file.getFileName(),
+						BACKUP_SUFFIX);
+				if (file.inPlace) {
+					copyContent(file.file, file.backup);
+				}
+			}
+			log = writeLog(files);
+			for (Pending file : files) {
+				if (file.inPlace) {
+					file.replaced = true;
+					copyContent(file.temporary, file.file);
+					Files.deleteIfExists(file.temporary);
+				} else {
+					DocumentSaver.move(file.file, file.backup);
+					DocumentSaver.move(file.temporary, file.file);
+					file.replaced = true;
+				}
+				written.accept(file.file);
+			}
+		} catch (IOException | RuntimeException e) {
+			if (rollback(files, written) && log != null) {
+				Files.deleteIfExists(log);
+			}
+			throw e;
+		}
+
+		if (log != null) {
+			try {
+				Files.delete(log);
+				DocumentSaver.forceDirectory(log.getParent());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		List<Path> replaced = new ArrayList<>(files.size());
+		Set<Path> directories = new LinkedHashSet<>();
+		for (Pending file : files) {
+			try {
+				Files.deleteIfExists(file.backup);
+			} catch (IOException ignorable) {
+			}
+			replaced.add(file.file);
+			directories.add(file.file.getParent());
+		}
+		for (Path directory : directories) {
+			DocumentSaver.forceDirectory(directory);
+		}
+		return replaced;
+	}
+
+	/**
+	 * Undoes the transactions whose logs were left in the given directory by
+	 * a crash: the files are restored from their backups, and the backups,
+	 * the temporary files and the logs are deleted. A log whose files can not
+	 * all be restored is kept, to be tried again.
+	 *
+	 * @param logDirectory
+	 *            is the directory of the logs.
+	 * @return the restored files.
+	 */
+	public static List<Path> recover(Path logDirectory) {
+		List<Path> restored = new ArrayList<>();
+		if (!Files.isDirectory(logDirectory)) {
+			return restored;
+		}
+
+		List<Path> logs = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(logDirectory, "*" + LOG_EXTENSION)) {
+			for (Path log : stream) {
+				logs.add(log);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return restored;
+		}
+
+		for (Path log : logs) {
+			List<Pending> files;
+			try {
+				files = readLog(log);
+			} catch (IOException e) {
+				e.printStackTrace();
+				continue;
+			}
+			for (Pending file : files) {
+				file.replaced = file.inPlace || !Files.exists(file.temporary) || !Files.exists(file.file);
+			}
+			if (!rollback(files, restored::add)) {
+				continue;
+			}
+			try {
+				Files.deleteIfExists(log);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return restored;
+	}
+
+	/**
+	 * Deletes the temporary files of all the prepared files, leaving the
+	 * files as they are.
+	 */
+	public void discard() {
+		List<Pending> files;
+		synchronized (pending) {
+			files = new ArrayList<>(pending);
+			pending.clear();
+		}
+		for (Pending file : files) {
+			try {
+				Files.deleteIfExists(file.temporary);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Restores the given files from their backups, in the reverse order, and
+	 * deletes their temporary files and the unused backups. A file that can
+	 * not be restored keeps its backup.
+	 *
+	 * @param files
+	 *            are the given files.
+	 * @param written
+	 *            is told about every restored file.
+	 * @return true if all the files were restored, false otherwise.
+	 */
+	private static boolean rollback(List<Pending> files, Consumer<Path> written) {
+		boolean restored = true;
+		for (int i = files.size() - 1; i >= 0; --i) {
+			Pending file = files.get(i);
+			try {
+				if (file.backup != null && Files.exists(file.backup)) {
+					if (file.inPlace && file.replaced) {
+						copyContent(file.backup, file.file);
+						Files.delete(file.backup);
+						written.accept(file.file);
+					} else if (!file.inPlace && (file.replaced || !Files.exists(file.file))) {
+						DocumentSaver.move(file.backup, file.file);
+						if (file.replaced) {
+							written.accept(file.file);
+						}
+					} else {
+						Files.delete(file.backup);
+					}
+				}
+				Files.deleteIfExists(file.temporary);
+			} catch (IOException e) {
+				e.printStackTrace();
+				restored = false;
+			}
+		}
+		return restored;
+	}
+
+	/**
+	 * Writes the log of the given files to a new file in the log directory,
+	 * and forces it to the disk.
+	 *
+	 * @param files
+	 *            are the given files, with their backups.
+	 * @return the log, null if there is no log directory.
+	 * @throws IOException
+	 *             if the log can not be written.
+	 */
+	private Path writeLog(List<Pending> files) throws IOException {
+		if (logDirectory == null) {
+			return null;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(LOG_MAGIC);
+			out.writeInt(files.size());
+			for (Pending file : files) {
+				out.writeUTF(file.file.toString());
+				out.writeUTF(file.temporary.toString());
+				out.writeUTF(file.backup.toString());
+				out.writeBoolean(file.inPlace);
+			}
+		}
+
+		Files.createDirectories(logDirectory);
+		Path log = Files.createTempFile(logDirectory, "replace", LOG_EXTENSION);
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		} catch (IOException e) {
+			Files.deleteIfExists(log);
+			throw e;
+		}
+		DocumentSaver.forceDirectory(logDirectory);
+		return log;
+	}
+
+	/**
+	 * Reads the files listed in the given log.
+	 *
+	 * @param log
+	 *            is the given log.
+	 * @return the files, with their backups.
+	 * @throws IOException
+	 *             if the log can not be read or is not a log.
+	 */
+	private static List<Pending> readLog(Path log) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log)))) {
+			if (in.readInt() != LOG_MAGIC) {
+				throw new IOException("Not a replacement log: " + log);
+			}
+			int count = in.readInt();
+			List<Pending> files = new ArrayList<>();
+			for (int i = 0; i < count; ++i) {
+				Pending file = new Pending(Paths.get(in.readUTF()), Paths.get(in.readUTF()), 0, null);
+				file.backup = Paths.get(in.readUTF());
+				file.inPlace = in.readBoolean();
+				files.add(file);
+			}
+			return files;
+		}
+	}
+
+	/**
+	 * Copies the content of a file into another one, keeping the other one
+	 * and all its links, and forces it to the disk.
+	 *
+	 * @param source
+	 *            is the copied file.
+	 * @param target
+	 *            is the file written in place.
+	 * @throws IOException
+	 *             if the content can not be copied.
+	 */
+	private static void copyContent(Path source, Path target) throws IOException {
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+			for (long position = 0; position < size;) {
+				position += in.transferTo(position, size - position, out);
+			}
+			out.force(true);
+		}
+	}
+
+	/**
+	 * Returns the number of hard links of the given file.
+	 *
+	 * @param file
+	 *            is the given file.
+	 * @return the number of links, 1 if the file system does not tell.
+	 */
+	private static int linkCount(Path file) {
+		try {
+			Object count = Files.getAttribute(file, "unix:nlink");
+			return count instanceof Integer ? (Integer) count : 1;
+		} catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+			return 1;
+		}
+	}
+}
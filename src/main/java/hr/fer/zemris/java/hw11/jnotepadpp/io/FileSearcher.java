@@ -0,0 +1,896 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineCounter;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher;
+
+/**
+ * Finds the matches of a {@link TextSearcher} in files, without loading them
+ * as documents. The encoding of a file is detected by the
+ * {@link CharsetDetector}, and a file with zero bytes that is not UTF-16 is
+ * taken as binary and skipped.
+ * <p>
+ * A literal query in a UTF-8 or an ISO-8859-1 file is found on the bytes: the
+ * query is encoded once, and the file is scanned with the Boyer-Moore-Horspool
+ * algorithm, ignoring the case of the ASCII letters if the case is ignored. A
+ * file larger than {@link #READ_LIMIT} is memory mapped in windows, a smaller
+ * one is read into a reused buffer, as mapping costs more than reading a small
+ * file. Only the lines holding a candidate are decoded, and the searcher is
+ * run on them, so the matches are exactly the ones it would find in the
+ * document. Regular expressions, UTF-16 files and queries with other letters
+ * whose case is ignored are searched in the decoded text of the file instead.
+ * A file of up to {@link #DECODE_LIMIT} bytes is decoded at once, a larger one
+ * is decoded window by window into chunks of whole lines, so a match is found
+ * only inside the {@link #TEXT_CHUNK_SIZE} characters of its chunk.
+ * <p>
+ * The matches can be replaced too, see {@link FileReplacer}: the file is
+ * scanned the same way, the unchanged bytes between the replaced lines are
+ * copied over without being decoded, and only the replaced lines or texts
+ * are encoded again.
+ * <p>
+ * A file searcher is immutable and can be used by many threads at once.
+ *
+ * @author Marin
+ *
+ */
+public class FileSearcher {
+
+	/**
+	 * The largest file that is read into a buffer, larger ones are mapped.
+	 */
+	public static final int READ_LIMIT = 64 * 1024;
+	/**
+	 * The size of one mapped window.
+	 */
+	private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+	/**
+	 * The largest file decoded at once, which fits the first window.
+	 */
+	public static final long DECODE_LIMIT = WINDOW_SIZE;
+	/**
+	 * The largest number of characters of a larger file decoded at once.
+	 */
+	public static final int TEXT_CHUNK_SIZE = 16 * 1024 * 1024;
+	/**
+	 * The largest number of bytes of a line around a candidate. Longer lines
+	 * are broken.
+	 */
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	/**
+	 * Opens the output the replaced file is written to, once the first match
+	 * is found.
+	 *
+	 * @author Marin
+	 *
+	 */
+	interface Target {
+
+		/**
+		 * Opens the output.
+		 *
+		 * @return the output.
+		 * @throws IOException
+		 *             if the output can not be opened.
+		 */
+		WritableByteChannel open() throws IOException;
+	}
+
+	/**
+	 * Visits a line holding a candidate of the encoded query.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private interface LineVisitor {
+
+		/**
+		 * Visits the given line.
+		 *
+		 * @param window
+		 *            is the window holding the line.
+		 * @param start
+		 *            is the start of the line in the window.
+		 * @param end
+		 *            is the end of the line in the window, without the line
+		 *            break.
+		 * @param line
+		 *            is the number of the line.
+		 * @param lineOffset
+		 *            is the offset of the line in the file.
+		 * @throws IOException
+		 *             if the line can not be handled.
+		 */
+		void visit(ByteBuffer window, int start, int end, int line, long lineOffset) throws IOException;
+	}
+
+	/**
+	 * Visits a decoded chunk of a file.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private interface ChunkVisitor {
+
+		/**
+		 * Visits the given chunk.
+		 *
+		 * @param text
+		 *            is the decoded chunk, which starts at the start of a line
+		 *            and ends at the end of one.
+		 * @param line
+		 *            is the number of the first line of the chunk.
+		 * @throws IOException
+		 *             if the chunk can not be handled.
+		 */
+		void visit(CharBuffer text, int line) throws IOException;
+	}
+
+	/**
+	 * A match found in a file.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public static class Hit {
+
+		/**
+		 * The number of the line holding the match, starting from one.
+		 */
+		private final int line;
+		/**
+		 * The offset in bytes of the line in the file, -1 if it is not known.
+		 */
+		private final long lineOffset;
+		/**
+		 * The column of the match in its line, in characters.
+		 */
+		private final int column;
+		/**
+		 * The length of the match in characters.
+		 */
+		private final int length;
+		/**
+		 * The text of the line around the match.
+		 */
+		private final String preview;
+
+		/**
+		 * The {@link Hit} constructor.
+		 *
+		 * @param line
+		 *            is the number of the line holding the match.
+		 * @param lineOffset
+		 *            is the offset in bytes of the line in the file.
+		 * @param column
+		 *            is the column of the match in its line.
+		 * @param length
+		 *            is the length of the match.
+		 * @param preview
+		 *            is the text of the line around the match.
+		 */
+		private Hit(int line, long lineOffset, int column, int length, String preview) {
+			this.line = line;
+			this.lineOffset = lineOffset;
+			this.column = column;
+			this.length = length;
+			this.preview = preview;
+		}
+
+		/**
+		 * A getter for the number of the line holding the match, starting from
+		 * one.
+		 *
+		 * @return the line number.
+		 */
+		public int getLine() {
+			return line;
+		}
+
+		/**
+		 * A getter for the offset in bytes of the line in the file.
+		 *
+		 * @return the offset, -1 if it is not known.
+		 */
+		public long getLineOffset() {
+			return lineOffset;
+		}
+
+		/**
+		 * A getter for the column of the match in its line, in characters.
+		 *
+		 * @return the column.
+		 */
+		public int getColumn() {
+			return column;
+		}
+
+		/**
+		 * A getter for the length of the match in characters.
+		 *
+		 * @return the length.
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * A getter for the text of the line around the match.
+		 *
+		 * @return the text.
+		 */
+		public String getPreview() {
+			return preview;
+		}
+	}
+
+	/**
+	 * The searcher run on the decoded text.
+	 */
+	private final TextSearcher searcher;
+	/**
+	 * True if the case of the ASCII letters is ignored on the bytes.
+	 */
+	private final boolean foldAscii;
+	/**
+	 * True if the query can be found on the bytes.
+	 */
+	private final boolean literal;
+	/**
+	 * The buffer small files are read into, one per thread.
+	 */
+	private final ThreadLocal<ByteBuffer> readBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(READ_LIMIT));
+
+	/**
+	 * The {@link FileSearcher} constructor.
+	 *
+	 * @param searcher
+	 *            is the searcher whose matches are found.
+	 */
+	public FileSearcher(TextSearcher searcher) {
+		this.searcher = Objects.requireNonNull(searcher);
+		String query = searcher.getQuery();
+		foldAscii = !searcher.getOptions().contains(TextSearcher.Option.MATCH_CASE);
+		literal = !searcher.getOptions().contains(TextSearcher.Option.REGEX)
+				&& (!foldAscii || StandardCharsets.US_ASCII.newEncoder().canEncode(query));
+	}
+
+	/**
+	 * Finds the matches in the given file.
+	 *
+	 * @param path
+	 *            is the path of the file.
+	 * @param cancelled
+	 *            is checked between the windows of the file, the search stops
+	 *            once it returns true.
+	 * @return the matches in order, empty if the file is binary.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	public List<Hit> search(Path path, BooleanSupplier cancelled) throws IOException {
+		List<Hit> hits = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer head = readHead(channel, size);
+			TextEncoding encoding = CharsetDetector.detect(head);
+			Charset charset = encoding.getCharset();
+			if (isBinary(head, charset)) {
+				return hits;
+			}
+			int bom = encoding.getByteOrderMark().length;
+
+			if (isLiteral(charset)) {
+				byte[] needle = encode(charset);
+				if (needle == null) {
+					return hits;
+				}
+				CharsetDecoder decoder = newDecoder(charset, CodingErrorAction.REPLACE);
+				scanBytes(channel, size, head, bom, needle, (window, start, end, line, lineOffset) -> {
+					CharBuffer text = decode(window, start, end, decoder);
+					searcher.findAll(text, matches -> {
+						for (TextSearcher.Match match : matches) {
+							hits.add(new Hit(line, lineOffset, match.getStart(), match.getEnd() - match.getStart(),
+									LineCounter.preview(text, 0, match.getStart(), match.getEnd())));
+						}
+					}, () -> false);
+				}, cancelled);
+			} else {
+				CharsetDecoder decoder = newDecoder(charset, CodingErrorAction.REPLACE);
+				scanText(channel, size, head, bom, decoder, (text, first) -> {
+					LineCounter lines = new LineCounter(text);
+					searcher.findAll(text, matches -> {
+						for (TextSearcher.Match match : matches) {
+							lines.moveTo(match.getStart());
+							hits.add(new Hit(first + lines.getLine() - 1, -1, match.getStart() - lines.getLineStart(),
+									match.getEnd() - match.getStart(), lines.preview(match.getEnd())));
+						}
+					}, cancelled);
+				}, cancelled);
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Writes the given file with the matches replaced to the given target,
+	 * which is opened only if there is a match. A byte order mark is kept,
+	 * and the text is encoded in the charset of the file. Binary files are
+	 * not replaced. A large file searched in its decoded text is replaced
+	 * chunk by chunk, and the chunks before the first match are copied over
+	 * without being encoded again.
+	 *
+	 * @param path
+	 *            is the path of the file.
+	 * @param target
+	 *            opens the output on the first match, and is closed by the
+	 *            caller.
+	 * @param cancelled
+	 *            is checked between the windows of the file, the replacement
+	 *            stops once it returns true and the output is incomplete.
+	 * @return the number of replaced matches, 0 if the target was not opened.
+	 * @throws IOException
+	 *             if the file can not be read, if its text can not be decoded
+	 *             or if a replacement can not be encoded in its charset.
+	 * @throws IllegalStateException
+	 *             if the searcher has no replacement.
+	 */
+	int replace(Path path, Target target, BooleanSupplier cancelled) throws IOException {
+		if (searcher.getReplacement() == null) {
+			throw new IllegalStateException("Searcher has no replacement.");
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer head = readHead(channel, size);
+			TextEncoding encoding = CharsetDetector.detect(head);
+			Charset charset = encoding.getCharset();
+			if (isBinary(head, charset)) {
+				return 0;
+			}
+			int bom = encoding.getByteOrderMark().length;
+			CharsetDecoder decoder = newDecoder(charset, CodingErrorAction.REPORT);
+			CharsetEncoder encoder = charset.newEncoder();
+
+			if (isLiteral(charset)) {
+				byte[] needle = encode(charset);
+				if (needle == null) {
+					return 0;
+				}
+				WritableByteChannel[] output = new WritableByteChannel[1];
+				long[] copied = new long[1];
+				int[] count = new int[1];
+				scanBytes(channel, size, head, bom, needle, (window, start, end, line, lineOffset) -> {
+					CharBuffer text = decode(window, start, end, decoder);
+					List<TextSearcher.Match> matches = new ArrayList<>();
+					searcher.findAll(text, matches::addAll, () -> false);
+					if (matches.isEmpty()) {
+						return;
+					}
+					if (output[0] == null) {
+						output[0] = target.open();
+					}
+					copy(channel, copied[0], lineOffset, output[0]);
+					write(encoder, replaced(text, matches), output[0]);
+					copied[0] = lineOffset + end - start;
+					count[0] += matches.size();
+				}, cancelled);
+				if (output[0] != null) {
+					copy(channel, copied[0], size, output[0]);
+				}
+				return count[0];
+			}
+
+			WritableByteChannel[] output = new WritableByteChannel[1];
+			long[] unchanged = { bom };
+			int[] count = new int[1];
+			scanText(channel, size, head, bom, decoder, (text, line) -> {
+				List<TextSearcher.Match> matches = new ArrayList<>();
+				searcher.findAll(text, matches::addAll, cancelled);
+				if (output[0] == null) {
+					if (matches.isEmpty()) {
+						unchanged[0] += encodedLength(encoder, text);
+						return;
+					}
+					output[0] = target.open();
+					copy(channel, 0, unchanged[0], output[0]);
+				}
+				write(encoder, matches.isEmpty() ? text : replaced(text, matches), output[0]);
+				count[0] += matches.size();
+			}, cancelled);
+			return count[0];
+		}
+	}
+
+	/**
+	 * Reads the first window of the file. A file of at most
+	 * {@link #READ_LIMIT} bytes is read into the buffer of the thread, a
+	 * larger one is mapped.
+	 *
+	 * @param channel
+	 *            is the channel of the file.
+	 * @param size
+	 *            is the size of the file.
+	 * @return the first window.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	private ByteBuffer readHead(FileChannel channel, long size) throws IOException {
+		if (size > READ_LIMIT) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW_SIZE));
+		}
+		ByteBuffer head = readBuffers.get();
+		head.clear();
+		while (head.position() < size) {
+			if (channel.read(head) < 0) {
+				break;
+			}
+		}
+		head.flip();
+		return head;
+	}
+
+	/**
+	 * Checks if the query can be found on the bytes of a file in the given
+	 * charset.
+	 *
+	 * @param charset
+	 *            is the charset of the file.
+	 * @return true if it can, false if the text has to be decoded.
+	 */
+	private boolean isLiteral(Charset charset) {
+		return literal && !isUtf16(charset);
+	}
+
+	/**
+	 * Encodes the query in the given charset, folding the ASCII letters if the
+	 * case is ignored.
+	 *
+	 * @param charset
+	 *            is the charset of the file.
+	 * @return the encoded query, null if the charset can not encode it.
+	 */
+	private byte[] encode(Charset charset) {
+		String query = searcher.getQuery();
+		CharsetEncoder encoder = charset.newEncoder();
+		if (!encoder.canEncode(query)) {
+			return null;
+		}
+		byte[] needle = query.getBytes(charset);
+		if (foldAscii) {
+			for (int i = 0; i < needle.length; ++i) {
+				needle[i] = fold(needle[i]);
+			}
+		}
+		return needle;
+	}
+
+	/**
+	 * Finds the lines holding the encoded query, and visits them in order.
+	 *
+	 * @param channel
+	 *            is the channel of the file.
+	 * @param size
+	 *            is the size of the file.
+	 * @param head
+	 *            is the first window of the file.
+	 * @param bom
+	 *            is the length of the byte order mark.
+	 * @param needle
+	 *            is the encoded query.
+	 * @param visitor
+	 *            visits the lines.
+	 * @param cancelled
+	 *            is checked between the windows.
+	 * @throws IOException
+	 *             if the file can not be read, or the visitor fails.
+	 */
+	private void scanBytes(FileChannel channel, long size, ByteBuffer head, int bom, byte[] needle,
+			LineVisitor visitor, BooleanSupplier cancelled) throws IOException {
+		int[] shifts = new int[256];
+		Arrays.fill(shifts, needle.length);
+		for (int i = 0; i < needle.length - 1; ++i) {
+			shifts[needle[i] & 0xff] = needle.length - 1 - i;
+		}
+		ByteBuffer window = head;
+		long base = 0;
+		long position = bom;
+		long lineFloor = bom;
+		long counted = 0;
+		int line = 1;
+		while (true) {
+			long windowEnd = base + window.limit();
+			boolean last = windowEnd == size;
+			long limit = last ? windowEnd : windowEnd - MAX_LINE_LENGTH;
+
+			while (true) {
+				int found = horspool(window, (int) (position - base), (int) (limit - base), needle, shifts);
+				if (found < 0) {
+					break;
+				}
+				int lineStart = found;
+				int floor = (int) Math.max(lineFloor - base, Math.max(0, found - MAX_LINE_LENGTH));
+				while (lineStart > floor && window.get(lineStart - 1) != '\n') {
+					lineStart--;
+				}
+				int lineEnd = found + needle.length;
+				int ceiling = Math.min(window.limit(), found + MAX_LINE_LENGTH);
+				while (lineEnd < ceiling && window.get(lineEnd) != '\n') {
+					lineEnd++;
+				}
+
+				line += countLines(window, (int) (counted - base), lineStart);
+				counted = Math.max(counted, base + lineStart);
+				int textEnd = lineEnd;
+				if (textEnd > lineStart && window.get(textEnd - 1) == '\r') {
+					textEnd--;
+				}
+				visitor.visit(window, lineStart, textEnd, line, base + lineStart);
+
+				position = base + lineEnd;
+				if (lineEnd < window.limit() && window.get(lineEnd) == '\n') {
+					position++;
+				}
+				lineFloor = position;
+			}
+
+			if (last || cancelled.getAsBoolean()) {
+				return;
+			}
+			position = Math.max(position, limit);
+			line += countLines(window, (int) (counted - base), (int) (position - base));
+			counted = position;
+			base = position - MAX_LINE_LENGTH;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(size - base, WINDOW_SIZE));
+		}
+	}
+
+	/**
+	 * Decodes the file after the byte order mark, and visits the decoded text
+	 * in order. A file of at most {@link #DECODE_LIMIT} bytes is in the first
+	 * window and is visited as one chunk. A larger one is decoded window by
+	 * window into a buffer of {@link #TEXT_CHUNK_SIZE} characters, and every
+	 * time the buffer fills up, the text up to its last line break is visited
+	 * and the rest is kept for the next chunk. A line longer than the buffer
+	 * is broken.
+	 *
+	 * @param channel
+	 *            is the channel of the file.
+	 * @param size
+	 *            is the size of the file.
+	 * @param head
+	 *            is the first window of the file.
+	 * @param bom
+	 *            is the length of the byte order mark.
+	 * @param decoder
+	 *            is the decoder of the charset of the file.
+	 * @param visitor
+	 *            visits the chunks.
+	 * @param cancelled
+	 *            is checked between the chunks.
+	 * @throws IOException
+	 *             if the file can not be read, if the decoder reports
+	 *             malformed input, or if the visitor fails.
+	 */
+	private static void scanText(FileChannel channel, long size, ByteBuffer head, int bom, CharsetDecoder decoder,
+			ChunkVisitor visitor, BooleanSupplier cancelled) throws IOException {
+		if (size <= DECODE_LIMIT) {
+			visitor.visit(decode(head, bom, head.limit(), decoder), 1);
+			return;
+		}
+
+		CharBuffer text = CharBuffer.allocate(TEXT_CHUNK_SIZE);
+		ByteBuffer window = head.duplicate();
+		window.position(bom);
+		long base = 0;
+		int line = 1;
+		decoder.reset();
+		while (true) {
+			boolean last = base + window.limit() == size;
+			CoderResult result = decoder.decode(window, text, last);
+			if (result.isError()) {
+				result.throwException();
+			}
+			if (result.isUnderflow() && !last) {
+				base += window.position();
+				window = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(size - base, WINDOW_SIZE));
+				continue;
+			}
+
+			boolean done = result.isUnderflow();
+			if (done) {
+				decoder.flush(text);
+			}
+			text.flip();
+			int cut = done ? text.limit() : chunkEnd(text);
+			CharBuffer chunk = text.duplicate();
+			chunk.limit(cut);
+			visitor.visit(chunk, line);
+			if (done || cancelled.getAsBoolean()) {
+				return;
+			}
+			for (int i = 0; i < cut; ++i) {
+				if (text.get(i) == '\n') {
+					line++;
+				}
+			}
+			text.position(cut);
+			text.compact();
+		}
+	}
+
+	/**
+	 * Finds where the visited part of a full buffer of decoded text ends: after
+	 * its last line break, or if it has none, before a high surrogate it ends
+	 * with.
+	 *
+	 * @param text
+	 *            is the buffer.
+	 * @return the end of the visited part.
+	 */
+	private static int chunkEnd(CharBuffer text) {
+		for (int i = text.limit() - 1; i >= 0; --i) {
+			if (text.get(i) == '\n') {
+				return i + 1;
+			}
+		}
+		int end = text.limit();
+		return end > 1 && Character.isHighSurrogate(text.get(end - 1)) ? end - 1 : end;
+	}
+
+	/**
+	 * Decodes the given range of the buffer.
+	 *
+	 * @param bytes
+	 *            is the buffer.
+	 * @param start
+	 *            is the start of the range.
+	 * @param end
+	 *            is the end of the range.
+	 * @param decoder
+	 *            is the decoder of the charset of the file.
+	 * @return the decoded text.
+	 * @throws IOException
+	 *             if the decoder reports malformed input.
+	 */
+	private static CharBuffer decode(ByteBuffer bytes, int start, int end, CharsetDecoder decoder)
+			throws IOException {
+		ByteBuffer range = bytes.duplicate();
+		range.limit(end).position(Math.min(start, end));
+		return decoder.reset().decode(range);
+	}
+
+	/**
+	 * Creates a decoder of the given charset.
+	 *
+	 * @param charset
+	 *            is the charset.
+	 * @param action
+	 *            is the action on malformed input and unmappable characters.
+	 * @return the decoder.
+	 */
+	private static CharsetDecoder newDecoder(Charset charset, CodingErrorAction action) {
+		return charset.newDecoder().onMalformedInput(action).onUnmappableCharacter(action);
+	}
+
+	/**
+	 * Returns the given text with the given matches replaced.
+	 *
+	 * @param text
+	 *            is the text.
+	 * @param matches
+	 *            are the matches, in order.
+	 * @return the replaced text.
+	 */
+	private static CharSequence replaced(CharSequence text, List<TextSearcher.Match> matches) {
+		StringBuilder builder = new StringBuilder(text.length());
+		int copied = 0;
+		for (TextSearcher.Match match : matches) {
+			builder.append(text, copied, match.getStart()).append(match.getReplacement());
+			copied = match.getEnd();
+		}
+		return builder.append(text, copied, text.length());
+	}
+
+	/**
+	 * Encodes the given text and writes it to the given output.
+	 *
+	 * @param encoder
+	 *            is the encoder of the charset of the file.
+	 * @param text
+	 *            is the text.
+	 * @param output
+	 *            is the output.
+	 * @throws IOException
+	 *             if the text can not be encoded or written.
+	 */
+	private static void write(CharsetEncoder encoder, CharSequence text, WritableByteChannel output)
+			throws IOException {
+		ByteBuffer bytes = encoder.reset().encode(CharBuffer.wrap(text));
+		while (bytes.hasRemaining()) {
+			output.write(bytes);
+		}
+	}
+
+	/**
+	 * Counts the bytes of the given text encoded, without keeping them. The
+	 * text was decoded without replacing anything, so these are the bytes it
+	 * was decoded from.
+	 *
+	 * @param encoder
+	 *            is the encoder of the charset of the file.
+	 * @param text
+	 *            is the text.
+	 * @return the number of bytes.
+	 * @throws IOException
+	 *             if the text can not be encoded.
+	 */
+	private static long encodedLength(CharsetEncoder encoder, CharBuffer text) throws IOException {
+		CharBuffer chars = text.duplicate();
+		ByteBuffer bytes = ByteBuffer.allocate(READ_LIMIT);
+		long length = 0;
+		encoder.reset();
+		while (true) {
+			CoderResult result = encoder.encode(chars, bytes, true);
+			if (result.isError()) {
+				result.throwException();
+			}
+			length += bytes.position();
+			bytes.clear();
+			if (result.isUnderflow()) {
+				break;
+			}
+		}
+		while (encoder.flush(bytes).isOverflow()) {
+			length += bytes.position();
+			bytes.clear();
+		}
+		return length + bytes.position();
+	}
+
+	/**
+	 * Copies the given range of the file to the given output, without
+	 * reading it into the heap.
+	 *
+	 * @param channel
+	 *            is the channel of the file.
+	 * @param from
+	 *            is the start of the range.
+	 * @param to
+	 *            is the end of the range.
+	 * @param output
+	 *            is the output.
+	 * @throws IOException
+	 *             if the range can not be copied.
+	 */
+	private static void copy(FileChannel channel, long from, long to, WritableByteChannel output)
+			throws IOException {
+		while (from < to) {
+			long transferred = channel.transferTo(from, to - from, output);
+			if (transferred <= 0) {
+				throw new EOFException("File shrank while being replaced.");
+			}
+			from += transferred;
+		}
+	}
+
+	/**
+	 * Finds the first occurrence of the encoded query inside the given range
+	 * of the buffer with the Boyer-Moore-Horspool algorithm.
+	 *
+	 * @param bytes
+	 *            is the buffer.
+	 * @param from
+	 *            is the start of the range.
+	 * @param to
+	 *            is the offset the occurrences have to start before.
+	 * @param needle
+	 *            is the encoded query.
+	 * @param shifts
+	 *            are the shifts by the last byte.
+	 * @return the index of the occurrence, -1 if there is none.
+	 */
+	private int horspool(ByteBuffer bytes, int from, int to, byte[] needle, int[] shifts) {
+		int last = needle.length - 1;
+		int end = Math.min(to + last, bytes.limit());
+		int position = from;
+		while (position + last < end) {
+			byte b = fold(bytes.get(position + last));
+			if (b == needle[last]) {
+				int i = last - 1;
+				while (i >= 0 && fold(bytes.get(position + i)) == needle[i]) {
+					i--;
+				}
+				if (i < 0) {
+					return position;
+				}
+			}
+			position += shifts[b & 0xff];
+		}
+		return -1;
+	}
+
+	/**
+	 * Folds the given byte to lower case if it is an ASCII letter and the case
+	 * is ignored.
+	 *
+	 * @param b
+	 *            is the given byte.
+	 * @return the compared byte.
+	 */
+	private byte fold(byte b) {
+		return foldAscii && b >= 'A' && b <= 'Z' ? (byte) (b + 'a' - 'A') : b;
+	}
+
+	/**
+	 * Counts the line feeds in the given range of the buffer.
+	 *
+	 * @param bytes
+	 *            is the buffer.
+	 * @param from
+	 *            is the start of the range.
+	 * @param to
+	 *            is the end of the range.
+	 * @return the number of line feeds.
+	 */
+	private static int countLines(ByteBuffer bytes, int from, int to) {
+		int count = 0;
+		for (int i = from; i < to; ++i) {
+			if (bytes.get(i) == '\n') {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Checks if the given charset is UTF-16.
+	 *
+	 * @param charset
+	 *            is the given charset.
+	 * @return true if it is, false otherwise.
+	 */
+	private static boolean isUtf16(Charset charset) {
+		return charset.equals(StandardCharsets.UTF_16BE) || charset.equals(StandardCharsets.UTF_16LE);
+	}
+
+	/**
+	 * Checks if the first bytes of a file that is not UTF-16 hold a zero
+	 * byte, which text in such an encoding never does.
+	 *
+	 * @param head
+	 *            is the first window of the file.
+	 * @param charset
+	 *            is the detected charset of the file.
+	 * @return true if the file is binary, false otherwise.
+	 */
+	private static boolean isBinary(ByteBuffer head, Charset charset) {
+		if (isUtf16(charset)) {
+			return false;
+		}
+		int length = Math.min(head.limit(), CharsetDetector.SAMPLE_SIZE);
+		for (int i = 0; i < length; ++i) {
+			if (head.get(i) == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,107 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The size and the modification time of a file at the moment a document was
+ * loaded from it or saved to it. Kept with the document, so the edits made
+ * later can be told apart from the changes other programs made to the file.
+ *
+ * @author Marin
+ *
+ */
+public final class FileStamp {
+
+	/**
+	 * The name of the document property holding the stamp of the file a
+	 * document was loaded from.
+	 */
+	public static final String PROPERTY = "hr.fer.zemris.java.hw11.jnotepadpp.stamp";
+
+	/**
+	 * The size of the file in bytes.
+	 */
+	private final long size;
+	/**
+	 * The modification time of the file in milliseconds.
+	 */
+	private final long modified;
+
+	/**
+	 * The {@link FileStamp} constructor.
+	 *
+	 * @param size
+	 *            is the size of the file in bytes.
+	 * @param modified
+	 *            is the modification time of the file in milliseconds.
+	 */
+	public FileStamp(long size, long modified) {
+		this.size = size;
+		this.modified = modified;
+	}
+
+	/**
+	 * Reads the stamp of the given file.
+	 *
+	 * @param file
+	 *            is the given file.
+	 * @return the stamp, null if the file can not be read.
+	 */
+	public static FileStamp of(Path file) {
+		try {
+			return new FileStamp(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * A getter for the size of the file.
+	 *
+	 * @return the size in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * A getter for the modification time of the file.
+	 *
+	 * @return the modification time in milliseconds.
+	 */
+	public long getModified() {
+		return modified;
+	}
+
+	/**
+	 * Checks if the given file still has this stamp.
+	 *
+	 * @param file
+	 *            is the given file.
+	 * @return true if it has, false if it changed or can not be read.
+	 */
+	public boolean matches(Path file) {
+		return equals(of(file));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof FileStamp)) {
+			return false;
+		}
+		FileStamp other = (FileStamp) obj;
+		return size == other.size && modified == other.modified;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(size) * 31 + Long.hashCode(modified);
+	}
+
+	@Override
+	public String toString() {
+		return size + " bytes, modified " + modified;
+	}
+}
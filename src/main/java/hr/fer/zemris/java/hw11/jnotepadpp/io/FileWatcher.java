@@ -0,0 +1,424 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Watches files for changes made by other programs. All the files are watched
+ * by one thread and one {@link WatchService}, and every directory is
+ * registered only once no matter how many of its files are watched, so the
+ * number of watches grows with the number of directories, not files.
+ * <p>
+ * The events of a file are collected for {@link #DEBOUNCE} milliseconds after
+ * the first one, so a file written all the time, like a log, is still checked
+ * regularly. The file is then compared with the state it was last seen in: if
+ * its size and modification time are the same nothing happened, if the size
+ * changed the file changed, and if only the modification time changed, the
+ * hash of the content decides. The content is hashed only in that last case,
+ * and once on the watcher thread right after the file starts being watched,
+ * so a growing file, like a followed log, is never read by the watcher. The
+ * listener is only told about real changes, on the watcher thread.
+ *
+ * @author Marin
+ *
+ */
+public class FileWatcher {
+
+	/**
+	 * The time in milliseconds the events of a file are collected before it is
+	 * checked.
+	 */
+	private static final long DEBOUNCE = 300;
+	/**
+	 * The longest time in milliseconds the thread waits for events.
+	 */
+	private static final long IDLE_WAIT = 1000;
+	/**
+	 * The size of the buffer used to hash the files.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Listens for the changes of the watched files.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public interface Listener {
+
+		/**
+		 * Called on the watcher thread when a watched file was changed,
+		 * created or deleted by another program.
+		 *
+		 * @param file
+		 *            is the absolute path of the file.
+		 */
+		void fileChanged(Path file);
+	}
+
+	/**
+	 * A registered directory.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Directory {
+
+		/**
+		 * The key of the registration.
+		 */
+		private WatchKey key;
+		/**
+		 * The number of watches of every watched file of the directory.
+		 */
+		private Map<Path, Integer> files = new HashMap<>();
+	}
+
+	/**
+	 * The state a file was last seen in.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Stamp {
+
+		/**
+		 * The size of the file, -1 if the file does not exist.
+		 */
+		private long size;
+		/**
+		 * The modification time in milliseconds.
+		 */
+		private long modified;
+		/**
+		 * The hash of the content, null if it was not computed.
+		 */
+		private Long hash;
+
+		/**
+		 * Reads the size and the modification time of the given file.
+		 *
+		 * @param file
+		 *            is the given file.
+		 * @return the stamp.
+		 */
+		private static Stamp of(Path file) {
+			Stamp stamp = new Stamp();
+			try {
+				stamp.size = Files.size(file);
+				stamp.modified = Files.getLastModifiedTime(file).toMillis();
+			} catch (IOException e) {
+				stamp.size = -1;
+			}
+			return stamp;
+		}
+
+		/**
+		 * Computes the hash of the content of the given file, if it exists.
+		 *
+		 * @param file
+		 *            is the given file.
+		 */
+		private void hash(Path file) {
+			if (size < 0) {
+				return;
+			}
+			CRC32 crc = new CRC32();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			try (InputStream in = Files.newInputStream(file)) {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					crc.update(buffer, 0, read);
+				}
+				hash = crc.getValue();
+			} catch (IOException e) {
+				hash = null;
+			}
+		}
+	}
+
+	/**
+	 * The listener.
+	 */
+	private final Listener listener;
+	/**
+	 * The watch service.
+	 */
+	private final WatchService service;
+	/**
+	 * The registered directories.
+	 */
+	private final Map<Path, Directory> directories = new HashMap<>();
+	/**
+	 * The directories of the registration keys.
+	 */
+	private final Map<WatchKey, Path> keys = new HashMap<>();
+	/**
+	 * The states the watched files were last seen in.
+	 */
+	private final Map<Path, Stamp> stamps = new HashMap<>();
+	/**
+	 * The times in milliseconds at which the changed files are checked.
+	 */
+	private final Map<Path, Long> pending = new HashMap<>();
+	/**
+	 * The files written by the editor itself, whose next change is not
+	 * reported.
+	 */
+	private final Set<Path> acknowledged = new HashSet<>();
+
+	/**
+	 * The {@link FileWatcher} constructor. Starts the watcher thread.
+	 *
+	 * @param listener
+	 *            is the listener told about the changes.
+	 * @throws IOException
+	 *             if the file system can not watch files.
+	 */
+	public FileWatcher(Listener listener) throws IOException {
+		this.listener = Objects.requireNonNull(listener);
+		this.service = FileSystems.getDefault().newWatchService();
+
+		Thread thread = new Thread(this::work, "file-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Starts watching the given file. A file can be watched more than once,
+	 * and is watched until it is unwatched as many times. The content of the
+	 * file is hashed later, on the watcher thread.
+	 *
+	 * @param file
+	 *            is the given file.
+	 */
+	public synchronized void watch(Path file) {
+		file = file.toAbsolutePath().normalize();
+		Path parent = file.getParent();
+		if (parent == null) {
+			return;
+		}
+
+		Directory directory = directories.get(parent);
+		if (directory == null) {
+			directory = new Directory();
+			try {
+				directory.key = parent.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+				keys.put(directory.key, parent);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			directories.put(parent, directory);
+		}
+		if (directory.files.merge(file, 1, Integer::sum) == 1) {
+			stamps.put(file, Stamp.of(file));
+			pending.put(file, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Stops watching the given file once. The directory of the file is
+	 * unregistered when none of its files is watched anymore.
+	 *
+	 * @param file
+	 *            is the given file.
+	 */
+	public synchronized void unwatch(Path file) {
+		file = file.toAbsolutePath().normalize();
+		Path parent = file.getParent();
+		Directory directory = parent == null ? null : directories.get(parent);
+		if (directory == null || !directory.files.containsKey(file)) {
+			return;
+		}
+
+		if (directory.files.merge(file, -1, Integer::sum) > 0) {
+			return;
+		}
+		directory.files.remove(file);
+		stamps.remove(file);
+		pending.remove(file);
+		acknowledged.remove(file);
+		if (directory.files.isEmpty()) {
+			directories.remove(parent);
+			if (directory.key != null) {
+				keys.remove(directory.key);
+				directory.key.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Tells the watcher the given file was just written by the editor, so the
+	 * change is remembered but not reported. Can be called from any thread.
+	 *
+	 * @param file
+	 *            is the written file.
+	 */
+	public synchronized void acknowledge(Path file) {
+		file = file.toAbsolutePath().normalize();
+		if (stamps.containsKey(file)) {
+			acknowledged.add(file);
+			pending.put(file, System.currentTimeMillis() + DEBOUNCE);
+		}
+	}
+
+	/**
+	 * The loop of the watcher thread.
+	 */
+	private void work() {
+		while (true) {
+			WatchKey key;
+			try {
+				key = service.poll(nextWait(), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+			if (key != null) {
+				collect(key);
+			}
+			for (Path file : due()) {
+				check(file);
+			}
+		}
+	}
+
+	/**
+	 * Returns the time until the next pending file is due.
+	 *
+	 * @return the time in milliseconds.
+	 */
+	private synchronized long nextWait() {
+		long now = System.currentTimeMillis();
+		long wait = IDLE_WAIT;
+		for (long time : pending.values()) {
+			wait = Math.min(wait, Math.max(0, time - now));
+		}
+		return wait;
+	}
+
+	/**
+	 * Marks the watched files named by the events of the given key as
+	 * pending. If events were lost or the directory is gone, all the watched
+	 * files of the directory are marked.
+	 *
+	 * @param key
+	 *            is the signalled key.
+	 */
+	private synchronized void collect(WatchKey key) {
+		Path parent = keys.get(key);
+		List<WatchEvent<?>> events = key.pollEvents();
+		boolean valid = key.reset();
+		Directory directory = parent == null ? null : directories.get(parent);
+		if (directory == null) {
+			return;
+		}
+
+		long due = System.currentTimeMillis() + DEBOUNCE;
+		boolean all = !valid;
+		for (WatchEvent<?> event : events) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				all = true;
+				continue;
+			}
+			Path file = parent.resolve((Path) event.context());
+			if (directory.files.containsKey(file)) {
+				pending.putIfAbsent(file, due);
+			}
+		}
+		if (all) {
+			for (Path file : directory.files.keySet()) {
+				pending.putIfAbsent(file, due);
+			}
+		}
+		if (!valid) {
+			keys.remove(key);
+			directory.key = null;
+		}
+	}
+
+	/**
+	 * Removes and returns the pending files that are due.
+	 *
+	 * @return the due files.
+	 */
+	private synchronized List<Path> due() {
+		long now = System.currentTimeMillis();
+		List<Path> due = new ArrayList<>();
+		for (Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Path, Long> entry = it.next();
+			if (entry.getValue() <= now) {
+				due.add(entry.getKey());
+				it.remove();
+			}
+		}
+		return due;
+	}
+
+	/**
+	 * Compares the given file with the state it was last seen in, and tells
+	 * the listener if it changed. The content is hashed only if the size is
+	 * the same and the modification time is not, or if the file is unchanged
+	 * but was not hashed yet.
+	 *
+	 * @param file
+	 *            is the given file.
+	 */
+	private void check(Path file) {
+		Stamp old;
+		boolean ours;
+		synchronized (this) {
+			old = stamps.get(file);
+			ours = acknowledged.remove(file);
+		}
+		if (old == null) {
+			return;
+		}
+
+		Stamp current = Stamp.of(file);
+		boolean changed;
+		if (ours) {
+			changed = false;
+		} else if (current.size != old.size) {
+			changed = true;
+		} else if (current.modified == old.modified) {
+			changed = false;
+			if (old.hash != null) {
+				current.hash = old.hash;
+			} else {
+				current.hash(file);
+			}
+		} else {
+			current.hash(file);
+			changed = old.hash == null || !old.hash.equals(current.hash);
+		}
+
+		synchronized (this) {
+			if (stamps.get(file) != old) {
+				return;
+			}
+			stamps.put(file, current);
+		}
+		if (changed) {
+			listener.fileChanged(file);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TrigramIndex;
+
+/**
+ * A directory of {@link TrigramIndex} files, one for every indexed file, so a
+ * file opened again does not have to be indexed again. The index file is
+ * named by the hash of the path of the indexed file, and starts with a header
+ * holding the path, the size and the modification time of the indexed file.
+ * An index is used only if all three still match, so an index of a file
+ * changed by another program is never used.
+ *
+ * @author Marin
+ *
+ */
+public class IndexCache {
+
+	/**
+	 * The extension of the index files.
+	 */
+	public static final String EXTENSION = ".trigrams";
+
+	/**
+	 * The magic number at the start of the file.
+	 */
+	private static final int MAGIC = 0x4A4E5054;
+	/**
+	 * The version of the file format.
+	 */
+	private static final short VERSION = 1;
+
+	/**
+	 * The directory of the index files.
+	 */
+	private final Path directory;
+
+	/**
+	 * The {@link IndexCache} constructor. The directory is created with the
+	 * first stored index.
+	 *
+	 * @param directory
+	 *            is the directory of the index files.
+	 */
+	public IndexCache(Path directory) {
+		this.directory = Objects.requireNonNull(directory);
+	}
+
+	/**
+	 * The directory the index files are kept in by default.
+	 *
+	 * @return the directory.
+	 */
+	public static Path defaultDirectory() {
+		return Paths.get(System.getProperty("user.home"), ".jnotepadpp", "index");
+	}
+
+	/**
+	 * A getter for the directory of the index files.
+	 *
+	 * @return the directory.
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Reads the index of the given file, if it was stored for the file as it
+	 * is now.
+	 *
+	 * @param file
+	 *            is the indexed file.
+	 * @param attributes
+	 *            are the current attributes of the file.
+	 * @return the index, null if there is none or it is out of date.
+	 */
+	public TrigramIndex load(Path file, BasicFileAttributes attributes) {
+		Path stored = indexFile(file);
+		if (!Files.isRegularFile(stored)) {
+			return null;
+		}
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(stored)))) {
+			if (input.readInt() != MAGIC || input.readShort() != VERSION
+					|| !input.readUTF().equals(key(file))
+					|| input.readLong() != attributes.size()
+					|| input.readLong() != attributes.lastModifiedTime().toMillis()) {
+				return null;
+			}
+			return TrigramIndex.read(input);
+		} catch (IOException ignorable) {
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the index of the given file, replacing its earlier index. The
+	 * index is written to a temporary file first, so a failed write never
+	 * leaves a broken index behind.
+	 *
+	 * @param file
+	 *            is the indexed file.
+	 * @param attributes
+	 *            are the attributes of the file the index was built of.
+	 * @param index
+	 *            is the index.
+	 * @throws IOException
+	 *             if the index can not be written.
+	 */
+	public void store(Path file, BasicFileAttributes attributes, TrigramIndex index) throws IOException {
+		Files.createDirectories(directory);
+		Path stored = indexFile(file);
+		Path temporary = Files.createTempFile(directory, "." + stored.getFileName(), ".tmp");
+		try {
+			try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				output.writeInt(MAGIC);
+				output.writeShort(VERSION);
+				output.writeUTF(key(file));
+				output.writeLong(attributes.size());
+				output.writeLong(attributes.lastModifiedTime().toMillis());
+				index.write(output);
+			}
+			DocumentSaver.move(temporary, stored);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Returns the index file of the given file.
+	 *
+	 * @param file
+	 *            is the indexed file.
+	 * @return the path of the index file.
+	 */
+	private Path indexFile(Path file) {
+		return directory.resolve(String.format("%08x", key(file).hashCode()) + EXTENSION);
+	}
+
+	/**
+	 * Returns the key the index of the given file is stored under.
+	 *
+	 * @param file
+	 *            is the indexed file.
+	 * @return the absolute normalized path.
+	 */
+	private static String key(Path file) {
+		return file.toAbsolutePath().normalize().toString();
+	}
+}
@@ -0,0 +1,87 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A limit on the number of bytes written per second, shared by all the
+ * background writers. Works as a token bucket: the budget fills up at the
+ * given rate up to one second worth of bytes, and a writer taking more than
+ * there is goes into debt and waits until the debt is paid off. So a burst of
+ * writers gets through at the given rate together, instead of each of them
+ * getting the full rate.
+ *
+ * @author Marin
+ *
+ */
+public class IoBudget {
+
+	/**
+	 * The number of bytes per second.
+	 */
+	private final long bytesPerSecond;
+	/**
+	 * The bytes available right now, negative while in debt.
+	 */
+	private double available;
+	/**
+	 * The time of the last refill in nanoseconds.
+	 */
+	private long lastRefill;
+
+	/**
+	 * The {@link IoBudget} constructor.
+	 *
+	 * @param bytesPerSecond
+	 *            is the number of bytes that can be written per second.
+	 * @throws IllegalArgumentException
+	 *             if the rate is not positive.
+	 */
+	public IoBudget(long bytesPerSecond) {
+		if (bytesPerSecond <= 0) {
+			throw new IllegalArgumentException("Rate should be positive, was " + bytesPerSecond + ".");
+		}
+		this.bytesPerSecond = bytesPerSecond;
+		this.available = bytesPerSecond;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * A getter for the number of bytes per second.
+	 *
+	 * @return the number of bytes per second.
+	 */
+	public long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * Takes the given number of bytes from the budget, waiting for as long as
+	 * the budget is in debt afterwards.
+	 *
+	 * @param bytes
+	 *            is the number of bytes about to be written.
+	 * @throws InterruptedIOException
+	 *             if the thread is interrupted while waiting.
+	 */
+	public void acquire(int bytes) throws InterruptedIOException {
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			available = Math.min(bytesPerSecond,
+					available + (now - lastRefill) * (double) bytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+			lastRefill = now;
+			available -= bytes;
+			wait = available >= 0 ? 0 : (long) (-available * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+		}
+
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+	}
+}
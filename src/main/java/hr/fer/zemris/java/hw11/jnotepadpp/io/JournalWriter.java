@@ -0,0 +1,148 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The background thread writing all the {@link EditJournal}s. The commands are
+ * queued by the event dispatch thread and written in groups: the thread takes
+ * every queued command at once, writes them all, and only then forces each
+ * touched journal to the disk once. While the disk is busy the commands pile
+ * up, so the next group is bigger and the number of forces stays low.
+ *
+ * @author Marin
+ *
+ */
+class JournalWriter {
+
+	/**
+	 * An action performed on a journal by the writer thread.
+	 *
+	 * @author Marin
+	 *
+	 */
+	interface Action {
+
+		/**
+		 * Performs the action.
+		 *
+		 * @throws IOException
+		 *             if writing fails.
+		 */
+		void run() throws IOException;
+	}
+
+	/**
+	 * A queued command.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Command {
+
+		/**
+		 * The journal the action writes to.
+		 */
+		private final EditJournal journal;
+		/**
+		 * The action.
+		 */
+		private final Action action;
+
+		/**
+		 * The {@link Command} constructor.
+		 *
+		 * @param journal
+		 *            is the journal the action writes to.
+		 * @param action
+		 *            is the action.
+		 */
+		private Command(EditJournal journal, Action action) {
+			this.journal = journal;
+			this.action = action;
+		}
+	}
+
+	/**
+	 * The only instance, started on the first use.
+	 */
+	private static JournalWriter instance;
+
+	/**
+	 * The queued commands.
+	 */
+	private final BlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+
+	/**
+	 * The {@link JournalWriter} constructor. Starts the writer thread.
+	 */
+	private JournalWriter() {
+		Thread thread = new Thread(this::work, "journal-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the writer, starting it if needed.
+	 *
+	 * @return the writer.
+	 */
+	static synchronized JournalWriter getInstance() {
+		if (instance == null) {
+			instance = new JournalWriter();
+		}
+		return instance;
+	}
+
+	/**
+	 * Queues an action on the given journal. Never blocks.
+	 *
+	 * @param journal
+	 *            is the journal the action writes to.
+	 * @param action
+	 *            is the action.
+	 */
+	void submit(EditJournal journal, Action action) {
+		queue.add(new Command(journal, action));
+	}
+
+	/**
+	 * The loop of the writer thread.
+	 */
+	private void work() {
+		List<Command> group = new ArrayList<>();
+		Set<EditJournal> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+		while (true) {
+			try {
+				group.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(group);
+
+			for (Command command : group) {
+				try {
+					command.action.run();
+					touched.add(command.journal);
+				} catch (IOException | RuntimeException e) {
+					command.journal.fail(e);
+				}
+			}
+			for (EditJournal journal : touched) {
+				try {
+					journal.force();
+				} catch (IOException | RuntimeException e) {
+					journal.fail(e);
+				}
+			}
+			group.clear();
+			touched.clear();
+		}
+	}
+}
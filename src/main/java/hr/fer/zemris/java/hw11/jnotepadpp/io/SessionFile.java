@@ -0,0 +1,401 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.HibernatedText;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableContent;
+
+/**
+ * The session of the editor: the opened documents in the order of their tabs,
+ * with their caret and scroll positions and the compressed text of the
+ * documents that are not saved, and the selected tab. The session is written
+ * to a compact binary file and read from it on startup. Every entry also names
+ * the {@link EditJournal} of its document, whose edits are newer than the
+ * session.
+ *
+ * @author Marin
+ *
+ */
+public class SessionFile {
+
+	/**
+	 * The magic number at the start of the file.
+	 */
+	private static final int MAGIC = 0x4A4E5053;
+	/**
+	 * The version of the file format.
+	 */
+	private static final int VERSION = 2;
+	/**
+	 * The flag marking an entry with a path.
+	 */
+	private static final int HAS_PATH = 1;
+	/**
+	 * The flag marking an entry with unsaved text.
+	 */
+	private static final int HAS_TEXT = 2;
+	/**
+	 * The flag marking an entry with a journal.
+	 */
+	private static final int HAS_JOURNAL = 4;
+
+	/**
+	 * The entries of the opened documents.
+	 */
+	private List<Entry> entries;
+	/**
+	 * The index of the selected document.
+	 */
+	private int selected;
+
+	/**
+	 * The {@link SessionFile} constructor.
+	 *
+	 * @param entries
+	 *            are the entries of the opened documents.
+	 * @param selected
+	 *            is the index of the selected document, -1 if there is none.
+	 */
+	public SessionFile(List<Entry> entries, int selected) {
+		this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+		this.selected = selected;
+	}
+
+	/**
+	 * A getter for the entries of the opened documents.
+	 *
+	 * @return the entries.
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * A getter for the index of the selected document.
+	 *
+	 * @return the index, -1 if there is none.
+	 */
+	public int getSelected() {
+		return selected;
+	}
+
+	/**
+	 * Returns the default location of the session file, in the home directory
+	 * of the user.
+	 *
+	 * @return the path of the session file.
+	 */
+	public static Path defaultPath() {
+		return Paths.get(System.getProperty("user.home"), ".jnotepadpp", "session.bin");
+	}
+
+	/**
+	 * Writes the session to the given file. The file is replaced atomically,
+	 * so a failed write leaves the previous session. The texts of the entries
+	 * are compressed here, so the session can be created on the event
+	 * dispatch thread and written on another one.
+	 *
+	 * @param file
+	 *            is the file to write to.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	public void write(Path file) throws IOException {
+		Path absolute = file.toAbsolutePath();
+		Files.createDirectories(absolute.getParent());
+		Path temporary = Files.createTempFile(absolute.getParent(), "." + absolute.getFileName(), ".tmp");
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeShort(VERSION);
+				out.writeInt(selected);
+				out.writeInt(entries.size());
+				for (Entry entry : entries) {
+					entry.writeTo(out);
+				}
+			}
+			try {
+				Files.move(temporary, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the session from the given file. The unsaved texts are read
+	 * compressed, and are decompressed only when their documents are shown.
+	 *
+	 * @param file
+	 *            is the file to read from.
+	 * @return the read session.
+	 * @throws IOException
+	 *             if the file can not be read or is not a session file.
+	 */
+	public static SessionFile read(Path file) throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a session file: " + file);
+			}
+			int version = in.readShort();
+			if (version < 1 || version > VERSION) {
+				throw new IOException("Unsupported session file version: " + version);
+			}
+
+			int selected = in.readInt();
+			int count = in.readInt();
+			for (int i = 0; i < count; ++i) {
+				entries.add(Entry.readFrom(in));
+			}
+			return new SessionFile(entries, selected);
+		} catch (IOException | RuntimeException e) {
+			for (Entry entry : entries) {
+				entry.dispose();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Releases the unsaved texts of all the entries.
+	 */
+	public void dispose() {
+		for (Entry entry : entries) {
+			entry.dispose();
+		}
+	}
+
+	/**
+	 * The entry of one opened document.
+	 *
+	 * @author Marin
+	 *
+	 */
+	public static class Entry {
+
+		/**
+		 * The path of the document, null if it was never saved.
+		 */
+		private Path path;
+		/**
+		 * The caret position.
+		 */
+		private int caret;
+		/**
+		 * The vertical scroll position in pixels.
+		 */
+		private int scroll;
+		/**
+		 * The encoding of the document.
+		 */
+		private TextEncoding encoding;
+		/**
+		 * The text of the document, null if the document is saved.
+		 */
+		private HibernatedText unsaved;
+		/**
+		 * The pieces of the text of the document, compressed into
+		 * {@link #unsaved} when the entry is written, null if there are none.
+		 */
+		private PieceTableContent.Snapshot pieces;
+		/**
+		 * The identifier of the journal of the document, null if there is
+		 * none.
+		 */
+		private String journal;
+
+		/**
+		 * The {@link Entry} constructor.
+		 *
+		 * @param path
+		 *            is the path of the document, null if it was never saved.
+		 * @param caret
+		 *            is the caret position.
+		 * @param scroll
+		 *            is the vertical scroll position in pixels.
+		 * @param encoding
+		 *            is the encoding of the document.
+		 * @param unsaved
+		 *            is the text of the document, null if the document is
+		 *            saved.
+		 * @param journal
+		 *            is the identifier of the journal of the document, null if
+		 *            there is none.
+		 */
+		public Entry(Path path, int caret, int scroll, TextEncoding encoding, HibernatedText unsaved,
+				String journal) {
+			this.path = path;
+			this.caret = caret;
+			this.scroll = scroll;
+			this.encoding = encoding;
+			this.unsaved = unsaved;
+			this.journal = journal;
+		}
+
+		/**
+		 * The {@link Entry} constructor of an unsaved document whose text is
+		 * compressed only when the entry is written, so the snapshot can be
+		 * taken cheaply while the document is being edited.
+		 *
+		 * @param path
+		 *            is the path of the document, null if it was never saved.
+		 * @param caret
+		 *            is the caret position.
+		 * @param scroll
+		 *            is the vertical scroll position in pixels.
+		 * @param encoding
+		 *            is the encoding of the document.
+		 * @param pieces
+		 *            is the snapshot of the text of the document.
+		 * @param journal
+		 *            is the identifier of the journal of the document, null if
+		 *            there is none.
+		 */
+		public Entry(Path path, int caret, int scroll, TextEncoding encoding, PieceTableContent.Snapshot pieces,
+				String journal) {
+			this(path, caret, scroll, encoding, (HibernatedText) null, journal);
+			this.pieces = pieces;
+		}
+
+		/**
+		 * A getter for the path.
+		 *
+		 * @return the path, null if the document was never saved.
+		 */
+		public Path getPath() {
+			return path;
+		}
+
+		/**
+		 * A getter for the caret position.
+		 *
+		 * @return the caret position.
+		 */
+		public int getCaret() {
+			return caret;
+		}
+
+		/**
+		 * A getter for the vertical scroll position.
+		 *
+		 * @return the scroll position in pixels.
+		 */
+		public int getScroll() {
+			return scroll;
+		}
+
+		/**
+		 * A getter for the encoding.
+		 *
+		 * @return the encoding.
+		 */
+		public TextEncoding getEncoding() {
+			return encoding;
+		}
+
+		/**
+		 * A getter for the unsaved text.
+		 *
+		 * @return the text, null if the document is saved or its text is not
+		 *         compressed until the entry is written.
+		 */
+		public HibernatedText getUnsaved() {
+			return unsaved;
+		}
+
+		/**
+		 * A getter for the identifier of the journal.
+		 *
+		 * @return the identifier, null if the document has no journal.
+		 */
+		public String getJournal() {
+			return journal;
+		}
+
+		/**
+		 * Releases the unsaved text.
+		 */
+		public void dispose() {
+			if (unsaved != null) {
+				unsaved.dispose();
+			}
+			pieces = null;
+		}
+
+		/**
+		 * Writes the entry, compressing its text first if only its pieces
+		 * are kept.
+		 *
+		 * @param out
+		 *            is the output to write to.
+		 * @throws IOException
+		 *             if writing fails.
+		 */
+		private void writeTo(DataOutputStream out) throws IOException {
+			if (pieces != null) {
+				unsaved = HibernatedText.store(pieces);
+				pieces = null;
+			}
+			out.writeByte((path == null ? 0 : HAS_PATH) | (unsaved == null ? 0 : HAS_TEXT)
+					| (journal == null ? 0 : HAS_JOURNAL));
+			if (path != null) {
+				out.writeUTF(path.toAbsolutePath().toString());
+			}
+			out.writeInt(caret);
+			out.writeInt(scroll);
+			out.writeUTF(encoding.getCharset().name());
+			out.writeBoolean(encoding.hasByteOrderMark());
+			if (unsaved != null) {
+				unsaved.writeTo(out);
+			}
+			if (journal != null) {
+				out.writeUTF(journal);
+			}
+		}
+
+		/**
+		 * Reads an entry.
+		 *
+		 * @param in
+		 *            is the input to read from.
+		 * @return the read entry.
+		 * @throws IOException
+		 *             if reading fails.
+		 */
+		private static Entry readFrom(DataInputStream in) throws IOException {
+			int flags = in.readByte();
+			Path path = (flags & HAS_PATH) == 0 ? null : Paths.get(in.readUTF());
+			int caret = in.readInt();
+			int scroll = in.readInt();
+			Charset charset;
+			try {
+				charset = Charset.forName(in.readUTF());
+			} catch (IllegalArgumentException e) {
+				throw new IOException(e);
+			}
+			TextEncoding encoding = new TextEncoding(charset, in.readBoolean());
+			HibernatedText unsaved = (flags & HAS_TEXT) == 0 ? null : HibernatedText.readFrom(in);
+			String journal = (flags & HAS_JOURNAL) == 0 ? null : in.readUTF();
+			return new Entry(path, caret, scroll, encoding, unsaved, journal);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * The encoding of a text file: its {@link Charset} and whether the file starts
+ * with a byte order mark. Kept with the document, so the file is saved the
+ * same way it was read.
+ *
+ * @author Marin
+ *
+ */
+public final class TextEncoding {
+
+	/**
+	 * The name of the document property holding the encoding of a loaded
+	 * document.
+	 */
+	public static final String PROPERTY = "hr.fer.zemris.java.hw11.jnotepadpp.encoding";
+	/**
+	 * The default encoding, UTF-8 without the byte order mark.
+	 */
+	public static final TextEncoding UTF_8 = new TextEncoding(StandardCharsets.UTF_8, false);
+
+	/**
+	 * The byte order mark of UTF-8.
+	 */
+	private static final byte[] UTF_8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+	/**
+	 * The byte order mark of UTF-16 big endian.
+	 */
+	private static final byte[] UTF_16BE_BOM = { (byte) 0xFE, (byte) 0xFF };
+	/**
+	 * The byte order mark of UTF-16 little endian.
+	 */
+	private static final byte[] UTF_16LE_BOM = { (byte) 0xFF, (byte) 0xFE };
+	/**
+	 * An empty byte order mark.
+	 */
+	private static final byte[] NO_BOM = {};
+
+	/**
+	 * The charset.
+	 */
+	private final Charset charset;
+	/**
+	 * True if the file starts with a byte order mark.
+	 */
+	private final boolean byteOrderMark;
+
+	/**
+	 * The {@link TextEncoding} constructor.
+	 *
+	 * @param charset
+	 *            is the charset.
+	 * @param byteOrderMark
+	 *            true if the file starts with a byte order mark.
+	 */
+	public TextEncoding(Charset charset, boolean byteOrderMark) {
+		this.charset = Objects.requireNonNull(charset);
+		this.byteOrderMark = byteOrderMark;
+	}
+
+	/**
+	 * A getter for the charset.
+	 *
+	 * @return the charset.
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Checks if the file starts with a byte order mark.
+	 *
+	 * @return true if it does, false otherwise.
+	 */
+	public boolean hasByteOrderMark() {
+		return byteOrderMark;
+	}
+
+	/**
+	 * Returns the bytes written at the start of the file.
+	 *
+	 * @return the byte order mark, empty if the file has none.
+	 */
+	public byte[] getByteOrderMark() {
+		if (!byteOrderMark) {
+			return NO_BOM;
+		}
+		if (charset.equals(StandardCharsets.UTF_8)) {
+			return UTF_8_BOM.clone();
+		}
+		if (charset.equals(StandardCharsets.UTF_16BE)) {
+			return UTF_16BE_BOM.clone();
+		}
+		if (charset.equals(StandardCharsets.UTF_16LE)) {
+			return UTF_16LE_BOM.clone();
+		}
+		return NO_BOM;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof TextEncoding)) {
+			return false;
+		}
+		TextEncoding other = (TextEncoding) obj;
+		return charset.equals(other.charset) && byteOrderMark == other.byteOrderMark;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(charset, byteOrderMark);
+	}
+
+	@Override
+	public String toString() {
+		return byteOrderMark ? charset.name() + " BOM" : charset.name();
+	}
+}
@@ -0,0 +1,160 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.syntax;
+
+import java.util.Set;
+
+/**
+ * The {@link Lexer} of Java. A block comment and a text block can span lines,
+ * so a line can start inside either of them.
+ *
+ * @author Marin
+ *
+ */
+public class JavaLexer implements Lexer {
+
+	/**
+	 * The state of a line starting inside a block comment.
+	 */
+	static final int BLOCK_COMMENT = 1;
+	/**
+	 * The state of a line starting inside a text block.
+	 */
+	static final int TEXT_BLOCK = 2;
+
+	/**
+	 * The keywords.
+	 */
+	private static final Set<String> KEYWORDS = Set.of("abstract", "assert", "boolean", "break", "byte", "case",
+			"catch", "char", "class", "const", "continue", "default", "do", "double", "else", "enum", "exports",
+			"extends", "final", "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int",
+			"interface", "long", "module", "native", "new", "open", "opens", "package", "private", "protected",
+			"provides", "public", "requires", "return", "short", "static", "strictfp", "super", "switch",
+			"synchronized", "this", "throw", "throws", "to", "transient", "transitive", "try", "uses", "var", "void",
+			"volatile", "while", "with", "yield", "record", "sealed", "permits");
+	/**
+	 * The literals with a name.
+	 */
+	private static final Set<String> LITERALS = Set.of("true", "false", "null");
+	/**
+	 * The length of the longest keyword.
+	 */
+	private static final int MAX_KEYWORD_LENGTH = 12;
+
+	@Override
+	public int lex(CharSequence line, int state, Tokens tokens) {
+		int length = line.length();
+		int i = 0;
+		if (state == BLOCK_COMMENT) {
+			i = comment(line, 0, 0, tokens);
+			if (i < 0) {
+				return BLOCK_COMMENT;
+			}
+		} else if (state == TEXT_BLOCK) {
+			i = textBlock(line, 0, 0, tokens);
+			if (i < 0) {
+				return TEXT_BLOCK;
+			}
+		}
+
+		while (i < length) {
+			char c = line.charAt(i);
+			if (c == '/' && Lexers.startsWith(line, "//", i)) {
+				tokens.token(i, length, TokenType.COMMENT);
+				return INITIAL;
+			} else if (c == '/' && Lexers.startsWith(line, "/*", i)) {
+				i = comment(line, i, i + 2, tokens);
+				if (i < 0) {
+					return BLOCK_COMMENT;
+				}
+			} else if (c == '"' && Lexers.startsWith(line, "\"\"\"", i)) {
+				i = textBlock(line, i, i + 3, tokens);
+				if (i < 0) {
+					return TEXT_BLOCK;
+				}
+			} else if (c == '"' || c == '\'') {
+				int end = Lexers.skipQuoted(line, i + 1, String.valueOf(c), true);
+				end = end < 0 ? length : end;
+				tokens.token(i, end, TokenType.STRING);
+				i = end;
+			} else if (c == '@' && i + 1 < length && Character.isJavaIdentifierStart(line.charAt(i + 1))) {
+				int end = Lexers.skipName(line, i + 1);
+				tokens.token(i, end, TokenType.ANNOTATION);
+				i = end;
+			} else if (Character.isJavaIdentifierStart(c)) {
+				int end = Lexers.skipName(line, i);
+				word(line, i, end, tokens);
+				i = end;
+			} else if (Character.isDigit(c)
+					|| c == '.' && i + 1 < length && Character.isDigit(line.charAt(i + 1))) {
+				int end = Lexers.skipNumber(line, i);
+				tokens.token(i, end, TokenType.NUMBER);
+				i = end;
+			} else {
+				i++;
+			}
+		}
+		return INITIAL;
+	}
+
+	/**
+	 * Emits the token of the given word, if it is a keyword or a literal.
+	 *
+	 * @param line
+	 *            is the line.
+	 * @param start
+	 *            is the start of the word.
+	 * @param end
+	 *            is the end of the word.
+	 * @param tokens
+	 *            receives the token.
+	 */
+	private static void word(CharSequence line, int start, int end, Tokens tokens) {
+		if (end - start > MAX_KEYWORD_LENGTH || !Character.isLowerCase(line.charAt(start))) {
+			return;
+		}
+		String word = line.subSequence(start, end).toString();
+		if (KEYWORDS.contains(word)) {
+			tokens.token(start, end, TokenType.KEYWORD);
+		} else if (LITERALS.contains(word)) {
+			tokens.token(start, end, TokenType.LITERAL);
+		}
+	}
+
+	/**
+	 * Emits the token of a block comment.
+	 *
+	 * @param line
+	 *            is the line.
+	 * @param start
+	 *            is the start of the token.
+	 * @param from
+	 *            is the index the end of the comment is looked for from.
+	 * @param tokens
+	 *            receives the token.
+	 * @return the index after the comment, -1 if it does not end on the line.
+	 */
+	private static int comment(CharSequence line, int start, int from, Tokens tokens) {
+		int end = Lexers.indexOf(line, "*/", from);
+		tokens.token(start, end < 0 ? line.length() : end + 2, TokenType.COMMENT);
+		return end < 0 ? -1 : end + 2;
+	}
+
+	/**
+	 * Emits the token of a text block.
+	 *
+	 * @param line
+	 *            is the line.
+	 * @param start
+	 *            is the start of the token.
+	 * @param from
+	 *            is the index the end of the text block is looked for from.
+	 * @param tokens
+	 *            receives the token.
+	 * @return the index after the text block, -1 if it does not end on the
+	 *         line.
+	 */
+	private static int textBlock(CharSequence line, int start, int from, Tokens tokens) {
+		int end = Lexers.skipQuoted(line, from, "\"\"\"", true);
+		tokens.token(start, end < 0 ? line.length() : end, TokenType.STRING);
+		return end;
+	}
+}
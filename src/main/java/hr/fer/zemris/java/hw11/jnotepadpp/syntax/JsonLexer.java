@@ -0,0 +1,59 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.syntax;
+
+/**
+ * The {@link Lexer} of JSON. A string followed by a colon is the key of a
+ * member. No token of JSON spans lines, so every line starts in the
+ * {@link Lexer#INITIAL} state.
+ *
+ * @author Marin
+ *
+ */
+public class JsonLexer implements Lexer {
+
+	@Override
+	public int lex(CharSequence line, int state, Tokens tokens) {
+		int length = line.length();
+		int i = 0;
+		while (i < length) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				int end = Lexers.skipQuoted(line, i + 1, "\"", true);
+				end = end < 0 ? length : end;
+				tokens.token(i, end, isKey(line, end) ? TokenType.KEY : TokenType.STRING);
+				i = end;
+			} else if (c == '-' || Character.isDigit(c)) {
+				int end = Lexers.skipNumber(line, i);
+				tokens.token(i, end, TokenType.NUMBER);
+				i = end;
+			} else if (Character.isLetter(c)) {
+				int end = Lexers.skipName(line, i);
+				if (end - i == 4 && (Lexers.startsWith(line, "true", i) || Lexers.startsWith(line, "null", i))
+						|| end - i == 5 && Lexers.startsWith(line, "false", i)) {
+					tokens.token(i, end, TokenType.LITERAL);
+				}
+				i = end;
+			} else {
+				i++;
+			}
+		}
+		return INITIAL;
+	}
+
+	/**
+	 * Checks if the string ending at the given index is a key, followed by a
+	 * colon.
+	 *
+	 * @param line
+	 *            is the line.
+	 * @param end
+	 *            is the index after the string.
+	 * @return true if it is, false otherwise.
+	 */
+	private static boolean isKey(CharSequence line, int end) {
+		int i = end;
+		while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+			i++;
+		}
+		return i < line.length() && line.charAt(i) == ':';
+	}
+}
@@ -0,0 +1,108 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.syntax;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * A lexer of one language, splitting the text into tokens one line at a time.
+ * All a lexer knows of the lines before a line is its state at the start of
+ * the line, a number, like being inside a comment that is not closed yet. So
+ * a line can be lexed again without the lines before it, once their states
+ * are known, and an edit changes the states of the following lines only until
+ * the state of a line comes out the same as before. The first line starts in
+ * the {@link #INITIAL} state.
+ * <p>
+ * A lexer keeps nothing between the lines, so one lexer can lex any number of
+ * documents.
+ *
+ * @author Marin
+ *
+ */
+public interface Lexer {
+
+	/**
+	 * The state at the start of the document.
+	 */
+	int INITIAL = 0;
+
+	/**
+	 * The receiver of the tokens of a line.
+	 *
+	 * @author Marin
+	 *
+	 */
+	@FunctionalInterface
+	interface Tokens {
+
+		/**
+		 * Receives a token. The tokens are received in the order of the line,
+		 * and do not overlap.
+		 *
+		 * @param start
+		 *            is the start of the token in the line.
+		 * @param end
+		 *            is the end of the token in the line.
+		 * @param type
+		 *            is the type of the token.
+		 */
+		void token(int start, int end, TokenType type);
+	}
+
+	/**
+	 * The receiver ignoring the tokens, used when only the state at the end of
+	 * a line is needed.
+	 */
+	Tokens IGNORED = (start, end, type) -> {
+	};
+
+	/**
+	 * Lexes one line.
+	 *
+	 * @param line
+	 *            is the text of the line, without the line break.
+	 * @param state
+	 *            is the state at the start of the line.
+	 * @param tokens
+	 *            receives the tokens of the line.
+	 * @return the state at the start of the next line.
+	 */
+	int lex(CharSequence line, int state, Tokens tokens);
+
+	/**
+	 * Returns the lexer of the language of the given file, chosen by the
+	 * extension of its name.
+	 *
+	 * @param path
+	 *            is the given file, can be null.
+	 * @return the lexer, null if the language has none.
+	 */
+	static Lexer forFile(Path path) {
+		if (path == null || path.getFileName() == null) {
+			return null;
+		}
+		String name = path.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		if (dot < 0) {
+			return null;
+		}
+		switch (name.substring(dot + 1).toLowerCase(Locale.ROOT)) {
+		case "java":
+			return new JavaLexer();
+		case "json":
+			return new JsonLexer();
+		case "xml":
+		case "xsd":
+		case "xsl":
+		case "xslt":
+		case "svg":
+		case "pom":
+		case "fxml":
+		case "xhtml":
+			return new XmlLexer();
+		case "properties":
+			return new PropertiesLexer();
+		default:
+			return null;
+		}
+	}
+}
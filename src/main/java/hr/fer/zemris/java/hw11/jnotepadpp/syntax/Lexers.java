@@ -0,0 +1,160 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.syntax;
+
+/**
+ * The scanning methods the {@link Lexer}s share.
+ *
+ * @author Marin
+ *
+ */
+final class Lexers {
+
+	/**
+	 * The {@link Lexers} constructor, hidden since the class has only static
+	 * methods.
+	 */
+	private Lexers() {
+	}
+
+	/**
+	 * Finds the given string in the text.
+	 *
+	 * @param text
+	 *            is the searched text.
+	 * @param string
+	 *            is the given string.
+	 * @param from
+	 *            is the index the search starts at.
+	 * @return the index of the string, -1 if it is not found.
+	 */
+	static int indexOf(CharSequence text, String string, int from) {
+		int last = text.length() - string.length();
+		for (int i = Math.max(0, from); i <= last; ++i) {
+			if (startsWith(text, string, i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if the given string is in the text at the given index.
+	 *
+	 * @param text
+	 *            is the text.
+	 * @param string
+	 *            is the given string.
+	 * @param index
+	 *            is the given index.
+	 * @return true if it is, false otherwise.
+	 */
+	static boolean startsWith(CharSequence text, String string, int index) {
+		if (index < 0 || index + string.length() > text.length()) {
+			return false;
+		}
+		for (int i = 0; i < string.length(); ++i) {
+			if (text.charAt(index + i) != string.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the end of a quoted text. A backslash escapes the character after
+	 * it, if escaping is enabled.
+	 *
+	 * @param text
+	 *            is the text.
+	 * @param from
+	 *            is the index after the opening quote.
+	 * @param quote
+	 *            is the closing quote.
+	 * @param escapes
+	 *            true if a backslash escapes the next character.
+	 * @return the index after the closing quote, -1 if the text ends first.
+	 */
+	static int skipQuoted(CharSequence text, int from, String quote, boolean escapes) {
+		int length = text.length();
+		for (int i = from; i < length; ++i) {
+			char c = text.charAt(i);
+			if (escapes && c == '\\') {
+				i++;
+			} else if (c == quote.charAt(0) && startsWith(text, quote, i)) {
+				return i + quote.length();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the end of the name starting at the given index.
+	 *
+	 * @param text
+	 *            is the text.
+	 * @param from
+	 *            is the given index.
+	 * @return the index after the last character of the name.
+	 */
+	static int skipName(CharSequence text, int from) {
+		int i = from;
+		while (i < text.length() && isNamePart(text.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Finds the end of the number starting at the given index. The digits of
+	 * any base, the suffixes, the fraction and the exponent with its sign are
+	 * all part of the number.
+	 *
+	 * @param text
+	 *            is the text.
+	 * @param from
+	 *            is the given index.
+	 * @return the index after the last character of the number.
+	 */
+	static int skipNumber(CharSequence text, int from) {
+		int i = from;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			if (c == '+' || c == '-') {
+				char previous = i == from ? 'e' : text.charAt(i - 1);
+				if (previous != 'e' && previous != 'E' && previous != 'p' && previous != 'P') {
+					break;
+				}
+			} else if (c != '.' && c != '_' && !Character.isLetterOrDigit(c)) {
+				break;
+			}
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Counts the backslashes the text ends with.
+	 *
+	 * @param text
+	 *            is the text.
+	 * @return the number of backslashes.
+	 */
+	static int trailingBackslashes(CharSequence text) {
+		int count = 0;
+		for (int i = text.length() - 1; i >= 0 && text.charAt(i) == '\\'; --i) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Checks if the given character can be part of a name, in any of the
+	 * languages.
+	 *
+	 * @param c
+	 *            is the given character.
+	 * @return true if it can, false otherwise.
+	 */
+	static boolean isNamePart(char c) {
+		return Character.isJavaIdentifierPart(c) && !Character.isIdentifierIgnorable(c);
+	}
+}
@@ -0,0 +1,62 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.syntax;
+
+/**
+ * The {@link Lexer} of Java properties files. A line ending with an odd
+ * number of backslashes continues on the next line, which then holds no key.
+ *
+ * @author Marin
+ *
+ */
+public class PropertiesLexer implements Lexer {
+
+	/**
+	 * The state of a line continuing the line before.
+	 */
+	static final int CONTINUATION = 1;
+
+	@Override
+	public int lex(CharSequence line, int state, Tokens tokens) {
+		int next = Lexers.trailingBackslashes(line) % 2 == 1 ? CONTINUATION : INITIAL;
+		if (state == CONTINUATION) {
+			return next;
+		}
+
+		int length = line.length();
+		int i = 0;
+		while (i < length && isBlank(line.charAt(i))) {
+			i++;
+		}
+		if (i == length) {
+			return INITIAL;
+		}
+		if (line.charAt(i) == '#' || line.charAt(i) == '!') {
+			tokens.token(i, length, TokenType.COMMENT);
+			return INITIAL;
+		}
+
+		int start = i;
+		while (i < length) {
+			char c = line.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '=' || c == ':' || isBlank(c)) {
+				break;
+			}
+			i++;
+		}
+		tokens.token(start, Math.min(i, length), TokenType.KEY);
+		return next;
+	}
+
+	/**
+	 * Checks if the given character separates the key from the value, or
+	 * indents the line.
+	 *
+	 * @param c
+	 *            is the given character.
+	 * @return true if it does, false otherwise.
+	 */
+	private static boolean isBlank(char c) {
+		return c == ' ' || c == '\t' || c == '\f';
+	}
+}
@@ -0,0 +1,394 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.syntax;
+
+import java.util.Arrays;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+
+/**
+ * Keeps the {@link Lexer} state at the start of every line of a
+ * {@link Document}, so the tokens of any line can be found by lexing just that
+ * line. The states are stored in a primitive array with a gap at the last
+ * edited line, like the line starts of a line index, and are found lazily: a
+ * state is known for a prefix of the lines, which grows as far as the painted
+ * lines need it.
+ * <p>
+ * An edit forgets the states past the edited line, but keeps them in the
+ * array. The lines are then lexed again from the edited line until the newly
+ * found state of a line equals the one stored for it, as the lines past it
+ * then lex exactly as they did before, and their states are known again, up
+ * to the first one that was not known before the edit.
+ * So an edit costs as many lines as it changes the state of, and at most
+ * {@link #EAGER_LINES} of them right away; the rest are lexed when they are
+ * painted.
+ * <p>
+ * The highlighter is a {@link DocumentListener} of its document, added after
+ * the text component, so it is notified of an edit before the views of the
+ * component are.
+ *
+ * @author Marin
+ *
+ */
+public class SyntaxHighlighter implements DocumentListener {
+
+	/**
+	 * The property of the document holding its highlighter.
+	 */
+	public static final String PROPERTY = "syntaxHighlighter";
+	/**
+	 * The length from which a line is not lexed, and keeps the state of the
+	 * line before it.
+	 */
+	static final int MAX_LINE_LENGTH = 1024 * 1024;
+	/**
+	 * The largest number of lines lexed right away past an edit.
+	 */
+	private static final int EAGER_LINES = 1000;
+	/**
+	 * The capacity of the states array beyond the initial lines.
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The highlighted document.
+	 */
+	private final Document document;
+	/**
+	 * The lexer of the document.
+	 */
+	private final Lexer lexer;
+	/**
+	 * The segment the lines are read into.
+	 */
+	private final Segment segment = new Segment();
+	/**
+	 * The states at the line starts, with a gap between {@link #gapStart} and
+	 * {@link #gapEnd}.
+	 */
+	private int[] states;
+	/**
+	 * The index of the first empty entry.
+	 */
+	private int gapStart;
+	/**
+	 * The index of the first used entry after the gap.
+	 */
+	private int gapEnd;
+	/**
+	 * The number of lines from the start whose states are known.
+	 */
+	private int known;
+	/**
+	 * The first line of the run of the lines that were known before the last
+	 * edit. Every stored state in the run is the one lexed from the state
+	 * stored before it, so once a lexed state equals the stored one in the
+	 * run, all the states up to its end are known.
+	 */
+	private int runStart;
+	/**
+	 * The line after the run of the lines that were known before the last
+	 * edit.
+	 */
+	private int runEnd;
+	/**
+	 * The first line from which on every stored state past the known ones is
+	 * the one lexed from the state stored before it, so once a lexed state
+	 * equals the stored one from this line on, all the following are known.
+	 */
+	private int chained;
+	/**
+	 * The first line whose tokens the last edit changed past the edited lines.
+	 */
+	private int restyledStart;
+	/**
+	 * The last line whose tokens the last edit changed past the edited lines.
+	 */
+	private int restyledEnd;
+
+	/**
+	 * The {@link SyntaxHighlighter} constructor. Starts listening to the
+	 * changes of the document, and puts itself into its {@link #PROPERTY}.
+	 *
+	 * @param document
+	 *            is the highlighted document.
+	 * @param lexer
+	 *            is the lexer of the document.
+	 */
+	public SyntaxHighlighter(Document document, Lexer lexer) {
+		this.document = document;
+		this.lexer = lexer;
+		int lines = document.getDefaultRootElement().getElementCount();
+		states = new int[lines + INITIAL_CAPACITY];
+		states[0] = Lexer.INITIAL;
+		gapStart = lines;
+		gapEnd = states.length;
+		known = 1;
+		chained = lines;
+		document.putProperty(PROPERTY, this);
+		document.addDocumentListener(this);
+	}
+
+	/**
+	 * Returns the highlighter of the given document.
+	 *
+	 * @param document
+	 *            is the given document.
+	 * @return the highlighter, null if the document has none.
+	 */
+	public static SyntaxHighlighter of(Document document) {
+		Object property = document.getProperty(PROPERTY);
+		return property instanceof SyntaxHighlighter ? (SyntaxHighlighter) property : null;
+	}
+
+	/**
+	 * Stops listening to the document changes, and removes itself from the
+	 * document.
+	 */
+	public void dispose() {
+		document.removeDocumentListener(this);
+		if (document.getProperty(PROPERTY) == this) {
+			document.putProperty(PROPERTY, null);
+		}
+	}
+
+	/**
+	 * A getter for the lexer of the document.
+	 *
+	 * @return the lexer.
+	 */
+	public Lexer getLexer() {
+		return lexer;
+	}
+
+	/**
+	 * Lexes the given line, first lexing the lines before it whose states are
+	 * not known. Called with the document locked for reading at least.
+	 *
+	 * @param line
+	 *            is the zero based line index.
+	 * @param tokens
+	 *            receives the tokens of the line.
+	 */
+	public void tokens(int line, Lexer.Tokens tokens) {
+		while (known <= line) {
+			step();
+		}
+		lex(line, state(line), tokens);
+	}
+
+	/**
+	 * A getter for the first line whose tokens the last edit changed, past the
+	 * edited lines themselves.
+	 *
+	 * @return the line index.
+	 */
+	int getRestyledStart() {
+		return restyledStart;
+	}
+
+	/**
+	 * A getter for the last line whose tokens the last edit changed, past the
+	 * edited lines themselves.
+	 *
+	 * @return the line index, less than the start if there are none.
+	 */
+	int getRestyledEnd() {
+		return restyledEnd;
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		update(e);
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		update(e);
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	/**
+	 * Replaces the states of the edited lines, and lexes the lines from the
+	 * first edited one until the states converge, or for at most
+	 * {@link #EAGER_LINES} lines.
+	 *
+	 * @param e
+	 *            is the edit.
+	 */
+	private void update(DocumentEvent e) {
+		Element root = document.getDefaultRootElement();
+		DocumentEvent.ElementChange change = e.getChange(root);
+		int line;
+		int removed = 1;
+		int added = 1;
+		if (change == null) {
+			line = root.getElementIndex(e.getOffset());
+		} else {
+			line = change.getIndex();
+			removed = Math.max(1, change.getChildrenRemoved().length);
+			added = Math.max(1, change.getChildrenAdded().length);
+		}
+
+		moveGap(line + 1);
+		gapEnd += removed - 1;
+		for (int i = 1; i < added; ++i) {
+			addState(Lexer.INITIAL);
+		}
+		int delta = added - removed;
+		int next = line + added;
+		if (known > line) {
+			runStart = next;
+			runEnd = known >= line + removed ? known + delta : next;
+		} else if (runStart > line) {
+			runEnd = runEnd >= line + removed ? runEnd + delta : next;
+			runStart = runStart >= line + removed ? runStart + delta : next;
+		} else {
+			runEnd = Math.min(runEnd, line + 1);
+		}
+		if (chained > known && chained >= line + removed) {
+			chained += delta;
+		} else {
+			chained = next;
+		}
+		boolean eager = known > line;
+		known = Math.min(known, line + 1);
+
+		int count = getLineCount();
+		restyledStart = line + 1;
+		restyledEnd = count - 1;
+		if (!eager) {
+			return;
+		}
+		int limit = next + EAGER_LINES;
+		while (known < count && known <= limit) {
+			int converged = known;
+			if (step()) {
+				restyledEnd = converged - 1;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Finds the state of the first line whose state is not known, by lexing
+	 * the line before it.
+	 *
+	 * @return true if the state equals the stored one and the following
+	 *         states are known now, false otherwise.
+	 */
+	private boolean step() {
+		int line = known;
+		int state = lex(line - 1, state(line - 1), Lexer.IGNORED);
+		if (state(line) == state) {
+			if (line >= chained || line >= runStart && line < runEnd && runEnd > chained) {
+				known = getLineCount();
+				return true;
+			}
+			if (line >= runStart && line < runEnd) {
+				known = runEnd;
+				return true;
+			}
+		}
+		setState(line, state);
+		known++;
+		return false;
+	}
+
+	/**
+	 * Lexes the given line.
+	 *
+	 * @param line
+	 *            is the line index.
+	 * @param state
+	 *            is the state at the start of the line.
+	 * @param tokens
+	 *            receives the tokens of the line.
+	 * @return the state at the start of the next line.
+	 */
+	private int lex(int line, int state, Lexer.Tokens tokens) {
+		Element element = document.getDefaultRootElement().getElement(line);
+		int start = element.getStartOffset();
+		int length = element.getEndOffset() - 1 - start;
+		if (length > MAX_LINE_LENGTH) {
+			return state;
+		}
+		try {
+			document.getText(start, length, segment);
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+			return state;
+		}
+		return lexer.lex(segment, state, tokens);
+	}
+
+	/**
+	 * Returns the number of lines.
+	 *
+	 * @return the number of lines.
+	 */
+	private int getLineCount() {
+		return states.length - (gapEnd - gapStart);
+	}
+
+	/**
+	 * Returns the stored state of the given line.
+	 *
+	 * @param line
+	 *            is the line index.
+	 * @return the state.
+	 */
+	private int state(int line) {
+		return states[line < gapStart ? line : line + gapEnd - gapStart];
+	}
+
+	/**
+	 * Stores the state of the given line.
+	 *
+	 * @param line
+	 *            is the line index.
+	 * @param state
+	 *            is the state.
+	 */
+	private void setState(int line, int state) {
+		states[line < gapStart ? line : line + gapEnd - gapStart] = state;
+	}
+
+	/**
+	 * Moves the gap so it starts at the given line index.
+	 *
+	 * @param index
+	 *            is the line index.
+	 */
+	private void moveGap(int index) {
+		while (gapStart > index) {
+			states[--gapEnd] = states[--gapStart];
+		}
+		while (gapStart < index) {
+			states[gapStart++] = states[gapEnd++];
+		}
+	}
+
+	/**
+	 * Adds the given state at the start of the gap.
+	 *
+	 * @param state
+	 *            is the state.
+	 */
+	private void addState(int state) {
+		if (gapStart == gapEnd) {
+			int tail = states.length - gapEnd;
+			int[] grown = Arrays.copyOf(states, states.length * 2);
+			System.arraycopy(states, gapEnd, grown, grown.length - tail, tail);
+			gapEnd = grown.length - tail;
+			states = grown;
+		}
+		states[gapStart++] = state;
+	}
+}
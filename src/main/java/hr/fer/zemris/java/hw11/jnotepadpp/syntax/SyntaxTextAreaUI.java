@@ -0,0 +1,27 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.syntax;
+
+import javax.swing.JTextArea;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.Element;
+import javax.swing.text.View;
+
+/**
+ * The UI of a text area showing its text through a {@link SyntaxView}, so the
+ * document is painted with the tokens of its {@link SyntaxHighlighter}, if it
+ * has one. A text area wrapping its lines, and a document holding
+ * bidirectional text, are shown as by the basic UI.
+ *
+ * @author Marin
+ *
+ */
+public class SyntaxTextAreaUI extends BasicTextAreaUI {
+
+	@Override
+	public View create(Element element) {
+		if (getComponent() instanceof JTextArea && ((JTextArea) getComponent()).getLineWrap()
+				|| Boolean.TRUE.equals(element.getDocument().getProperty("i18n"))) {
+			return super.create(element);
+		}
+		return new SyntaxView(element);
+	}
+}
@@ -0,0 +1,152 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.syntax;
+
+import java.awt.Color;
+import java.awt.Container;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.util.Arrays;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainView;
+import javax.swing.text.Segment;
+import javax.swing.text.Utilities;
+import javax.swing.text.ViewFactory;
+
+/**
+ * A {@link PlainView} painting the tokens of the {@link SyntaxHighlighter} of
+ * its document in their colors. The tokens are found only for the painted
+ * lines, while they are painted, and are not kept. A document without a
+ * highlighter is painted as plain text.
+ * <p>
+ * After an edit the view repaints the lines whose tokens the edit changed,
+ * besides the edited ones.
+ *
+ * @author Marin
+ *
+ */
+public class SyntaxView extends PlainView {
+
+	/**
+	 * The token types, by their ordinals.
+	 */
+	private static final TokenType[] TYPES = TokenType.values();
+
+	/**
+	 * The segment the painted text is read into.
+	 */
+	private final Segment segment = new Segment();
+	/**
+	 * The tokens of the painted line, as triples of the start, the end and the
+	 * type ordinal.
+	 */
+	private int[] tokens = new int[48];
+	/**
+	 * The number of used entries of the tokens array.
+	 */
+	private int size;
+	/**
+	 * The receiver collecting the tokens of the painted line.
+	 */
+	private final Lexer.Tokens collector = this::add;
+
+	/**
+	 * The {@link SyntaxView} constructor.
+	 *
+	 * @param element
+	 *            is the root element of the document.
+	 */
+	public SyntaxView(Element element) {
+		super(element);
+	}
+
+	@Override
+	protected float drawUnselectedText(Graphics2D g, float x, float y, int p0, int p1)
+			throws BadLocationException {
+		SyntaxHighlighter highlighter = SyntaxHighlighter.of(getDocument());
+		Container host = getContainer();
+		if (highlighter == null || !host.isEnabled()) {
+			return super.drawUnselectedText(g, x, y, p0, p1);
+		}
+
+		Element root = getElement();
+		int line = root.getElementIndex(p0);
+		int lineStart = root.getElement(line).getStartOffset();
+		size = 0;
+		highlighter.tokens(line, collector);
+
+		Color plain = host.getForeground();
+		float position = x;
+		int offset = p0;
+		for (int i = 0; i < size && offset < p1; i += 3) {
+			int start = Math.max(offset, lineStart + tokens[i]);
+			int end = Math.min(p1, lineStart + tokens[i + 1]);
+			if (end <= start) {
+				continue;
+			}
+			if (start > offset) {
+				position = draw(g, position, y, offset, start, plain);
+			}
+			position = draw(g, position, y, start, end, TYPES[tokens[i + 2]].getColor());
+			offset = end;
+		}
+		if (offset < p1) {
+			position = draw(g, position, y, offset, p1, plain);
+		}
+		return position;
+	}
+
+	@Override
+	protected void updateDamage(DocumentEvent changes, Shape a, ViewFactory f) {
+		super.updateDamage(changes, a, f);
+		SyntaxHighlighter highlighter = SyntaxHighlighter.of(getDocument());
+		if (highlighter != null && highlighter.getRestyledEnd() >= highlighter.getRestyledStart()) {
+			damageLineRange(highlighter.getRestyledStart(), highlighter.getRestyledEnd(), a, getContainer());
+		}
+	}
+
+	/**
+	 * Draws the given range of the document in the given color.
+	 *
+	 * @param g
+	 *            is the graphics context.
+	 * @param x
+	 *            is the x coordinate of the start of the range.
+	 * @param y
+	 *            is the y coordinate of the baseline.
+	 * @param p0
+	 *            is the start of the range.
+	 * @param p1
+	 *            is the end of the range.
+	 * @param color
+	 *            is the given color.
+	 * @return the x coordinate of the end of the range.
+	 * @throws BadLocationException
+	 *             if the range is not in the document.
+	 */
+	private float draw(Graphics2D g, float x, float y, int p0, int p1, Color color) throws BadLocationException {
+		getDocument().getText(p0, p1 - p0, segment);
+		g.setColor(color);
+		return Utilities.drawTabbedText(segment, x, y, g, this, p0);
+	}
+
+	/**
+	 * Adds a token of the painted line.
+	 *
+	 * @param start
+	 *            is the start of the token in the line.
+	 * @param end
+	 *            is the end of the token in the line.
+	 * @param type
+	 *            is the type of the token.
+	 */
+	private void add(int start, int end, TokenType type) {
+		if (size + 3 > tokens.length) {
+			tokens = Arrays.copyOf(tokens, tokens.length * 2);
+		}
+		tokens[size++] = start;
+		tokens[size++] = end;
+		tokens[size++] = type.ordinal();
+	}
+}
@@ -0,0 +1,78 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.syntax;
+
+import java.awt.Color;
+
+/**
+ * The kinds of tokens a {@link Lexer} recognizes, each with the color it is
+ * painted in. The text that is not a token is painted in the foreground color
+ * of the text area.
+ *
+ * @author Marin
+ *
+ */
+public enum TokenType {
+	/**
+	 * A comment.
+	 */
+	COMMENT(new Color(0x8C8C8C)),
+	/**
+	 * A keyword of the language.
+	 */
+	KEYWORD(new Color(0x0033B3)),
+	/**
+	 * A literal value with a name, like true, false or null.
+	 */
+	LITERAL(new Color(0x0033B3)),
+	/**
+	 * A number.
+	 */
+	NUMBER(new Color(0x1750EB)),
+	/**
+	 * A string or a character literal.
+	 */
+	STRING(new Color(0x067D17)),
+	/**
+	 * An annotation.
+	 */
+	ANNOTATION(new Color(0x9E880D)),
+	/**
+	 * The key of a property or of a member of an object.
+	 */
+	KEY(new Color(0x871094)),
+	/**
+	 * A markup tag, with its brackets.
+	 */
+	TAG(new Color(0x0033B3)),
+	/**
+	 * The name of an attribute of a markup tag.
+	 */
+	ATTRIBUTE(new Color(0x871094)),
+	/**
+	 * A character or an entity reference.
+	 */
+	ENTITY(new Color(0x1750EB));
+
+	/**
+	 * The color of the tokens.
+	 */
+	private final Color color;
+
+	/**
+	 * The {@link TokenType} constructor.
+	 *
+	 * @param color
+	 *            is the color of the tokens.
+	 */
+	TokenType(Color color) {
+		this.color = color;
+	}
+
+	/**
+	 * A getter for the color of the tokens.
+	 *
+	 * @return the color.
+	 */
+	public Color getColor() {
+		return color;
+	}
+}
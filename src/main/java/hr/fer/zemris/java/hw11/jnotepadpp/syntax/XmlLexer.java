@@ -0,0 +1,182 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.syntax;
+
+/**
+ * The {@link Lexer} of XML. A comment, a CDATA section, a tag and the value of
+ * an attribute can span lines, so a line can start inside any of them.
+ * Declarations and processing instructions are lexed as tags.
+ *
+ * @author Marin
+ *
+ */
+public class XmlLexer implements Lexer {
+
+	/**
+	 * The state of a line starting inside a comment.
+	 */
+	static final int COMMENT = 1;
+	/**
+	 * The state of a line starting inside a CDATA section.
+	 */
+	static final int CDATA = 2;
+	/**
+	 * The state of a line starting inside a tag, past its name.
+	 */
+	static final int TAG = 3;
+	/**
+	 * The state of a line starting inside an attribute value in double
+	 * quotes.
+	 */
+	static final int DOUBLE_QUOTED = 4;
+	/**
+	 * The state of a line starting inside an attribute value in single
+	 * quotes.
+	 */
+	static final int SINGLE_QUOTED = 5;
+
+	@Override
+	public int lex(CharSequence line, int state, Tokens tokens) {
+		int length = line.length();
+		int i = 0;
+		int current = state;
+		while (i < length) {
+			char c = line.charAt(i);
+			if (current == COMMENT || current == CDATA) {
+				i = closed(line, i, i, current == COMMENT ? "-->" : "]]>",
+						current == COMMENT ? TokenType.COMMENT : TokenType.STRING, tokens);
+				if (i < 0) {
+					return current;
+				}
+				current = INITIAL;
+			} else if (current == DOUBLE_QUOTED || current == SINGLE_QUOTED) {
+				i = closed(line, i, i, current == DOUBLE_QUOTED ? "\"" : "'", TokenType.STRING, tokens);
+				if (i < 0) {
+					return current;
+				}
+				current = TAG;
+			} else if (current == TAG) {
+				if (c == '>') {
+					tokens.token(i, i + 1, TokenType.TAG);
+					i++;
+					current = INITIAL;
+				} else if ((c == '/' || c == '?') && Lexers.startsWith(line, ">", i + 1)) {
+					tokens.token(i, i + 2, TokenType.TAG);
+					i += 2;
+					current = INITIAL;
+				} else if (c == '"' || c == '\'') {
+					i = closed(line, i, i + 1, String.valueOf(c), TokenType.STRING, tokens);
+					if (i < 0) {
+						return c == '"' ? DOUBLE_QUOTED : SINGLE_QUOTED;
+					}
+				} else if (isNamePart(c)) {
+					int end = skipName(line, i);
+					tokens.token(i, end, TokenType.ATTRIBUTE);
+					i = end;
+				} else {
+					i++;
+				}
+			} else if (c == '&') {
+				i = entity(line, i, tokens);
+			} else if (c != '<') {
+				i++;
+			} else if (Lexers.startsWith(line, "<!--", i)) {
+				i = closed(line, i, i + 4, "-->", TokenType.COMMENT, tokens);
+				if (i < 0) {
+					return COMMENT;
+				}
+			} else if (Lexers.startsWith(line, "<![CDATA[", i)) {
+				i = closed(line, i, i + 9, "]]>", TokenType.STRING, tokens);
+				if (i < 0) {
+					return CDATA;
+				}
+			} else {
+				int end = i + 1;
+				if (end < length && (line.charAt(end) == '/' || line.charAt(end) == '?' || line.charAt(end) == '!')) {
+					end++;
+				}
+				end = skipName(line, end);
+				tokens.token(i, end, TokenType.TAG);
+				i = end;
+				current = TAG;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Emits the token of a character or an entity reference, if there is one
+	 * at the given index.
+	 *
+	 * @param line
+	 *            is the line.
+	 * @param from
+	 *            is the index of the ampersand.
+	 * @param tokens
+	 *            receives the token.
+	 * @return the index after the reference, or after the ampersand if there
+	 *         is none.
+	 */
+	private static int entity(CharSequence line, int from, Tokens tokens) {
+		int end = from + 1;
+		while (end < line.length() && (isNamePart(line.charAt(end)) || line.charAt(end) == '#')) {
+			end++;
+		}
+		if (end == from + 1 || end == line.length() || line.charAt(end) != ';') {
+			return from + 1;
+		}
+		tokens.token(from, end + 1, TokenType.ENTITY);
+		return end + 1;
+	}
+
+	/**
+	 * Emits the token of a construct ending with the given string.
+	 *
+	 * @param line
+	 *            is the line.
+	 * @param start
+	 *            is the start of the token.
+	 * @param from
+	 *            is the index the end is looked for from.
+	 * @param close
+	 *            is the string ending the construct.
+	 * @param type
+	 *            is the type of the token.
+	 * @param tokens
+	 *            receives the token.
+	 * @return the index after the construct, -1 if it does not end on the
+	 *         line.
+	 */
+	private static int closed(CharSequence line, int start, int from, String close, TokenType type,
+			Tokens tokens) {
+		int end = Lexers.skipQuoted(line, from, close, false);
+		tokens.token(start, end < 0 ? line.length() : end, type);
+		return end;
+	}
+
+	/**
+	 * Finds the end of the name starting at the given index.
+	 *
+	 * @param line
+	 *            is the line.
+	 * @param from
+	 *            is the given index.
+	 * @return the index after the last character of the name.
+	 */
+	private static int skipName(CharSequence line, int from) {
+		int i = from;
+		while (i < line.length() && isNamePart(line.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Checks if the given character can be part of a name.
+	 *
+	 * @param c
+	 *            is the given character.
+	 * @return true if it can, false otherwise.
+	 */
+	private static boolean isNamePart(char c) {
+		return Lexers.isNamePart(c) || c == '-' || c == '.' || c == ':';
+	}
+}
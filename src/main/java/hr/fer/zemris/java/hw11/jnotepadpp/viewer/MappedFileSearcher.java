@@ -0,0 +1,246 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.viewer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TrigramIndex;
+
+/**
+ * Finds the matches of a {@link TextSearcher} in a file of any size, and
+ * builds the {@link TrigramIndex} that lets it skip most of the file. The file
+ * is read through a {@link MappedFileView} of its own, so it can be searched
+ * on a background thread while it is viewed, and is decoded in the encoding
+ * detected by the view one block of the index at a time. The offsets of the index and of the found
+ * matches are byte offsets in the file, the latter found from the offsets of
+ * the characters recorded while decoding.
+ * <p>
+ * Without an index, or for a regular expression, every block is searched.
+ * A match is found only if it ends less than {@link #OVERLAP} bytes past the
+ * block it starts in, which holds for every literal query.
+ *
+ * @author Marin
+ *
+ */
+public class MappedFileSearcher {
+
+	/**
+	 * The smallest size of a block of the index.
+	 */
+	public static final int MIN_BLOCK_SIZE = 4 * 1024 * 1024;
+	/**
+	 * The largest number of blocks of the index, which bounds its size.
+	 */
+	private static final int MAX_BLOCKS = 1024;
+	/**
+	 * The number of bytes past its block a match can reach.
+	 */
+	private static final int OVERLAP = 64 * 1024;
+	/**
+	 * The largest number of bytes of a character encoded as UTF-8, not
+	 * counting the surrogate pairs, which take two bytes per character.
+	 */
+	private static final int MAX_CHARACTER_BYTES = 3;
+	/**
+	 * The number of bytes past a block decoded to complete the trigrams at its
+	 * end, which can start in the last character of the block.
+	 */
+	private static final int TRIGRAM_BYTES = 3 * MAX_CHARACTER_BYTES;
+
+	/**
+	 * The {@link MappedFileSearcher} constructor, hidden since the searcher
+	 * has only static methods.
+	 */
+	private MappedFileSearcher() {
+	}
+
+	/**
+	 * Builds the index of the given file.
+	 *
+	 * @param path
+	 *            is the given file.
+	 * @param cancelled
+	 *            is checked before every block, the index is not built once it
+	 *            returns true.
+	 * @return the index, null if the building was cancelled.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	public static TrigramIndex index(Path path, BooleanSupplier cancelled) throws IOException {
+		try (MappedFileView view = new MappedFileView(path)) {
+			long size = view.size();
+			int blockSize = (int) Math.max(MIN_BLOCK_SIZE, (size + MAX_BLOCKS - 1) / MAX_BLOCKS);
+			TrigramIndex index = new TrigramIndex(size, blockSize);
+			for (int block = 0; block < index.getBlockCount(); ++block) {
+				if (cancelled.getAsBoolean()) {
+					return null;
+				}
+				long start = align(view, index.getBlockStart(block));
+				long end = Math.min(size, index.getBlockStart(block + 1) + TRIGRAM_BYTES);
+				if (end > start) {
+					String text = view.decode(start, (int) (end - start));
+					index.add(block, text, 0, text.length());
+				}
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Finds the first match starting at or after the given offset, or the last
+	 * match ending at or before it.
+	 *
+	 * @param path
+	 *            is the searched file.
+	 * @param index
+	 *            is the index of the file, null if it has none.
+	 * @param searcher
+	 *            is the searcher.
+	 * @param offset
+	 *            is the given offset.
+	 * @param forward
+	 *            true for the first match after the offset, false for the last
+	 *            one before it.
+	 * @param cancelled
+	 *            is checked before every block, nothing is found once it
+	 *            returns true.
+	 * @return the start and the end offset of the match, null if there is
+	 *         none.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	public static long[] find(Path path, TrigramIndex index, TextSearcher searcher, long offset, boolean forward,
+			BooleanSupplier cancelled) throws IOException {
+		try (MappedFileView view = new MappedFileView(path)) {
+			long size = view.size();
+			TrigramIndex blocks = index != null && index.length() == size ? index
+					: new TrigramIndex(size, MIN_BLOCK_SIZE);
+			int[] buckets = blocks == index && !searcher.getOptions().contains(TextSearcher.Option.REGEX)
+					? TrigramIndex.buckets(searcher.getQuery())
+					: null;
+			int span = MAX_CHARACTER_BYTES * searcher.getQuery().length();
+
+			int count = blocks.getBlockCount();
+			int first = blocks.blockOf(forward ? offset : Math.max(0, offset - 1));
+			for (int block = first; block >= 0 && block < count; block += forward ? 1 : -1) {
+				if (cancelled.getAsBoolean()) {
+					return null;
+				}
+				if (buckets != null && !blocks.isCandidate(block, buckets, span)) {
+					continue;
+				}
+				long[] match = findInBlock(view, blocks, block, searcher, span, offset, forward, cancelled);
+				if (match != null) {
+					return match;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Finds the first match starting in the given block at or after the given
+	 * offset, or the last one starting in it and ending at or before it.
+	 *
+	 * @param view
+	 *            is the view of the file.
+	 * @param blocks
+	 *            is the index splitting the file into blocks.
+	 * @param block
+	 *            is the index of the block.
+	 * @param searcher
+	 *            is the searcher.
+	 * @param span
+	 *            is the largest number of bytes of a literal match.
+	 * @param offset
+	 *            is the given offset.
+	 * @param forward
+	 *            true for the first match, false for the last one.
+	 * @param cancelled
+	 *            is checked between the chunks of the block.
+	 * @return the start and the end offset of the match, null if there is
+	 *         none.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	private static long[] findInBlock(MappedFileView view, TrigramIndex blocks, int block, TextSearcher searcher,
+			int span, long offset, boolean forward, BooleanSupplier cancelled) throws IOException {
+		long size = view.size();
+		long start = align(view, blocks.getBlockStart(block));
+		long end = Math.max(start, align(view, blocks.getBlockStart(block + 1)));
+		long reach = align(view, Math.min(size, end + Math.max(OVERLAP, span)));
+		int[] offsets = new int[(int) (reach - start) + 1];
+		String text = view.decode(start, (int) (reach - start), offsets);
+		int head = headLength(offsets, text.length(), (int) (end - start));
+
+		long[][] found = new long[1][];
+		boolean[] stopped = { false };
+		searcher.findAll(text, batch -> {
+			for (TextSearcher.Match match : batch) {
+				if (match.getStart() >= head) {
+					stopped[0] = true;
+					return;
+				}
+				long matchStart = start + offsets[match.getStart()];
+				long matchEnd = start + offsets[match.getEnd()];
+				if (forward ? matchStart >= offset : matchEnd > offset) {
+					if (forward) {
+						found[0] = new long[] { matchStart, matchEnd };
+					}
+					stopped[0] = true;
+					return;
+				}
+				if (!forward) {
+					found[0] = new long[] { matchStart, matchEnd };
+				}
+			}
+		}, () -> stopped[0] || cancelled.getAsBoolean());
+		return found[0];
+	}
+
+	/**
+	 * Moves the given offset forward to the start of a character, past the
+	 * continuation bytes of the character it is in.
+	 *
+	 * @param view
+	 *            is the view of the file.
+	 * @param offset
+	 *            is the given offset.
+	 * @return the start of the character.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	private static long align(MappedFileView view, long offset) throws IOException {
+		long aligned = offset;
+		while (aligned < view.size() && aligned < offset + MAX_CHARACTER_BYTES
+				&& (view.byteAt(aligned) & 0xC0) == 0x80) {
+			aligned++;
+		}
+		return aligned;
+	}
+
+	/**
+	 * Finds the number of the decoded characters starting before the given
+	 * offset.
+	 *
+	 * @param offsets
+	 *            are the offsets of the decoded characters.
+	 * @param length
+	 *            is the number of the decoded characters.
+	 * @param offset
+	 *            is the given offset.
+	 * @return the number of the characters.
+	 */
+	private static int headLength(int[] offsets, int length, int offset) {
+		int index = Arrays.binarySearch(offsets, 0, length + 1, offset);
+		if (index < 0) {
+			return -index - 1;
+		}
+		while (index > 0 && offsets[index - 1] == offset) {
+			index--;
+		}
+		return index;
+	}
+}
@@ -0,0 +1,470 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.viewer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.io.CharsetDetector;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.TextEncoding;
+
+/**
+ * A read-only view of a file of any size. The file is memory mapped in fixed
+ * size windows, only when a window is needed, and only a few most recently
+ * used windows are kept mapped. Text is decoded only for the requested ranges,
+ * so the file is never loaded to the heap as a whole.
+ * <p>
+ * The encoding of the file is detected from its head by the
+ * {@link CharsetDetector}. A file detected as ISO-8859-1 is decoded one byte
+ * per character, and any other file as UTF-8, without its byte order mark,
+ * replacing every malformed sequence with one replacement character. Lines
+ * are found by scanning the bytes for line breaks, so a UTF-16 file is
+ * decoded as UTF-8 as well. The byte offset of every decoded character can be
+ * recorded while decoding, so the offsets in the text are mapped back to the
+ * file exactly. A file changed by another program is mapped again once
+ * {@link #update()} notices its new size, and a file truncated under a mapped
+ * window is reported as an {@link IOException} instead of crashing.
+ *
+ * @author Marin
+ *
+ */
+public class MappedFileView implements Closeable {
+
+	/**
+	 * The size of one mapped window.
+	 */
+	private static final long WINDOW_SIZE = 32L * 1024 * 1024;
+	/**
+	 * The maximum number of windows mapped at once.
+	 */
+	private static final int MAX_WINDOWS = 4;
+	/**
+	 * The maximum number of bytes searched when looking for a line start. Lines
+	 * longer than this are broken.
+	 */
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+	/**
+	 * The character replacing a malformed sequence.
+	 */
+	private static final char REPLACEMENT = '\uFFFD';
+
+	/**
+	 * The number of bytes of the byte order mark of UTF-8.
+	 */
+	private static final int UTF_8_BOM_LENGTH = 3;
+
+	/**
+	 * The channel of the viewed file.
+	 */
+	private FileChannel channel;
+	/**
+	 * The encoding the file is decoded with.
+	 */
+	private TextEncoding encoding;
+	/**
+	 * The size of the file, taken when the view is opened and when it is
+	 * updated.
+	 */
+	private long size;
+	/**
+	 * The mapped windows, by window index, in the least recently used order.
+	 */
+	private Map<Long, MappedByteBuffer> windows;
+	/**
+	 * The index of the most recently used window.
+	 */
+	private long lastIndex = -1;
+	/**
+	 * The most recently used window.
+	 */
+	private MappedByteBuffer lastWindow;
+
+	/**
+	 * The {@link MappedFileView} constructor. Opens the given file and detects
+	 * its encoding.
+	 *
+	 * @param path
+	 *            is the path of the file to view.
+	 * @throws IOException
+	 *             if the file can not be opened.
+	 */
+	public MappedFileView(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		size = channel.size();
+		windows = new LinkedHashMap<Long, MappedByteBuffer>(MAX_WINDOWS, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+				return size() > MAX_WINDOWS;
+			}
+		};
+		encoding = size == 0 ? TextEncoding.UTF_8 : detect(window(0).duplicate());
+	}
+
+	/**
+	 * A getter for the encoding the file is decoded with.
+	 *
+	 * @return the encoding, ISO-8859-1 or UTF-8.
+	 */
+	public TextEncoding getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * A getter for the size of the viewed file.
+	 *
+	 * @return the size in bytes.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Takes the size of the file again, and if it changed, unmaps the windows
+	 * so they are mapped again with the new size.
+	 *
+	 * @return true if the size changed, false otherwise.
+	 * @throws IOException
+	 *             if the size can not be taken.
+	 */
+	public boolean update() throws IOException {
+		long current = channel.size();
+		if (current == size) {
+			return false;
+		}
+		size = current;
+		windows.clear();
+		lastIndex = -1;
+		lastWindow = null;
+		return true;
+	}
+
+	/**
+	 * Reads the byte at the given offset.
+	 *
+	 * @param offset
+	 *            is the given offset.
+	 * @return the read byte.
+	 * @throws IOException
+	 *             if the window containing the offset can not be mapped.
+	 */
+	public byte byteAt(long offset) throws IOException {
+		try {
+			return window(offset / WINDOW_SIZE).get((int) (offset % WINDOW_SIZE));
+		} catch (InternalError e) {
+			throw truncated(e);
+		}
+	}
+
+	/**
+	 * Finds the start of the line containing the given offset.
+	 *
+	 * @param offset
+	 *            is the given offset.
+	 * @return the line start offset.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	public long lineStart(long offset) throws IOException {
+		long limit = Math.max(0, offset - MAX_LINE_LENGTH);
+		for (long i = Math.min(offset, size) - 1; i >= limit; --i) {
+			if (byteAt(i) == '\n') {
+				return i + 1;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * Finds the start of the line following the line that starts at the given
+	 * offset.
+	 *
+	 * @param offset
+	 *            is the given line start.
+	 * @return the start of the next line, or the size of the file if there is
+	 *         no next line.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	public long nextLineStart(long offset) throws IOException {
+		long limit = Math.min(size, offset + MAX_LINE_LENGTH);
+		for (long i = offset; i < limit; ++i) {
+			if (byteAt(i) == '\n') {
+				return i + 1;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * Finds the start of the line preceding the line that starts at the given
+	 * offset.
+	 *
+	 * @param offset
+	 *            is the given line start.
+	 * @return the start of the previous line, or 0 if there is no previous line.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	public long previousLineStart(long offset) throws IOException {
+		if (offset == 0) {
+			return 0;
+		}
+		return lineStart(offset - 1);
+	}
+
+	/**
+	 * Finds the end of the given number of lines, starting from the given
+	 * line start.
+	 *
+	 * @param start
+	 *            is the given line start.
+	 * @param lines
+	 *            is the number of lines.
+	 * @return the offset of the end of the last line, before its line break.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	public long linesEnd(long start, int lines) throws IOException {
+		long end = start;
+		for (int i = 0; i < lines && end < size; ++i) {
+			end = nextLineStart(end);
+		}
+		if (end > start && byteAt(end - 1) == '\n') {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * Decodes the given number of lines, starting from the given line start.
+	 *
+	 * @param start
+	 *            is the given line start.
+	 * @param lines
+	 *            is the number of lines to decode.
+	 * @return the decoded text, without the trailing line break.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	public String readLines(long start, int lines) throws IOException {
+		return decode(start, (int) (linesEnd(start, lines) - start));
+	}
+
+	/**
+	 * Decodes the given range of the file.
+	 *
+	 * @param start
+	 *            is the start of the range.
+	 * @param length
+	 *            is the length of the range.
+	 * @return the decoded text.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	public String decode(long start, int length) throws IOException {
+		return decode(start, length, null);
+	}
+
+	/**
+	 * Decodes the given range of the file, recording the offset of every
+	 * decoded character in the range. A character never takes less than a
+	 * byte, so the offsets fit an array one longer than the range.
+	 *
+	 * @param start
+	 *            is the start of the range.
+	 * @param length
+	 *            is the length of the range.
+	 * @param offsets
+	 *            receives the offset in the range of every decoded character,
+	 *            and the length of the range after the last one, null if the
+	 *            offsets are not needed.
+	 * @return the decoded text.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	public String decode(long start, int length, int[] offsets) throws IOException {
+		byte[] bytes = new byte[length];
+		int read = 0;
+		try {
+			while (read < length) {
+				long offset = start + read;
+				ByteBuffer window = window(offset / WINDOW_SIZE).duplicate();
+				window.position((int) (offset % WINDOW_SIZE));
+				int count = Math.min(length - read, window.remaining());
+				window.get(bytes, read, count);
+				read += count;
+			}
+		} catch (InternalError e) {
+			throw truncated(e);
+		}
+
+		char[] chars = new char[length];
+		int count = 0;
+		if (!encoding.getCharset().equals(StandardCharsets.UTF_8)) {
+			for (; count < length; ++count) {
+				if (offsets != null) {
+					offsets[count] = count;
+				}
+				chars[count] = (char) (bytes[count] & 0xFF);
+			}
+			if (offsets != null) {
+				offsets[count] = length;
+			}
+			return new String(chars, 0, count);
+		}
+
+		int bom = encoding.hasByteOrderMark() ? UTF_8_BOM_LENGTH : 0;
+		for (int i = (int) Math.min(length, Math.max(0, bom - start)); i < length;) {
+			int sequence = sequenceLength(bytes, i, length);
+			int c;
+			if (sequence < 0) {
+				sequence = -sequence;
+				c = REPLACEMENT;
+			} else if (sequence == 1) {
+				c = bytes[i];
+			} else {
+				c = bytes[i] & (0xFF >> (sequence + 1));
+				for (int j = 1; j < sequence; ++j) {
+					c = c << 6 | bytes[i + j] & 0x3F;
+				}
+			}
+			if (offsets != null) {
+				offsets[count] = i;
+			}
+			if (Character.isBmpCodePoint(c)) {
+				chars[count++] = (char) c;
+			} else {
+				if (offsets != null) {
+					offsets[count + 1] = i;
+				}
+				chars[count++] = Character.highSurrogate(c);
+				chars[count++] = Character.lowSurrogate(c);
+			}
+			i += sequence;
+		}
+		if (offsets != null) {
+			offsets[count] = length;
+		}
+		return new String(chars, 0, count);
+	}
+
+	/**
+	 * Detects the encoding of the file from its head, falling back to UTF-8
+	 * for the encodings whose line breaks are not single bytes.
+	 *
+	 * @param head
+	 *            are the first bytes of the file.
+	 * @return the encoding, ISO-8859-1 or UTF-8.
+	 */
+	private static TextEncoding detect(ByteBuffer head) {
+		TextEncoding detected = CharsetDetector.detect(head);
+		if (detected.getCharset().equals(StandardCharsets.ISO_8859_1)
+				|| detected.getCharset().equals(StandardCharsets.UTF_8)) {
+			return detected;
+		}
+		return TextEncoding.UTF_8;
+	}
+
+	/**
+	 * Finds the length of the UTF-8 sequence starting at the given index. A
+	 * malformed sequence is as long as its longest prefix that is a prefix of
+	 * a well formed one, but at least one byte.
+	 *
+	 * @param bytes
+	 *            are the decoded bytes.
+	 * @param from
+	 *            is the given index.
+	 * @param end
+	 *            is the index after the last decoded byte.
+	 * @return the length of a well formed sequence, or the negated length of
+	 *         a malformed one.
+	 */
+	static int sequenceLength(byte[] bytes, int from, int end) {
+		int lead = bytes[from] & 0xFF;
+		if (lead < 0x80) {
+			return 1;
+		}
+		int trailing;
+		int min = 0x80;
+		int max = 0xBF;
+		if (lead >= 0xC2 && lead <= 0xDF) {
+			trailing = 1;
+		} else if (lead >= 0xE0 && lead <= 0xEF) {
+			trailing = 2;
+			min = lead == 0xE0 ? 0xA0 : min;
+			max = lead == 0xED ? 0x9F : max;
+		} else if (lead >= 0xF0 && lead <= 0xF4) {
+			trailing = 3;
+			min = lead == 0xF0 ? 0x90 : min;
+			max = lead == 0xF4 ? 0x8F : max;
+		} else {
+			return -1;
+		}
+
+		for (int i = 1; i <= trailing; ++i) {
+			int b = from + i < end ? bytes[from + i] & 0xFF : -1;
+			if (b < (i == 1 ? min : 0x80) || b > (i == 1 ? max : 0xBF)) {
+				return -i;
+			}
+		}
+		return trailing + 1;
+	}
+
+	/**
+	 * Returns the window with the given index, mapping it if needed.
+	 *
+	 * @param index
+	 *            is the window index.
+	 * @return the mapped window.
+	 * @throws IOException
+	 *             if the window can not be mapped.
+	 */
+	private MappedByteBuffer window(long index) throws IOException {
+		if (index == lastIndex) {
+			return lastWindow;
+		}
+
+		MappedByteBuffer window = windows.get(index);
+		if (window == null) {
+			long position = index * WINDOW_SIZE;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+			windows.put(index, window);
+		}
+		lastIndex = index;
+		lastWindow = window;
+		return window;
+	}
+
+	/**
+	 * Creates the exception reporting a fault while reading a mapped window,
+	 * which happens when the file is truncated under it. The size of the file
+	 * is taken again, so the following reads see the truncated file.
+	 *
+	 * @param fault
+	 *            is the error thrown by the fault.
+	 * @return the exception.
+	 */
+	private IOException truncated(InternalError fault) {
+		try {
+			update();
+		} catch (IOException ignorable) {
+		}
+		return new IOException("The viewed file was truncated while it was read.", fault);
+	}
+
+	@Override
+	public void close() throws IOException {
+		windows.clear();
+		lastIndex = -1;
+		lastWindow = null;
+		channel.close();
+	}
+}
@@ -0,0 +1,610 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.viewer;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import javax.swing.AbstractAction;
+import javax.swing.Action;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.JTextArea;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultEditorKit;
+import javax.swing.text.DocumentFilter;
+import javax.swing.text.PlainDocument;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.SingleDocumentListener;
+import hr.fer.zemris.java.hw11.jnotepadpp.SingleDocumentModel;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.DocumentStatistics;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineIndex;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TrigramIndex;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.DocumentLoader;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.TextEncoding;
+
+/**
+ * A read-only {@link SingleDocumentModel} used for files too big to be loaded
+ * to the heap. The file is accessed through a {@link MappedFileView} and the
+ * text component holds only the lines currently visible. Scrolling is done
+ * through a scroll bar that spans the whole file, the mouse wheel and the
+ * navigation keys, each of them decoding only the newly visible lines. The
+ * whole file is searched in the background by a {@link MappedFileSearcher},
+ * which skips most of it once the model is given the {@link TrigramIndex} of
+ * the file.
+ *
+ * @author Marin
+ *
+ */
+public class ViewerDocumentModel implements SingleDocumentModel, Closeable {
+
+	/**
+	 * The resolution of the scroll bar spanning the file.
+	 */
+	private static final int SCROLL_RESOLUTION = 1_000_000;
+	/**
+	 * The number of lines scrolled by one mouse wheel step.
+	 */
+	private static final int WHEEL_LINES = 3;
+
+	/**
+	 * The specified document file path.
+	 */
+	private Path filepath;
+	/**
+	 * The view of the file.
+	 */
+	private MappedFileView view;
+	/**
+	 * The read-only text area holding the visible lines.
+	 */
+	private JTextArea textArea;
+	/**
+	 * The index of the line starts of the visible lines.
+	 */
+	private LineIndex lineIndex;
+	/**
+	 * The statistics of the visible lines.
+	 */
+	private DocumentStatistics statistics;
+	/**
+	 * The scroll bar spanning the whole file.
+	 */
+	private JScrollBar scrollBar;
+	/**
+	 * The component showing the text area and the scroll bar.
+	 */
+	private JPanel component;
+	/**
+	 * The offset of the first visible line in the file.
+	 */
+	private long top;
+	/**
+	 * The offsets from {@link #top} in the file of the characters of the
+	 * visible lines, and the offset of their end after the last one.
+	 */
+	private int[] byteOffsets = { 0 };
+	/**
+	 * The number of visible lines.
+	 */
+	private int visibleLines = 1;
+	/**
+	 * True while the visible lines are being replaced.
+	 */
+	private boolean updating;
+	/**
+	 * The index of the file, null until it is built.
+	 */
+	private volatile TrigramIndex index;
+	/**
+	 * The search in progress, null if there is none.
+	 */
+	private CompletableFuture<Boolean> search;
+	/**
+	 * The {@link SingleDocumentListener} attached to the model.
+	 */
+	private List<SingleDocumentListener> listeners;
+	/**
+	 * The {@link Iterator} used when working with listeners, used to avoid concurrency.
+	 */
+	private Iterator<SingleDocumentListener> listenersIterator;
+
+	/**
+	 * The model constructor. Opens the file, but does not read it.
+	 *
+	 * @param filepath
+	 *            is the given file path.
+	 * @throws IOException
+	 *             if the file can not be opened.
+	 */
+	public ViewerDocumentModel(Path filepath) throws IOException {
+		this.filepath = Objects.requireNonNull(filepath);
+		view = new MappedFileView(filepath);
+		listeners = new ArrayList<>();
+
+		PlainDocument document = new PlainDocument();
+		document.setDocumentFilter(new ReadOnlyFilter());
+		textArea = new JTextArea(document);
+		textArea.setEditable(false);
+		lineIndex = new LineIndex(document);
+		statistics = new DocumentStatistics(document);
+
+		scrollBar = new JScrollBar(JScrollBar.VERTICAL, 0, 1, 0, SCROLL_RESOLUTION);
+		scrollBar.addAdjustmentListener(e -> {
+			if (!updating) {
+				scrollToFraction(e.getValue());
+			}
+		});
+
+		textArea.addMouseWheelListener(e -> scrollLines(e.getWheelRotation() * WHEEL_LINES));
+		textArea.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				int lineHeight = textArea.getFontMetrics(textArea.getFont()).getHeight();
+				visibleLines = Math.max(1, textArea.getHeight() / lineHeight);
+				refresh();
+			}
+		});
+		bindNavigationKeys();
+
+		component = new JPanel(new BorderLayout());
+		component.add(textArea, BorderLayout.CENTER);
+		component.add(scrollBar, BorderLayout.EAST);
+
+		refresh();
+	}
+
+	/**
+	 * A getter for the component showing the viewed file.
+	 *
+	 * @return the component.
+	 */
+	public JComponent getComponent() {
+		return component;
+	}
+
+	/**
+	 * A getter for the size of the viewed file.
+	 *
+	 * @return the size in bytes.
+	 */
+	public long getFileSize() {
+		return view.size();
+	}
+
+	/**
+	 * Returns the offset of the caret in the viewed file.
+	 *
+	 * @return the offset in bytes.
+	 */
+	public long getCaretOffset() {
+		return fileOffset(textArea.getCaretPosition());
+	}
+
+	/**
+	 * A getter for the index of the viewed file.
+	 *
+	 * @return the index, null if the file is not indexed.
+	 */
+	public TrigramIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * A setter for the index of the viewed file, used by the following
+	 * searches. An index of a file of a different size is ignored.
+	 *
+	 * @param index
+	 *            is the index, null to search without one.
+	 */
+	public void setIndex(TrigramIndex index) {
+		if (index == null || index.length() == view.size()) {
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Finds the next or the previous match in the whole file, counting from
+	 * the selection, and selects it. The search wraps around the file and runs
+	 * in the background, cancelling the search in progress. Called on the
+	 * event dispatch thread.
+	 *
+	 * @param searcher
+	 *            is the searcher.
+	 * @param forward
+	 *            if true the next match is selected, otherwise the previous
+	 *            one.
+	 * @return a future completed on the event dispatch thread with true if a
+	 *         match was selected, false if there is none.
+	 */
+	public CompletableFuture<Boolean> find(TextSearcher searcher, boolean forward) {
+		if (search != null) {
+			search.cancel(false);
+		}
+		CompletableFuture<Boolean> result = new CompletableFuture<>();
+		search = result;
+		long from = fileOffset(forward ? textArea.getSelectionEnd() : textArea.getSelectionStart());
+		long wrapped = forward ? 0 : view.size();
+		TrigramIndex searched = index;
+		Path path = filepath;
+
+		DocumentLoader.getExecutor().execute(() -> {
+			try {
+				long[] match = MappedFileSearcher.find(path, searched, searcher, from, forward, result::isCancelled);
+				if (match == null) {
+					match = MappedFileSearcher.find(path, searched, searcher, wrapped, forward, result::isCancelled);
+				}
+				long[] found = match;
+				SwingUtilities.invokeLater(() -> {
+					if (result.isDone()) {
+						return;
+					}
+					if (search == result) {
+						search = null;
+					}
+					if (found != null) {
+						select(found[0], found[1]);
+					}
+					result.complete(found != null);
+				});
+			} catch (IOException e) {
+				SwingUtilities.invokeLater(() -> result.completeExceptionally(e));
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Scrolls the view to the given range of the file and selects it, as much
+	 * of it as is visible.
+	 *
+	 * @param start
+	 *            is the start offset of the range.
+	 * @param end
+	 *            is the end offset of the range.
+	 */
+	public void select(long start, long end) {
+		scrollTo(start);
+		textArea.select(charOffset(start), charOffset(end));
+	}
+
+	/**
+	 * Scrolls the view by the given number of lines.
+	 *
+	 * @param lines
+	 *            is the number of lines, negative to scroll up.
+	 */
+	public void scrollLines(int lines) {
+		try {
+			long offset = top;
+			for (int i = 0; i < lines && view.nextLineStart(offset) < view.size(); ++i) {
+				offset = view.nextLineStart(offset);
+			}
+			for (int i = 0; i > lines && offset > 0; --i) {
+				offset = view.previousLineStart(offset);
+			}
+			scrollTo(offset);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Scrolls the view to the line containing the given file offset.
+	 *
+	 * @param offset
+	 *            is the given offset.
+	 */
+	public void scrollTo(long offset) {
+		try {
+			top = view.lineStart(Math.max(0, Math.min(offset, view.size())));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		refresh();
+	}
+
+	/**
+	 * Converts the given offset in the visible lines to the offset in the
+	 * file.
+	 *
+	 * @param offset
+	 *            is the given offset.
+	 * @return the file offset.
+	 */
+	private long fileOffset(int offset) {
+		int length = textArea.getDocument().getLength();
+		return top + byteOffsets[Math.max(0, Math.min(offset, length))];
+	}
+
+	/**
+	 * Converts the given offset in the file to the offset in the visible
+	 * lines, of the first character not before it. The offsets outside the
+	 * visible lines are moved to their start or their end.
+	 *
+	 * @param offset
+	 *            is the given file offset.
+	 * @return the offset in the visible lines.
+	 */
+	private int charOffset(long offset) {
+		int length = textArea.getDocument().getLength();
+		long relative = offset - top;
+		if (relative <= 0) {
+			return 0;
+		}
+		if (relative >= byteOffsets[length]) {
+			return length;
+		}
+		int index = Arrays.binarySearch(byteOffsets, 0, length + 1, (int) relative);
+		if (index < 0) {
+			return -index - 1;
+		}
+		while (index > 0 && byteOffsets[index - 1] == relative) {
+			index--;
+		}
+		return index;
+	}
+
+	/**
+	 * Scrolls to the position given by the scroll bar.
+	 *
+	 * @param value
+	 *            is the scroll bar value.
+	 */
+	private void scrollToFraction(int value) {
+		scrollTo((long) ((double) value / SCROLL_RESOLUTION * view.size()));
+	}
+
+	/**
+	 * Decodes the visible lines and puts them into the text area, recording
+	 * the file offsets of their characters. The caret is kept on the same
+	 * row. If the size of the file changed, the file is mapped again and its
+	 * index, which no longer describes it, is dropped.
+	 */
+	private void refresh() {
+		updating = true;
+		try {
+			int caret = textArea.getCaretPosition();
+			int row = textArea.getLineOfOffset(caret);
+			int column = caret - textArea.getLineStartOffset(row);
+
+			if (view.update()) {
+				top = view.lineStart(Math.min(top, view.size()));
+				index = null;
+			}
+			long bottom = view.linesEnd(top, visibleLines);
+			int[] offsets = new int[(int) (bottom - top) + 1];
+			String text = view.decode(top, (int) (bottom - top), offsets);
+			byteOffsets = offsets;
+			PlainDocument document = (PlainDocument) textArea.getDocument();
+			document.replace(0, document.getLength(), text, null);
+
+			row = Math.min(row, textArea.getLineCount() - 1);
+			int start = textArea.getLineStartOffset(row);
+			int end = textArea.getLineEndOffset(row);
+			textArea.setCaretPosition(Math.min(start + column, Math.max(start, end - 1)));
+
+			int value = view.size() == 0 ? 0 : (int) ((double) top / view.size() * SCROLL_RESOLUTION);
+			scrollBar.setValue(value);
+		} catch (IOException | BadLocationException e) {
+			e.printStackTrace();
+		} finally {
+			updating = false;
+		}
+	}
+
+	/**
+	 * Binds the navigation keys of the text area so they scroll the view once
+	 * the caret reaches the first or the last visible line.
+	 */
+	private void bindNavigationKeys() {
+		bind("UP", DefaultEditorKit.upAction, -1, true);
+		bind("DOWN", DefaultEditorKit.downAction, 1, true);
+		bind("PAGE_UP", null, 0, false);
+		bind("PAGE_DOWN", null, 0, false);
+		bind("ctrl HOME", DefaultEditorKit.beginAction, 0, false);
+		bind("ctrl END", DefaultEditorKit.endAction, 0, false);
+	}
+
+	/**
+	 * Binds the given key to a scrolling action.
+	 *
+	 * @param key
+	 *            is the key stroke.
+	 * @param delegateName
+	 *            is the name of the original action, performed if the view is
+	 *            not scrolled.
+	 * @param lines
+	 *            is the number of lines to scroll.
+	 * @param onEdge
+	 *            true if the view is scrolled only when the caret is on the
+	 *            first or the last visible line.
+	 */
+	private void bind(String key, String delegateName, int lines, boolean onEdge) {
+		Action delegate = delegateName == null ? null : textArea.getActionMap().get(delegateName);
+		String name = "viewer-" + key;
+		textArea.getInputMap().put(KeyStroke.getKeyStroke(key), name);
+		textArea.getActionMap().put(name, new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (onEdge) {
+					int row = 0;
+					try {
+						row = textArea.getLineOfOffset(textArea.getCaretPosition());
+					} catch (BadLocationException ignorable) {
+					}
+					boolean edge = lines < 0 ? row == 0 : row == textArea.getLineCount() - 1;
+					if (edge) {
+						scrollLines(lines);
+					} else {
+						delegate.actionPerformed(e);
+					}
+				} else if (key.equals("PAGE_UP")) {
+					scrollLines(-visibleLines);
+				} else if (key.equals("PAGE_DOWN")) {
+					scrollLines(visibleLines);
+				} else if (key.equals("ctrl HOME")) {
+					scrollTo(0);
+					delegate.actionPerformed(e);
+				} else {
+					scrollTo(view.size());
+					scrollLines(1 - visibleLines);
+					delegate.actionPerformed(e);
+				}
+			}
+		});
+	}
+
+	@Override
+	public JTextArea getTextComponent() {
+		return textArea;
+	}
+
+	@Override
+	public LineIndex getLineIndex() {
+		return lineIndex;
+	}
+
+	@Override
+	public DocumentStatistics getStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public Path getFilePath() {
+		return filepath;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws NullPointerException
+	 *             if the given path is null.
+	 */
+	@Override
+	public void setFilePath(Path path) {
+		this.filepath = Objects.requireNonNull(path, "Given path should not be null.");
+		notifyPathChanged();
+	}
+
+	/**
+	 * {@inheritDoc} The viewer scans the bytes for line breaks, so the file is
+	 * decoded as ISO-8859-1 if it was detected as such, and as UTF-8
+	 * otherwise.
+	 */
+	@Override
+	public TextEncoding getEncoding() {
+		return view.getEncoding();
+	}
+
+	/**
+	 * {@inheritDoc} The viewed file is saved as a copy, so the encoding is
+	 * ignored.
+	 */
+	@Override
+	public void setEncoding(TextEncoding encoding) {
+	}
+
+	/**
+	 * {@inheritDoc} The viewed file can not be modified, so this is always
+	 * false.
+	 */
+	@Override
+	public boolean isModified() {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc} The viewed file can not be modified, so the flag is
+	 * ignored.
+	 */
+	@Override
+	public void setModified(boolean modified) {
+	}
+
+	@Override
+	public void addSingleDocumentListener(SingleDocumentListener l) {
+		if (listeners.contains(l))
+			return;
+
+		listeners.add(l);
+	}
+
+	@Override
+	public void removeSingleDocumentListener(SingleDocumentListener l) {
+		if (listenersIterator == null) {
+			listeners.remove(l);
+		} else {
+			listenersIterator.remove();
+		}
+	}
+
+	/**
+	 * Closes the view of the file, cancelling the search in progress.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (search != null) {
+			search.cancel(false);
+		}
+		view.close();
+	}
+
+	/**
+	 * Used to notify the listeners that the model's path changed.
+	 */
+	private void notifyPathChanged() {
+		listenersIterator = listeners.iterator();
+		while (listenersIterator.hasNext()) {
+			SingleDocumentListener l = listenersIterator.next();
+			l.documentFilePathUpdated(this);
+		}
+		listenersIterator = null;
+	}
+
+	/**
+	 * A {@link DocumentFilter} that rejects all the edits, except the ones done
+	 * by the viewer when replacing the visible lines.
+	 */
+	private class ReadOnlyFilter extends DocumentFilter {
+
+		@Override
+		public void insertString(FilterBypass fb, int offset, String string, AttributeSet attr)
+				throws BadLocationException {
+			if (updating) {
+				super.insertString(fb, offset, string, attr);
+			}
+		}
+
+		@Override
+		public void remove(FilterBypass fb, int offset, int length) throws BadLocationException {
+			if (updating) {
+				super.remove(fb, offset, length);
+			}
+		}
+
+		@Override
+		public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs)
+				throws BadLocationException {
+			if (updating) {
+				super.replace(fb, offset, length, text, attrs);
+			}
+		}
+	}
+}
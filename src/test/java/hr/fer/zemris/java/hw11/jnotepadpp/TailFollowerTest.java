@@ -0,0 +1,177 @@
+package hr.fer.zemris.java.hw11.jnotepadpp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.io.DocumentLoader;
+
+/**
+ * The tests of the {@link TailFollower}.
+ *
+ * @author Marin
+ *
+ */
+public class TailFollowerTest {
+
+	/**
+	 * The folder of the followed files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testLastLines() {
+		assertEquals("b\nc", TailFollower.lastLines("a\nb\nc", 2));
+		assertEquals("b\n", TailFollower.lastLines("a\nb\n", 2));
+		assertEquals("a\nb", TailFollower.lastLines("a\nb", 5));
+		assertEquals("c", TailFollower.lastLines("a\nb\nc", 1));
+	}
+
+	@Test
+	public void testFollowReadsOnlyAppendedBytes() throws Exception {
+		Path file = folder.newFile("log.txt").toPath();
+		Files.write(file, "loaded\n".getBytes(StandardCharsets.UTF_8));
+		DefaultSingleDocumentModel model = load(file);
+		TailFollower follower = onEdt(TailFollower::new);
+
+		// the same number of bytes changed on disk, only the appended line
+		// may be read
+		Files.write(file, "LOADED\nappended\n".getBytes(StandardCharsets.UTF_8));
+		assertTrue(onEdt(() -> follower.follow(model)));
+		awaitText(model, "loaded\nappended\n");
+
+		Files.write(file, "more\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		onEdt(() -> {
+			follower.update(model);
+			return null;
+		});
+		awaitText(model, "loaded\nappended\nmore\n");
+		onEdt(() -> {
+			follower.unfollow(model);
+			return null;
+		});
+	}
+
+	@Test
+	public void testTruncatedFileIsReadAgainWithinLineLimit() throws Exception {
+		Path file = folder.newFile("log.txt").toPath();
+		Files.write(file, "first\nsecond\nthird\n".getBytes(StandardCharsets.UTF_8));
+		DefaultSingleDocumentModel model = load(file);
+		TailFollower follower = onEdt(TailFollower::new);
+		follower.setLineLimit(3);
+		assertTrue(onEdt(() -> follower.follow(model)));
+
+		Files.write(file, "1\n2\n3\n4\n".getBytes(StandardCharsets.UTF_8));
+		onEdt(() -> {
+			follower.update(model);
+			return null;
+		});
+		awaitText(model, "3\n4\n");
+		onEdt(() -> {
+			follower.unfollow(model);
+			return null;
+		});
+	}
+
+	/**
+	 * Loads the given file into a new model.
+	 *
+	 * @param file
+	 *            is the given file.
+	 * @return the model.
+	 * @throws Exception
+	 *             if loading fails.
+	 */
+	private static DefaultSingleDocumentModel load(Path file) throws Exception {
+		Document document = new DocumentLoader().load(file, null, null);
+		return onEdt(() -> new DefaultSingleDocumentModel(file, document));
+	}
+
+	/**
+	 * Waits until the document of the given model holds the given text.
+	 *
+	 * @param model
+	 *            is the given model.
+	 * @param expected
+	 *            is the given text.
+	 * @throws Exception
+	 *             if the text is not there in time.
+	 */
+	private static void awaitText(DefaultSingleDocumentModel model, String expected) throws Exception {
+		String text = null;
+		for (int i = 0; i < 100; ++i) {
+			text = onEdt(() -> {
+				Document document = model.getTextComponent().getDocument();
+				return document.getText(0, document.getLength());
+			});
+			if (expected.equals(text)) {
+				return;
+			}
+			Thread.sleep(50);
+		}
+		assertEquals(expected, text);
+	}
+
+	/**
+	 * A computation run on the event dispatch thread.
+	 *
+	 * @param <T>
+	 *            is the type of the result.
+	 */
+	private interface EdtTask<T> {
+
+		/**
+		 * Computes the result.
+		 *
+		 * @return the result.
+		 * @throws BadLocationException
+		 *             if the document can not be read.
+		 * @throws IOException
+		 *             if a file can not be read.
+		 */
+		T call() throws BadLocationException, IOException;
+	}
+
+	/**
+	 * Runs the given task on the event dispatch thread and waits for it.
+	 *
+	 * @param <T>
+	 *            is the type of the result.
+	 * @param task
+	 *            is the given task.
+	 * @return the result of the task.
+	 * @throws Exception
+	 *             if the task fails.
+	 */
+	private static <T> T onEdt(EdtTask<T> task) throws Exception {
+		AtomicReference<T> result = new AtomicReference<>();
+		try {
+			SwingUtilities.invokeAndWait(() -> {
+				try {
+					result.set(task.call());
+				} catch (BadLocationException | IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+		} catch (InvocationTargetException e) {
+			throw (Exception) e.getCause();
+		}
+		return result.get();
+	}
+}
@@ -0,0 +1,157 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Locale;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+import javax.swing.undo.UndoManager;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.CaseTransformer.Mode;
+
+/**
+ * The tests of the {@link CaseTransformer}.
+ *
+ * @author Marin
+ *
+ */
+public class CaseTransformerTest {
+
+	@Test
+	public void testModes() throws BadLocationException {
+		assertEquals("HELLO, WORLD!", transform(Mode.UPPER, Locale.ENGLISH, "Hello, World!"));
+		assertEquals("hello, world!", transform(Mode.LOWER, Locale.ENGLISH, "Hello, World!"));
+		assertEquals("hELLO, wORLD!", transform(Mode.INVERT, Locale.ENGLISH, "Hello, World!"));
+		assertEquals("ČĆŽ šđ", transform(Mode.INVERT, Locale.ENGLISH, "čćž ŠĐ"));
+	}
+
+	@Test
+	public void testSharpS() throws BadLocationException {
+		AbstractDocument document = document("straße");
+		assertEquals(7, new CaseTransformer(Mode.UPPER, Locale.GERMAN).transform(document, 0, 6));
+		assertEquals("STRASSE", text(document));
+		assertEquals("aBSS", transform(Mode.INVERT, Locale.GERMAN, "Abß"));
+	}
+
+	@Test
+	public void testTurkishDotlessI() throws BadLocationException {
+		Locale turkish = new Locale("tr");
+		assertEquals("İSTANBUL", transform(Mode.UPPER, turkish, "istanbul"));
+		assertEquals("ışık", transform(Mode.LOWER, turkish, "IŞIK"));
+		assertEquals("ISTANBUL", transform(Mode.UPPER, Locale.ENGLISH, "istanbul"));
+	}
+
+	@Test
+	public void testOnlyChangedRunsReplaced() throws BadLocationException {
+		AbstractDocument document = document("ABCdefGHIjklMNO");
+		int[] inserts = new int[1];
+		document.addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				inserts[0]++;
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+			}
+		});
+
+		new CaseTransformer(Mode.UPPER, Locale.ENGLISH).transform(document, 0, document.getLength());
+		assertEquals("ABCDEFGHIJKLMNO", text(document));
+		assertEquals(2, inserts[0]);
+
+		inserts[0] = 0;
+		new CaseTransformer(Mode.UPPER, Locale.ENGLISH).transform(document, 0, document.getLength());
+		assertEquals(0, inserts[0]);
+	}
+
+	@Test
+	public void testRangeOnly() throws BadLocationException {
+		AbstractDocument document = document("one two three");
+		assertEquals(3, new CaseTransformer(Mode.UPPER, Locale.ENGLISH).transform(document, 4, 3));
+		assertEquals("one TWO three", text(document));
+	}
+
+	@Test
+	public void testUndoneInOneStep() throws BadLocationException {
+		AbstractDocument document = document("mixed Čase ßtring and more");
+		UndoManager undo = new UndoManager();
+		document.addUndoableEditListener(undo);
+
+		new CaseTransformer(Mode.INVERT, Locale.GERMAN).transform(document, 0, document.getLength());
+		assertTrue(undo.canUndo());
+		undo.undo();
+		assertEquals("mixed Čase ßtring and more", text(document));
+		assertFalse(undo.canUndo());
+	}
+
+	@Test
+	public void testLongPieceTableDocument() throws BadLocationException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 50000; ++i) {
+			text.append(i % 2 == 0 ? "lower ž " : "UPPER Ž ");
+		}
+		PieceTableDocument document = PieceTableDocumentTest.document(text.toString());
+		new CaseTransformer(Mode.UPPER, Locale.ENGLISH).transform(document, 0, document.getLength());
+		assertEquals(text.toString().toUpperCase(Locale.ENGLISH), text(document));
+	}
+
+	/**
+	 * Transforms the whole given text.
+	 *
+	 * @param mode
+	 *            is the transformation.
+	 * @param locale
+	 *            is the language whose rules are used.
+	 * @param text
+	 *            is the given text.
+	 * @return the transformed text.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	private static String transform(Mode mode, Locale locale, String text) throws BadLocationException {
+		AbstractDocument document = document(text);
+		new CaseTransformer(mode, locale).transform(document, 0, document.getLength());
+		return text(document);
+	}
+
+	/**
+	 * Creates a document with the given text.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @return the document.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	private static AbstractDocument document(String text) throws BadLocationException {
+		PlainDocument document = new PlainDocument();
+		document.insertString(0, text, null);
+		return document;
+	}
+
+	/**
+	 * Returns the whole text of the given document.
+	 *
+	 * @param document
+	 *            is the given document.
+	 * @return the text.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	private static String text(AbstractDocument document) throws BadLocationException {
+		return document.getText(0, document.getLength());
+	}
+}
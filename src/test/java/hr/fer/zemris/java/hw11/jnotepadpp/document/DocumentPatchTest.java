@@ -0,0 +1,108 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+
+import org.junit.Test;
+
+/**
+ * The tests of the {@link DocumentPatch}.
+ *
+ * @author Marin
+ *
+ */
+public class DocumentPatchTest {
+
+	@Test
+	public void testInsertAndRemove() throws BadLocationException {
+		Document target = document("hello world");
+		DocumentPatch.insert(5, ",").apply(target);
+		assertEquals("hello, world", text(target));
+		DocumentPatch.remove(0, 7).apply(target);
+		assertEquals("world", text(target));
+	}
+
+	@Test
+	public void testEqualDocumentsGiveEmptyPatch() throws BadLocationException {
+		assertTrue(DocumentPatch.between(document("same\ntext"), document("same\ntext")).isEmpty());
+	}
+
+	@Test
+	public void testBetween() throws BadLocationException {
+		String[][] pairs = {
+				{ "a\nb\nc\n", "a\nB\nc\n" },
+				{ "first\nsecond\nthird", "zeroth\nfirst\nthird\nfourth" },
+				{ "", "new\ntext" },
+				{ "old\ntext", "" },
+				{ "line\n", "line" },
+				{ "x\ny\nz", "z\ny\nx" } };
+		for (String[] pair : pairs) {
+			Document target = document(pair[0]);
+			DocumentPatch.between(target, document(pair[1])).apply(target);
+			assertEquals(pair[1], text(target));
+		}
+	}
+
+	@Test
+	public void testBetweenKeepsUnchangedText() throws BadLocationException {
+		Document target = document("keep\nchange\nkeep too");
+		Position position = target.createPosition(15);
+		DocumentPatch.between(target, document("keep\nchanged\nkeep too")).apply(target);
+		assertEquals("keep\nchanged\nkeep too", text(target));
+		assertEquals(16, position.getOffset());
+	}
+
+	@Test
+	public void testBetweenSnapshot() throws BadLocationException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 3000; ++i) {
+			text.append("line ").append(i).append('\n');
+		}
+		PieceTableDocument target = PieceTableDocumentTest.document(text.toString());
+		for (int i = 0; i < 200; ++i) {
+			target.insertString((i * 7919) % target.getLength(), "ins" + i, null);
+		}
+		String before = text(target);
+		String wanted = "head\n" + before.substring(0, 9000) + "changed" + before.substring(9100) + "tail";
+
+		PieceTableContent.Snapshot snapshot = target.snapshot();
+		DocumentPatch patch = DocumentPatch.between(snapshot, document(wanted));
+		assertEquals(before, text(target));
+		patch.apply(target);
+		assertEquals(wanted, text(target));
+		assertTrue(DocumentPatch.between(target.snapshot(), document(wanted)).isEmpty());
+	}
+
+	/**
+	 * Creates a document with the given text.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @return the document.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	private static Document document(String text) throws BadLocationException {
+		Document document = new PlainDocument();
+		document.insertString(0, text, null);
+		return document;
+	}
+
+	/**
+	 * Returns the whole text of the given document.
+	 *
+	 * @param document
+	 *            is the given document.
+	 * @return the text.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	private static String text(Document document) throws BadLocationException {
+		return document.getText(0, document.getLength());
+	}
+}
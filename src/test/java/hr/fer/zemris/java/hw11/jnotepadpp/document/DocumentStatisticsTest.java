@@ -0,0 +1,115 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+
+import org.junit.Test;
+
+/**
+ * The tests of the {@link DocumentStatistics}.
+ *
+ * @author Marin
+ *
+ */
+public class DocumentStatisticsTest {
+
+	@Test
+	public void testInitialCounts() {
+		DocumentStatistics statistics = new DocumentStatistics(PieceTableDocumentTest.document("a b\n\tc\n"));
+		assertEquals(7, statistics.getCharacterCount());
+		assertEquals(3, statistics.getNonBlankCount());
+		assertEquals(3, statistics.getLineCount());
+		statistics.dispose();
+	}
+
+	@Test
+	public void testLargeDocumentCountedInParallel() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200000; ++i) {
+			text.append("word ").append(i % 10 == 0 ? "\n" : "");
+		}
+		DocumentStatistics statistics = new DocumentStatistics(PieceTableDocumentTest.document(text.toString()));
+		assertCounts(text.toString(), statistics);
+		statistics.dispose();
+	}
+
+	@Test
+	public void testFollowsEditsOfPieceTable() throws BadLocationException {
+		assertFollowsEdits(PieceTableDocumentTest.document("start\n"));
+	}
+
+	@Test
+	public void testFollowsEditsOfOtherDocuments() throws BadLocationException {
+		PlainDocument document = new PlainDocument();
+		document.insertString(0, "start\n", null);
+		assertFollowsEdits(document);
+	}
+
+	@Test
+	public void testTellsListeners() throws BadLocationException {
+		PieceTableDocument document = PieceTableDocumentTest.document("");
+		DocumentStatistics statistics = new DocumentStatistics(document);
+		int[] changes = new int[1];
+		statistics.addChangeListener(e -> changes[0]++);
+
+		document.insertString(0, "x\ny", null);
+		document.remove(0, 2);
+		assertEquals(2, changes[0]);
+		assertEquals(1, statistics.getLineCount());
+		statistics.dispose();
+	}
+
+	/**
+	 * Edits the given document at random and checks the counts after every
+	 * edit.
+	 *
+	 * @param document
+	 *            is the given document.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	private static void assertFollowsEdits(AbstractDocument document) throws BadLocationException {
+		Random random = new Random(3);
+		DocumentStatistics statistics = new DocumentStatistics(document);
+		String[] inserts = { "a", " ", "\n", "two words", "\t\n\n", "line\nbreak" };
+		for (int i = 0; i < 500; ++i) {
+			int offset = random.nextInt(document.getLength() + 1);
+			if (random.nextInt(3) == 0) {
+				document.remove(offset, Math.min(random.nextInt(8), document.getLength() - offset));
+			} else {
+				document.insertString(offset, inserts[random.nextInt(inserts.length)], null);
+			}
+			assertCounts(document.getText(0, document.getLength()), statistics);
+		}
+		statistics.dispose();
+	}
+
+	/**
+	 * Checks the statistics against the counts of the given text.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @param statistics
+	 *            are the checked statistics.
+	 */
+	private static void assertCounts(String text, DocumentStatistics statistics) {
+		int blanks = 0;
+		int lines = 1;
+		for (int i = 0; i < text.length(); ++i) {
+			if (Character.isWhitespace(text.charAt(i))) {
+				blanks++;
+			}
+			if (text.charAt(i) == '\n') {
+				lines++;
+			}
+		}
+		assertEquals(text.length(), statistics.getCharacterCount());
+		assertEquals(text.length() - blanks, statistics.getNonBlankCount());
+		assertEquals(lines, statistics.getLineCount());
+	}
+}
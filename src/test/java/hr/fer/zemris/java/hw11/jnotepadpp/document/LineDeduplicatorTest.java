@@ -0,0 +1,78 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineDeduplicator.Option;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineDeduplicator.Result;
+
+/**
+ * The tests of the {@link LineDeduplicator}.
+ *
+ * @author Marin
+ *
+ */
+public class LineDeduplicatorTest {
+
+	@Test
+	public void testKeepsFirstOccurrence() {
+		Result result = deduplicator().deduplicate("b\na\nb\nc\na\nA\n");
+		assertEquals("b\na\nc\nA\n", result.getText());
+		assertEquals(2, result.getRemoved());
+	}
+
+	@Test
+	public void testUnterminatedAndEmptyLines() {
+		Result result = deduplicator().deduplicate("x\n\ny\n\nx");
+		assertEquals("x\n\ny", result.getText());
+		assertEquals(2, result.getRemoved());
+	}
+
+	@Test
+	public void testIgnoreCase() {
+		Result result = deduplicator(Option.IGNORE_CASE).deduplicate("Hello\nhello\nHELLO\nworld");
+		assertEquals("Hello\nworld", result.getText());
+		assertEquals(2, result.getRemoved());
+	}
+
+	@Test
+	public void testIgnoreWhitespace() {
+		Result result = deduplicator(Option.IGNORE_WHITESPACE).deduplicate("a b\na  b\n\tab \nc");
+		assertEquals("a b\nc", result.getText());
+	}
+
+	@Test
+	public void testCount() {
+		Result result = deduplicator(Option.COUNT).deduplicate("a\nb\na\na\nc\n");
+		assertEquals("3 a\n1 b\n1 c\n", result.getText());
+	}
+
+	@Test
+	public void testManyLines() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 10000; ++i) {
+			text.append(i % 1000).append('\n');
+		}
+		Result result = deduplicator().deduplicate(text.toString());
+		assertEquals(9000, result.getRemoved());
+		assertEquals(text.substring(0, text.indexOf("\n0\n", 1) + 1), result.getText());
+	}
+
+	/**
+	 * Creates a deduplicator with the given options.
+	 *
+	 * @param options
+	 *            are the given options.
+	 * @return the deduplicator.
+	 */
+	private static LineDeduplicator deduplicator(Option... options) {
+		EnumSet<Option> set = EnumSet.noneOf(Option.class);
+		for (Option option : options) {
+			set.add(option);
+		}
+		return new LineDeduplicator(set);
+	}
+}
@@ -0,0 +1,73 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import javax.swing.text.BadLocationException;
+
+import org.junit.Test;
+
+/**
+ * The tests of the {@link LineIndex}.
+ *
+ * @author Marin
+ *
+ */
+public class LineIndexTest {
+
+	@Test
+	public void testInitialLines() {
+		LineIndex index = new LineIndex(PieceTableDocumentTest.document("a\nbc\n\ndef"));
+		assertEquals(4, index.getLineCount());
+		assertEquals(0, index.getLineStart(0));
+		assertEquals(2, index.getLineStart(1));
+		assertEquals(5, index.getLineStart(2));
+		assertEquals(6, index.getLineStart(3));
+		assertEquals(1, index.getLineOfOffset(3));
+		assertEquals(1, index.getColumnOfOffset(3));
+		assertEquals(3, index.getLineOfOffset(9));
+		assertEquals(3, index.getColumnOfOffset(9));
+	}
+
+	@Test
+	public void testFollowsEdits() throws BadLocationException {
+		Random random = new Random(7);
+		PieceTableDocument document = PieceTableDocumentTest.document("x\ny\nz");
+		LineIndex index = new LineIndex(document);
+
+		for (int i = 0; i < 500; ++i) {
+			int offset = random.nextInt(document.getLength() + 1);
+			if (document.getLength() > 0 && random.nextInt(3) == 0) {
+				document.remove(offset, Math.min(random.nextInt(6), document.getLength() - offset));
+			} else {
+				document.insertString(offset, random.nextBoolean() ? "ab\ncd" : "\n", null);
+			}
+			assertLines(PieceTableDocumentTest.text(document), index);
+		}
+		index.dispose();
+	}
+
+	/**
+	 * Checks the index against the lines of the given text.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @param index
+	 *            is the checked index.
+	 */
+	private static void assertLines(String text, LineIndex index) {
+		int line = 0;
+		int lineStart = 0;
+		for (int offset = 0; offset <= text.length(); ++offset) {
+			assertEquals(line, index.getLineOfOffset(offset));
+			assertEquals(offset - lineStart, index.getColumnOfOffset(offset));
+			if (offset < text.length() && text.charAt(offset) == '\n') {
+				line++;
+				lineStart = offset + 1;
+				assertEquals(lineStart, index.getLineStart(line));
+			}
+		}
+		assertEquals(line + 1, index.getLineCount());
+	}
+}
@@ -0,0 +1,69 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.EnumSet;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.LineSorter.Option;
+
+/**
+ * The tests of the {@link LineSorter}.
+ *
+ * @author Marin
+ *
+ */
+public class LineSorterTest {
+
+	@Test
+	public void testAscending() {
+		assertEquals("apple\nbanana\ncherry\n", sorter().sort("cherry\napple\nbanana\n"));
+		assertEquals("a\nb", sorter().sort("b\na"));
+	}
+
+	@Test
+	public void testDescending() {
+		assertEquals("cherry\nbanana\napple", sorter(Option.DESCENDING).sort("banana\ncherry\napple"));
+	}
+
+	@Test
+	public void testNumeric() {
+		assertEquals("file2\nfile10\nfile100", sorter(Option.NUMERIC).sort("file100\nfile2\nfile10"));
+		assertEquals("file10\nfile100\nfile2", sorter().sort("file100\nfile2\nfile10"));
+	}
+
+	@Test
+	public void testStableKeepsOrderOfEqualLines() {
+		assertEquals("a\nb\nB\nc", sorter(Option.IGNORE_CASE, Option.STABLE).sort("b\nc\nB\na"));
+		assertEquals("a\nB\nb\nc", sorter(Option.IGNORE_CASE, Option.STABLE).sort("B\nc\nb\na"));
+	}
+
+	@Test
+	public void testManyLines() {
+		String[] lines = new String[20000];
+		for (int i = 0; i < lines.length; ++i) {
+			lines[i] = "line " + (lines.length - i);
+		}
+		sorter(Option.NUMERIC).sort(lines);
+		for (int i = 0; i < lines.length; ++i) {
+			assertEquals("line " + (i + 1), lines[i]);
+		}
+	}
+
+	/**
+	 * Creates an English sorter with the given options.
+	 *
+	 * @param options
+	 *            are the given options.
+	 * @return the sorter.
+	 */
+	private static LineSorter sorter(Option... options) {
+		EnumSet<Option> set = EnumSet.noneOf(Option.class);
+		for (Option option : options) {
+			set.add(option);
+		}
+		return new LineSorter(Locale.ENGLISH, set);
+	}
+}
@@ -0,0 +1,135 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+import org.junit.Test;
+
+/**
+ * The tests of the {@link PieceTableDocument}.
+ *
+ * @author Marin
+ *
+ */
+public class PieceTableDocumentTest {
+
+	@Test
+	public void testInitialText() throws BadLocationException {
+		PieceTableDocument document = document("first\nsecond");
+		assertEquals(12, document.getLength());
+		assertEquals("first\nsecond", text(document));
+		assertEquals("second", document.getText(6, 6));
+	}
+
+	@Test
+	public void testEditsMatchStringBuilder() throws BadLocationException {
+		Random random = new Random(42);
+		PieceTableDocument document = document("The quick brown fox jumps over the lazy dog.");
+		StringBuilder expected = new StringBuilder("The quick brown fox jumps over the lazy dog.");
+
+		for (int i = 0; i < 2000; ++i) {
+			int offset = random.nextInt(expected.length() + 1);
+			if (expected.length() > 0 && random.nextBoolean()) {
+				int length = random.nextInt(Math.min(10, expected.length() - offset) + 1);
+				document.remove(offset, length);
+				expected.delete(offset, offset + length);
+			} else {
+				String text = Integer.toString(i, 36) + (random.nextInt(5) == 0 ? "\n" : "");
+				document.insertString(offset, text, null);
+				expected.insert(offset, text);
+			}
+		}
+		assertEquals(expected.toString(), text(document));
+	}
+
+	@Test
+	public void testPartialSegments() throws BadLocationException {
+		PieceTableDocument document = document("abcdef");
+		document.insertString(3, "XYZ", null);
+
+		Segment segment = new Segment();
+		segment.setPartialReturn(true);
+		StringBuilder read = new StringBuilder();
+		for (int offset = 0; offset < document.getLength(); offset += segment.count) {
+			document.getText(offset, document.getLength() - offset, segment);
+			assertTrue(segment.count > 0);
+			read.append(segment);
+		}
+		assertEquals("abcXYZdef", read.toString());
+	}
+
+	@Test
+	public void testSnapshotIgnoresLaterEdits() throws BadLocationException {
+		PieceTableDocument document = document("hello world");
+		document.insertString(5, ",", null);
+		PieceTableContent.Snapshot snapshot = document.snapshot();
+
+		document.remove(0, 6);
+		document.insertString(0, "bye", null);
+
+		assertEquals("bye world", text(document));
+		assertEquals(12, snapshot.length());
+		assertEquals("hello, world", text(snapshot));
+	}
+
+	@Test
+	public void testSpanInsertedBack() throws BadLocationException {
+		PieceTableDocument document = document("one two three");
+		PieceTableContent.Span span = document.span(4, 4);
+		document.remove(4, 4);
+		assertEquals("one three", text(document));
+
+		document.insert(4, span);
+		assertEquals("one two three", text(document));
+		document.insert(0, document.store(">"));
+		assertEquals(">one two three", text(document));
+	}
+
+	/**
+	 * Creates a document with the given initial text.
+	 *
+	 * @param text
+	 *            is the initial text.
+	 * @return the document.
+	 */
+	static PieceTableDocument document(String text) {
+		return new PieceTableDocument(text.toCharArray(), text.length());
+	}
+
+	/**
+	 * Returns the whole text of the given document.
+	 *
+	 * @param document
+	 *            is the given document.
+	 * @return the text.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	static String text(PieceTableDocument document) throws BadLocationException {
+		return document.getText(0, document.getLength());
+	}
+
+	/**
+	 * Returns the whole text of the given snapshot, read in partial segments.
+	 *
+	 * @param snapshot
+	 *            is the given snapshot.
+	 * @return the text.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	private static String text(PieceTableContent.Snapshot snapshot) throws BadLocationException {
+		StringBuilder text = new StringBuilder();
+		Segment segment = new Segment();
+		for (int offset = 0; offset < snapshot.length(); offset += segment.count) {
+			snapshot.getChars(offset, snapshot.length() - offset, segment);
+			text.append(segment);
+		}
+		return text.toString();
+	}
+}
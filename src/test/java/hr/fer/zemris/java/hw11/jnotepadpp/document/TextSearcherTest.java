@@ -0,0 +1,204 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+import javax.swing.undo.UndoManager;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher.Match;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher.Option;
+
+/**
+ * The tests of the {@link TextSearcher}.
+ *
+ * @author Marin
+ *
+ */
+public class TextSearcherTest {
+
+	@Test
+	public void testLiteralMatchesIndexOf() {
+		Random random = new Random(11);
+		char[] alphabet = { 'a', 'b', 'A', 'B', 'c', '\n', 'č', 'Č' };
+		char[] chars = new char[20000];
+		for (int i = 0; i < chars.length; ++i) {
+			chars[i] = alphabet[random.nextInt(alphabet.length)];
+		}
+		String text = new String(chars);
+		PieceTableDocument document = PieceTableDocumentTest.document(text);
+
+		for (String query : Arrays.asList("ab", "abba", "čab", "cAbA", "b\nA", "aaaaa")) {
+			assertEquals(indexes(text, query), starts(findAll(query, document, Option.MATCH_CASE)));
+			String folded = text.toLowerCase(Locale.ROOT);
+			assertEquals(indexes(folded, query.toLowerCase(Locale.ROOT)), starts(findAll(query, document)));
+		}
+	}
+
+	@Test
+	public void testWholeWord() {
+		PieceTableDocument document = PieceTableDocumentTest.document("cat concat cat_s cat. Cat");
+		assertEquals(Arrays.asList(0, 17, 22), starts(findAll("cat", document, Option.WHOLE_WORD)));
+	}
+
+	@Test
+	public void testFindNextAndPrevious() {
+		PieceTableDocument document = PieceTableDocumentTest.document("one two one two");
+		TextSearcher searcher = new TextSearcher("two", EnumSet.noneOf(Option.class));
+		assertEquals(4, searcher.findNext(document, 0).getStart());
+		assertEquals(12, searcher.findNext(document, 5).getStart());
+		assertNull(searcher.findNext(document, 13));
+		assertEquals(4, searcher.findPrevious(document, 12).getStart());
+		assertNull(searcher.findPrevious(document, 6));
+	}
+
+	@Test
+	public void testMatchesAcrossChunkEdges() {
+		int edge = TextSearcher.CHUNK_SIZE;
+		char[] chars = new char[edge * 2 + 100];
+		Arrays.fill(chars, 'x');
+		put(chars, edge - 3, "needle");
+		put(chars, 2 * edge - 50, "begin");
+		put(chars, 2 * edge + 50, "end");
+		PieceTableDocument document = new PieceTableDocument(chars, chars.length);
+
+		assertEquals(Arrays.asList(edge - 3), starts(findAll("needle", document)));
+		List<Match> matches = findAll("begin.*end", document, Option.REGEX);
+		assertEquals(1, matches.size());
+		assertEquals(2 * edge - 50, matches.get(0).getStart());
+		assertEquals(2 * edge + 53, matches.get(0).getEnd());
+
+		TextSearcher searcher = new TextSearcher("needle", EnumSet.noneOf(Option.class));
+		assertEquals(edge - 3, searcher.findPrevious(document, chars.length).getStart());
+	}
+
+	@Test
+	public void testRegexReplacementGroups() throws BadLocationException {
+		PieceTableDocument document = PieceTableDocumentTest.document("key=value\nname=marin\n");
+		TextSearcher searcher = new TextSearcher("^(\\w+)=(?<v>\\w+)$", "${v}:$1",
+				EnumSet.of(Option.REGEX));
+		List<Match> matches = new ArrayList<>();
+		searcher.findAll(document, matches::addAll, () -> false);
+		assertEquals("value:key", matches.get(0).getReplacement());
+
+		searcher.replace(document, matches);
+		assertEquals("value:key\nmarin:name\n", PieceTableDocumentTest.text(document));
+	}
+
+	@Test
+	public void testReplaceAllIsOneUndoStep() throws BadLocationException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; ++i) {
+			text.append("foo bar ");
+		}
+		PieceTableDocument document = PieceTableDocumentTest.document(text.toString());
+		UndoHistory history = new UndoHistory(document, new UndoBudget(1 << 20, 1 << 20));
+		TextSearcher searcher = new TextSearcher("foo", "bazz", EnumSet.noneOf(Option.class));
+		List<Match> matches = new ArrayList<>();
+		searcher.findAll(document, matches::addAll, () -> false);
+
+		searcher.replace(document, matches);
+		assertEquals(text.toString().replace("foo", "bazz"), PieceTableDocumentTest.text(document));
+		history.undo();
+		assertEquals(text.toString(), PieceTableDocumentTest.text(document));
+		assertFalse(history.canUndo());
+		history.dispose();
+	}
+
+	@Test
+	public void testReplaceAllIsOneUndoableEdit() throws BadLocationException {
+		PlainDocument document = new PlainDocument();
+		document.insertString(0, "a-b-c-d", null);
+		UndoManager undo = new UndoManager();
+		document.addUndoableEditListener(undo);
+
+		TextSearcher searcher = new TextSearcher("-", ", ", EnumSet.noneOf(Option.class));
+		List<Match> matches = new ArrayList<>();
+		searcher.findAll(document, matches::addAll, () -> false);
+		searcher.replace(document, matches);
+		assertEquals("a, b, c, d", document.getText(0, document.getLength()));
+
+		assertTrue(undo.canUndo());
+		undo.undo();
+		assertEquals("a-b-c-d", document.getText(0, document.getLength()));
+		assertFalse(undo.canUndo());
+	}
+
+	/**
+	 * Finds all the matches of the given query.
+	 *
+	 * @param query
+	 *            is the given query.
+	 * @param document
+	 *            is the searched document.
+	 * @param options
+	 *            are the search options.
+	 * @return the matches.
+	 */
+	private static List<Match> findAll(String query, PieceTableDocument document, Option... options) {
+		EnumSet<Option> set = EnumSet.noneOf(Option.class);
+		set.addAll(Arrays.asList(options));
+		List<Match> matches = new ArrayList<>();
+		assertTrue(new TextSearcher(query, set).findAll(document, matches::addAll, () -> false));
+		return matches;
+	}
+
+	/**
+	 * Returns the starts of the given matches.
+	 *
+	 * @param matches
+	 *            are the given matches.
+	 * @return the starts.
+	 */
+	private static List<Integer> starts(List<Match> matches) {
+		List<Integer> starts = new ArrayList<>();
+		for (Match match : matches) {
+			starts.add(match.getStart());
+		}
+		return starts;
+	}
+
+	/**
+	 * Finds the starts of the occurrences of the query in the text, which do
+	 * not overlap, with {@link String#indexOf(String, int)}.
+	 *
+	 * @param text
+	 *            is the text.
+	 * @param query
+	 *            is the query.
+	 * @return the starts.
+	 */
+	private static List<Integer> indexes(String text, String query) {
+		List<Integer> indexes = new ArrayList<>();
+		for (int i = text.indexOf(query); i >= 0; i = text.indexOf(query, i + query.length())) {
+			indexes.add(i);
+		}
+		return indexes;
+	}
+
+	/**
+	 * Puts the given text into the array.
+	 *
+	 * @param chars
+	 *            is the array.
+	 * @param offset
+	 *            is the offset of the text.
+	 * @param text
+	 *            is the text.
+	 */
+	private static void put(char[] chars, int offset, String text) {
+		text.getChars(0, text.length(), chars, offset);
+	}
+}
@@ -0,0 +1,114 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * The tests of the {@link TrigramIndex}.
+ *
+ * @author Marin
+ *
+ */
+public class TrigramIndexTest {
+
+	/**
+	 * The size of the blocks of the tested indexes.
+	 */
+	private static final int BLOCK_SIZE = 8;
+
+	@Test
+	public void testShortQueryHasNoBuckets() {
+		assertNull(TrigramIndex.buckets("ab"));
+	}
+
+	@Test
+	public void testBlocks() {
+		TrigramIndex index = build("0123456789abcdefghij");
+		assertEquals(3, index.getBlockCount());
+		assertEquals(8, index.getBlockStart(1));
+		assertEquals(1, index.blockOf(15));
+		assertEquals(2, index.blockOf(16));
+	}
+
+	@Test
+	public void testCandidateReachesFollowingBlocks() {
+		// "needle" starts in block 0 and ends in block 2, so its last trigrams
+		// start in block 1
+		String text = "......needle............";
+		TrigramIndex index = build(text);
+		int[] buckets = TrigramIndex.buckets("needle");
+
+		assertTrue(index.isCandidate(0, buckets, 6));
+		assertFalse(index.isCandidate(1, buckets, 6));
+		assertFalse(index.isCandidate(2, buckets, 6));
+		assertEquals(0, index.nextCandidate(0, buckets, 6));
+		assertEquals(-1, index.nextCandidate(8, buckets, 6));
+	}
+
+	@Test
+	public void testCaseFolded() {
+		TrigramIndex index = build("xxxxxxxxxxxxxxxxHeLLo");
+		assertEquals(16, index.nextCandidate(16, TrigramIndex.buckets("hello"), 5));
+		assertEquals(8, index.nextCandidate(0, TrigramIndex.buckets("HELLO"), 5));
+	}
+
+	@Test
+	public void testEveryMatchIsCandidate() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 200; ++i) {
+			builder.append(Integer.toString(i * 7919 % 1000, 36)).append(' ');
+		}
+		String text = builder.toString();
+		TrigramIndex index = build(text);
+
+		for (int start = 0; start + 6 <= text.length(); start += 5) {
+			String query = text.substring(start, start + 6);
+			int[] buckets = TrigramIndex.buckets(query);
+			for (int match = text.indexOf(query); match >= 0; match = text.indexOf(query, match + 1)) {
+				assertTrue(index.isCandidate(index.blockOf(match), buckets, query.length()));
+				long candidate = index.nextCandidate(match, buckets, query.length());
+				assertEquals(match, candidate);
+			}
+		}
+	}
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		TrigramIndex index = build("......needle............");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		index.write(new DataOutputStream(bytes));
+
+		TrigramIndex read = TrigramIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		int[] buckets = TrigramIndex.buckets("needle");
+		assertEquals(index.length(), read.length());
+		assertEquals(index.getBlockCount(), read.getBlockCount());
+		assertTrue(read.isCandidate(0, buckets, 6));
+		assertFalse(read.isCandidate(1, buckets, 6));
+	}
+
+	/**
+	 * Builds the index of the given text, block after block.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @return the index.
+	 */
+	private static TrigramIndex build(String text) {
+		TrigramIndex index = new TrigramIndex(text.length(), BLOCK_SIZE);
+		for (int block = 0; block < index.getBlockCount(); ++block) {
+			int start = (int) index.getBlockStart(block);
+			index.add(block, text, start, Math.min(text.length(), start + BLOCK_SIZE));
+		}
+		return index;
+	}
+}
@@ -0,0 +1,118 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.EventQueue;
+
+import javax.swing.text.BadLocationException;
+
+import org.junit.Test;
+
+/**
+ * The tests of the {@link UndoHistory}.
+ *
+ * @author Marin
+ *
+ */
+public class UndoHistoryTest {
+
+	@Test
+	public void testUndoAndRedo() throws BadLocationException {
+		PieceTableDocument document = PieceTableDocumentTest.document("one three");
+		UndoHistory history = new UndoHistory(document, new UndoBudget(1 << 20, 1 << 20));
+
+		document.insertString(4, "two ", null);
+		document.remove(0, 4);
+		assertEquals("two three", PieceTableDocumentTest.text(document));
+
+		assertEquals(0, history.undo());
+		assertEquals("one two three", PieceTableDocumentTest.text(document));
+		assertEquals(4, history.undo());
+		assertEquals("one three", PieceTableDocumentTest.text(document));
+		assertFalse(history.canUndo());
+
+		history.redo();
+		history.redo();
+		assertEquals("two three", PieceTableDocumentTest.text(document));
+		assertFalse(history.canRedo());
+		history.dispose();
+	}
+
+	@Test
+	public void testFailedUndoRolledBack() throws Exception {
+		PieceTableDocument document = PieceTableDocumentTest.document("0123456789");
+		UndoHistory history = new UndoHistory(document, new UndoBudget(1 << 20, 1 << 20));
+
+		EventQueue.invokeAndWait(() -> {
+			try {
+				document.insertString(10, "X", null);
+				document.insertString(0, "Y", null);
+			} catch (BadLocationException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		document.removeDocumentListener(history);
+		document.removeUndoableEditListener(history);
+		document.removeRemovalListener(history);
+		document.remove(5, 7);
+		document.addRemovalListener(history);
+		document.addDocumentListener(history);
+		document.addUndoableEditListener(history);
+
+		assertEquals(-1, history.undo());
+		assertEquals("Y0123", PieceTableDocumentTest.text(document));
+		assertTrue(history.canUndo());
+		assertFalse(history.canRedo());
+		history.dispose();
+	}
+
+	@Test
+	public void testEditDropsRedo() throws BadLocationException {
+		PieceTableDocument document = PieceTableDocumentTest.document("abc");
+		UndoHistory history = new UndoHistory(document, new UndoBudget(1 << 20, 1 << 20));
+
+		document.insertString(3, "\ndef", null);
+		history.undo();
+		assertTrue(history.canRedo());
+		document.insertString(0, "\n", null);
+		assertFalse(history.canRedo());
+		history.dispose();
+	}
+
+	@Test
+	public void testSpilledStepsUndone() throws BadLocationException {
+		PieceTableDocument document = PieceTableDocumentTest.document("start");
+		UndoBudget budget = new UndoBudget(1024, 1024);
+		UndoHistory history = new UndoHistory(document, budget);
+
+		StringBuilder expected = new StringBuilder("start");
+		String[] versions = new String[200];
+		for (int i = 0; i < versions.length; ++i) {
+			versions[i] = expected.toString();
+			if (i % 3 == 2) {
+				document.remove(0, 3);
+				expected.delete(0, 3);
+			} else {
+				String text = "line " + i + "\n";
+				document.insertString(expected.length() / 2, text, null);
+				expected.insert(expected.length() / 2, text);
+			}
+		}
+		assertTrue(history.getMemory() <= 1024);
+		assertTrue(budget.getUsed() <= 1024);
+
+		for (int i = versions.length - 1; i >= 0; --i) {
+			history.undo();
+			assertEquals(versions[i], PieceTableDocumentTest.text(document));
+		}
+		assertFalse(history.canUndo());
+
+		while (history.canRedo()) {
+			history.redo();
+		}
+		assertEquals(expected.toString(), PieceTableDocumentTest.text(document));
+		history.dispose();
+	}
+}
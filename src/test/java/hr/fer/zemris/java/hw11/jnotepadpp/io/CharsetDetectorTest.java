@@ -0,0 +1,95 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * The tests of the {@link CharsetDetector}.
+ *
+ * @author Marin
+ *
+ */
+public class CharsetDetectorTest {
+
+	@Test
+	public void testByteOrderMarks() {
+		assertEquals(new TextEncoding(StandardCharsets.UTF_8, true), detect(0xEF, 0xBB, 0xBF, 'a'));
+		assertEquals(new TextEncoding(StandardCharsets.UTF_16BE, true), detect(0xFE, 0xFF, 0, 'a'));
+		assertEquals(new TextEncoding(StandardCharsets.UTF_16LE, true), detect(0xFF, 0xFE, 'a', 0));
+	}
+
+	@Test
+	public void testUtf16WithoutByteOrderMark() {
+		String text = "plain ascii text in utf-16";
+		assertEquals(new TextEncoding(StandardCharsets.UTF_16LE, false),
+				CharsetDetector.detect(encode(text, StandardCharsets.UTF_16LE)));
+		assertEquals(new TextEncoding(StandardCharsets.UTF_16BE, false),
+				CharsetDetector.detect(encode(text, StandardCharsets.UTF_16BE)));
+	}
+
+	@Test
+	public void testUtf8() {
+		assertEquals(TextEncoding.UTF_8, CharsetDetector.detect(encode("ascii only", StandardCharsets.UTF_8)));
+		assertEquals(TextEncoding.UTF_8, CharsetDetector.detect(encode("čćžšđ €", StandardCharsets.UTF_8)));
+		assertEquals(TextEncoding.UTF_8, CharsetDetector.detect(ByteBuffer.allocate(0)));
+	}
+
+	@Test
+	public void testFallbackToLatin1() {
+		TextEncoding latin1 = new TextEncoding(StandardCharsets.ISO_8859_1, false);
+		assertEquals(latin1, CharsetDetector.detect(encode("café", StandardCharsets.ISO_8859_1)));
+		assertEquals(latin1, detect('a', 0xC0, 'b'));
+		assertEquals(latin1, detect('a', 0xC3));
+	}
+
+	@Test
+	public void testSequenceCutBySample() {
+		byte[] bytes = new byte[CharsetDetector.SAMPLE_SIZE + 10];
+		Arrays.fill(bytes, (byte) 'a');
+		bytes[CharsetDetector.SAMPLE_SIZE - 1] = (byte) 0xC4;
+		bytes[CharsetDetector.SAMPLE_SIZE] = (byte) 0x8D;
+		assertEquals(TextEncoding.UTF_8, CharsetDetector.detect(ByteBuffer.wrap(bytes)));
+	}
+
+	@Test
+	public void testKeepsPosition() {
+		ByteBuffer head = ByteBuffer.wrap(new byte[] { 'x', (byte) 0xEF, (byte) 0xBB, (byte) 0xBF });
+		head.position(1);
+		assertEquals(new TextEncoding(StandardCharsets.UTF_8, true), CharsetDetector.detect(head));
+		assertEquals(1, head.position());
+	}
+
+	/**
+	 * Detects the encoding of the given bytes.
+	 *
+	 * @param bytes
+	 *            are the given bytes.
+	 * @return the detected encoding.
+	 */
+	private static TextEncoding detect(int... bytes) {
+		byte[] array = new byte[bytes.length];
+		for (int i = 0; i < bytes.length; ++i) {
+			array[i] = (byte) bytes[i];
+		}
+		return CharsetDetector.detect(ByteBuffer.wrap(array));
+	}
+
+	/**
+	 * Encodes the given text.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @param charset
+	 *            is the charset to encode with.
+	 * @return the encoded text.
+	 */
+	private static ByteBuffer encode(String text, Charset charset) {
+		return ByteBuffer.wrap(text.getBytes(charset));
+	}
+}
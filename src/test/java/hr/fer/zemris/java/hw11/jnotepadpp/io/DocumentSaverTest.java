@@ -0,0 +1,168 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnmappableCharacterException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableDocument;
+
+/**
+ * The tests of the {@link DocumentSaver}.
+ *
+ * @author Marin
+ *
+ */
+public class DocumentSaverTest {
+
+	/**
+	 * The directory of the saved files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSavesNewFile() throws IOException, BadLocationException {
+		Path target = folder.getRoot().toPath().resolve("new.txt");
+		new DocumentSaver().save(document("čćž\nline"), target, TextEncoding.UTF_8);
+		assertEquals("čćž\nline", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+		assertNoTemporaryFiles();
+	}
+
+	@Test
+	public void testWritesByteOrderMark() throws IOException, BadLocationException {
+		Path target = folder.getRoot().toPath().resolve("bom.txt");
+		new DocumentSaver().save(document("ab"), target, new TextEncoding(StandardCharsets.UTF_16LE, true));
+		assertArrayEquals(new byte[] { (byte) 0xFF, (byte) 0xFE, 'a', 0, 'b', 0 }, Files.readAllBytes(target));
+	}
+
+	@Test
+	public void testLongTextWithSurrogatesAcrossChunks() throws IOException, BadLocationException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 100000; ++i) {
+			text.append(i % 3 == 0 ? "😀" : "x").append(i % 80 == 0 ? "\n" : "");
+		}
+		PieceTableDocument document = new PieceTableDocument();
+		document.insertString(0, text.toString(), null);
+
+		Path target = folder.getRoot().toPath().resolve("long.txt");
+		new DocumentSaver().save(document.snapshot(), target, TextEncoding.UTF_8, null);
+		assertEquals(text.toString(), new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testUnmappableLeavesTargetUntouched() throws IOException, BadLocationException {
+		Path target = folder.getRoot().toPath().resolve("latin.txt");
+		Files.write(target, "original".getBytes(StandardCharsets.ISO_8859_1));
+		try {
+			new DocumentSaver().save(document("not latin: ć"), target,
+					new TextEncoding(StandardCharsets.ISO_8859_1, false));
+			fail();
+		} catch (UnmappableCharacterException expected) {
+		}
+		assertEquals("original", new String(Files.readAllBytes(target), StandardCharsets.ISO_8859_1));
+		assertNoTemporaryFiles();
+	}
+
+	@Test
+	public void testKeepsSymbolicLink() throws IOException, BadLocationException {
+		Path directory = folder.getRoot().toPath();
+		Path real = directory.resolve("real.txt");
+		Files.write(real, "old".getBytes(StandardCharsets.UTF_8));
+		Path link = createLink(directory.resolve("link.txt"), real);
+
+		new DocumentSaver().save(document("new"), link, TextEncoding.UTF_8);
+		assertTrue(Files.isSymbolicLink(link));
+		assertEquals("new", new String(Files.readAllBytes(real), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testWritesDanglingLinkTarget() throws IOException, BadLocationException {
+		Path directory = folder.getRoot().toPath();
+		Path real = directory.resolve("missing.txt");
+		Path link = createLink(directory.resolve("dangling.txt"), real);
+
+		new DocumentSaver().save(document("created"), link, TextEncoding.UTF_8);
+		assertTrue(Files.isSymbolicLink(link));
+		assertEquals("created", new String(Files.readAllBytes(real), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testKeepsPermissions() throws IOException, BadLocationException {
+		Path target = folder.getRoot().toPath().resolve("script.sh");
+		Files.write(target, "old".getBytes(StandardCharsets.UTF_8));
+		Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rwxr-x---");
+		try {
+			Files.setPosixFilePermissions(target, permissions);
+		} catch (UnsupportedOperationException e) {
+			Assume.assumeNoException(e);
+		}
+
+		new DocumentSaver().save(document("new"), target, TextEncoding.UTF_8);
+		assertEquals(permissions, Files.getPosixFilePermissions(target));
+	}
+
+	/**
+	 * Creates a symbolic link, skipping the test where links are not
+	 * supported.
+	 *
+	 * @param link
+	 *            is the path of the link.
+	 * @param target
+	 *            is the target of the link.
+	 * @return the link.
+	 */
+	private static Path createLink(Path link, Path target) {
+		try {
+			return Files.createSymbolicLink(link, target.getFileName());
+		} catch (UnsupportedOperationException | IOException e) {
+			Assume.assumeNoException(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Checks that no temporary file was left in the directory.
+	 *
+	 * @throws IOException
+	 *             if the directory can not be listed.
+	 */
+	private void assertNoTemporaryFiles() throws IOException {
+		try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+			assertTrue(files.noneMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+		}
+	}
+
+	/**
+	 * Creates a document with the given text.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @return the document.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	private static PlainDocument document(String text) throws BadLocationException {
+		PlainDocument document = new PlainDocument();
+		document.insertString(0, text, null);
+		return document;
+	}
+}
@@ -0,0 +1,262 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.PieceTableDocument;
+
+/**
+ * The tests of the {@link EditJournal} and its {@link JournalWriter}.
+ *
+ * @author Marin
+ *
+ */
+public class EditJournalTest {
+
+	/**
+	 * The directory of the journal files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReplayRestoresText() throws IOException, BadLocationException, InterruptedException {
+		Path directory = folder.getRoot().toPath();
+		EditJournal journal = new EditJournal(directory, null, null);
+		PieceTableDocument document = new PieceTableDocument();
+		journal.attach(document);
+
+		document.insertString(0, "hello world", null);
+		document.insertString(5, ",", null);
+		document.remove(7, 5);
+		document.insertString(7, "journal\nwith lines", null);
+		await(journal);
+
+		EditJournal.Recovery recovery = EditJournal.recover(file(directory, journal));
+		assertNull(recovery.getPath());
+		assertEquals(text(document), text(recovery.getDocument()));
+	}
+
+	@Test
+	public void testSnapshotReplacesText() throws IOException, BadLocationException, InterruptedException {
+		Path directory = folder.getRoot().toPath();
+		EditJournal journal = new EditJournal(directory, null, null);
+		PieceTableDocument document = new PieceTableDocument();
+		document.insertString(0, "edited before journaling", null);
+		journal.attach(document);
+
+		journal.snapshot(document);
+		document.remove(0, 7);
+		await(journal);
+
+		assertEquals("before journaling", text(EditJournal.recover(file(directory, journal)).getDocument()));
+	}
+
+	@Test
+	public void testResetDropsRecords() throws IOException, BadLocationException, InterruptedException {
+		Path directory = folder.getRoot().toPath();
+		EditJournal journal = new EditJournal(directory, null, null);
+		PieceTableDocument document = new PieceTableDocument();
+		journal.attach(document);
+
+		document.insertString(0, "saved text", null);
+		journal.reset(null, null);
+		await(journal);
+		assertNull(EditJournal.recover(file(directory, journal)));
+
+		document.insertString(0, "unsaved ", null);
+		await(journal);
+		assertEquals("unsaved ", text(EditJournal.recover(file(directory, journal)).getDocument()));
+	}
+
+	@Test
+	public void testReplayOnBaseFile() throws IOException, BadLocationException, InterruptedException {
+		Path directory = folder.newFolder().toPath();
+		Path base = folder.newFile("base.txt").toPath();
+		Files.write(base, "first line\nsecond line\n".getBytes(StandardCharsets.UTF_8));
+		PieceTableDocument document = new DocumentLoader().load(base, null, null);
+		EditJournal journal = new EditJournal(directory, base, stamp(document));
+		journal.attach(document);
+
+		document.insertString(6, "edited ", null);
+		await(journal);
+
+		EditJournal.Recovery recovery = EditJournal.recover(file(directory, journal));
+		assertEquals(base.toAbsolutePath(), recovery.getPath());
+		assertEquals("first edited line\nsecond line\n", text(recovery.getDocument()));
+	}
+
+	@Test
+	public void testBaseChangedBeforeFirstEditIsNotReplayed()
+			throws IOException, BadLocationException, InterruptedException {
+		Path directory = folder.newFolder().toPath();
+		Path base = folder.newFile("base.txt").toPath();
+		Files.write(base, "loaded text".getBytes(StandardCharsets.UTF_8));
+		PieceTableDocument document = new DocumentLoader().load(base, null, null);
+		EditJournal journal = new EditJournal(directory, base, stamp(document));
+		journal.attach(document);
+
+		Files.write(base, "changed on disk, longer".getBytes(StandardCharsets.UTF_8));
+		document.insertString(0, "unsaved ", null);
+		await(journal);
+
+		try {
+			EditJournal.recover(file(directory, journal));
+			fail("The records were replayed on a changed base file.");
+		} catch (IOException expected) {
+		}
+	}
+
+	@Test
+	public void testBaseChangedWithoutRecords() throws IOException, BadLocationException, InterruptedException {
+		Path directory = folder.newFolder().toPath();
+		Path base = folder.newFile("base.txt").toPath();
+		Files.write(base, "loaded text".getBytes(StandardCharsets.UTF_8));
+		PieceTableDocument document = new DocumentLoader().load(base, null, null);
+		EditJournal journal = new EditJournal(directory, base, stamp(document));
+		journal.attach(document);
+
+		document.insertString(0, "saved ", null);
+		journal.reset(base, new FileStamp(-1, -1));
+		await(journal);
+
+		assertNull(EditJournal.recover(file(directory, journal)));
+	}
+
+	@Test
+	public void testSupersedeDeletesRecoveredFile()
+			throws IOException, BadLocationException, InterruptedException {
+		Path directory = folder.getRoot().toPath();
+		EditJournal old = new EditJournal(directory, null, null);
+		PieceTableDocument document = new PieceTableDocument();
+		old.attach(document);
+		document.insertString(0, "recovered", null);
+		await(old);
+
+		PieceTableDocument recovered = EditJournal.recover(file(directory, old)).getDocument();
+		EditJournal journal = new EditJournal(directory, null, null);
+		journal.attach(recovered);
+		journal.snapshot(recovered);
+		journal.supersede(file(directory, old));
+		await(journal);
+
+		assertFalse(Files.exists(file(directory, old)));
+		assertEquals("recovered", text(EditJournal.recover(file(directory, journal)).getDocument()));
+	}
+
+	@Test
+	public void testDeleteRemovesFile() throws IOException, BadLocationException, InterruptedException {
+		Path directory = folder.getRoot().toPath();
+		EditJournal journal = new EditJournal(directory, null, null);
+		PieceTableDocument document = new PieceTableDocument();
+		journal.attach(document);
+
+		document.insertString(0, "text", null);
+		await(journal);
+		assertTrue(Files.exists(file(directory, journal)));
+
+		journal.delete();
+		await(journal);
+		assertFalse(Files.exists(file(directory, journal)));
+	}
+
+	@Test
+	public void testInterleavedJournalsKeepTheirOrder()
+			throws IOException, BadLocationException, InterruptedException {
+		Path directory = folder.getRoot().toPath();
+		EditJournal[] journals = new EditJournal[3];
+		PieceTableDocument[] documents = new PieceTableDocument[journals.length];
+		for (int i = 0; i < journals.length; ++i) {
+			journals[i] = new EditJournal(directory, null, null);
+			documents[i] = new PieceTableDocument();
+			journals[i].attach(documents[i]);
+		}
+
+		for (int step = 0; step < 3000; ++step) {
+			Document document = documents[step % documents.length];
+			if (step % 7 == 6) {
+				document.remove(0, Math.min(3, document.getLength()));
+			} else {
+				document.insertString(document.getLength() / 2, step + (step % 5 == 0 ? "\n" : " "), null);
+			}
+		}
+		for (EditJournal journal : journals) {
+			await(journal);
+		}
+
+		for (int i = 0; i < journals.length; ++i) {
+			PieceTableDocument recovered = EditJournal.recover(file(directory, journals[i])).getDocument();
+			assertEquals(text(documents[i]), text(recovered));
+		}
+	}
+
+	/**
+	 * Waits until the writer performs everything queued for the given journal
+	 * so far. The writer performs the commands in order, so a command queued
+	 * last runs after all of them.
+	 *
+	 * @param journal
+	 *            is the given journal.
+	 * @throws InterruptedException
+	 *             if the waiting is interrupted.
+	 */
+	private static void await(EditJournal journal) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		JournalWriter.getInstance().submit(journal, done::countDown);
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Returns the stamp the loader stored in the given document.
+	 *
+	 * @param document
+	 *            is the given document.
+	 * @return the stamp.
+	 */
+	private static FileStamp stamp(Document document) {
+		return (FileStamp) document.getProperty(FileStamp.PROPERTY);
+	}
+
+	/**
+	 * Returns the file of the given journal.
+	 *
+	 * @param directory
+	 *            is the directory of the journal files.
+	 * @param journal
+	 *            is the given journal.
+	 * @return the path of the file.
+	 */
+	private static Path file(Path directory, EditJournal journal) {
+		return directory.resolve(journal.getId() + EditJournal.EXTENSION);
+	}
+
+	/**
+	 * Returns the whole text of the given document.
+	 *
+	 * @param document
+	 *            is the given document.
+	 * @return the text.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	private static String text(Document document) throws BadLocationException {
+		return document.getText(0, document.getLength());
+	}
+}
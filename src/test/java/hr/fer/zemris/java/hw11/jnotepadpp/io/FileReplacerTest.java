@@ -0,0 +1,314 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher.Option;
+
+/**
+ * The tests of the {@link FileReplacer}.
+ *
+ * @author Marin
+ *
+ */
+public class FileReplacerTest {
+
+	/**
+	 * The directory of the replaced files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCommit() throws IOException {
+		Path first = write("first.txt", "old text\nold\n");
+		Path second = write("second.txt", "nothing");
+		Path third = write("third.txt", "very old");
+		FileReplacer replacer = replacer("old", "new");
+
+		assertEquals(2, replacer.prepare(first, () -> false));
+		assertEquals(0, replacer.prepare(second, () -> false));
+		assertEquals(1, replacer.prepare(third, () -> false));
+		assertEquals(2, replacer.getFileCount());
+		assertEquals("old text\nold\n", read(first));
+
+		List<Path> written = new ArrayList<>();
+		assertEquals(Arrays.asList(first.toAbsolutePath(), third.toAbsolutePath()), replacer.commit(written::add));
+		assertEquals(2, written.size());
+		assertEquals("new text\nnew\n", read(first));
+		assertEquals("nothing", read(second));
+		assertEquals("very new", read(third));
+		assertOnlyFiles("first.txt", "second.txt", "third.txt");
+	}
+
+	@Test
+	public void testKeepsByteOrderMarkAndCharset() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("utf16.txt");
+		Files.write(file, "﻿key=1\nkey=2\n".getBytes(StandardCharsets.UTF_16BE));
+		FileReplacer replacer = replacer("^key=(\\d)$", "value=$1", Option.REGEX);
+
+		assertEquals(2, replacer.prepare(file, () -> false));
+		replacer.commit(path -> {
+		});
+		assertArrayEquals("﻿value=1\nvalue=2\n".getBytes(StandardCharsets.UTF_16BE), Files.readAllBytes(file));
+	}
+
+	@Test
+	public void testChangedFileFailsCommit() throws IOException {
+		Path first = write("first.txt", "old");
+		Path second = write("second.txt", "old");
+		FileReplacer replacer = replacer("old", "new");
+		replacer.prepare(first, () -> false);
+		replacer.prepare(second, () -> false);
+
+		Files.write(second, "changed meanwhile".getBytes(StandardCharsets.UTF_8));
+		try {
+			replacer.commit(path -> {
+			});
+			fail();
+		} catch (IOException expected) {
+		}
+		assertEquals("old", read(first));
+		assertEquals("changed meanwhile", read(second));
+		assertOnlyFiles("first.txt", "second.txt");
+	}
+
+	@Test
+	public void testFailureRollsBack() throws IOException {
+		Path first = write("first.txt", "old one");
+		Path second = write("second.txt", "old two");
+		FileReplacer replacer = replacer("old", "new");
+		replacer.prepare(first, () -> false);
+		replacer.prepare(second, () -> false);
+
+		List<Path> written = new ArrayList<>();
+		try {
+			replacer.commit(path -> {
+				written.add(path);
+				if (written.size() == 2) {
+					throw new IllegalStateException("Failed on the second file.");
+				}
+			});
+			fail();
+		} catch (IllegalStateException expected) {
+		}
+		assertEquals("old one", read(first));
+		assertEquals("old two", read(second));
+		assertOnlyFiles("first.txt", "second.txt");
+	}
+
+	@Test
+	public void testRecoverAfterCrash() throws IOException {
+		Path logs = folder.newFolder("logs").toPath();
+		Path first = write("first.txt", "old one");
+		Path second = write("second.txt", "old two");
+		FileReplacer replacer = replacer("old", "new");
+		replacer.setLogDirectory(logs);
+		replacer.prepare(first, () -> false);
+		replacer.prepare(second, () -> false);
+
+		try {
+			replacer.commit(path -> {
+				throw new Crash();
+			});
+			fail();
+		} catch (Crash expected) {
+		}
+		assertEquals("new one", read(first));
+		assertEquals(1, count(logs));
+
+		List<Path> restored = FileReplacer.recover(logs);
+		assertEquals(Arrays.asList(first.toAbsolutePath()), restored);
+		assertEquals("old one", read(first));
+		assertEquals("old two", read(second));
+		assertEquals(0, count(logs));
+		assertOnlyFiles("first.txt", "second.txt", "logs");
+	}
+
+	@Test
+	public void testLogDeletedAfterCommit() throws IOException {
+		Path logs = folder.newFolder("logs").toPath();
+		Path file = write("file.txt", "old");
+		FileReplacer replacer = replacer("old", "new");
+		replacer.setLogDirectory(logs);
+		replacer.prepare(file, () -> false);
+		replacer.commit(path -> {
+		});
+		assertEquals(0, count(logs));
+		assertTrue(FileReplacer.recover(logs).isEmpty());
+		assertEquals("new", read(file));
+	}
+
+	@Test
+	public void testHardLinksSeeReplacement() throws IOException {
+		Path file = write("file.txt", "old");
+		Path link = folder.getRoot().toPath().resolve("link.txt");
+		try {
+			Files.createLink(link, file);
+		} catch (UnsupportedOperationException | IOException e) {
+			Assume.assumeNoException(e);
+		}
+		FileReplacer replacer = replacer("old", "new");
+		replacer.prepare(file, () -> false);
+		replacer.commit(path -> {
+		});
+		assertEquals("new", read(file));
+		assertEquals("new", read(link));
+	}
+
+	@Test
+	public void testDiscard() throws IOException {
+		Path file = write("file.txt", "old");
+		FileReplacer replacer = replacer("old", "new");
+		replacer.prepare(file, () -> false);
+		replacer.discard();
+		assertEquals(0, replacer.getFileCount());
+		assertEquals("old", read(file));
+		assertOnlyFiles("file.txt");
+	}
+
+	@Test
+	public void testLargeDecodedFile() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("large.log");
+		byte[] line = "key=value\n".getBytes(StandardCharsets.US_ASCII);
+		long lines = (FileSearcher.DECODE_LIMIT + 1024 * 1024) / line.length;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(line.length * 64 * 1024);
+			for (long i = 0; i < lines; ++i) {
+				buffer.put(i == lines - 2 ? "key=other\n".getBytes(StandardCharsets.US_ASCII) : line);
+				if (!buffer.hasRemaining() || i == lines - 1) {
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+					buffer.clear();
+				}
+			}
+		}
+
+		FileReplacer replacer = replacer("^key=other$", "key=changed!", Option.REGEX);
+		assertEquals(1, replacer.prepare(file, () -> false));
+		replacer.commit(path -> {
+		});
+		assertEquals(lines * line.length + 3, Files.size(file));
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer tail = ByteBuffer.allocate(3 * line.length + 3);
+			channel.read(tail, Files.size(file) - tail.capacity());
+			assertEquals("key=value\nkey=changed!\nkey=value\n", new String(tail.array(), StandardCharsets.US_ASCII));
+		}
+	}
+
+	/**
+	 * A failure stopping a commit without running its rollback, like a crash
+	 * does.
+	 *
+	 * @author Marin
+	 *
+	 */
+	private static class Crash extends Error {
+
+		/**
+		 * Serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Creates a replacer of the given query.
+	 *
+	 * @param query
+	 *            is the query.
+	 * @param replacement
+	 *            is the replacement.
+	 * @param options
+	 *            are the search options.
+	 * @return the replacer.
+	 */
+	private static FileReplacer replacer(String query, String replacement, Option... options) {
+		EnumSet<Option> set = EnumSet.noneOf(Option.class);
+		set.addAll(Arrays.asList(options));
+		return new FileReplacer(new FileSearcher(new TextSearcher(query, replacement, set)));
+	}
+
+	/**
+	 * Checks that the directory holds only the given files, with no temporary
+	 * file or backup left.
+	 *
+	 * @param names
+	 *            are the names of the given files.
+	 * @throws IOException
+	 *             if the directory can not be listed.
+	 */
+	private void assertOnlyFiles(String... names) throws IOException {
+		try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+			assertEquals(names.length, files.peek(file -> assertTrue(file.toString(),
+					Arrays.asList(names).contains(file.getFileName().toString()))).count());
+		}
+	}
+
+	/**
+	 * Counts the files in the given directory.
+	 *
+	 * @param directory
+	 *            is the given directory.
+	 * @return the number of files.
+	 * @throws IOException
+	 *             if the directory can not be listed.
+	 */
+	private static long count(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.count();
+		}
+	}
+
+	/**
+	 * Writes a UTF-8 file with the given text.
+	 *
+	 * @param name
+	 *            is the name of the file.
+	 * @param text
+	 *            is the text.
+	 * @return the path of the file.
+	 * @throws IOException
+	 *             if the file can not be written.
+	 */
+	private Path write(String name, String text) throws IOException {
+		Path file = folder.getRoot().toPath().resolve(name);
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	/**
+	 * Reads a UTF-8 file.
+	 *
+	 * @param file
+	 *            is the file.
+	 * @return the text of the file.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	private static String read(Path file) throws IOException {
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,214 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher;
+import hr.fer.zemris.java.hw11.jnotepadpp.document.TextSearcher.Option;
+import hr.fer.zemris.java.hw11.jnotepadpp.io.FileSearcher.Hit;
+
+/**
+ * The tests of the {@link FileSearcher}.
+ *
+ * @author Marin
+ *
+ */
+public class FileSearcherTest {
+
+	/**
+	 * The length of a line of the large file, with its line break.
+	 */
+	private static final int LINE_LENGTH = 14;
+	/**
+	 * The size of the windows the large file is mapped in.
+	 */
+	private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+	/**
+	 * The directory of the large file.
+	 */
+	@ClassRule
+	public static TemporaryFolder largeFolder = new TemporaryFolder();
+	/**
+	 * The large file, larger than {@link FileSearcher#DECODE_LIMIT}.
+	 */
+	private static Path large;
+	/**
+	 * The indexes of the lines of the large file holding the needles.
+	 */
+	private static List<Integer> needles;
+
+	/**
+	 * The directory of the other files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Writes the large file. The lines holding the needles cross the edges of
+	 * the windows and of the decoded chunks.
+	 *
+	 * @throws IOException
+	 *             if the file can not be written.
+	 */
+	@BeforeClass
+	public static void writeLarge() throws IOException {
+		int lines = (int) ((FileSearcher.DECODE_LIMIT + 4 * 1024 * 1024) / LINE_LENGTH);
+		needles = Arrays.asList(0, FileSearcher.TEXT_CHUNK_SIZE / LINE_LENGTH,
+				(int) ((WINDOW_SIZE - FileSearcher.READ_LIMIT) / LINE_LENGTH), (int) (WINDOW_SIZE / LINE_LENGTH),
+				lines - 1);
+		large = largeFolder.getRoot().toPath().resolve("large.log");
+		try (FileChannel channel = FileChannel.open(large, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(LINE_LENGTH * 64 * 1024);
+			byte[] line = "line 00000000\n".getBytes(StandardCharsets.US_ASCII);
+			byte[] needle = "NEEDLE-000000\n".getBytes(StandardCharsets.US_ASCII);
+			for (int i = 0; i < lines; ++i) {
+				byte[] bytes = needles.contains(i) ? needle : line;
+				for (int digit = LINE_LENGTH - 2, value = i; bytes[digit] != '-' && bytes[digit] != ' '; --digit) {
+					bytes[digit] = (byte) ('0' + value % 10);
+					value /= 10;
+				}
+				buffer.put(bytes);
+				if (!buffer.hasRemaining() || i == lines - 1) {
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+					buffer.clear();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testLiteralHit() throws IOException {
+		Path file = write("a.txt", "first line\r\nsecond Needle line\nthird needle\n", StandardCharsets.UTF_8);
+		List<Hit> hits = search(file, "needle");
+		assertEquals(2, hits.size());
+		assertEquals(2, hits.get(0).getLine());
+		assertEquals(12, hits.get(0).getLineOffset());
+		assertEquals(7, hits.get(0).getColumn());
+		assertEquals(6, hits.get(0).getLength());
+		assertEquals("second Needle line", hits.get(0).getPreview());
+		assertEquals(3, hits.get(1).getLine());
+		assertEquals(1, search(file, "needle", Option.MATCH_CASE).size());
+	}
+
+	@Test
+	public void testColumnsInCharacters() throws IOException {
+		Path file = write("utf8.txt", "čćž target\n", StandardCharsets.UTF_8);
+		assertEquals(4, search(file, "target").get(0).getColumn());
+		assertEquals(0, search(file, "ČĆŽ").get(0).getColumn());
+	}
+
+	@Test
+	public void testUtf16AndRegex() throws IOException {
+		Path file = write("utf16.txt", "﻿key=1\nother=22\n", StandardCharsets.UTF_16LE);
+		List<Hit> hits = search(file, "^\\w+=\\d{2}$", Option.REGEX);
+		assertEquals(1, hits.size());
+		assertEquals(2, hits.get(0).getLine());
+		assertEquals(8, hits.get(0).getLength());
+		assertEquals(1, search(file, "KEY").size());
+	}
+
+	@Test
+	public void testBinarySkipped() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("binary.bin");
+		Files.write(file, new byte[] { 'n', 'e', 'e', 'd', 'l', 'e', 0, 1, 2 });
+		assertTrue(search(file, "needle").isEmpty());
+	}
+
+	@Test
+	public void testMappedFileWithLongLines() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 3 * FileSearcher.READ_LIMIT; ++i) {
+			text.append(i == FileSearcher.READ_LIMIT * 2 ? "needle" : "x");
+		}
+		text.append("\nneedle\n");
+		Path file = write("long.txt", text.toString(), StandardCharsets.UTF_8);
+		List<Hit> hits = search(file, "needle");
+		assertEquals(2, hits.size());
+		assertEquals(1, hits.get(0).getLine());
+		assertEquals(2, hits.get(1).getLine());
+		assertEquals(text.length() - 7, hits.get(1).getLineOffset());
+	}
+
+	@Test
+	public void testLargeFileLiteral() throws IOException {
+		List<Hit> hits = search(large, "needle");
+		assertEquals(needles.size(), hits.size());
+		for (int i = 0; i < hits.size(); ++i) {
+			assertEquals(needles.get(i) + 1, hits.get(i).getLine());
+			assertEquals((long) needles.get(i) * LINE_LENGTH, hits.get(i).getLineOffset());
+		}
+	}
+
+	@Test
+	public void testLargeFileDecoded() throws IOException {
+		List<Hit> hits = search(large, "^needle-\\d+$", Option.REGEX);
+		List<Integer> lines = new ArrayList<>();
+		for (Hit hit : hits) {
+			assertEquals(0, hit.getColumn());
+			assertEquals(LINE_LENGTH - 1, hit.getLength());
+			lines.add(hit.getLine() - 1);
+		}
+		assertEquals(needles, lines);
+	}
+
+	/**
+	 * Searches the given file.
+	 *
+	 * @param file
+	 *            is the given file.
+	 * @param query
+	 *            is the searched query.
+	 * @param options
+	 *            are the search options.
+	 * @return the hits.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	private static List<Hit> search(Path file, String query, Option... options) throws IOException {
+		EnumSet<Option> set = EnumSet.noneOf(Option.class);
+		set.addAll(Arrays.asList(options));
+		return new FileSearcher(new TextSearcher(query, set)).search(file, () -> false);
+	}
+
+	/**
+	 * Writes a file with the given text.
+	 *
+	 * @param name
+	 *            is the name of the file.
+	 * @param text
+	 *            is the text.
+	 * @param charset
+	 *            is the charset of the file.
+	 * @return the path of the file.
+	 * @throws IOException
+	 *             if the file can not be written.
+	 */
+	private Path write(String name, String text, Charset charset) throws IOException {
+		Path file = folder.getRoot().toPath().resolve(name);
+		Files.write(file, text.getBytes(charset));
+		return file;
+	}
+}
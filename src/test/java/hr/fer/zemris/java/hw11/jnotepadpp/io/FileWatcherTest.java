@@ -0,0 +1,98 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The tests of the {@link FileWatcher}.
+ *
+ * @author Marin
+ *
+ */
+public class FileWatcherTest {
+
+	/**
+	 * The time in milliseconds to wait for a reported change.
+	 */
+	private static final long WAIT = 5000;
+	/**
+	 * The time in milliseconds after which no more changes are expected, long
+	 * enough for the first hash and the debounce.
+	 */
+	private static final long QUIET = 1500;
+
+	/**
+	 * The folder of the watched files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testTouchWithSameContentIsNotReported() throws IOException, InterruptedException {
+		BlockingQueue<Path> changes = new LinkedBlockingQueue<>();
+		Path file = write("watched.txt", "content");
+		FileWatcher watcher = new FileWatcher(changes::add);
+		watcher.watch(file);
+		Thread.sleep(QUIET);
+
+		Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 60_000));
+		assertNull(changes.poll(QUIET, TimeUnit.MILLISECONDS));
+
+		Files.write(file, "CONTENT".getBytes(StandardCharsets.UTF_8));
+		assertEquals(file.toAbsolutePath().normalize(), changes.poll(WAIT, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testGrowingFileIsReported() throws IOException, InterruptedException {
+		BlockingQueue<Path> changes = new LinkedBlockingQueue<>();
+		Path file = write("log.txt", "line\n");
+		FileWatcher watcher = new FileWatcher(changes::add);
+		watcher.watch(file);
+
+		Files.write(file, "line\nline\n".getBytes(StandardCharsets.UTF_8));
+		assertEquals(file.toAbsolutePath().normalize(), changes.poll(WAIT, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testAcknowledgedWriteIsNotReported() throws IOException, InterruptedException {
+		BlockingQueue<Path> changes = new LinkedBlockingQueue<>();
+		Path file = write("saved.txt", "before");
+		FileWatcher watcher = new FileWatcher(changes::add);
+		watcher.watch(file);
+		Thread.sleep(QUIET);
+
+		Files.write(file, "after, longer".getBytes(StandardCharsets.UTF_8));
+		watcher.acknowledge(file);
+		assertNull(changes.poll(QUIET, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Creates a file with the given text in the temporary folder.
+	 *
+	 * @param name
+	 *            is the name of the file.
+	 * @param text
+	 *            is the given text.
+	 * @return the path of the file.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	private Path write(String name, String text) throws IOException {
+		Path file = folder.getRoot().toPath().resolve(name);
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}
@@ -0,0 +1,206 @@
+package hr.fer.zemris.java.hw11.jnotepadpp.syntax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+
+import org.junit.Test;
+
+/**
+ * The tests of the {@link SyntaxHighlighter} and the state of its lexers.
+ *
+ * @author Marin
+ *
+ */
+public class SyntaxHighlighterTest {
+
+	@Test
+	public void testJavaLexerStates() {
+		JavaLexer lexer = new JavaLexer();
+		assertEquals(JavaLexer.BLOCK_COMMENT, lexer.lex("int a; /* open", Lexer.INITIAL, Lexer.IGNORED));
+		assertEquals(JavaLexer.BLOCK_COMMENT, lexer.lex("still open", JavaLexer.BLOCK_COMMENT, Lexer.IGNORED));
+		assertEquals(Lexer.INITIAL, lexer.lex("closed */ int b;", JavaLexer.BLOCK_COMMENT, Lexer.IGNORED));
+		assertEquals(Lexer.INITIAL, lexer.lex("String s = \"/* not a comment\";", Lexer.INITIAL, Lexer.IGNORED));
+		assertEquals(JavaLexer.TEXT_BLOCK, lexer.lex("String s = \"\"\"", Lexer.INITIAL, Lexer.IGNORED));
+	}
+
+	@Test
+	public void testTokens() throws BadLocationException {
+		PlainDocument document = document("/* a\nb */ return 42; // c");
+		SyntaxHighlighter highlighter = new SyntaxHighlighter(document, new JavaLexer());
+		assertEquals("0-4 COMMENT", tokens(highlighter, 0));
+		assertEquals("0-4 COMMENT 5-11 KEYWORD 12-14 NUMBER 16-20 COMMENT", tokens(highlighter, 1));
+	}
+
+	@Test
+	public void testEditWithoutStateChangeRestylesNothing() throws BadLocationException {
+		PlainDocument document = document(javaSource(200));
+		SyntaxHighlighter highlighter = new SyntaxHighlighter(document, new JavaLexer());
+		highlighter.tokens(199, Lexer.IGNORED);
+
+		document.insertString(lineStart(document, 50) + 1, "int added = 1; ", null);
+		assertTrue(highlighter.getRestyledEnd() < highlighter.getRestyledStart());
+		assertTokensMatchFreshLexing(document, highlighter);
+	}
+
+	@Test
+	public void testOpenedCommentRestylesUntilStatesMeet() throws BadLocationException {
+		PlainDocument document = document(javaSource(200));
+		SyntaxHighlighter highlighter = new SyntaxHighlighter(document, new JavaLexer());
+		highlighter.tokens(199, Lexer.IGNORED);
+
+		document.insertString(lineStart(document, 20) + 1, "/* ", null);
+		assertEquals(21, highlighter.getRestyledStart());
+		// line 41 is already inside the comment opened on line 40
+		assertEquals(40, highlighter.getRestyledEnd());
+		assertTokensMatchFreshLexing(document, highlighter);
+
+		document.remove(lineStart(document, 20) + 1, 3);
+		assertTokensMatchFreshLexing(document, highlighter);
+	}
+
+	@Test
+	public void testConvergesAfterRandomEdits() throws BadLocationException {
+		Random random = new Random(5);
+		PlainDocument document = document(javaSource(300));
+		SyntaxHighlighter highlighter = new SyntaxHighlighter(document, new JavaLexer());
+		String[] inserts = { "/*", "*/", "\"\"\"", "\n", "x\ny\n", "\"", "// ", " int " };
+
+		for (int i = 0; i < 300; ++i) {
+			int offset = random.nextInt(document.getLength() + 1);
+			if (random.nextInt(3) == 0) {
+				document.remove(offset, Math.min(random.nextInt(20), document.getLength() - offset));
+			} else {
+				document.insertString(offset, inserts[random.nextInt(inserts.length)], null);
+			}
+			if (i % 10 == 0) {
+				int line = random.nextInt(document.getDefaultRootElement().getElementCount());
+				highlighter.tokens(line, Lexer.IGNORED);
+			}
+			assertTokensMatchFreshLexing(document, highlighter);
+		}
+	}
+
+	/**
+	 * Checks that the tokens of every line are the ones found by lexing the
+	 * document from its start.
+	 *
+	 * @param document
+	 *            is the document.
+	 * @param highlighter
+	 *            is the checked highlighter.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	private static void assertTokensMatchFreshLexing(PlainDocument document, SyntaxHighlighter highlighter)
+			throws BadLocationException {
+		Lexer lexer = highlighter.getLexer();
+		int state = Lexer.INITIAL;
+		int lines = document.getDefaultRootElement().getElementCount();
+		for (int line = 0; line < lines; ++line) {
+			StringBuilder expected = new StringBuilder();
+			state = lexer.lex(line(document, line), state, collector(expected));
+			assertEquals("line " + line, expected.toString(), tokens(highlighter, line));
+		}
+	}
+
+	/**
+	 * Returns the tokens of the given line as text.
+	 *
+	 * @param highlighter
+	 *            is the highlighter.
+	 * @param line
+	 *            is the given line.
+	 * @return the tokens.
+	 */
+	private static String tokens(SyntaxHighlighter highlighter, int line) {
+		StringBuilder tokens = new StringBuilder();
+		highlighter.tokens(line, collector(tokens));
+		return tokens.toString();
+	}
+
+	/**
+	 * Creates a receiver writing the tokens to the given builder.
+	 *
+	 * @param builder
+	 *            is the given builder.
+	 * @return the receiver.
+	 */
+	private static Lexer.Tokens collector(StringBuilder builder) {
+		return (start, end, type) -> builder.append(builder.length() == 0 ? "" : " ").append(start).append('-')
+				.append(end).append(' ').append(type);
+	}
+
+	/**
+	 * Creates Java source with the given number of lines, with a block comment
+	 * every fifty lines.
+	 *
+	 * @param lines
+	 *            is the number of lines.
+	 * @return the source.
+	 */
+	private static String javaSource(int lines) {
+		List<String> source = new ArrayList<>();
+		for (int i = 0; i < lines; ++i) {
+			if (i % 50 == 40) {
+				source.add("/* comment " + i);
+			} else if (i % 50 == 42) {
+				source.add("   end */ int x" + i + " = " + i + ";");
+			} else {
+				source.add("	String s" + i + " = \"text\"; // note");
+			}
+		}
+		return String.join("\n", source);
+	}
+
+	/**
+	 * Creates a document with the given text.
+	 *
+	 * @param text
+	 *            is the given text.
+	 * @return the document.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	private static PlainDocument document(String text) throws BadLocationException {
+		PlainDocument document = new PlainDocument();
+		document.insertString(0, text, null);
+		return document;
+	}
+
+	/**
+	 * Returns the start of the given line.
+	 *
+	 * @param document
+	 *            is the document.
+	 * @param line
+	 *            is the given line.
+	 * @return the start offset.
+	 */
+	private static int lineStart(PlainDocument document, int line) {
+		return document.getDefaultRootElement().getElement(line).getStartOffset();
+	}
+
+	/**
+	 * Returns the text of the given line, without the line break.
+	 *
+	 * @param document
+	 *            is the document.
+	 * @param line
+	 *            is the given line.
+	 * @return the text.
+	 * @throws BadLocationException
+	 *             never.
+	 */
+	private static String line(PlainDocument document, int line) throws BadLocationException {
+		Element element = document.getDefaultRootElement().getElement(line);
+		return document.getText(element.getStartOffset(), element.getEndOffset() - 1 - element.getStartOffset());
+	}
+}